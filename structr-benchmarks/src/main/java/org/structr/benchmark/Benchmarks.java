@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmark jar. Accepts the usual JMH command line
+ * options, but writes machine-readable JSON results by default so that
+ * runs can be compared across versions.
+ */
+public class Benchmarks {
+
+	public static void main(final String[] args) throws RunnerException, CommandLineOptionException {
+
+		final CommandLineOptions cmdOptions = new CommandLineOptions(args);
+		final ChainedOptionsBuilder builder = new OptionsBuilder().parent(cmdOptions);
+
+		if (!cmdOptions.getResultFormat().hasValue()) {
+			builder.resultFormat(ResultFormatType.JSON);
+		}
+
+		if (!cmdOptions.getResult().hasValue()) {
+			builder.result(getResultFileName());
+		}
+
+		if (!cmdOptions.getJvmArgsAppend().hasValue()) {
+			builder.jvmArgsAppend("-Duser.timezone=UTC", "-Djava.system.class.loader=org.structr.StructrClassLoader");
+		}
+
+		new Runner(builder.build()).run();
+	}
+
+	// ----- private methods -----
+	private static String getResultFileName() {
+
+		final String version = Benchmarks.class.getPackage().getImplementationVersion();
+
+		if (version != null) {
+
+			return "structr-benchmarks-" + version + ".json";
+		}
+
+		return "structr-benchmarks.json";
+	}
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.benchmark;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.structr.api.graph.Node;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Result;
+import org.structr.core.entity.MailTemplate;
+import org.structr.core.graph.NodeFactory;
+import org.structr.core.graph.NodeInterface;
+import org.structr.core.graph.Tx;
+
+/**
+ * Measures entity instantiation in {@link NodeFactory} and paged queries
+ * on top of it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FactoryBenchmark extends StructrBenchmarkState {
+
+	@Param({ "1000" })
+	public int nodeCount;
+
+	@Param({ "10", "100" })
+	public int pageSize;
+
+	private final List<Node> nodes = new LinkedList<>();
+
+	@Override
+	protected void createFixture() throws FrameworkException {
+
+		for (int i=0; i<nodeCount; i++) {
+
+			nodes.add(app.create(MailTemplate.class, "template" + i).getNode());
+		}
+	}
+
+	@Benchmark
+	public void instantiate(final Blackhole blackhole) throws FrameworkException {
+
+		try (final Tx tx = app.tx()) {
+
+			final NodeFactory<NodeInterface> factory = new NodeFactory<>(securityContext);
+
+			for (final Node node : nodes) {
+
+				blackhole.consume(factory.instantiate(node));
+			}
+
+			tx.success();
+		}
+	}
+
+	@Benchmark
+	public void page(final Blackhole blackhole) throws FrameworkException {
+
+		try (final Tx tx = app.tx()) {
+
+			final Result<MailTemplate> result = app.nodeQuery(MailTemplate.class).sort(MailTemplate.name).pageSize(pageSize).page(2).getResult();
+
+			blackhole.consume(result.getResults());
+
+			tx.success();
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.benchmark;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.structr.common.AccessMode;
+import org.structr.common.Permission;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.entity.Group;
+import org.structr.core.entity.MailTemplate;
+import org.structr.core.graph.Tx;
+import org.structr.web.entity.User;
+
+/**
+ * Measures permission resolution in AbstractNode#isGranted, both for
+ * grants to the user itself and for grants inherited through a group.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PermissionBenchmark extends StructrBenchmarkState {
+
+	private final List<MailTemplate> userNodes  = new LinkedList<>();
+	private final List<MailTemplate> groupNodes = new LinkedList<>();
+	private SecurityContext userContext         = null;
+
+	@Override
+	protected void createFixture() throws FrameworkException {
+
+		final User user   = app.create(User.class, "user");
+		final Group group = app.create(Group.class, "group");
+
+		group.addMember(user);
+
+		for (int i=0; i<100; i++) {
+
+			final MailTemplate userNode  = app.create(MailTemplate.class, "user" + i);
+			final MailTemplate groupNode = app.create(MailTemplate.class, "group" + i);
+
+			userNode.grant(Permission.read, user);
+			groupNode.grant(Permission.read, group);
+
+			userNodes.add(userNode);
+			groupNodes.add(groupNode);
+		}
+
+		userContext = SecurityContext.getInstance(user, AccessMode.Backend);
+	}
+
+	@Benchmark
+	public void grantedToUser(final Blackhole blackhole) throws FrameworkException {
+
+		try (final Tx tx = app.tx()) {
+
+			for (final MailTemplate node : userNodes) {
+
+				blackhole.consume(node.isGranted(Permission.read, userContext));
+			}
+
+			tx.success();
+		}
+	}
+
+	@Benchmark
+	public void grantedToGroup(final Blackhole blackhole) throws FrameworkException {
+
+		try (final Tx tx = app.tx()) {
+
+			for (final MailTemplate node : groupNodes) {
+
+				blackhole.consume(node.isGranted(Permission.read, userContext));
+			}
+
+			tx.success();
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.graph.Tx;
+import org.structr.web.common.RenderContext;
+import org.structr.web.entity.dom.Page;
+import org.w3c.dom.Element;
+
+/**
+ * Measures server-side rendering of a page tree, including evaluation of
+ * template expressions in content nodes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RenderingBenchmark extends StructrBenchmarkState {
+
+	@Param({ "10", "100" })
+	public int elementCount;
+
+	private Page page = null;
+
+	@Override
+	protected void createFixture() throws FrameworkException {
+
+		page = Page.createNewPage(securityContext, "benchmark");
+
+		final Element html  = page.createElement("html");
+		final Element head  = page.createElement("head");
+		final Element title = page.createElement("title");
+		final Element body  = page.createElement("body");
+
+		page.appendChild(html);
+		html.appendChild(head);
+		head.appendChild(title);
+		title.appendChild(page.createTextNode("${page.name}"));
+		html.appendChild(body);
+
+		for (int i=0; i<elementCount; i++) {
+
+			final Element div = page.createElement("div");
+			final Element p   = page.createElement("p");
+
+			div.setAttribute("class", "item item-" + i);
+			div.appendChild(p);
+			p.appendChild(page.createTextNode("Item " + i + " of ${page.name}"));
+
+			body.appendChild(div);
+		}
+	}
+
+	@Benchmark
+	public String render() throws FrameworkException {
+
+		try (final Tx tx = app.tx()) {
+
+			final String content = page.getContent(RenderContext.EditMode.NONE);
+
+			tx.success();
+
+			return content;
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.entity.MailTemplate;
+import org.structr.core.function.Functions;
+import org.structr.core.graph.NodeAttribute;
+import org.structr.core.graph.Tx;
+import org.structr.core.script.Scripting;
+import org.structr.schema.action.ActionContext;
+
+/**
+ * Measures evaluation of built-in function expressions and of JavaScript
+ * blocks against the same entity.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScriptingBenchmark extends StructrBenchmarkState {
+
+	private static final String FUNCTION_EXPRESSION   = "concat(this.name, '-', upper(this.locale), '-', length(this.text))";
+	private static final String JAVASCRIPT_EXPRESSION = "${{ var self = Structr.get('this'); return self.name + '-' + self.locale.toUpperCase() + '-' + self.text.length; }}";
+
+	private MailTemplate entity = null;
+
+	@Override
+	protected void createFixture() throws FrameworkException {
+
+		entity = app.create(MailTemplate.class,
+			new NodeAttribute<>(MailTemplate.name,   "template"),
+			new NodeAttribute<>(MailTemplate.locale, "en"),
+			new NodeAttribute<>(MailTemplate.text,   "Hello ${this.name}, this is a benchmark.")
+		);
+	}
+
+	@Benchmark
+	public Object evaluateFunctions() throws FrameworkException {
+
+		try (final Tx tx = app.tx()) {
+
+			final Object result = Functions.evaluate(new ActionContext(securityContext), entity, FUNCTION_EXPRESSION);
+
+			tx.success();
+
+			return result;
+		}
+	}
+
+	@Benchmark
+	public Object evaluateJavascript() throws FrameworkException {
+
+		try (final Tx tx = app.tx()) {
+
+			final Object result = Scripting.evaluate(new ActionContext(securityContext), entity, JAVASCRIPT_EXPRESSION, "benchmark");
+
+			tx.success();
+
+			return result;
+		}
+	}
+}
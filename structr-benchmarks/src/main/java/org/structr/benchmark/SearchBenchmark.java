@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.entity.MailTemplate;
+import org.structr.core.graph.NodeAttribute;
+import org.structr.core.graph.Tx;
+
+/**
+ * Measures query building and execution in SearchCommand, both for a
+ * simple indexed lookup and for a combined query with an OR group.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SearchBenchmark extends StructrBenchmarkState {
+
+	private static final String[] LOCALES = { "de", "en", "fr", "it" };
+
+	@Override
+	protected void createFixture() throws FrameworkException {
+
+		for (int i=0; i<1000; i++) {
+
+			app.create(MailTemplate.class,
+				new NodeAttribute<>(MailTemplate.name,   "template" + (i % 250)),
+				new NodeAttribute<>(MailTemplate.locale, LOCALES[i % LOCALES.length])
+			);
+		}
+	}
+
+	@Benchmark
+	public Object exactMatch() throws FrameworkException {
+
+		try (final Tx tx = app.tx()) {
+
+			final Object result = app.nodeQuery(MailTemplate.class).and(MailTemplate.name, "template42").getAsList();
+
+			tx.success();
+
+			return result;
+		}
+	}
+
+	@Benchmark
+	public Object combinedQuery() throws FrameworkException {
+
+		try (final Tx tx = app.tx()) {
+
+			final Object result = app.nodeQuery(MailTemplate.class)
+				.and(MailTemplate.name, "template42")
+				.and()
+					.or(MailTemplate.locale, "de")
+					.or(MailTemplate.locale, "en")
+				.parent()
+				.sort(MailTemplate.name)
+				.getAsList();
+
+			tx.success();
+
+			return result;
+		}
+	}
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.benchmark;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.output.NullWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.structr.common.PropertyView;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Result;
+import org.structr.core.StaticValue;
+import org.structr.core.entity.Group;
+import org.structr.core.graph.Tx;
+import org.structr.rest.serialization.StreamingJsonWriter;
+import org.structr.web.entity.User;
+
+/**
+ * Measures JSON serialization of a result with nested collections
+ * through {@link StreamingJsonWriter}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SerializationBenchmark extends StructrBenchmarkState {
+
+	@Param({ "1", "3" })
+	public int outputNestingDepth;
+
+	private final Writer output = new NullWriter();
+
+	@Override
+	protected void createFixture() throws FrameworkException {
+
+		for (int i=0; i<100; i++) {
+
+			final Group group = app.create(Group.class, "group" + i);
+
+			for (int j=0; j<10; j++) {
+
+				group.addMember(app.create(User.class, "user" + i + "-" + j));
+			}
+		}
+	}
+
+	@Benchmark
+	public void serializeNestedView() throws FrameworkException, IOException {
+
+		try (final Tx tx = app.tx()) {
+
+			final Result<Group> result       = app.nodeQuery(Group.class).getResult();
+			final StreamingJsonWriter writer = new StreamingJsonWriter(new StaticValue<>(PropertyView.Ui), false, outputNestingDepth);
+
+			writer.stream(securityContext, output, result, null);
+
+			tx.success();
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.structr.api.config.Settings;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
+import org.structr.core.app.App;
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.Tx;
+
+/**
+ * Base class for all benchmark states. Starts an embedded Structr instance
+ * in a temporary directory before each trial and removes it afterwards, so
+ * that every benchmark runs against a fresh database.
+ */
+@State(Scope.Benchmark)
+public abstract class StructrBenchmarkState {
+
+	protected SecurityContext securityContext = null;
+	protected App app                         = null;
+	private File basePath                     = null;
+
+	/**
+	 * Creates the fixture data for this benchmark. Called once per trial
+	 * in its own transaction, after the services have been started.
+	 *
+	 * @throws FrameworkException
+	 */
+	protected abstract void createFixture() throws FrameworkException;
+
+	@Setup(Level.Trial)
+	public void startStructr() throws IOException, FrameworkException {
+
+		basePath = Files.createTempDirectory("structr-benchmark-").toFile();
+
+		final String path = basePath.getAbsolutePath();
+
+		Settings.Testing.setValue(true);
+		Settings.Services.setValue("NodeService SchemaService");
+		Settings.ConnectionUrl.setValue(Settings.TestingConnectionUrl.getValue());
+
+		Settings.BasePath.setValue(path);
+		Settings.DatabasePath.setValue(path + "/db");
+		Settings.FilesPath.setValue(path + "/files");
+		Settings.LogDatabasePath.setValue(path + "/logDb.dat");
+
+		Settings.ThumbnailsAsync.setValue(false);
+
+		Settings.SuperUserName.setValue("superadmin");
+		Settings.SuperUserPassword.setValue("benchmark");
+
+		final Services services = Services.getInstance();
+
+		// wait for service layer to be initialized
+		while (!services.isInitialized()) {
+
+			try { Thread.sleep(100); } catch (InterruptedException iex) { }
+		}
+
+		securityContext = SecurityContext.getSuperUserInstance();
+		app             = StructrApp.getInstance(securityContext);
+
+		try (final Tx tx = app.tx()) {
+
+			createFixture();
+			tx.success();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void stopStructr() throws IOException {
+
+		Services.getInstance().shutdown();
+
+		if (basePath != null) {
+			FileUtils.deleteDirectory(basePath);
+		}
+	}
+}
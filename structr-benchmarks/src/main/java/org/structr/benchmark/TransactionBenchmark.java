@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.benchmark;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.entity.MailTemplate;
+import org.structr.core.graph.Tx;
+
+/**
+ * Measures the cost of committing modified nodes, i.e. the work done by
+ * the ModificationQueue for validation, lifecycle callbacks and transaction
+ * notifications. The variant without callbacks serves as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TransactionBenchmark extends StructrBenchmarkState {
+
+	@Param({ "10", "100" })
+	public int nodeCount;
+
+	private final List<MailTemplate> nodes = new LinkedList<>();
+	private long counter                   = 0L;
+
+	@Override
+	protected void createFixture() throws FrameworkException {
+
+		for (int i=0; i<nodeCount; i++) {
+
+			nodes.add(app.create(MailTemplate.class, "template" + i));
+		}
+	}
+
+	@Benchmark
+	public void commitWithCallbacks() throws FrameworkException {
+
+		try (final Tx tx = app.tx()) {
+
+			modifyNodes();
+			tx.success();
+		}
+	}
+
+	@Benchmark
+	public void commitWithoutCallbacks() throws FrameworkException {
+
+		try (final Tx tx = app.tx(false, false, false)) {
+
+			modifyNodes();
+			tx.success();
+		}
+	}
+
+	// ----- private methods -----
+	private void modifyNodes() throws FrameworkException {
+
+		final String text = "text" + counter++;
+
+		for (final MailTemplate node : nodes) {
+
+			node.setProperty(MailTemplate.text, text);
+		}
+	}
+}
@@ -80,81 +80,74 @@ public abstract class Agent<T extends NodeInterface> extends Thread implements S
 
 			}
 
-			if (currentTask != null) {
+			final Task<T> task = currentTask;
+			if (task != null) {
 
-				lastStartTime = System.nanoTime();
+				// TODO: schedule task for re-execution if Retry is returned
+				execute(task);
 
-				ReturnValue ret = null;
+			} else {
 
-				// only execute process if Service layer is ready
-				// (and not shutting down right now)
-				if (Services.getInstance().isInitialized()) {
+				// queue is empty, quit.
+				acceptingTasks.set(false);
+			}
 
-					if (createEnclosingTransaction()) {
+		} while (acceptingTasks.get());
 
-						try (final Tx tx = StructrApp.getInstance().tx()) {
+		// call beforeShutdown to allow agents to clean up
+		beforeShutdown();
+		agentService.notifyAgentStop(this);
+	}
 
-							ret = processTask(currentTask);
-							tx.success();
+	/**
+	 * Processes the given task in the calling thread, in an enclosing
+	 * transaction if required.
+	 *
+	 * @param task
+	 * @return the result of the task, {@link ReturnValue#Retry} if
+	 * processing failed or the service layer is not ready
+	 */
+	public final ReturnValue execute(final Task<T> task) {
 
-						} catch (Throwable t) {
+		ReturnValue ret = ReturnValue.Retry;
 
-							// someone killed us or the task processing failed..
-							// Logger this!!
-							logger.error("Processing task {} failed. Maybe someone killed us?", currentTask.getType(), t);
-						}
+		currentTask   = task;
+		lastStartTime = System.nanoTime();
 
-					} else {
+		// only execute process if Service layer is ready
+		// (and not shutting down right now)
+		if (Services.getInstance().isInitialized()) {
 
-						try {
+			try {
 
-							ret = processTask(currentTask);
+				if (createEnclosingTransaction()) {
 
-						} catch (Throwable t) {
+					try (final Tx tx = StructrApp.getInstance().tx()) {
 
-							// someone killed us or the task processing failed..
-							// Logger this!!
-							logger.error("Processing task {} failed. Maybe someone killed us?", currentTask.getType(), t);
-						}
+						ret = processTask(task);
+						tx.success();
 					}
-				}
-
-				if (ret != null) {
-
-					// handle return value
-					switch (ret) {
 
-						case Success :
-						case Abort :
+				} else {
 
-							// task finished, nothing to do in these cases
-							break;
-
-						case Retry :
-
-							// TODO: schedule task for re-execution
-							break;
-
-					}
+					ret = processTask(task);
 				}
 
-				long endTime = System.nanoTime();
+			} catch (Throwable t) {
 
-				// calc. average execution time
-				averageExecutionTime += endTime;
-				averageExecutionTime /= 2;
-
-			} else {
-
-				// queue is empty, quit.
-				acceptingTasks.set(false);
+				// someone killed us or the task processing failed..
+				logger.error("Processing task {} failed. Maybe someone killed us?", task.getType(), t);
+				ret = ReturnValue.Retry;
 			}
+		}
 
-		} while (acceptingTasks.get());
+		// calc. average execution time
+		averageExecutionTime += System.nanoTime() - lastStartTime;
+		averageExecutionTime /= 2;
 
-		// call beforeShutdown to allow agents to clean up
-		beforeShutdown();
-		agentService.notifyAgentStop(this);
+		currentTask = null;
+
+		return ret != null ? ret : ReturnValue.Success;
 	}
 
 	public final boolean assignTask(final Task<T> task) {
@@ -18,8 +18,12 @@
  */
 package org.structr.agent;
 
+import java.lang.reflect.Constructor;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -28,13 +32,30 @@ import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.config.Setting;
+import org.structr.api.config.Settings;
 import org.structr.api.service.Command;
 import org.structr.api.service.RunnableService;
 import org.structr.api.service.StructrServices;
 import org.structr.core.Services;
+import org.structr.core.app.App;
+import org.structr.core.app.StructrApp;
+import org.structr.core.entity.Principal;
+import org.structr.core.graph.NodeInterface;
+import org.structr.core.graph.Tx;
 import org.structr.schema.ConfigurationProvider;
 
 //~--- classes ----------------------------------------------------------------
@@ -42,7 +63,16 @@ import org.structr.schema.ConfigurationProvider;
 /**
  * The agent service main class.
  *
+ * Tasks are kept in a priority queue and handed to a pool of worker threads
+ * by a dispatcher thread that blocks on the queue. The number of tasks of
+ * a given type that run at the same time is limited by a per-type permit
+ * count, tasks that return {@link ReturnValue#Retry} (or fail) are re-queued
+ * with exponential backoff, and node-based tasks are recorded in a
+ * {@link TaskJournal} so that they survive a restart.
  *
+ * The priority and concurrency of a task type can be configured with the
+ * dynamic settings <code>AgentService.&lt;type&gt;.priority</code> and
+ * <code>AgentService.&lt;type&gt;.concurrency</code>.
  */
 public class AgentService extends Thread implements RunnableService {
 
@@ -50,12 +80,24 @@ public class AgentService extends Thread implements RunnableService {
 
 	//~--- fields ---------------------------------------------------------
 
-	private final int maxAgents                          = 4;    // TODO: make configurable
-	private final Map<String, List<Agent>> runningAgents = new ConcurrentHashMap<>(10, 0.9f, 8);
-	private final Map<String, Class> agentClassCache     = new ConcurrentHashMap<>(10, 0.9f, 8);
-	private final Queue<Task> taskQueue                  = new ConcurrentLinkedQueue<>();
-	private Set<Class> supportedCommands                 = null;
-	private boolean run                                  = false;
+	private final Map<String, List<Agent>> runningAgents     = new ConcurrentHashMap<>(10, 0.9f, 8);
+	private final Map<String, Class> agentClassCache         = new ConcurrentHashMap<>(10, 0.9f, 8);
+	private final Map<String, TaskType> taskTypes            = new ConcurrentHashMap<>(10, 0.9f, 8);
+	private final PriorityBlockingQueue<QueuedTask> taskQueue = new PriorityBlockingQueue<>();
+	private final AtomicLong sequence                        = new AtomicLong();
+	private final LongAdder enqueued                         = new LongAdder();
+	private final LongAdder completed                        = new LongAdder();
+	private final LongAdder retried                          = new LongAdder();
+	private final LongAdder failed                           = new LongAdder();
+	private final LongAdder restored                         = new LongAdder();
+	private final LongAdder totalWaitTime                    = new LongAdder();
+	private final LongAdder totalExecutionTime               = new LongAdder();
+	private ScheduledThreadPoolExecutor retryScheduler       = null;
+	private ThreadPoolExecutor workers                       = null;
+	private TaskJournal journal                              = null;
+	private Collection<TaskJournal.Entry> unfinished         = null;
+	private Set<Class> supportedCommands                     = null;
+	private volatile boolean run                             = false;
 
 	//~--- constructors ---------------------------------------------------
 
@@ -64,6 +106,7 @@ public class AgentService extends Thread implements RunnableService {
 		super("AgentService");
 		supportedCommands = new LinkedHashSet<>();
 		supportedCommands.add(ProcessTaskCommand.class);
+		supportedCommands.add(ListTasksCommand.class);
 
 		super.setDaemon(true);
 	}
@@ -72,11 +115,14 @@ public class AgentService extends Thread implements RunnableService {
 
 	public void processTask(Task task) {
 
-		synchronized (taskQueue) {
+		final QueuedTask queuedTask = new QueuedTask(sequence.incrementAndGet(), task, getPriority(task));
 
-			taskQueue.add(task);
-			logger.debug("Task {} added to task queue", task);
-		}
+		journal(queuedTask);
+
+		taskQueue.add(queuedTask);
+		enqueued.increment();
+
+		logger.debug("Task {} added to task queue", task);
 	}
 
 	public Agent findAgentForTask(Task task) {
@@ -87,7 +133,7 @@ public class AgentService extends Thread implements RunnableService {
 
 			for (Agent agent : agents) {
 
-				if (agent.getTaskQueue().contains(task)) {
+				if (task.equals(agent.getCurrentTask())) {
 					return (agent);
 				}
 			}
@@ -101,16 +147,21 @@ public class AgentService extends Thread implements RunnableService {
 
 		logger.info("AgentService started");
 
+		restoreJournal();
+
 		while (run) {
 
-			Task nextTask = taskQueue.poll();
-			if (nextTask != null) {
+			try {
 
-				assignNextAgentForTask(nextTask);
-			}
+				final QueuedTask nextTask = taskQueue.poll(1, TimeUnit.SECONDS);
+				if (nextTask != null) {
+
+					dispatch(nextTask);
+				}
 
-			// let others act
-			try { Thread.sleep(10); } catch(Throwable ignore) {}
+			} catch (InterruptedException iex) {
+				break;
+			}
 		}
 	}
 
@@ -143,6 +194,58 @@ public class AgentService extends Thread implements RunnableService {
 		return Collections.emptyMap();
 	}
 
+	/**
+	 * Returns queue depth, latency and throughput statistics of this service.
+	 *
+	 * @return the statistics
+	 */
+	public Map<String, Object> getStatistics() {
+
+		final Map<String, Object> data  = new LinkedHashMap<>();
+		final Map<String, Object> types = new LinkedHashMap<>();
+		final long now                  = System.currentTimeMillis();
+		final long done                 = completed.sum() + failed.sum();
+		final long executions           = done + retried.sum();
+		long oldest                     = 0L;
+		int parked                      = 0;
+
+		for (final QueuedTask queuedTask : taskQueue) {
+			oldest = Math.max(oldest, now - queuedTask.getEnqueueTime());
+		}
+
+		for (final TaskType taskType : taskTypes.values()) {
+
+			final Map<String, Object> typeData = new LinkedHashMap<>();
+			final int parkedForType            = taskType.getParkedCount();
+
+			typeData.put("concurrency", taskType.getConcurrency());
+			typeData.put("running",     taskType.getConcurrency() - taskType.permits.availablePermits());
+			typeData.put("parked",      parkedForType);
+
+			types.put(taskType.getName(), typeData);
+
+			parked += parkedForType;
+		}
+
+		data.put("queued",               taskQueue.size());
+		data.put("parked",               parked);
+		data.put("scheduledRetries",     retryScheduler != null ? retryScheduler.getQueue().size() : 0);
+		data.put("dispatched",           workers != null ? workers.getQueue().size() : 0);
+		data.put("running",              workers != null ? workers.getActiveCount() : 0);
+		data.put("oldestQueuedAge",      oldest);
+		data.put("enqueued",             enqueued.sum());
+		data.put("restored",             restored.sum());
+		data.put("completed",            completed.sum());
+		data.put("retried",              retried.sum());
+		data.put("failed",               failed.sum());
+		data.put("averageWaitTime",      executions > 0 ? totalWaitTime.sum() / executions : 0L);
+		data.put("averageExecutionTime", executions > 0 ? totalExecutionTime.sum() / executions : 0L);
+		data.put("journal",              journal != null);
+		data.put("types",                types);
+
+		return data;
+	}
+
 	// <editor-fold defaultstate="collapsed" desc="interface RunnableService">
 	@Override
 	public void injectArguments(Command command) {
@@ -162,13 +265,49 @@ public class AgentService extends Thread implements RunnableService {
 	@Override
 	public void startService() throws Exception {
 
+		final int maxWorkers = Math.max(1, Settings.AgentMaxWorkers.getValue());
+
+		workers = new ThreadPoolExecutor(maxWorkers, maxWorkers, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new AgentThreadFactory("AgentWorker"));
+		workers.allowCoreThreadTimeOut(true);
+
+		retryScheduler = new ScheduledThreadPoolExecutor(1, new AgentThreadFactory("AgentRetryScheduler"));
+
+		if (Settings.AgentJournal.getValue()) {
+
+			openJournal();
+		}
+
 		run = true;
 		this.start();
 	}
 
 	@Override
 	public void stopService() {
+
 		run = false;
+
+		this.interrupt();
+
+		if (retryScheduler != null) {
+			retryScheduler.shutdownNow();
+		}
+
+		if (workers != null) {
+
+			workers.shutdown();
+
+			try {
+				workers.awaitTermination(10, TimeUnit.SECONDS);
+
+			} catch (InterruptedException iex) {
+				logger.warn("Interrupted while waiting for agents to finish.");
+			}
+		}
+
+		// unfinished tasks stay in the journal and are restored on the next start
+		if (journal != null) {
+			journal.close();
+		}
 	}
 
 	@Override
@@ -179,58 +318,300 @@ public class AgentService extends Thread implements RunnableService {
 	// </editor-fold>
 
 	// <editor-fold defaultstate="collapsed" desc="private methods">
-	private void assignNextAgentForTask(Task nextTask) {
+	private void dispatch(final QueuedTask queuedTask) {
 
-		Class taskClass    = nextTask.getClass();
-		List<Agent> agents = getRunningAgentsForTask(taskClass);
+		final TaskType taskType = getTaskType(queuedTask.getTypeName());
 
-		// need to synchronize on agents
-		synchronized (agents) {
+		if (taskType.acquireOrPark(queuedTask)) {
 
-			// find next free agent (agents should be sorted by load, so one
-			// of the first should do..
-			for (Agent agent : agents) {
+			try {
 
-				if (agent.assignTask(nextTask)) {
+				workers.execute(() -> execute(queuedTask, taskType));
 
-					// ok, task is assigned
-					logger.debug("Task assigned to agent {}", agent.getName());
+			} catch (Throwable t) {
 
-					return;
-				}
+				// worker pool is shutting down, task remains in the journal
+				taskType.release();
 			}
 		}
+	}
+
+	private void execute(final QueuedTask queuedTask, final TaskType taskType) {
+
+		final Task task   = queuedTask.getTask();
+		final long start  = System.currentTimeMillis();
+		ReturnValue ret   = ReturnValue.Abort;
+		boolean discarded = false;
+
+		totalWaitTime.add(start - queuedTask.getEnqueueTime());
+
+		try {
 
-		// FIXME: find better solution for hard limit here!
-		if (agents.size() < maxAgents) {
+			final Agent agent = createAgent(task);
+			if (agent != null) {
+
+				notifyAgentStart(agent);
+
+				try {
 
-			// if we get here, task was not assigned to any agent, need to
-			// create a new one.
-			Agent agent = createAgent(nextTask);
+					ret = agent.execute(task);
+
+				} finally {
+
+					notifyAgentStop(agent);
+				}
 
-			if ((agent != null) && agent.assignTask(nextTask)) {
-				agent.start();
 			} else {
 
-				// re-add task..
-				synchronized (taskQueue) {
-					taskQueue.add(nextTask);
+				logger.warn("No agent found for task {}, discarding it.", queuedTask.getTypeName());
+				discarded = true;
+			}
+
+		} catch (Throwable t) {
+
+			// agent creation or a listener failed, the task itself may still succeed
+			logger.warn("Unable to execute task {}: {}", queuedTask.getTypeName(), t.getMessage());
+			ret = ReturnValue.Retry;
+
+		} finally {
+
+			totalExecutionTime.add(System.currentTimeMillis() - start);
+
+			switch (ret) {
+
+				case Retry:
+					retry(queuedTask);
+					break;
+
+				default:
+					if (discarded) {
+						failed.increment();
+					} else {
+						completed.increment();
+					}
+					finish(queuedTask);
+					break;
+			}
+
+			// hand the permit to the next parked task of this type
+			final QueuedTask parked = taskType.release();
+			if (parked != null) {
+
+				taskQueue.add(parked);
+			}
+		}
+	}
+
+	private void retry(final QueuedTask queuedTask) {
+
+		final int attempt    = queuedTask.incrementAttempts();
+		final int maxRetries = Settings.AgentMaxRetries.getValue();
+
+		if (attempt > maxRetries || !run) {
+
+			if (run) {
+
+				logger.warn("Task {} failed after {} attempts, giving up.", queuedTask.getTypeName(), attempt);
+
+				failed.increment();
+				finish(queuedTask);
+			}
+
+			return;
+		}
+
+		final long delay = (long)Settings.AgentRetryDelay.getValue() << Math.min(attempt - 1, 16);
+
+		logger.debug("Retrying task {} in {} ms (attempt {} of {})", queuedTask.getTypeName(), delay, attempt, maxRetries);
+
+		retried.increment();
+
+		try {
+
+			retryScheduler.schedule(() -> {
+
+				queuedTask.resetEnqueueTime();
+				taskQueue.add(queuedTask);
+
+			}, delay, TimeUnit.MILLISECONDS);
+
+		} catch (Throwable t) {
+
+			// scheduler is shutting down, task remains in the journal
+		}
+	}
+
+	private void journal(final QueuedTask queuedTask) {
+
+		final Task task = queuedTask.getTask();
+
+		if (journal != null && task instanceof AbstractTask && !task.getNodes().isEmpty()) {
+
+			try (final Tx tx = StructrApp.getInstance().tx()) {
+
+				final List<String> nodeIds = new LinkedList<>();
+				final Principal user       = task.getUser();
+
+				for (final Object node : task.getNodes()) {
+					nodeIds.add(((NodeInterface)node).getUuid());
+				}
+
+				queuedTask.setJournaled(journal.append(new TaskJournal.Entry(queuedTask.getId(), task.getClass().getName(), task.getType(), queuedTask.getPriority(), user != null ? user.getUuid() : null, nodeIds)));
+
+				tx.success();
+
+			} catch (Throwable t) {
+				logger.warn("Unable to journal task {}: {}", queuedTask.getTypeName(), t.getMessage());
+			}
+		}
+	}
+
+	private void finish(final QueuedTask queuedTask) {
+
+		if (journal != null && queuedTask.isJournaled()) {
+			journal.remove(queuedTask.getId());
+		}
+	}
+
+	/**
+	 * Opens the journal before the first task is accepted, and makes sure
+	 * that new tasks get ids that are higher than those of the unfinished
+	 * tasks in the journal.
+	 */
+	private void openJournal() {
+
+		final TaskJournal taskJournal = new TaskJournal(Paths.get(Settings.getBasePath(), Settings.AgentJournalPath.getValue()));
+
+		try {
+
+			unfinished = taskJournal.open();
+			journal    = taskJournal;
+
+			sequence.accumulateAndGet(taskJournal.getLastId(), Math::max);
+
+		} catch (Throwable t) {
+
+			logger.warn("Unable to open task journal, tasks will not survive a restart: {}", t.getMessage());
+		}
+	}
+
+	private void restoreJournal() {
+
+		final Collection<TaskJournal.Entry> entries = unfinished;
+
+		unfinished = null;
+
+		if (journal == null || entries == null || entries.isEmpty()) {
+			return;
+		}
+
+		// tasks can only be restored once the database is available
+		while (run && !Services.getInstance().isInitialized()) {
+
+			try { Thread.sleep(100); } catch (InterruptedException iex) { return; }
+		}
+
+		try {
+
+			final App app = StructrApp.getInstance();
+
+			try (final Tx tx = app.tx()) {
+
+				for (final TaskJournal.Entry entry : entries) {
+
+					final Task task = restoreTask(app, entry);
+					if (task != null) {
+
+						final QueuedTask queuedTask = new QueuedTask(entry.getId(), task, entry.getPriority());
+
+						queuedTask.setJournaled(true);
+						taskQueue.add(queuedTask);
+						restored.increment();
+
+					} else {
+
+						journal.remove(entry.getId());
+					}
+				}
+
+				tx.success();
+			}
+
+			logger.info("Restored {} of {} unfinished tasks from journal", restored.sum(), entries.size());
+
+		} catch (Throwable t) {
+
+			logger.warn("Unable to restore tasks from journal: {}", t.getMessage());
+		}
+	}
+
+	private Task restoreTask(final App app, final TaskJournal.Entry entry) {
+
+		try {
+
+			final List<NodeInterface> nodes = new ArrayList<>();
+			final Class taskClass           = Class.forName(entry.getTaskClass());
+			Principal user                  = null;
+			AbstractTask task               = null;
+
+			for (final String uuid : entry.getNodeIds()) {
+
+				final NodeInterface node = app.getNodeById(uuid);
+				if (node != null) {
+
+					nodes.add(node);
 				}
 			}
-		} else {
 
-			logger.debug("Overall agents limit reached, re-queueing task");
+			if (nodes.isEmpty()) {
+				return null;
+			}
+
+			if (!entry.getUserId().isEmpty()) {
+				user = app.get(Principal.class, entry.getUserId());
+			}
+
+			final NodeInterface first = nodes.get(0);
+
+			for (final Constructor constructor : taskClass.getConstructors()) {
+
+				final Class[] types = constructor.getParameterTypes();
+
+				if (types.length == 1 && types[0].isInstance(first)) {
+
+					task = (AbstractTask)constructor.newInstance(first);
+					break;
+				}
+
+				if (types.length == 3 && String.class.equals(types[0]) && types[2].isInstance(first)) {
+
+					task = (AbstractTask)constructor.newInstance(entry.getType(), user, first);
+					break;
+				}
+			}
+
+			if (task != null) {
+
+				for (final NodeInterface node : nodes.subList(1, nodes.size())) {
+					task.addNode(node);
+				}
 
-			// re-add task..
-			synchronized (taskQueue) {
-				taskQueue.add(nextTask);
+				task.setUser(user);
+				task.setPriority(entry.getPriority());
 			}
+
+			return task;
+
+		} catch (Throwable t) {
+
+			logger.warn("Unable to restore task {} from journal: {}", entry.getTaskClass(), t.getMessage());
 		}
+
+		return null;
 	}
 
 	/**
-	 * Creates a new agent for the given Task. Note that the agent must be
-	 * started manually after creation.
+	 * Creates a new agent for the given Task.
 	 *
 	 * @param forTask
 	 * @return a new agent for the given task
@@ -302,6 +683,45 @@ public class AgentService extends Thread implements RunnableService {
 		return (agent);
 	}
 
+	private int getPriority(final Task task) {
+		return getTypeSetting(getTypeName(task), "priority", task.priority());
+	}
+
+	private TaskType getTaskType(final String name) {
+		return taskTypes.computeIfAbsent(name, k -> new TaskType(k, Math.max(1, getTypeSetting(k, "concurrency", Settings.AgentConcurrency.getValue()))));
+	}
+
+	private int getTypeSetting(final String type, final String key, final int defaultValue) {
+
+		final Setting<?> setting = Settings.getSetting("AgentService", type, key);
+		if (setting != null) {
+
+			final Object value = setting.getValue();
+			if (value instanceof Number) {
+
+				return ((Number)value).intValue();
+			}
+
+			if (value instanceof String) {
+
+				try { return Integer.valueOf(((String)value).trim()); } catch (NumberFormatException ignore) {}
+			}
+		}
+
+		return defaultValue;
+	}
+
+	private static String getTypeName(final Task task) {
+
+		final String type = task.getType();
+		if (type != null) {
+
+			return type;
+		}
+
+		return task.getClass().getSimpleName();
+	}
+
 	// </editor-fold>
 
 	//~--- get methods ----------------------------------------------------
@@ -311,7 +731,18 @@ public class AgentService extends Thread implements RunnableService {
 	 * @return tasks
 	 */
 	public Collection<Task> getTaskQueue() {
-		return (taskQueue);
+
+		final List<Task> tasks = new LinkedList<>();
+
+		for (final QueuedTask queuedTask : taskQueue) {
+			tasks.add(queuedTask.getTask());
+		}
+
+		for (final TaskType taskType : taskTypes.values()) {
+			taskType.addParkedTasks(tasks);
+		}
+
+		return (tasks);
 	}
 
 	/**
@@ -323,18 +754,7 @@ public class AgentService extends Thread implements RunnableService {
 	}
 
 	private List<Agent> getRunningAgentsForTask(Class taskClass) {
-
-		List<Agent> agents = runningAgents.get(taskClass.getName());
-
-		if (agents == null) {
-
-			agents = Collections.synchronizedList(new LinkedList<Agent>());
-
-			// Hashtable is synchronized
-			runningAgents.put(taskClass.getName(), agents);
-		}
-
-		return (agents);
+		return runningAgents.computeIfAbsent(taskClass.getName(), k -> Collections.synchronizedList(new LinkedList<Agent>()));
 	}
 
 	@Override
@@ -346,4 +766,149 @@ public class AgentService extends Thread implements RunnableService {
 	public boolean isVital() {
 		return false;
 	}
+
+	// ----- nested classes -----
+	private static class QueuedTask implements Comparable<QueuedTask> {
+
+		private final AtomicInteger attempts = new AtomicInteger();
+		private volatile long enqueueTime    = System.currentTimeMillis();
+		private volatile boolean journaled   = false;
+		private Task task                    = null;
+		private int priority                 = 0;
+		private long id                      = 0L;
+
+		public QueuedTask(final long id, final Task task, final int priority) {
+
+			this.id       = id;
+			this.task     = task;
+			this.priority = priority;
+		}
+
+		public long getId() {
+			return id;
+		}
+
+		public Task getTask() {
+			return task;
+		}
+
+		public int getPriority() {
+			return priority;
+		}
+
+		public String getTypeName() {
+			return AgentService.getTypeName(task);
+		}
+
+		public long getEnqueueTime() {
+			return enqueueTime;
+		}
+
+		public void resetEnqueueTime() {
+			this.enqueueTime = System.currentTimeMillis();
+		}
+
+		public int incrementAttempts() {
+			return attempts.incrementAndGet();
+		}
+
+		public boolean isJournaled() {
+			return journaled;
+		}
+
+		public void setJournaled(final boolean journaled) {
+			this.journaled = journaled;
+		}
+
+		@Override
+		public int compareTo(final QueuedTask other) {
+
+			// higher priority first, FIFO within the same priority
+			if (priority != other.priority) {
+				return Integer.compare(other.priority, priority);
+			}
+
+			return Long.compare(id, other.id);
+		}
+	}
+
+	private static class TaskType {
+
+		private final Queue<QueuedTask> parked = new LinkedList<>();
+		private Semaphore permits              = null;
+		private String name                    = null;
+		private int concurrency                = 0;
+
+		public TaskType(final String name, final int concurrency) {
+
+			this.name        = name;
+			this.concurrency = concurrency;
+			this.permits     = new Semaphore(concurrency);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getConcurrency() {
+			return concurrency;
+		}
+
+		public synchronized int getParkedCount() {
+			return parked.size();
+		}
+
+		public synchronized void addParkedTasks(final List<Task> tasks) {
+
+			for (final QueuedTask queuedTask : parked) {
+				tasks.add(queuedTask.getTask());
+			}
+		}
+
+		/**
+		 * Acquires a permit for the given task, or parks the task until
+		 * a running task of the same type finishes.
+		 */
+		public synchronized boolean acquireOrPark(final QueuedTask queuedTask) {
+
+			if (permits.tryAcquire()) {
+				return true;
+			}
+
+			parked.add(queuedTask);
+
+			return false;
+		}
+
+		/**
+		 * Releases a permit and returns the next parked task, if any.
+		 */
+		public synchronized QueuedTask release() {
+
+			permits.release();
+
+			return parked.poll();
+		}
+	}
+
+	private static class AgentThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+		private String prefix             = null;
+
+		public AgentThreadFactory(final String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+
+			final Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+
+			thread.setName(prefix + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+
+			return thread;
+		}
+	}
 }
@@ -19,13 +19,20 @@
 package org.structr.agent;
 
 import java.util.Collection;
+import java.util.Map;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.graph.MaintenanceCommand;
 
 /**
- * Returns a Collection of the currently remaining {@link Task}s
+ * Returns a Collection of the currently remaining {@link Task}s, or, when
+ * run as a maintenance command, the queue statistics of the
+ * {@link AgentService}.
  *
  *
  */
-public class ListTasksCommand extends AgentServiceCommand {
+public class ListTasksCommand extends AgentServiceCommand implements MaintenanceCommand {
+
+	private Map<String, Object> statistics = null;
 
 	public Collection<Task> execute() {
 		
@@ -37,4 +44,29 @@ public class ListTasksCommand extends AgentServiceCommand {
 
 		return null;
 	}
+
+	@Override
+	public void execute(final Map<String, Object> attributes) throws FrameworkException {
+
+		final AgentService agentService = (AgentService)arguments.get("agentService");
+		if (agentService != null) {
+
+			statistics = agentService.getStatistics();
+		}
+	}
+
+	@Override
+	public boolean requiresEnclosingTransaction() {
+		return false;
+	}
+
+	@Override
+	public boolean requiresFlushingOfCaches() {
+		return false;
+	}
+
+	@Override
+	public Object getCommandResult() {
+		return statistics;
+	}
 }
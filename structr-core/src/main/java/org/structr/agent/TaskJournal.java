@@ -0,0 +1,302 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.agent;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
+
+/**
+ * Append-only journal of pending agent tasks.
+ *
+ * Each task that is handed to the {@link AgentService} is recorded with an
+ * "A" line, and every task that leaves the queue (successfully or not) is
+ * marked with a "D" line. On startup, the journal is replayed to find the
+ * tasks that were not finished before the last shutdown, and rewritten so
+ * that it only contains those entries. While running, the journal is
+ * rewritten the same way whenever a configurable number of tasks has been
+ * marked as done since the last rewrite.
+ */
+public class TaskJournal {
+
+	private static final Logger logger       = LoggerFactory.getLogger(TaskJournal.class.getName());
+	private static final String ADD          = "A";
+	private static final String DONE         = "D";
+	private static final String SEPARATOR    = "\t";
+	private static final String ID_SEPARATOR = ",";
+
+	private final Map<Long, Entry> pending = new LinkedHashMap<>();
+	private final int compactionThreshold;
+	private final Path path;
+	private BufferedWriter writer          = null;
+	private long lastId                    = 0L;
+	private int doneSinceCompaction        = 0;
+
+	public TaskJournal(final Path path) {
+		this(path, Settings.AgentJournalCompaction.getValue());
+	}
+
+	/**
+	 * @param path
+	 * @param compactionThreshold the number of done entries after which the journal is rewritten
+	 */
+	public TaskJournal(final Path path, final int compactionThreshold) {
+
+		this.path                = path;
+		this.compactionThreshold = Math.max(1, compactionThreshold);
+	}
+
+	/**
+	 * Reads the journal, compacts it and opens it for appending.
+	 *
+	 * @return the entries that were not marked as done
+	 * @throws IOException
+	 */
+	public synchronized Collection<Entry> open() throws IOException {
+
+		pending.clear();
+
+		if (Files.exists(path)) {
+
+			for (final String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+
+				final String[] parts = line.split(SEPARATOR, -1);
+
+				try {
+
+					if (ADD.equals(parts[0]) && parts.length == 7) {
+
+						final Entry entry = new Entry(Long.valueOf(parts[1]), parts[2], parts[3], Integer.valueOf(parts[4]), parts[5], Arrays.asList(parts[6].split(ID_SEPARATOR)));
+						pending.put(entry.getId(), entry);
+
+						lastId = Math.max(lastId, entry.getId());
+
+					} else if (DONE.equals(parts[0]) && parts.length == 2) {
+
+						pending.remove(Long.valueOf(parts[1]));
+					}
+
+				} catch (NumberFormatException nfex) {
+
+					// a partially written line at the end of the file, ignore
+					logger.warn("Ignoring invalid task journal line: {}", line);
+				}
+			}
+
+		} else if (path.getParent() != null) {
+
+			Files.createDirectories(path.getParent());
+		}
+
+		compact();
+
+		return new ArrayList<>(pending.values());
+	}
+
+	/**
+	 * Appends the given entry to the journal.
+	 *
+	 * @param entry
+	 * @return whether the entry was written, false if the journal is not open
+	 */
+	public synchronized boolean append(final Entry entry) {
+
+		if (write(entry.toLine())) {
+
+			pending.put(entry.getId(), entry);
+			return true;
+		}
+
+		return false;
+	}
+
+	public synchronized void remove(final long id) {
+
+		if (write(DONE + SEPARATOR + id)) {
+
+			pending.remove(id);
+
+			if (++doneSinceCompaction >= compactionThreshold) {
+
+				try {
+
+					compact();
+
+				} catch (IOException ioex) {
+
+					// the journal is still valid, it is only not compacted
+					logger.warn("Unable to compact task journal: {}", ioex.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the highest task id that was found when the journal was opened.
+	 * New tasks must use higher ids so that their entries can not be
+	 * confused with the restored ones.
+	 *
+	 * @return the highest task id in the journal, or 0
+	 */
+	public synchronized long getLastId() {
+		return lastId;
+	}
+
+	public synchronized void close() {
+
+		if (writer != null) {
+
+			try {
+				writer.close();
+
+			} catch (IOException ioex) {
+				logger.warn("Unable to close task journal: {}", ioex.getMessage());
+			}
+
+			writer = null;
+		}
+	}
+
+	// ----- private methods -----
+	/**
+	 * Rewrites the journal with the pending entries only and reopens it
+	 * for appending. The new content is written to a temporary file which
+	 * replaces the journal when it is complete.
+	 */
+	private void compact() throws IOException {
+
+		final Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+
+		try (final BufferedWriter compacted = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+
+			for (final Entry entry : pending.values()) {
+
+				compacted.write(entry.toLine());
+				compacted.newLine();
+			}
+		}
+
+		close();
+
+		try {
+
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+			doneSinceCompaction = 0;
+
+		} finally {
+
+			// keep appending to the old journal if it could not be replaced
+			writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+		}
+	}
+
+	private boolean write(final String line) {
+
+		if (writer != null) {
+
+			try {
+
+				writer.write(line);
+				writer.newLine();
+				writer.flush();
+
+				return true;
+
+			} catch (IOException ioex) {
+				logger.warn("Unable to write to task journal: {}", ioex.getMessage());
+			}
+		}
+
+		return false;
+	}
+
+	// ----- nested classes -----
+	public static class Entry {
+
+		private List<String> nodeIds = null;
+		private String taskClass     = null;
+		private String userId        = null;
+		private String type          = null;
+		private int priority         = 0;
+		private long id              = 0L;
+
+		public Entry(final long id, final String taskClass, final String type, final int priority, final String userId, final List<String> nodeIds) {
+
+			this.id        = id;
+			this.taskClass = taskClass;
+			this.type      = type;
+			this.priority  = priority;
+			this.userId    = userId;
+			this.nodeIds   = nodeIds;
+		}
+
+		public long getId() {
+			return id;
+		}
+
+		public String getTaskClass() {
+			return taskClass;
+		}
+
+		public String getType() {
+			return type;
+		}
+
+		public int getPriority() {
+			return priority;
+		}
+
+		public String getUserId() {
+			return userId;
+		}
+
+		public List<String> getNodeIds() {
+			return nodeIds;
+		}
+
+		// ----- private methods -----
+		private String toLine() {
+
+			final StringBuilder buf = new StringBuilder();
+
+			buf.append(ADD).append(SEPARATOR);
+			buf.append(id).append(SEPARATOR);
+			buf.append(taskClass).append(SEPARATOR);
+			buf.append(type != null ? type : "").append(SEPARATOR);
+			buf.append(priority).append(SEPARATOR);
+			buf.append(userId != null ? userId : "").append(SEPARATOR);
+			buf.append(String.join(ID_SEPARATOR, nodeIds));
+
+			return buf.toString();
+		}
+	}
+}
@@ -18,30 +18,59 @@
  */
 package org.structr.common;
 
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
 import org.structr.api.graph.Node;
 import org.structr.api.graph.PropertyContainer;
 import org.structr.api.graph.Relationship;
+import org.structr.api.util.Cachable;
+import org.structr.api.util.FixedSizeCache;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.app.App;
+import org.structr.core.app.StructrApp;
+import org.structr.core.entity.Principal;
+import org.structr.core.entity.Security;
 import org.structr.core.graph.NodeInterface;
+import org.structr.core.graph.RelationshipInterface;
+import org.structr.core.graph.Tx;
 
 /**
+ * Bounded cache for access paths and permission resolution results.
  *
+ * Entries are keyed by the UUIDs of the start and end node of the
+ * path. Every entry records the UUIDs and relationship types it
+ * depends on in a reverse index, so that a modification only
+ * invalidates the entries that are affected by it.
  */
 public class AccessPathCache {
 
-	private static final Map<String, CacheEntry> cache = new ConcurrentHashMap<>();
-	private static final Set<String> allRelTypes       = new HashSet<>();
-	private static final Set<String> allUuids          = new HashSet<>();
+	private static final Logger logger                             = LoggerFactory.getLogger(AccessPathCache.class.getName());
+	private static final FixedSizeCache<String, CacheEntry> cache  = new FixedSizeCache<>(Settings.PermissionCacheSize.getValue());
+	private static final Map<String, Map<String, CacheEntry>> uuidIndex    = new ConcurrentHashMap<>();
+	private static final Map<String, Map<String, CacheEntry>> relTypeIndex = new ConcurrentHashMap<>();
+	private static final Set<String> warmupsInProgress                     = ConcurrentHashMap.newKeySet();
+	private static final LongAdder invalidations                           = new LongAdder();
+	private static final Object lock                                       = new Object();
+	private static final int WARMUP_QUEUE_SIZE                             = 100;
+	private static final int WARMUP_LIMIT                                  = 1000;
+	private static final ThreadPoolExecutor warmupExecutor                 = createWarmupExecutor();
 
 	public static PermissionResolutionMask get(final NodeInterface startNode, final NodeInterface endNode) {
 
-		final String cacheKey  = cacheKey(startNode, endNode);
-		final CacheEntry entry = cache.get(cacheKey);
-
+		final CacheEntry entry = cache.get(cacheKey(startNode, endNode));
 		if (entry != null) {
+
 			return entry.mask;
 		}
 
@@ -50,99 +79,290 @@ public class AccessPathCache {
 
 	public static void put(final NodeInterface startNode, final NodeInterface endNode, final PermissionResolutionMask mask) {
 
-		final CacheEntry entry = getOrCreateCacheEntry(startNode, endNode);
+		synchronized (lock) {
 
-		// remember UUIDs
-		allUuids.add(startNode.getUuid());
-		allUuids.add(endNode.getUuid());
+			final CacheEntry entry = getOrCreateCacheEntry(startNode, endNode);
 
-		entry.mask = mask;
+			entry.mask = mask;
+		}
 	}
 
 	public static void update(final NodeInterface startNode, final NodeInterface endNode, final Node node) {
 
-		final CacheEntry entry = getOrCreateCacheEntry(startNode, endNode);
-		final String uuid      = getUuid(node);
-
+		final String uuid = getUuid(node);
 		if (uuid != null) {
 
-			entry.uuids.add(uuid);
-			allUuids.add(uuid);
+			synchronized (lock) {
+
+				addDependency(uuidIndex, getOrCreateCacheEntry(startNode, endNode), uuid);
+			}
 		}
 	}
 
 	public static void update(final NodeInterface startNode, final NodeInterface endNode, final Relationship rel) {
 
-		final CacheEntry entry = getOrCreateCacheEntry(startNode, endNode);
-		final String uuid      = getUuid(rel);
-
+		final String uuid = getUuid(rel);
 		if (uuid != null) {
 
-			final String relType   = rel.getType().name();
+			synchronized (lock) {
+
+				final CacheEntry entry = getOrCreateCacheEntry(startNode, endNode);
+
+				addDependency(uuidIndex, entry, uuid);
+				addDependency(relTypeIndex, entry, rel.getType().name());
+			}
+		}
+	}
+
+	/**
+	 * Returns the cached permission resolution result for the given
+	 * node and principal, or null if no result is known.
+	 *
+	 * @param node
+	 * @param principal
+	 * @param permission
+	 *
+	 * @return the cached result or null
+	 */
+	public static Boolean getPermission(final NodeInterface node, final Principal principal, final Permission permission) {
+
+		final CacheEntry entry = cache.get(cacheKey(node, principal));
+		if (entry != null) {
+
+			return entry.getPermission(permission);
+		}
+
+		return null;
+	}
 
-			entry.uuids.add(uuid);
-			allUuids.add(uuid);
+	/**
+	 * Stores the permission resolution result for the given node and
+	 * principal. The entry is invalidated as soon as one of the given
+	 * UUIDs or relationship types is modified.
+	 *
+	 * @param node
+	 * @param principal
+	 * @param permission
+	 * @param value
+	 * @param uuids
+	 * @param relTypes
+	 */
+	public static void putPermission(final NodeInterface node, final Principal principal, final Permission permission, final boolean value, final Set<String> uuids, final Set<String> relTypes) {
+
+		// creating and indexing the entry must not interleave with an invalidation
+		synchronized (lock) {
+
+			final CacheEntry entry = getOrCreateCacheEntry(node, principal);
+
+			for (final String uuid : uuids) {
+				addDependency(uuidIndex, entry, uuid);
+			}
 
-			entry.relTypes.add(relType);
-			allRelTypes.add(relType);
+			for (final String relType : relTypes) {
+				addDependency(relTypeIndex, entry, relType);
+			}
 
+			entry.setPermission(permission, value);
 		}
 	}
 
 	public static void invalidateForId(final String uuid) {
 
-		if (allUuids.contains(uuid)) {
+		synchronized (lock) {
+			invalidate(uuidIndex.remove(uuid));
+		}
+	}
+
+	public static void invalidateForRelType(final String relType) {
+
+		synchronized (lock) {
+			invalidate(relTypeIndex.remove(relType));
+		}
+	}
+
+	public static void invalidate() {
+
+		synchronized (lock) {
+
+			cache.clear();
+			uuidIndex.clear();
+			relTypeIndex.clear();
+		}
+	}
+
+	public static Map<String, Object> getStatistics() {
+
+		final Map<String, Object> statistics = new LinkedHashMap<>(cache.getStatistics());
+
+		statistics.put("invalidations",   invalidations.sum());
+		statistics.put("indexedUuids",    uuidIndex.size());
+		statistics.put("indexedRelTypes", relTypeIndex.size());
+
+		return statistics;
+	}
+
+	/**
+	 * Resolves the read permissions of the given principal for the nodes
+	 * that are reachable via permission propagation from the nodes the
+	 * principal owns or has direct grants on. The resolution runs on a
+	 * single background thread and is limited to a fixed number of nodes,
+	 * warmups that don't fit into the queue are skipped.
+	 *
+	 * @param principal
+	 */
+	public static void warmup(final Principal principal) {
+
+		final String principalId = principal.getUuid();
+
+		if (principalId == null || !warmupsInProgress.add(principalId)) {
+			return;
+		}
+
+		final Runnable warmup = () -> {
+
+			final App app = StructrApp.getInstance();
+			final long t0 = System.currentTimeMillis();
+			int count     = 0;
+
+			try (final Tx tx = app.tx()) {
+
+				final Principal user = app.get(Principal.class, principalId);
+				if (user != null) {
+
+					final SecurityContext securityContext = SecurityContext.getInstance(user, AccessMode.Backend);
 
-			for (final CacheEntry entry : cache.values()) {
+					for (final NodeInterface node : getDirectlyAccessibleNodes(user)) {
 
-				if (entry.uuids.contains(uuid)) {
-					cache.remove(entry.key);
+						for (final RelationshipInterface rel : node.getRelationshipsAsSuperUser()) {
+
+							if (rel instanceof PermissionPropagation && count < WARMUP_LIMIT) {
+
+								rel.getOtherNode(node).isGranted(Permission.read, securityContext);
+								count++;
+							}
+						}
+					}
 				}
+
+				tx.success();
+
+			} catch (FrameworkException fex) {
+
+				logger.warn("Unable to warm up permission cache for principal {}: {}", principalId, fex.getMessage());
+
+			} finally {
+
+				warmupsInProgress.remove(principalId);
 			}
 
-			allUuids.remove(uuid);
+			logger.debug("Resolved permissions of {} nodes for principal {} in {} ms", count, principalId, System.currentTimeMillis() - t0);
+
+		};
+
+		try {
+
+			warmupExecutor.execute(warmup);
+
+		} catch (RejectedExecutionException rex) {
+
+			warmupsInProgress.remove(principalId);
+
+			logger.debug("Skipping permission cache warmup for principal {}, too many warmups pending", principalId);
 		}
 	}
 
-	public static void invalidateForRelType(final String relType) {
+	// ----- private methods -----
+	private static ThreadPoolExecutor createWarmupExecutor() {
+
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(WARMUP_QUEUE_SIZE), runnable -> {
 
-		if (allRelTypes.contains(relType)) {
+			final Thread thread = new Thread(runnable, "PermissionCacheWarmup");
 
-			for (final CacheEntry entry : cache.values()) {
+			thread.setDaemon(true);
 
-				if (entry.relTypes.contains(relType)) {
-					cache.remove(entry.key);
+			return thread;
+		});
+
+		executor.allowCoreThreadTimeOut(true);
+
+		return executor;
+	}
+
+	private static Iterable<NodeInterface> getDirectlyAccessibleNodes(final Principal principal) {
+
+		final Set<NodeInterface> nodes = new LinkedHashSet<>(principal.getProperty(Principal.ownedNodes));
+
+		for (final Security security : principal.getOutgoingRelationships(Security.class)) {
+
+			nodes.add(security.getTargetNode());
+		}
+
+		return nodes;
+	}
+
+	private static void invalidate(final Map<String, CacheEntry> entries) {
+
+		if (entries != null) {
+
+			for (final String key : entries.keySet()) {
+
+				final CacheEntry entry = cache.remove(key);
+				if (entry != null) {
+
+					entry.unindex();
+					invalidations.increment();
 				}
 			}
+		}
+	}
+
+	private static void addDependency(final Map<String, Map<String, CacheEntry>> index, final CacheEntry entry, final String dependency) {
+
+		index.computeIfAbsent(dependency, k -> new ConcurrentHashMap<>()).put(entry.key, entry);
+
+		if (index == uuidIndex) {
 
-			allRelTypes.remove(relType);
+			entry.uuids.add(dependency);
+
+		} else {
+
+			entry.relTypes.add(dependency);
 		}
 	}
 
-	public static void invalidate() {
+	private static void removeDependency(final Map<String, Map<String, CacheEntry>> index, final String dependency, final CacheEntry entry) {
+
+		index.computeIfPresent(dependency, (k, entries) -> {
 
-		allRelTypes.clear();
-		allUuids.clear();
-		cache.clear();
+			// only remove the given entry, a newer entry for
+			// the same key must stay registered
+			entries.remove(entry.key, entry);
+
+			return entries.isEmpty() ? null : entries;
+		});
 	}
 
-	// ----- private methods -----
 	private static CacheEntry getOrCreateCacheEntry(final NodeInterface startNode, final NodeInterface endNode) {
 
-		final String cacheKey = cacheKey(startNode, endNode);
-		CacheEntry entry      = cache.get(cacheKey);
+		final String cacheKey  = cacheKey(startNode, endNode);
+		final CacheEntry entry = cache.get(cacheKey);
 
 		if (entry == null) {
 
-			entry = new CacheEntry();
-			entry.key = cacheKey;
+			final CacheEntry newEntry = new CacheEntry(cacheKey);
+			final CacheEntry existing = cache.putIfAbsent(cacheKey, newEntry);
 
-			cache.put(cacheKey, entry);
+			return existing != null ? existing : newEntry;
 		}
 
 		return entry;
 	}
 
+	// package-private for tests
+	static Cachable getCacheEntry(final NodeInterface startNode, final NodeInterface endNode) {
+		return cache.get(cacheKey(startNode, endNode));
+	}
+
 	private static String cacheKey(final NodeInterface startNode, final NodeInterface endNode) {
 		return startNode.getUuid() + endNode.getUuid();
 	}
@@ -157,11 +377,79 @@ public class AccessPathCache {
 	}
 
 	// ----- nested classes -----
-	private static class CacheEntry {
+	private static class CacheEntry implements Cachable {
 
-		protected Set<String> uuids             = new HashSet<>();
-		protected Set<String> relTypes          = new HashSet<>();
+		protected final Set<String> uuids       = ConcurrentHashMap.newKeySet();
+		protected final Set<String> relTypes    = ConcurrentHashMap.newKeySet();
 		protected PermissionResolutionMask mask = null;
 		protected String key                    = null;
+
+		private Boolean read                    = null;
+		private Boolean write                   = null;
+		private Boolean delete                  = null;
+		private Boolean accessControl           = null;
+
+		public CacheEntry(final String key) {
+			this.key = key;
+		}
+
+		@Override
+		public void invalidate() {
+
+			// evicted from the cache, remove from reverse indexes
+			unindex();
+		}
+
+		public void unindex() {
+
+			for (final String uuid : uuids) {
+				removeDependency(uuidIndex, uuid, this);
+			}
+
+			for (final String relType : relTypes) {
+				removeDependency(relTypeIndex, relType, this);
+			}
+		}
+
+		public synchronized Boolean getPermission(final Permission permission) {
+
+			if (permission.equals(Permission.read)) {
+				return read;
+			}
+
+			if (permission.equals(Permission.write)) {
+				return write;
+			}
+
+			if (permission.equals(Permission.delete)) {
+				return delete;
+			}
+
+			if (permission.equals(Permission.accessControl)) {
+				return accessControl;
+			}
+
+			return null;
+		}
+
+		public synchronized void setPermission(final Permission permission, final boolean value) {
+
+			// a granted permission is never overwritten by a denial
+			if (permission.equals(Permission.read) && !Boolean.TRUE.equals(read)) {
+				read = value;
+			}
+
+			if (permission.equals(Permission.write) && !Boolean.TRUE.equals(write)) {
+				write = value;
+			}
+
+			if (permission.equals(Permission.delete) && !Boolean.TRUE.equals(delete)) {
+				delete = value;
+			}
+
+			if (permission.equals(Permission.accessControl) && !Boolean.TRUE.equals(accessControl)) {
+				accessControl = value;
+			}
+		}
 	}
 }
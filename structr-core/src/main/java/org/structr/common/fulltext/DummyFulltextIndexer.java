@@ -18,6 +18,8 @@
  */
 package org.structr.common.fulltext;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.common.error.FrameworkException;
@@ -42,4 +44,14 @@ public class DummyFulltextIndexer implements FulltextIndexer {
 
 		return new GraphObjectMap();
 	}
+
+	@Override
+	public FulltextSearchCursor search(final String searchTerm) {
+		return null;
+	}
+
+	@Override
+	public Map<String, Object> getStatistics() {
+		return new LinkedHashMap<>();
+	}
 }
@@ -18,6 +18,7 @@
  */
 package org.structr.common.fulltext;
 
+import java.util.Map;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObjectMap;
 
@@ -27,4 +28,16 @@ public interface FulltextIndexer {
 
 	void addToFulltextIndex(final Indexable indexable) throws FrameworkException;
 	GraphObjectMap getContextObject(final String searchTerm, final String text, final int contextLength);
+
+	/**
+	 * Searches the fulltext index and returns a cursor over the UUIDs of
+	 * the matching nodes, best match first, or null if this indexer cannot
+	 * search. The cursor must be closed after use.
+	 *
+	 * @param searchTerm
+	 * @return the search cursor, or null
+	 */
+	FulltextSearchCursor search(final String searchTerm);
+
+	Map<String, Object> getStatistics();
 }
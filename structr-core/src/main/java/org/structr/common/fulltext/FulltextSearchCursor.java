@@ -0,0 +1,41 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common.fulltext;
+
+import java.util.List;
+
+/**
+ * Reads the matches of a fulltext search in batches, best match first.
+ * Each call continues after the last match of the previous one, so the
+ * index is searched only once per cursor.
+ */
+public interface FulltextSearchCursor extends AutoCloseable {
+
+	/**
+	 * Returns the UUIDs of the next matching nodes, or an empty list if
+	 * there are no more matches.
+	 *
+	 * @param batchSize
+	 * @return the UUIDs of at most batchSize matching nodes
+	 */
+	List<String> next(final int batchSize);
+
+	@Override
+	void close();
+}
@@ -33,6 +33,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import org.apache.commons.lang3.StringUtils;
@@ -46,6 +47,7 @@ import org.structr.api.service.Command;
 import org.structr.api.service.InitializationCallback;
 import org.structr.api.service.RunnableService;
 import org.structr.api.service.Service;
+import org.structr.api.service.ShutdownCallback;
 import org.structr.api.service.StructrServices;
 import org.structr.common.Permission;
 import org.structr.common.Permissions;
@@ -78,6 +80,7 @@ public class Services implements StructrServices {
 
 	// non-static members
 	private final List<InitializationCallback> callbacks       = new LinkedList<>();
+	private final List<ShutdownCallback> shutdownCallbacks     = new CopyOnWriteArrayList<>();
 	private final Set<Permission> permissionsForOwnerlessNodes = new LinkedHashSet<>();
 	private final Map<String, Object> attributes               = new ConcurrentHashMap<>(10, 0.9f, 8);
 	private final Map<Class, Service> serviceCache             = new ConcurrentHashMap<>(10, 0.9f, 8);
@@ -242,6 +245,9 @@ public class Services implements StructrServices {
 			permissionsForOwnerlessNodes.add(Permission.read);
 		}
 
+		// restore persisted UUID index, start prefill if configured
+		StructrApp.initializeUuidIndex();
+
 		// only run initialization callbacks if Structr was started with
 		// a configuration file, i.e. when this is NOT this first start.
 		try {
@@ -291,6 +297,11 @@ public class Services implements StructrServices {
 		});
 	}
 
+	@Override
+	public void registerShutdownCallback(final ShutdownCallback callback) {
+		shutdownCallbacks.add(callback);
+	}
+
 	public boolean isInitialized() {
 		return initializationDone;
 	}
@@ -311,6 +322,22 @@ public class Services implements StructrServices {
 		if (!shutdownDone) {
 
 			System.out.println("INFO: Shutting down...");
+
+			// persist UUID index so it can be restored on the next start
+			StructrApp.persistUuidIndex();
+
+			// shutdown callbacks need the database, call them before the services are stopped
+			for (final ShutdownCallback callback : shutdownCallbacks) {
+
+				try {
+					callback.shutdown();
+
+				} catch (Throwable t) {
+
+					System.out.println("WARNING: Shutdown callback failed: " + t.getMessage());
+				}
+			}
+
 			for (Service service : serviceCache.values()) {
 
 				shutdownService(service);
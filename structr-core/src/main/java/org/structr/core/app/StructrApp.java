@@ -18,8 +18,16 @@
  */
 package org.structr.core.app;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
@@ -28,12 +36,15 @@ import java.util.Map;
 import org.structr.agent.AgentService;
 import org.structr.agent.Task;
 import org.structr.api.DatabaseService;
+import org.structr.api.NativeResult;
 import org.structr.api.NotFoundException;
 import org.structr.api.config.Settings;
 import org.structr.api.graph.GraphProperties;
+import org.structr.api.graph.Node;
+import org.structr.api.graph.Relationship;
 import org.structr.api.service.Command;
 import org.structr.api.service.Service;
-import org.structr.api.util.FixedSizeCache;
+import org.structr.api.util.UuidIndex;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.common.fulltext.DummyFulltextIndexer;
@@ -59,6 +70,8 @@ import org.structr.core.graph.Tx;
 import org.structr.core.graph.search.SearchNodeCommand;
 import org.structr.core.graph.search.SearchRelationshipCommand;
 import org.structr.core.property.PropertyMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.structr.module.StructrModule;
 import org.structr.schema.ConfigurationProvider;
 
@@ -69,8 +82,10 @@ import org.structr.schema.ConfigurationProvider;
  */
 public class StructrApp implements App {
 
-	private static FixedSizeCache<String, Long> nodeUuidMap = null;
-	private static FixedSizeCache<String, Long> relUuidMap  = null;
+	private static final Logger logger                      = LoggerFactory.getLogger(StructrApp.class.getName());
+	private static final String UUID_INDEX_FILE             = "uuid-index.bin";
+	private static volatile UuidIndex nodeUuidIndex         = null;
+	private static volatile UuidIndex relUuidIndex          = null;
 	private static final URI schemaBaseURI                  = URI.create("https://structr.org/v1.1/#");
 	private static final Object globalConfigLock            = new Object();
 	private RelationshipFactory relFactory                  = null;
@@ -138,7 +153,6 @@ public class StructrApp implements App {
 
 	@Override
 	public void delete(final NodeInterface node) {
-		removeNodeFromCache(node);
 		command(DeleteNodeCommand.class).execute(node);
 	}
 
@@ -154,7 +168,6 @@ public class StructrApp implements App {
 
 	@Override
 	public void delete(final RelationshipInterface relationship) {
-		removeRelFromCache(relationship);
 		command(DeleteRelationshipCommand.class).execute(relationship);
 	}
 
@@ -187,24 +200,31 @@ public class StructrApp implements App {
 			return null;
 		}
 
-		final Long nodeId = getNodeFromCache(uuid);
-		if (nodeId == null) {
+		final UuidIndex index = getNodeUuidIndex();
+		final long nodeId     = index.get(uuid);
 
-			final GraphObject entity = nodeQuery().uuid(uuid).includeDeletedAndHidden().getFirst();
-			if (entity != null && uuid.equals(entity.getUuid())) {
+		if (nodeId >= 0) {
 
-				nodeUuidMap.put(uuid, entity.getId());
-				return (NodeInterface)entity;
-			}
+			try {
+				final Node node = getDatabaseService().getNodeById(nodeId);
 
-		} else {
+				// database ids are reused after deletion, so the entry
+				// is only valid if the node still has the given UUID
+				if (uuid.equals(node.getProperty("id"))) {
 
-			try {
-				return nodeFactory.instantiate(getDatabaseService().getNodeById(nodeId));
+					return nodeFactory.instantiate(node);
+				}
 
-			} catch (NotFoundException ignore) {
-				nodeUuidMap.remove(uuid);
-			}
+			} catch (NotFoundException ignore) {}
+
+			index.remove(uuid);
+		}
+
+		final GraphObject entity = nodeQuery().uuid(uuid).includeDeletedAndHidden().getFirst();
+		if (entity != null && uuid.equals(entity.getUuid())) {
+
+			index.put(uuid, entity.getId());
+			return (NodeInterface)entity;
 		}
 
 		return null;
@@ -217,24 +237,29 @@ public class StructrApp implements App {
 			return null;
 		}
 
-		final Long id = getRelFromCache(uuid);
-		if (id == null) {
+		final UuidIndex index = getRelUuidIndex();
+		final long id         = index.get(uuid);
 
-			final GraphObject entity = relationshipQuery().uuid(uuid).getFirst();
-			if (entity != null && uuid.equals(entity.getUuid())) {
+		if (id >= 0) {
 
-				relUuidMap.put(uuid, entity.getId());
-				return (RelationshipInterface)entity;
-			}
+			try {
+				final Relationship rel = getDatabaseService().getRelationshipById(id);
 
-		} else {
+				if (uuid.equals(rel.getProperty("id"))) {
 
-			try {
-				return relFactory.instantiate(getDatabaseService().getRelationshipById(id));
+					return relFactory.instantiate(rel);
+				}
 
-			} catch (NotFoundException ignore) {
-				relUuidMap.remove(uuid);
-			}
+			} catch (NotFoundException ignore) {}
+
+			index.remove(uuid);
+		}
+
+		final GraphObject entity = relationshipQuery().uuid(uuid).getFirst();
+		if (entity != null && uuid.equals(entity.getUuid())) {
+
+			index.put(uuid, entity.getId());
+			return (RelationshipInterface)entity;
 		}
 
 		return null;
@@ -465,12 +490,122 @@ public class StructrApp implements App {
 
 	public static void invalidate(final String uuid) {
 
-		if (nodeUuidMap != null) {
-			nodeUuidMap.remove(uuid);
+		if (nodeUuidIndex != null) {
+			nodeUuidIndex.remove(uuid);
 		}
 
-		if (relUuidMap != null) {
-			relUuidMap.remove(uuid);
+		if (relUuidIndex != null) {
+			relUuidIndex.remove(uuid);
+		}
+	}
+
+	/**
+	 * Adds the UUID of the given entity to the UUID index, called by
+	 * {@link org.structr.core.graph.TransactionCommand} on creation.
+	 *
+	 * Entries of transactions that are rolled back are removed again
+	 * on the next lookup, because they fail the UUID check.
+	 *
+	 * @param entity
+	 */
+	public static void indexUuid(final GraphObject entity) {
+
+		final String uuid = entity.getUuid();
+		if (uuid != null) {
+
+			if (entity.isNode()) {
+
+				getNodeUuidIndex().put(uuid, entity.getId());
+
+			} else {
+
+				getRelUuidIndex().put(uuid, entity.getId());
+			}
+		}
+	}
+
+	/**
+	 * Removes the UUID of the given entity from the UUID index, called
+	 * by {@link org.structr.core.graph.TransactionCommand} on deletion.
+	 *
+	 * @param entity
+	 */
+	public static void unindexUuid(final GraphObject entity) {
+		invalidate(entity.getUuid());
+	}
+
+	public static Map<String, Object> getUuidIndexStatistics() {
+
+		final Map<String, Object> statistics = new LinkedHashMap<>();
+
+		statistics.put("nodes",         getNodeUuidIndex().getStatistics());
+		statistics.put("relationships", getRelUuidIndex().getStatistics());
+
+		return statistics;
+	}
+
+	/**
+	 * Restores the persisted UUID index and starts the background
+	 * prefill of the index if configured.
+	 */
+	public static void initializeUuidIndex() {
+
+		if (Settings.UuidCachePersist.getValue()) {
+
+			final Path path = getUuidIndexPath();
+			if (Files.exists(path)) {
+
+				try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+
+					final int nodes = getNodeUuidIndex().read(in);
+					final int rels  = getRelUuidIndex().read(in);
+
+					logger.info("Restored UUID index with {} node and {} relationship entries", nodes, rels);
+
+				} catch (IOException ioex) {
+
+					logger.warn("Unable to restore UUID index from {}: {}", path, ioex.getMessage());
+					getNodeUuidIndex().clear();
+					getRelUuidIndex().clear();
+				}
+			}
+		}
+
+		if (Settings.UuidCachePrefill.getValue()) {
+
+			final Thread prefill = new Thread(StructrApp::prefillUuidIndex, "UuidIndexPrefill");
+
+			prefill.setDaemon(true);
+			prefill.start();
+		}
+	}
+
+	/**
+	 * Writes the UUID index to disk if configured.
+	 */
+	public static void persistUuidIndex() {
+
+		if (Settings.UuidCachePersist.getValue() && nodeUuidIndex != null && relUuidIndex != null) {
+
+			final Path path = getUuidIndexPath();
+			final Path tmp  = path.resolveSibling(path.getFileName() + ".tmp");
+
+			try {
+
+				Files.createDirectories(path.toAbsolutePath().getParent());
+
+				try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+
+					nodeUuidIndex.write(out);
+					relUuidIndex.write(out);
+				}
+
+				Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+
+			} catch (IOException ioex) {
+
+				logger.warn("Unable to persist UUID index to {}: {}", path, ioex.getMessage());
+			}
 		}
 	}
 
@@ -500,68 +635,92 @@ public class StructrApp implements App {
 	private static final Map<URI, Class> schemaIdMap = new LinkedHashMap<>();
 	private static final Map<Class, URI> typeIdMap   = new LinkedHashMap<>();
 
-	// ---------- private methods -----
-	private synchronized Long getNodeFromCache(final String uuid) {
+	private static UuidIndex getNodeUuidIndex() {
 
-		if (nodeUuidMap == null) {
+		if (nodeUuidIndex == null) {
 
-			nodeUuidMap = new FixedSizeCache<>(Settings.UuidCacheSize.getValue());
+			synchronized (StructrApp.class) {
+
+				if (nodeUuidIndex == null) {
+					nodeUuidIndex = new UuidIndex(Settings.UuidCacheSize.getValue());
+				}
+			}
 		}
 
-		return nodeUuidMap.get(uuid);
+		return nodeUuidIndex;
 	}
 
-	private synchronized Long getRelFromCache(final String uuid) {
+	private static UuidIndex getRelUuidIndex() {
 
-		if (relUuidMap == null) {
+		if (relUuidIndex == null) {
 
-			relUuidMap = new FixedSizeCache<>(Settings.UuidCacheSize.getValue());
+			synchronized (StructrApp.class) {
+
+				if (relUuidIndex == null) {
+					relUuidIndex = new UuidIndex(Settings.UuidCacheSize.getValue());
+				}
+			}
 		}
 
-		return relUuidMap.get(uuid);
+		return relUuidIndex;
 	}
 
-	private synchronized void removeNodeFromCache(final NodeInterface node) {
+	private static Path getUuidIndexPath() {
+		return Paths.get(Settings.getBasePath()).resolve(Settings.DatabasePath.getValue()).resolve(UUID_INDEX_FILE);
+	}
 
-		if (node != null) {
+	private static void prefillUuidIndex() {
 
-			final String uuid = node.getUuid();
-			if (uuid != null) {
+		final long start = System.currentTimeMillis();
+		final int nodes  = prefillUuidIndex(getNodeUuidIndex(), "MATCH (n:NodeInterface) RETURN id(n) AS id, n.id AS uuid");
+		final int rels   = prefillUuidIndex(getRelUuidIndex(),  "MATCH ()-[r]->() WHERE exists(r.id) RETURN id(r) AS id, r.id AS uuid");
 
-				if (nodeUuidMap == null) {
+		logger.info("Prefilled UUID index with {} node and {} relationship entries in {} ms", nodes, rels, System.currentTimeMillis() - start);
+	}
 
-					nodeUuidMap = new FixedSizeCache<>(Settings.UuidCacheSize.getValue());
-				}
+	private static int prefillUuidIndex(final UuidIndex index, final String query) {
 
-			}
-		}
-	}
+		int count = 0;
 
-	private synchronized void removeRelFromCache(final RelationshipInterface rel) {
+		try (final Tx tx = StructrApp.getInstance().tx(false, false, false)) {
 
-		if (rel != null) {
+			try (final NativeResult result = StructrApp.getInstance().getDatabaseService().execute(query)) {
 
-			final String uuid = rel.getUuid();
-			if (uuid != null) {
+				// stop when the index is full, evicting entries would not gain anything
+				while (result.hasNext() && (count % 10000 != 0 || !index.isFull())) {
 
-				if (relUuidMap == null) {
+					final Map<String, Object> row = result.next();
+					final Object id               = row.get("id");
+					final Object uuid             = row.get("uuid");
 
-					relUuidMap = new FixedSizeCache<>(Settings.UuidCacheSize.getValue());
-				}
+					if (id instanceof Number && uuid instanceof String) {
 
+						index.put((String)uuid, ((Number)id).longValue());
+						count++;
+					}
+				}
 			}
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			logger.warn("Unable to prefill UUID index: {}", t.getMessage());
 		}
+
+		return count;
 	}
 
+	// ---------- private methods -----
 	@Override
 	public void invalidateCache(){
 
-		if (nodeUuidMap != null) {
-			nodeUuidMap.clear();
+		if (nodeUuidIndex != null) {
+			nodeUuidIndex.clear();
 		}
 
-		if (relUuidMap != null) {
-			relUuidMap.clear();
+		if (relUuidIndex != null) {
+			relUuidIndex.clear();
 		}
 
 	}
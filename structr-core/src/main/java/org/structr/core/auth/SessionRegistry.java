@@ -0,0 +1,275 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.auth;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.structr.api.config.Settings;
+import org.structr.core.Services;
+
+/**
+ * In-memory registry that maps session ids to the UUID of the principal
+ * they belong to, so that session authentication does not need to query
+ * the database on every request.
+ *
+ * The registry is a cache in front of the sessionIds property of the
+ * principals, which remains the authoritative (and persistent) store.
+ * Callers must verify that a principal found via the registry still
+ * owns the session, and remove the entry if it does not. Sessions that
+ * are known to belong to no principal are stored as {@link #ANONYMOUS}.
+ *
+ * Entries expire after the global session timeout without access. Local
+ * changes are reported to registered {@link InvalidationListener}s so
+ * that other cluster members can drop their copy of the entry.
+ */
+public class SessionRegistry {
+
+	public static final String ANONYMOUS              = "";
+	private static final int PURGE_INTERVAL           = 1024;
+	private static final SessionRegistry instance     = new SessionRegistry();
+
+	private final Set<InvalidationListener> listeners = new CopyOnWriteArraySet<>();
+	private final Map<String, Entry> entries          = new ConcurrentHashMap<>();
+	private final AtomicInteger writes                = new AtomicInteger();
+	private final LongAdder hits                      = new LongAdder();
+	private final LongAdder misses                    = new LongAdder();
+	private final LongAdder expirations               = new LongAdder();
+
+	private SessionRegistry() {}
+
+	public static SessionRegistry getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Returns the UUID of the principal the given session belongs to.
+	 *
+	 * @param sessionId
+	 *
+	 * @return the UUID, {@link #ANONYMOUS} or null if the session is unknown
+	 */
+	public String getPrincipalId(final String sessionId) {
+		return getPrincipalId(sessionId, System.currentTimeMillis());
+	}
+
+	// package-private for tests
+	String getPrincipalId(final String sessionId, final long now) {
+
+		if (sessionId != null) {
+
+			final Entry entry = entries.get(sessionId);
+			if (entry != null) {
+
+				if (!entry.isExpired(now)) {
+
+					entry.lastAccess = now;
+					hits.increment();
+
+					return entry.principalId;
+				}
+
+				if (entries.remove(sessionId, entry)) {
+					expirations.increment();
+				}
+			}
+		}
+
+		misses.increment();
+
+		return null;
+	}
+
+	/**
+	 * Registers the given session for the given principal, replacing any
+	 * previous entry. Called when a session id is added to a principal.
+	 *
+	 * @param sessionId
+	 * @param principalId
+	 */
+	public void register(final String sessionId, final String principalId) {
+
+		if (sessionId != null && principalId != null) {
+
+			entries.put(sessionId, new Entry(principalId));
+
+			notifyListeners(sessionId);
+			purgeIfNecessary();
+		}
+	}
+
+	/**
+	 * Stores the result of a database lookup unless the session has been
+	 * registered in the meantime.
+	 *
+	 * @param sessionId
+	 * @param principalId the UUID of the principal, or null if no principal owns the session
+	 */
+	public void cache(final String sessionId, final String principalId) {
+
+		if (sessionId != null) {
+
+			entries.putIfAbsent(sessionId, new Entry(principalId != null ? principalId : ANONYMOUS));
+			purgeIfNecessary();
+		}
+	}
+
+	/**
+	 * Removes the given session, called when a session id is removed
+	 * from a principal.
+	 *
+	 * @param sessionId
+	 */
+	public void unregister(final String sessionId) {
+
+		if (sessionId != null) {
+
+			entries.remove(sessionId);
+			notifyListeners(sessionId);
+		}
+	}
+
+	/**
+	 * Removes all sessions of the given principal.
+	 *
+	 * @param principalId
+	 */
+	public void unregisterPrincipal(final String principalId) {
+
+		if (principalId != null) {
+
+			for (final Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator(); it.hasNext();) {
+
+				final Map.Entry<String, Entry> entry = it.next();
+				if (principalId.equals(entry.getValue().principalId)) {
+
+					it.remove();
+					notifyListeners(entry.getKey());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes the given session without notifying the listeners, to be
+	 * called when another cluster member reports an invalidation.
+	 *
+	 * @param sessionId
+	 */
+	public void invalidate(final String sessionId) {
+
+		if (sessionId != null) {
+			entries.remove(sessionId);
+		}
+	}
+
+	public void clear() {
+		entries.clear();
+	}
+
+	public void addInvalidationListener(final InvalidationListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeInvalidationListener(final InvalidationListener listener) {
+		listeners.remove(listener);
+	}
+
+	public Map<String, Object> getStatistics() {
+
+		final Map<String, Object> statistics = new LinkedHashMap<>();
+		int anonymous                        = 0;
+
+		for (final Entry entry : entries.values()) {
+
+			if (ANONYMOUS.equals(entry.principalId)) {
+				anonymous++;
+			}
+		}
+
+		statistics.put("size",        entries.size());
+		statistics.put("anonymous",   anonymous);
+		statistics.put("maxSize",     Settings.SessionCacheSize.getValue());
+		statistics.put("hits",        hits.sum());
+		statistics.put("misses",      misses.sum());
+		statistics.put("expirations", expirations.sum());
+
+		return statistics;
+	}
+
+	// ----- private methods -----
+	private void notifyListeners(final String sessionId) {
+
+		for (final InvalidationListener listener : listeners) {
+			listener.sessionInvalidated(sessionId);
+		}
+	}
+
+	private void purgeIfNecessary() {
+
+		if (writes.incrementAndGet() % PURGE_INTERVAL == 0) {
+
+			final int maxSize = Settings.SessionCacheSize.getValue();
+			if (entries.size() > maxSize) {
+
+				final long now = System.currentTimeMillis();
+
+				entries.values().removeIf(entry -> entry.isExpired(now));
+
+				// anonymous entries are cheapest to recreate
+				if (entries.size() > maxSize) {
+					entries.values().removeIf(entry -> ANONYMOUS.equals(entry.principalId));
+				}
+			}
+		}
+	}
+
+	// ----- nested classes -----
+	/**
+	 * Listener that is notified when the principal of a session changes
+	 * on this instance, e.g. to broadcast the change to other cluster
+	 * members which then call {@link SessionRegistry#invalidate}.
+	 */
+	public interface InvalidationListener {
+
+		void sessionInvalidated(final String sessionId);
+	}
+
+	private static class Entry {
+
+		private final String principalId;
+		private volatile long lastAccess = System.currentTimeMillis();
+
+		public Entry(final String principalId) {
+			this.principalId = principalId;
+		}
+
+		public boolean isExpired(final long now) {
+
+			final long timeout = Services.getGlobalSessionTimeout() * 1000L;
+
+			return timeout > 0 && now > lastAccess + timeout;
+		}
+	}
+}
@@ -25,7 +25,6 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.GregorianCalendar;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -62,6 +61,7 @@ import org.structr.cmis.info.CMISPolicyInfo;
 import org.structr.cmis.info.CMISRelationshipInfo;
 import org.structr.cmis.info.CMISSecondaryInfo;
 import org.structr.common.AccessControllable;
+import org.structr.common.AccessPathCache;
 import org.structr.common.GraphObjectComparator;
 import org.structr.common.IdSorter;
 import org.structr.common.Permission;
@@ -106,10 +106,9 @@ import org.structr.schema.action.Function;
  */
 public abstract class AbstractNode implements NodeInterface, AccessControllable, CMISInfo, CMISItemInfo {
 
-	private static final int permissionResolutionMaxLevel                                                 = Settings.ResolutionDepth.getValue();
-	private static final Logger logger                                                                    = LoggerFactory.getLogger(AbstractNode.class.getName());
-	private static final FixedSizeCache<String, Object> relationshipTemplateInstanceCache                 = new FixedSizeCache<>(1000);
-	private static final Map<Long, Map<Long, PermissionResolutionResult>> globalPermissionResolutionCache = new HashMap<>();
+	private static final int permissionResolutionMaxLevel                                 = Settings.ResolutionDepth.getValue();
+	private static final Logger logger                                                    = LoggerFactory.getLogger(AbstractNode.class.getName());
+	private static final FixedSizeCache<String, Object> relationshipTemplateInstanceCache = new FixedSizeCache<>(1000);
 
 	public static final View defaultView = new View(AbstractNode.class, PropertyView.Public, id, type);
 
@@ -853,19 +852,24 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 				// add initial element
 				bfsNodes.add(root);
 
+				// cached results depend on the accessing user
+				alreadyTraversed.addDependency(accessingUser.getUuid());
+
 				do {
 
 					final BFSInfo info = bfsNodes.poll();
 					if (info != null && info.level < permissionResolutionMaxLevel) {
 
-						final Boolean value = info.node.getPermissionResolutionResult(accessingUser.getId(), permission);
+						alreadyTraversed.addDependency(info.node.getUuid());
+
+						final Boolean value = info.node.getPermissionResolutionResult(accessingUser, permission);
 						if (value != null) {
 
 							// returning immediately
 							if (Boolean.TRUE.equals(value)) {
 
 								// do backtracking
-								backtrack(info, accessingUser.getId(), permission, true, 0, doLog);
+								backtrack(info, accessingUser, permission, true, 0, alreadyTraversed, doLog);
 
 								return true;
 							}
@@ -875,7 +879,7 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 							if (info.node.hasEffectivePermissions(info, accessingUser, permission, mask, level, alreadyTraversed, bfsNodes, doLog)) {
 
 								// do backtracking
-								backtrack(info, accessingUser.getId(), permission, true, 0, doLog);
+								backtrack(info, accessingUser, permission, true, 0, alreadyTraversed, doLog);
 
 								return true;
 							}
@@ -885,7 +889,7 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 				} while (!bfsNodes.isEmpty());
 
 				// do backtracking
-				backtrack(root, accessingUser.getId(), permission, false, 0, doLog);
+				backtrack(root, accessingUser, permission, false, 0, alreadyTraversed, doLog);
 			}
 
 			// Last: recursively check possible parent principals
@@ -900,7 +904,7 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 		return false;
 	}
 
-	private void backtrack(final BFSInfo info, final long principalId, final Permission permission, final boolean value, final int level, final boolean doLog) {
+	private void backtrack(final BFSInfo info, final Principal principal, final Permission permission, final boolean value, final int level, final AlreadyTraversed alreadyTraversed, final boolean doLog) {
 
 		if (doLog) {
 
@@ -919,12 +923,12 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 			System.out.print(info.node.getType() + " (" + info.node.getUuid() + ") --> ");
 		}
 
-		info.node.storePermissionResolutionResult(principalId, permission, value);
+		info.node.storePermissionResolutionResult(principal, permission, value, alreadyTraversed);
 
 		// go to parent(s)
 		if (info.parent != null) {
 
-			backtrack(info.parent, principalId, permission, value, level+1, doLog);
+			backtrack(info.parent, principal, permission, value, level+1, alreadyTraversed, doLog);
 		}
 
 		if (doLog && level == 0) {
@@ -968,9 +972,12 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 
 							final AbstractNode otherNode = (AbstractNode)rel.getOtherNode(this);
 
+							alreadyTraversed.addRelType(rel.getRelType().name());
+							alreadyTraversed.addDependency(otherNode.getUuid());
+
 							if (otherNode.isGranted(permission, principal, mask, level+1, alreadyTraversed, false, doLog)) {
 
-								otherNode.storePermissionResolutionResult(principal.getId(), permission, true);
+								otherNode.storePermissionResolutionResult(principal, permission, true, alreadyTraversed);
 
 								// break early
 								return true;
@@ -1111,69 +1118,12 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 		mask.handleProperties(rel.getDeltaProperties());
 	}
 
-	private Boolean getPermissionResolutionResult(final long principalId, final Permission permission) {
-
-		Map<Long, PermissionResolutionResult> permissionResolutionCache = globalPermissionResolutionCache.get(getId());
-		if (permissionResolutionCache == null) {
-
-			permissionResolutionCache = new HashMap<>();
-			globalPermissionResolutionCache.put(getId(), permissionResolutionCache);
-		}
-
-		PermissionResolutionResult result = permissionResolutionCache.get(principalId);
-		if (result != null) {
-
-			if (permission.equals(Permission.read)) {
-				return result.read;
-			}
-
-			if (permission.equals(Permission.write)) {
-				return result.write;
-			}
-
-			if (permission.equals(Permission.delete)) {
-				return result.delete;
-			}
-
-			if (permission.equals(Permission.accessControl)) {
-				return result.accessControl;
-			}
-		}
-
-		return null;
+	private Boolean getPermissionResolutionResult(final Principal principal, final Permission permission) {
+		return AccessPathCache.getPermission(this, principal, permission);
 	}
 
-	private void storePermissionResolutionResult(final long principalId, final Permission permission, final boolean value) {
-
-		Map<Long, PermissionResolutionResult> permissionResolutionCache = globalPermissionResolutionCache.get(getId());
-		if (permissionResolutionCache == null) {
-
-			permissionResolutionCache = new HashMap<>();
-			globalPermissionResolutionCache.put(getId(), permissionResolutionCache);
-		}
-
-		PermissionResolutionResult result = permissionResolutionCache.get(principalId);
-		if (result == null) {
-
-			result = new PermissionResolutionResult();
-			permissionResolutionCache.put(principalId, result);
-		}
-
-		if (permission.equals(Permission.read) && (result.read == null || result.read == false)) {
-			result.read = value;
-		}
-
-		if (permission.equals(Permission.write) && (result.write == null || result.write == false)) {
-			result.write = value;
-		}
-
-		if (permission.equals(Permission.delete) && (result.delete == null || result.delete == false)) {
-			result.delete = value;
-		}
-
-		if (permission.equals(Permission.accessControl) && (result.accessControl == null || result.accessControl == false)) {
-			result.accessControl = value;
-		}
+	private void storePermissionResolutionResult(final Principal principal, final Permission permission, final boolean value, final AlreadyTraversed alreadyTraversed) {
+		AccessPathCache.putPermission(this, principal, permission, value, alreadyTraversed.getDependencies(), alreadyTraversed.getRelTypes());
 	}
 
 	/**
@@ -1214,13 +1164,13 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 
 	@Override
 	public boolean onModification(SecurityContext securityContext, ErrorBuffer errorBuffer, final ModificationQueue modificationQueue) throws FrameworkException {
-		clearPermissionResolutionCache();
+		AccessPathCache.invalidateForId(getUuid());
 		return true;
 	}
 
 	@Override
 	public boolean onDeletion(SecurityContext securityContext, ErrorBuffer errorBuffer, PropertyMap properties) throws FrameworkException {
-		clearPermissionResolutionCache();
+		AccessPathCache.invalidateForId(getUuid());
 		return true;
 	}
 
@@ -1238,22 +1188,22 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 
 	@Override
 	public void ownerModified(SecurityContext securityContext) {
-		clearPermissionResolutionCache();
+		AccessPathCache.invalidateForId(getUuid());
 	}
 
 	@Override
 	public void securityModified(SecurityContext securityContext) {
-		clearPermissionResolutionCache();
+		AccessPathCache.invalidateForId(getUuid());
 	}
 
 	@Override
 	public void locationModified(SecurityContext securityContext) {
-		clearPermissionResolutionCache();
+		AccessPathCache.invalidateForId(getUuid());
 	}
 
 	@Override
 	public void propagatedModification(SecurityContext securityContext) {
-		clearPermissionResolutionCache();
+		AccessPathCache.invalidateForId(getUuid());
 	}
 
 	@Override
@@ -1517,7 +1467,7 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 	}
 
 	public static void clearPermissionResolutionCache() {
-		globalPermissionResolutionCache.clear();
+		AccessPathCache.invalidate();
 	}
 
 	public static <A extends NodeInterface, B extends NodeInterface, R extends Relation<A, B, ?, ?>> R getRelationshipForType(final Class<R> type) {
@@ -2035,6 +1985,27 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 	private static class AlreadyTraversed {
 
 		private Map<String, Set<Long>> sets = new LinkedHashMap<>();
+		private Set<String> dependencies    = new LinkedHashSet<>();
+		private Set<String> relTypes        = new LinkedHashSet<>();
+
+		public void addDependency(final String uuid) {
+
+			if (uuid != null) {
+				dependencies.add(uuid);
+			}
+		}
+
+		public void addRelType(final String relType) {
+			relTypes.add(relType);
+		}
+
+		public Set<String> getDependencies() {
+			return dependencies;
+		}
+
+		public Set<String> getRelTypes() {
+			return relTypes;
+		}
 
 		public boolean contains(final String key, final Long id) {
 
@@ -2076,12 +2047,4 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable,
 			}
 		}
 	}
-
-	private static class PermissionResolutionResult {
-
-		Boolean read          = false;
-		Boolean write         = false;
-		Boolean delete        = false;
-		Boolean accessControl = false;
-	}
 }
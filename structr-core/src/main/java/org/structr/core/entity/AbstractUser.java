@@ -30,6 +30,7 @@ import org.structr.common.error.ErrorBuffer;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
 import org.structr.core.auth.HashHelper;
+import org.structr.core.auth.SessionRegistry;
 import org.structr.core.entity.relationship.Groups;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.property.PropertyMap;
@@ -71,6 +72,7 @@ public abstract class AbstractUser extends AbstractNode implements Principal {
 				setProperty(Principal.sessionIds, new String[] {  sessionId } );
 			}
 
+			SessionRegistry.getInstance().register(sessionId, getUuid());
 
 		} catch (FrameworkException ex) {
 			logger.error("Could not add sessionId " + sessionId + " to array of sessionIds", ex);
@@ -100,6 +102,8 @@ public abstract class AbstractUser extends AbstractNode implements Principal {
 
 			setProperties(securityContext, new PropertyMap(Principal.sessionIds, (String[]) newSessionIds.toArray(new String[newSessionIds.size()])));
 
+			SessionRegistry.getInstance().unregister(sessionId);
+
 		} catch (FrameworkException ex) {
 			logger.error("Could not remove sessionId " + sessionId + " from array of sessionIds", ex);
 		}
@@ -24,7 +24,10 @@ import java.io.StringReader;
 import java.text.Normalizer;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 import org.apache.commons.lang3.StringUtils;
+import org.structr.api.config.Settings;
+import org.structr.api.util.FixedSizeCache;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
 import org.structr.core.parser.AllExpression;
@@ -55,12 +58,71 @@ public class Functions {
 	public static final Map<String, Function<Object, Object>> functions = new LinkedHashMap<>();
 	public static final String NULL_STRING                              = "___NULL___";
 
+	private static final FixedSizeCache<String, Expression> parsedExpressions = new FixedSizeCache<>(Settings.ExpressionCacheSize.getValue());
+	private static final LongAdder parseCount                                  = new LongAdder();
+	private static final LongAdder parseTime                                   = new LongAdder();
+	private static final LongAdder evaluationCount                             = new LongAdder();
+	private static final LongAdder evaluationTime                              = new LongAdder();
+
 	public static Function<Object, Object> get(final String name) {
 		return functions.get(name);
 	}
 
 	public static Object evaluate(final ActionContext actionContext, final GraphObject entity, final String expression) throws FrameworkException {
 
+		Expression root = parsedExpressions.get(expression);
+		if (root == null) {
+
+			final long t0 = System.nanoTime();
+
+			root = parse(expression);
+
+			parseTime.add(System.nanoTime() - t0);
+			parseCount.increment();
+
+			// parsed expressions are never modified after this point, so
+			// the same tree can be evaluated by several threads at once
+			parsedExpressions.put(expression, root);
+		}
+
+		final long t0 = System.nanoTime();
+
+		try {
+
+			return root.evaluate(actionContext, entity);
+
+		} finally {
+
+			evaluationTime.add(System.nanoTime() - t0);
+			evaluationCount.increment();
+		}
+	}
+
+	/**
+	 * Returns the number of parsed and evaluated expressions and the time
+	 * spent in each phase. Evaluation time includes nested evaluations.
+	 *
+	 * @return a map with statistics
+	 */
+	public static Map<String, Object> getStatistics() {
+
+		final Map<String, Object> statistics = new LinkedHashMap<>();
+
+		statistics.put("cache",            parsedExpressions.getStatistics());
+		statistics.put("parseCount",       parseCount.sum());
+		statistics.put("parseTimeMs",      parseTime.sum() / 1000000L);
+		statistics.put("evaluationCount",  evaluationCount.sum());
+		statistics.put("evaluationTimeMs", evaluationTime.sum() / 1000000L);
+
+		return statistics;
+	}
+
+	public static void clearCache() {
+		parsedExpressions.clear();
+	}
+
+	private static Expression parse(final String expression) throws FrameworkException {
+
 		final String expressionWithoutNewlines = expression.replace('\n', ' ');
 		final StreamTokenizer tokenizer = new StreamTokenizer(new StringReader(expressionWithoutNewlines));
 		tokenizer.eolIsSignificant(true);
@@ -186,7 +248,7 @@ public class Functions {
 			throw new FrameworkException(422, "Invalid expression: mismatched closing bracket after " + lastToken);
 		}
 
-		return root.evaluate(actionContext, entity);
+		return root;
 	}
 
 	private static Expression checkReservedWords(final String word) throws FrameworkException {
@@ -129,9 +129,6 @@ public class CreateNodeCommand<T extends NodeInterface> extends NodeServiceComma
 
 				// ensure indexing of newly created node
 				node.addToIndex();
-
-				// invalidate UUID cache
-				StructrApp.invalidate(uuid);
 			}
 		}
 
@@ -18,21 +18,22 @@
  */
 package org.structr.core.graph;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.Future;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.api.NotFoundException;
+import org.structr.api.config.Settings;
 import org.structr.api.graph.Relationship;
 import org.structr.api.util.Iterables;
 import org.structr.common.FactoryDefinition;
@@ -47,10 +48,11 @@ import org.structr.schema.SchemaHelper;
 
 public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>, Function<S, T> {
 
-	private static final Logger logger = LoggerFactory.getLogger(Factory.class.getName());
-	public static final ExecutorService service = Executors.newCachedThreadPool();
-	public static final int DEFAULT_PAGE_SIZE = Integer.MAX_VALUE;
-	public static final int DEFAULT_PAGE      = 1;
+	private static final Logger logger                = LoggerFactory.getLogger(Factory.class.getName());
+	private static final int INSTANTIATION_BATCH_SIZE = 500;
+	private static ExecutorService service            = null;
+	public static final int DEFAULT_PAGE_SIZE         = Integer.MAX_VALUE;
+	public static final int DEFAULT_PAGE              = 1;
 
 	/**
 	 * This limit is the number of objects up to which the overall count
@@ -337,208 +339,207 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 	protected Result page(final Iterable<S> input, final int offset, final int pageSize) throws FrameworkException {
 
 		final SecurityContext securityContext = factoryProfile.getSecurityContext();
+		final boolean preventFullCount        = securityContext.ignoreResultCount();
+		final int threshold                   = Settings.InstantiationThreshold.getValue();
+		final int parallelism                 = Settings.InstantiationParallelism.getValue();
+		final long stopAfter                  = preventFullCount ? (long)offset + pageSize : Long.MAX_VALUE;
+		final List<Item<T>> nodes             = new ArrayList<>();
+		final List<Item<S>> failed            = new LinkedList<>();
+		final Iterator<S> iterator            = input.iterator();
+		int index                             = 0;
 
-		final AtomicBoolean keepRunning            = new AtomicBoolean(true);
-		final AtomicInteger overallCount           = new AtomicInteger();
-		final AtomicInteger processedItems         = new AtomicInteger();
-		final List<Item<T>> nodes                  = new LinkedList<>();
-		final List<Item<S>> failed                 = new LinkedList<>();
-		final boolean preventFullCount             = securityContext.ignoreResultCount();
-		final ConcurrentLinkedQueue<Item<S>> queue = new ConcurrentLinkedQueue<>();
-		final List<Future> futures                 = new LinkedList<>();
-		int threadCount                            = 1;
-		int rawCount                               = 0;
+		// Workers run in their own transaction, so they can only be used if the
+		// calling transaction has no uncommitted changes that they would miss.
+		// Nested page() calls from within a worker must not wait for the
+		// (bounded) pool they are running in, so they stay serial.
+		final boolean parallel = threshold > 0 && parallelism > 1 && !ForkJoinTask.inForkJoinPool() && !TransactionCommand.hasModifications();
 
-		// fill queue with data and count elements
-		for (final S item : input) {
-			queue.add(new Item<>(rawCount++, item));
-		}
-
-		//if (rawCount < 100) {
-
-			// do not use multithreading
-			final InstantiationWorker worker = new InstantiationWorker(securityContext, queue, failed, nodes, offset, pageSize, preventFullCount);
-			worker.setProcessedItems(processedItems);
-			worker.setOverallCount(overallCount);
-			worker.setKeepRunning(keepRunning);
-
-			worker.doRun();
-
-		/*
-		} else {
-
-
-			final double tt0 = System.nanoTime();
-			threadCount     = 8;
-
-			// submit workers, use multithreading
-			for (int i=0; i<threadCount; i++) {
-
-				final InstantiationWorker worker = new InstantiationWorker(securityContext, queue, failed, nodes, offset, pageSize, preventFullCount);
-				worker.setProcessedItems(processedItems);
-				worker.setOverallCount(overallCount);
-				worker.setKeepRunning(keepRunning);
+		// items are read from the input lazily so that the
+		// whole input is never copied into memory at once
+		while (iterator.hasNext() && nodes.size() <= stopAfter && (!parallel || index < threshold)) {
 
-				// first worker logs
-				worker.pleaseLog(i == 0);
-
-				futures.add(service.submit(worker));
-			}
-
-			// wait for result..
-			for (final Future future : futures) {
+			instantiateItem(new Item<>(index++, iterator.next()), nodes, failed);
+		}
 
-				try {
+		if (parallel && iterator.hasNext() && nodes.size() <= stopAfter) {
 
-					future.get();
+			instantiateInParallel(iterator, index, nodes, failed, stopAfter, parallelism);
+		}
 
-				} catch (InterruptedException | ExecutionException iex) {
+		// manually instantiate entities which couldn't be found due to tx isolation
+		for (final Item<S> item : failed) {
 
-					if (!iex.getMessage().contains("org.neo4j.kernel.api.exceptions.EntityNotFoundException")) {
-						logger.warn("", iex);
-					}
-				}
-			}
+			final T node = instantiate((S) item.item);
+			if (node != null) {
 
-			final double tt1 = System.nanoTime();
-			if (tt1-tt0 > 1000000000) {
-				logger.info("Instantiated {} out of {} elements in {} s using {} threads.", new Object[] { nodes.size(), rawCount, (tt1-tt0) / 1000000000.0, threadCount } );
+				nodes.add(new Item<>(item.index, node));
 			}
 		}
-		*/
-
-		// manually instantiate entities which couldn't be found due to tx isolation
-		failed.stream().forEach((item) -> {
-			nodes.add(new Item<>(item.index, (T) instantiate((S) item.item)));
-		});
 
 		// keep initial sort order
 		Collections.sort(nodes);
 
 		final int size = nodes.size();
 		final int from = Math.min(offset, size);
-		final int to   = Math.min(offset+pageSize, size);
+		final int to   = (int)Math.min((long)offset + pageSize, size);
 		final List<T> output = new LinkedList<>();
 
 		nodes.subList(from, to).stream().forEach((item) -> {
 			output.add(item.item);
 		});
 
-		// The overall count may be inaccurate
-		return new Result(output, overallCount.get(), true, false);
+		// The overall count may be inaccurate if the count is not required,
+		// but it must not depend on the number of workers.
+		final int count = preventFullCount ? (int)Math.min(size, stopAfter + 1) : size;
+
+		return new Result(output, count, true, false);
 	}
 
-	//~--- inner classes --------------------------------------------------
+	// ----- private methods -----
+	private void instantiateItem(final Item<S> item, final List<Item<T>> nodes, final List<Item<S>> failed) {
 
-	private class InstantiationWorker implements Runnable {
+		try {
 
-		private final SecurityContext securityContext;
-		private final Queue<Item<S>> source;
-		private final List<Item<T>> nodes;
-		private final List<Item<S>> failed;
+			final T node = instantiate(item.item);
+			if (node != null) {
 
-		private AtomicInteger processedItems = null;
-		private AtomicInteger overallCount   = null;
-		private AtomicBoolean keepRunning    = null;
-		private boolean dontCheckCount       = false;
-		private boolean doLogOutput          = false;
-		private int pageSize                 = 0;
-		private int offset                   = 0;
+				nodes.add(new Item<>(item.index, node));
+			}
 
-		public InstantiationWorker(final SecurityContext securityContext, final Queue<Item<S>> source, final List<Item<S>> failed, final List<Item<T>> nodes, final int offset, final int pageSize, final boolean dontCheckCount) {
+		} catch (NotFoundException nfe) {
 
-			this.securityContext = securityContext;
-			this.offset          = offset;
-			this.source          = source;
-			this.dontCheckCount  = dontCheckCount;
-			this.pageSize        = pageSize;
-			this.nodes           = nodes;
-			this.failed          = failed;
+			failed.add(item);
 		}
+	}
 
-		@Override
-		public void run() {
+	/**
+	 * Instantiates the remaining input in batches on the instantiation pool.
+	 * Only the calling thread reads from the input, because database results
+	 * must not be shared between threads. Batches are collected in input
+	 * order, so reading stops as soon as the page is complete.
+	 */
+	private void instantiateInParallel(final Iterator<S> iterator, final int startIndex, final List<Item<T>> nodes, final List<Item<S>> failed, final long stopAfter, final int parallelism) throws FrameworkException {
 
-			try (final Tx tx = StructrApp.getInstance(securityContext).tx()) {
+		final LinkedList<Future<InstantiationBatch>> futures = new LinkedList<>();
+		final SecurityContext securityContext                = factoryProfile.getSecurityContext();
+		final ExecutorService executor                       = getExecutorService(parallelism);
+		final long t0                                        = System.nanoTime();
+		int index                                            = startIndex;
 
-				// transaction is only needed if we are running multiple threads
-				doRun();
+		try {
 
-				tx.success();
+			while (iterator.hasNext() && nodes.size() <= stopAfter) {
+
+				final List<Item<S>> items = new ArrayList<>(INSTANTIATION_BATCH_SIZE);
+
+				while (iterator.hasNext() && items.size() < INSTANTIATION_BATCH_SIZE) {
+					items.add(new Item<>(index++, iterator.next()));
+				}
 
-			} catch (FrameworkException fex) {
-				logger.warn("", fex);
+				futures.add(executor.submit(new InstantiationWorker(securityContext, items)));
+
+				// limit the number of batches in flight
+				if (futures.size() >= parallelism) {
+					collect(futures.removeFirst(), nodes, failed);
+				}
+			}
+
+			while (!futures.isEmpty() && nodes.size() <= stopAfter) {
+				collect(futures.removeFirst(), nodes, failed);
+			}
+
+		} finally {
+
+			// remaining batches are not needed for the current page
+			for (final Future<InstantiationBatch> future : futures) {
+				future.cancel(true);
 			}
 		}
 
-		private void doRun() {
+		final long t1 = System.nanoTime();
+		if (t1-t0 > 1000000000L) {
+			logger.info("Instantiated {} out of {} elements in {} s using {} threads.", new Object[] { nodes.size(), index, (t1-t0) / 1000000000.0, parallelism } );
+		}
+	}
 
-			final long t0 = System.currentTimeMillis();
-			long t1       = t0;
-			Item<S> item;
+	private void collect(final Future<InstantiationBatch> future, final List<Item<T>> nodes, final List<Item<S>> failed) throws FrameworkException {
 
-			do {
+		try {
 
-				item = source.poll();
-				if (item != null) {
+			final InstantiationBatch batch = future.get();
 
-					processedItems.incrementAndGet();
+			nodes.addAll(batch.nodes);
+			failed.addAll(batch.failed);
 
-					T n = null;
+		} catch (InterruptedException iex) {
 
-					try {
-						n = instantiate(item.item);
+			Thread.currentThread().interrupt();
 
-					} catch (NotFoundException nfe) {
+			throw instantiationFailure(iex);
 
-						synchronized(failed) {
-							failed.add(item);
-						}
-					}
+		} catch (ExecutionException eex) {
 
-					if (n != null) {
+			throw instantiationFailure(eex.getCause());
+		}
+	}
 
-						overallCount.incrementAndGet();
+	private FrameworkException instantiationFailure(final Throwable cause) {
 
-						// synchronize access to the target list
-						synchronized (nodes) {
-							nodes.add(new Item<>(item.index, n));
-						}
+		final FrameworkException fex = new FrameworkException(500, "Parallel instantiation failed: " + cause.getMessage());
 
-						// stop evaluation of new nodes if count is not required
-						if (dontCheckCount && overallCount.get() > offset + pageSize) {
-							keepRunning.set(false);
-						}
-					}
-				}
+		fex.initCause(cause);
 
-				// log output if desired
-				if (doLogOutput && System.currentTimeMillis() - t1 > 2000) {
+		return fex;
+	}
 
-					t1 = System.currentTimeMillis();
-					logger.info("Parallel instantiation: checked {} nodes so far", processedItems.get());
-				}
+	// ----- private static methods -----
+	private static synchronized ExecutorService getExecutorService(final int parallelism) {
 
-			} while (item != null && keepRunning.get());
+		if (service == null) {
+			service = new ForkJoinPool(parallelism);
 		}
 
-		public void setKeepRunning(final AtomicBoolean keepRunning) {
-			this.keepRunning = keepRunning;
-		}
+		return service;
+	}
 
-		public void setProcessedItems(AtomicInteger processedItems) {
-			this.processedItems = processedItems;
-		}
+	//~--- inner classes --------------------------------------------------
+
+	private class InstantiationWorker implements Callable<InstantiationBatch> {
+
+		private final SecurityContext securityContext;
+		private final List<Item<S>> items;
+
+		public InstantiationWorker(final SecurityContext securityContext, final List<Item<S>> items) {
 
-		public void setOverallCount(final AtomicInteger overallCount) {
-			this.overallCount = overallCount;
+			this.securityContext = securityContext;
+			this.items           = items;
 		}
 
-		public void pleaseLog(final boolean doLogOutput) {
-			this.doLogOutput = doLogOutput;
+		@Override
+		public InstantiationBatch call() throws FrameworkException {
+
+			final InstantiationBatch batch = new InstantiationBatch();
+
+			// the transaction of the calling thread is not available here
+			try (final Tx tx = StructrApp.getInstance(securityContext).tx(false, false, false)) {
+
+				for (final Item<S> item : items) {
+					instantiateItem(item, batch.nodes, batch.failed);
+				}
+
+				tx.success();
+			}
+
+			return batch;
 		}
 	}
 
+	private class InstantiationBatch {
+
+		private final List<Item<T>> nodes  = new ArrayList<>();
+		private final List<Item<S>> failed = new LinkedList<>();
+	}
+
 	private class Item<X> implements Comparable<Item<X>> {
 
 		public int index = 0;
@@ -28,6 +28,8 @@ import org.structr.common.AccessPathCache;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
+import org.structr.core.function.Functions;
+import org.structr.core.script.Scripting;
 
 //~--- classes ----------------------------------------------------------------
 
@@ -48,6 +50,8 @@ public class FlushCachesCommand extends NodeServiceCommand implements Maintenanc
 		NodeWrapper.clearCache();
 		RelationshipWrapper.clearCache();
 		AccessPathCache.invalidate();
+		Scripting.clearCache();
+		Functions.clearCache();
 
 		App app = StructrApp.getInstance(securityContext);
 
@@ -33,4 +33,14 @@ public interface MaintenanceCommand {
 	public void execute(Map<String, Object> attributes) throws FrameworkException;
 	public boolean requiresEnclosingTransaction();
 	public boolean requiresFlushingOfCaches();
+
+	/**
+	 * Returns the (optional) result of this command that is sent
+	 * back to the client.
+	 *
+	 * @return the result or null
+	 */
+	default public Object getCommandResult() {
+		return null;
+	}
 }
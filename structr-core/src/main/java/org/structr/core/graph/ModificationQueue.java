@@ -295,6 +295,10 @@ public class ModificationQueue {
 		return modificationEvents;
 	}
 
+	public boolean isEmpty() {
+		return modifications.isEmpty();
+	}
+
 	public void postProcess(final String key, final TransactionPostProcess process) {
 
 		if (!postProcesses.containsKey(key)) {
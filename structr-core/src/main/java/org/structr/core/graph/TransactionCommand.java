@@ -32,6 +32,7 @@ import org.structr.common.error.ErrorBuffer;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.StructrTransactionListener;
 import org.structr.core.TransactionSource;
+import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.Principal;
 import org.structr.core.property.PropertyKey;
@@ -233,6 +234,7 @@ public class TransactionCommand extends NodeServiceCommand implements AutoClosea
 			if (modificationQueue != null) {
 
 				modificationQueue.create(user, node);
+				StructrApp.indexUuid(node);
 
 			} else {
 
@@ -275,6 +277,7 @@ public class TransactionCommand extends NodeServiceCommand implements AutoClosea
 			if (modificationQueue != null) {
 
 				modificationQueue.delete(user, node);
+				StructrApp.unindexUuid(node);
 
 			} else {
 
@@ -296,6 +299,7 @@ public class TransactionCommand extends NodeServiceCommand implements AutoClosea
 			if (modificationQueue != null) {
 
 				modificationQueue.create(user, relationship);
+				StructrApp.indexUuid(relationship);
 
 			} else {
 
@@ -338,6 +342,7 @@ public class TransactionCommand extends NodeServiceCommand implements AutoClosea
 			if (modificationQueue != null) {
 
 				modificationQueue.delete(user, relationship, passive);
+				StructrApp.unindexUuid(relationship);
 
 			} else {
 
@@ -366,6 +371,23 @@ public class TransactionCommand extends NodeServiceCommand implements AutoClosea
 		return currentCommand.get() != null;
 	}
 
+	/**
+	 * Indicates whether the transaction of the current thread contains
+	 * uncommitted changes that are not visible to other transactions.
+	 *
+	 * @return whether the current transaction has modifications
+	 */
+	public static boolean hasModifications() {
+
+		final ModificationQueue queue = queues.get();
+		if (queue != null) {
+
+			return !queue.isEmpty();
+		}
+
+		return false;
+	}
+
 	public static boolean isDeleted(final Node node) {
 
 		if (!inTransaction()) {
@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph.search;
+
+import java.util.List;
+import org.apache.commons.lang3.StringUtils;
+import org.structr.api.search.Occurrence;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.common.fulltext.FulltextIndexer;
+import org.structr.common.fulltext.FulltextSearchCursor;
+import org.structr.core.app.App;
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.NodeInterface;
+
+/**
+ * Source attribute that resolves a search term against the fulltext index
+ * of the installed {@link FulltextIndexer}. The result contains the matching
+ * nodes in the order of their relevance.
+ */
+public class FulltextSearchAttribute extends SourceSearchAttribute {
+
+	public static final int MAX_RESULTS      = 1000;
+	private static final int MAX_HITS_SCANNED = 10 * MAX_RESULTS;
+	private static final int BATCH_SIZE       = 1000;
+
+	private String searchTerm = null;
+
+	private FulltextSearchAttribute(final Occurrence occur, final String searchTerm) {
+
+		super(occur);
+
+		this.searchTerm = searchTerm;
+	}
+
+	@Override
+	public String toString() {
+		return "FulltextSearchAttribute(" + searchTerm + ")";
+	}
+
+	/**
+	 * Creates a search attribute for the given value, or returns null if the
+	 * installed fulltext indexer does not support searching. The index is
+	 * read in batches from a single cursor until {@link #MAX_RESULTS} visible
+	 * nodes are found, so that matches the user can't see don't hide the
+	 * ones they can. At most {@link #MAX_HITS_SCANNED} matches are read.
+	 *
+	 * @param securityContext
+	 * @param occur
+	 * @param value
+	 * @return the search attribute or null
+	 * @throws FrameworkException
+	 */
+	public static FulltextSearchAttribute create(final SecurityContext securityContext, final Occurrence occur, final Object value) throws FrameworkException {
+
+		final String searchTerm            = value instanceof Object[] ? StringUtils.join((Object[])value, " ") : value.toString();
+		final App app                      = StructrApp.getInstance(securityContext);
+		final FulltextIndexer indexer      = app.getFulltextIndexer();
+		final FulltextSearchAttribute attr = new FulltextSearchAttribute(occur, searchTerm);
+
+		try (final FulltextSearchCursor cursor = indexer.search(searchTerm)) {
+
+			if (cursor == null) {
+
+				return null;
+			}
+
+			for (int scanned = 0; scanned < MAX_HITS_SCANNED && attr.getResult().size() < MAX_RESULTS; scanned += BATCH_SIZE) {
+
+				final List<String> uuids = cursor.next(BATCH_SIZE);
+
+				for (final String uuid : uuids) {
+
+					// invisible and deleted nodes are not returned
+					final NodeInterface node = app.getNodeById(uuid);
+					if (node != null && attr.getResult().size() < MAX_RESULTS) {
+
+						attr.addToResult(node);
+					}
+				}
+
+				// no more matches
+				if (uuids.size() < BATCH_SIZE) {
+					break;
+				}
+			}
+		}
+
+		return attr;
+	}
+}
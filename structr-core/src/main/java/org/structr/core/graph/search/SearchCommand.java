@@ -36,6 +36,7 @@ import org.structr.common.GraphObjectComparator;
 import org.structr.common.PagingHelper;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
+import org.structr.common.fulltext.Indexable;
 import org.structr.common.geo.GeoCodingResult;
 import org.structr.common.geo.GeoHelper;
 import org.structr.core.GraphObject;
@@ -203,8 +204,29 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 			final Index<S> index = getIndex();
 			if (index != null) {
 
+				if (canPageInDatabase(hasEmptySearchFields, hasGraphSources, hasSpatialSource)) {
+
+					// all results are visible and no post-filtering is needed,
+					// so we can let the database do the sorting and paging
+					final Iterable hits = index.query(rootGroup, pageSize, page);
+					final List<T> list  = factory.bulkInstantiate(hits);
+					Integer count       = null;
+
+					if (!securityContext.ignoreResultCount()) {
+
+						// the count is only accurate up to the limit, but it
+						// must at least include the results of this page
+						final long offset = (long)(page - 1) * pageSize;
+						final long total  = index.count(rootGroup, Factory.RESULT_COUNT_ACCURATE_LIMIT);
+
+						count = (int)Math.min(Integer.MAX_VALUE, Math.max(total, offset + list.size()));
+					}
+
+					return new Result(list, count, true, false);
+				}
+
 				// do query
-				final Iterable hits = getIndex().query(rootGroup);
+				final Iterable hits = index.query(rootGroup);
 				intermediateResult  = factory.instantiate(hits);
 			}
 		}
@@ -268,6 +290,32 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 		}
 	}
 
+	/**
+	 * Paging can only be delegated to the database if the query needs no
+	 * in-memory filtering and the instantiation step does not drop any of
+	 * the results, i.e. if every result is readable for the current user.
+	 *
+	 * This is deliberately limited to super user and internal contexts.
+	 * Visibility for regular users depends on ownership, grants, group
+	 * membership and permission propagation, which cannot be expressed
+	 * as a predicate of the generated query, so their searches are paged
+	 * in memory after the permission checks.
+	 */
+	private boolean canPageInDatabase(final boolean hasEmptySearchFields, final boolean hasGraphSources, final boolean hasSpatialSource) {
+
+		if (hasEmptySearchFields || hasGraphSources || hasSpatialSource) {
+			return false;
+		}
+
+		if (offsetId != null || page <= 0 || pageSize == Integer.MAX_VALUE) {
+			return false;
+		}
+
+		// deleted and hidden flags are part of the query if they need to be
+		// excluded, but only super users are guaranteed to see every result
+		return !publicOnly && securityContext.isSuperUser();
+	}
+
 	private Set<GraphObject> mergeSources(List<SourceSearchAttribute> sources) {
 
 		final Set<GraphObject> mergedResult = new LinkedHashSet<>();
@@ -496,6 +544,23 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 			this.doNotSort = false;
 		}
 
+		// inexact searches on extracted document text are answered by the fulltext index
+		if (!exact && value != null && (Indexable.extractedContent.equals(key) || Indexable.indexedWords.equals(key))) {
+
+			try {
+
+				final FulltextSearchAttribute fulltextAttribute = FulltextSearchAttribute.create(securityContext, Occurrence.REQUIRED, value);
+				if (fulltextAttribute != null) {
+
+					currentGroup.getSearchAttributes().add(fulltextAttribute);
+					return this;
+				}
+
+			} catch (FrameworkException fex) {
+				logger.warn("Unable to query fulltext index: {}", fex.getMessage());
+			}
+		}
+
 		currentGroup.getSearchAttributes().add(key.getSearchAttribute(securityContext, Occurrence.REQUIRED, value, exact, this));
 
 		return this;
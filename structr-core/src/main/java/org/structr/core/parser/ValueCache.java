@@ -0,0 +1,198 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.parser;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import org.structr.api.config.Settings;
+import org.structr.api.util.FixedSizeCache;
+import org.structr.common.error.FrameworkException;
+
+/**
+ * Bounded store for the values of the cache() built-in function.
+ *
+ * Values expire after their timeout and the least recently used entries
+ * are evicted when the store is full. Only a single caller recomputes an
+ * expired value; concurrent callers either wait for the new value or, if
+ * stale-while-revalidate is enabled, receive the previous value in the
+ * meantime.
+ */
+public class ValueCache {
+
+	private static final FixedSizeCache<String, CachedValue> values = new FixedSizeCache<>(Settings.ValueCacheSize.getValue());
+	private static final LongAdder hits                              = new LongAdder();
+	private static final LongAdder staleHits                         = new LongAdder();
+	private static final LongAdder loads                             = new LongAdder();
+	private static final LongAdder loadFailures                      = new LongAdder();
+	private static final LongAdder loadTime                          = new LongAdder();
+
+	/**
+	 * Returns the cached value for the given key, recomputing it with the
+	 * given supplier if it is missing or expired.
+	 *
+	 * @param key
+	 * @param timeoutSeconds
+	 * @param supplier
+	 *
+	 * @return the cached value
+	 * @throws FrameworkException
+	 */
+	public static Object get(final String key, final long timeoutSeconds, final ValueSupplier supplier) throws FrameworkException {
+
+		final CachedValue cachedValue = getOrCreate(key);
+
+		cachedValue.setTimeoutSeconds(timeoutSeconds);
+
+		if (!cachedValue.isExpired()) {
+
+			hits.increment();
+			return cachedValue.getValue();
+		}
+
+		// another thread is already refreshing the value, use the stale one
+		if (Settings.ValueCacheStale.getValue() && cachedValue.hasValue() && !cachedValue.startRefresh()) {
+
+			staleHits.increment();
+			return cachedValue.getValue();
+		}
+
+		synchronized (cachedValue) {
+
+			try {
+
+				// value may have been refreshed while we were waiting
+				if (cachedValue.isExpired()) {
+
+					final long t0 = System.nanoTime();
+
+					try {
+
+						cachedValue.refresh(supplier.get());
+						loads.increment();
+
+					} catch (FrameworkException | RuntimeException ex) {
+
+						loadFailures.increment();
+						throw ex;
+
+					} finally {
+
+						loadTime.add(System.nanoTime() - t0);
+					}
+
+				} else {
+
+					hits.increment();
+				}
+
+				return cachedValue.getValue();
+
+			} finally {
+
+				cachedValue.endRefresh();
+			}
+		}
+	}
+
+	public static void clear() {
+		values.clear();
+	}
+
+	public static Map<String, Object> getStatistics() {
+
+		final Map<String, Object> statistics = new LinkedHashMap<>();
+
+		statistics.put("size",         values.size());
+		statistics.put("maxSize",      values.getMaxSize());
+		statistics.put("hits",         hits.sum());
+		statistics.put("staleHits",    staleHits.sum());
+		statistics.put("loads",        loads.sum());
+		statistics.put("loadFailures", loadFailures.sum());
+		statistics.put("loadTimeMs",   loadTime.sum() / 1000000L);
+		statistics.put("evictions",    values.getEvictionCount());
+
+		return statistics;
+	}
+
+	// ----- private methods -----
+	private static CachedValue getOrCreate(final String key) {
+
+		final CachedValue cachedValue = values.get(key);
+		if (cachedValue == null) {
+
+			final CachedValue newValue = new CachedValue();
+			final CachedValue existing = values.putIfAbsent(key, newValue);
+
+			return existing != null ? existing : newValue;
+		}
+
+		return cachedValue;
+	}
+
+	// ----- nested classes -----
+	public interface ValueSupplier {
+
+		Object get() throws FrameworkException;
+	}
+
+	private static final class CachedValue {
+
+		private final AtomicBoolean refreshing = new AtomicBoolean(false);
+		private final Random random            = new Random(System.currentTimeMillis());
+		private volatile Object value          = null;
+		private volatile boolean hasValue      = false;
+		private volatile long timeoutSeconds   = 0L;
+		private volatile long timeout          = 0L;
+
+		public void setTimeoutSeconds(final long timeoutSeconds) {
+			this.timeoutSeconds = timeoutSeconds;
+		}
+
+		public Object getValue() {
+			return value;
+		}
+
+		public boolean hasValue() {
+			return hasValue;
+		}
+
+		public boolean isExpired() {
+			return System.currentTimeMillis() > timeout;
+		}
+
+		public boolean startRefresh() {
+			return refreshing.compareAndSet(false, true);
+		}
+
+		public void endRefresh() {
+			refreshing.set(false);
+		}
+
+		public void refresh(final Object value) {
+
+			// add a random delay so that values with the same timeout do not expire at once
+			this.value    = value;
+			this.hasValue = true;
+			this.timeout  = System.currentTimeMillis() + ((timeoutSeconds + random.nextInt(10)) * 1000);
+		}
+	}
+}
@@ -22,6 +22,7 @@ import java.io.StringWriter;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.script.Bindings;
@@ -32,11 +33,16 @@ import javax.script.ScriptException;
 import org.apache.commons.lang.StringUtils;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.RhinoException;
+import org.mozilla.javascript.Script;
 import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
 import org.mozilla.javascript.Undefined;
 import org.renjin.script.RenjinScriptEngine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
+import org.structr.api.util.FixedSizeCache;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
 import org.structr.core.entity.AbstractNode;
@@ -51,8 +57,11 @@ import org.structr.schema.parser.DatePropertyParser;
  */
 public class Scripting {
 
-	private static final Logger logger                  = LoggerFactory.getLogger(Scripting.class.getName());
-	private static final Pattern ScriptEngineExpression = Pattern.compile("^\\$\\{(\\w+)\\{(.*)\\}\\}$", Pattern.DOTALL);
+	private static final Logger logger                           = LoggerFactory.getLogger(Scripting.class.getName());
+	private static final Pattern ScriptEngineExpression          = Pattern.compile("^\\$\\{(\\w+)\\{(.*)\\}\\}$", Pattern.DOTALL);
+	private static final FixedSizeCache<String, Script> scripts  = new FixedSizeCache<>(Settings.JavaScriptCacheSize.getValue());
+	private static final ContextFactory contextFactory           = new ContextFactory();
+	private static ScriptableObject sharedScope                  = null;
 
 	public static String replaceVariables(final ActionContext actionContext, final GraphObject entity, final Object rawValue) throws FrameworkException {
 
@@ -218,21 +227,18 @@ public class Scripting {
 
 		final String entityName        = entity != null ? entity.getProperty(AbstractNode.name) : null;
 		final String entityDescription = entity != null ? ( StringUtils.isNotBlank(entityName) ? "\"" + entityName + "\":" : "" ) + entity.getUuid() : "anonymous";
-		final Context scriptingContext = new ContextFactory().enterContext();
+		final Context scriptingContext = contextFactory.enterContext();
+		final String sourceLocation    = methodName + " [" + entityDescription + "], line ";
 
 		try {
 
-			// Set version to JavaScript1.2 so that we get object-literal style
-			// printing instead of "[object Object]"
-			scriptingContext.setLanguageVersion(Context.VERSION_1_2);
+			initializeContext(scriptingContext);
 
-			// Initialize the standard objects (Object, Function, etc.)
-			// This must be done before scripts can be executed.
-			Scriptable scope = scriptingContext.initStandardObjects();
-
-			// set optimization level to interpreter mode to avoid
-			// class loading / PermGen space bug in Rhino
-			//scriptingContext.setOptimizationLevel(-1);
+			// use a fresh top-level scope for each evaluation which inherits
+			// the (sealed) standard objects from the shared scope
+			final Scriptable scope = scriptingContext.newObject(getSharedScope(scriptingContext));
+			scope.setPrototype(getSharedScope(scriptingContext));
+			scope.setParentScope(null);
 
 			final StructrScriptable scriptable = new StructrScriptable(actionContext, entity, scriptingContext);
 			scriptable.setParentScope(scope);
@@ -243,9 +249,7 @@ public class Scripting {
 			// clear output buffer
 			actionContext.clear();
 
-			final String sourceLocation = methodName + " [" + entityDescription + "], line ";
-
-			Object extractedValue = scriptingContext.evaluateString(scope, embedInFunction(actionContext, script), sourceLocation, 1, null);
+			Object extractedValue = getCompiledScript(scriptingContext, embedInFunction(actionContext, script), methodName).exec(scriptingContext, scope);
 
 			if (scriptable.hasException()) {
 				throw scriptable.getException();
@@ -272,6 +276,13 @@ public class Scripting {
 			// just throw the FrameworkException so we dont lose the information contained
 			throw fex;
 
+		} catch (final RhinoException rex) {
+
+			// compiled scripts are shared between entities, so the message
+			// is re-created with the location of the current evaluation
+			logger.warn("", rex);
+			throw new FrameworkException(422, getMessage(rex, sourceLocation));
+
 		} catch (final Throwable t) {
 
 			// if any other kind of Throwable is encountered throw a new FrameworkException and be done with it
@@ -285,6 +296,60 @@ public class Scripting {
 
 	}
 
+	public static Map<String, Object> getCacheStatistics() {
+		return scripts.getStatistics();
+	}
+
+	public static void clearCache() {
+		scripts.clear();
+	}
+
+	private static void initializeContext(final Context scriptingContext) {
+
+		// Set version to JavaScript1.2 so that we get object-literal style
+		// printing instead of "[object Object]"
+		scriptingContext.setLanguageVersion(Context.VERSION_1_2);
+
+		// optimization level -1 selects interpreter mode which avoids
+		// class loading / PermGen space issues in Rhino
+		scriptingContext.setOptimizationLevel(Settings.JavaScriptOptLevel.getValue());
+	}
+
+	private static synchronized ScriptableObject getSharedScope(final Context scriptingContext) {
+
+		if (sharedScope == null) {
+
+			// Initialize the standard objects (Object, Function, etc.) once,
+			// sealed so that scripts cannot modify the shared instances.
+			sharedScope = scriptingContext.initStandardObjects(null, true);
+		}
+
+		return sharedScope;
+	}
+
+	private static Script getCompiledScript(final Context scriptingContext, final String source, final String methodName) {
+
+		Script script = scripts.get(source);
+		if (script == null) {
+
+			script = scriptingContext.compileString(source, methodName, 1, null);
+			scripts.put(source, script);
+		}
+
+		return script;
+	}
+
+	private static String getMessage(final RhinoException rex, final String sourceLocation) {
+
+		final int lineNumber = rex.lineNumber();
+		if (lineNumber > 0) {
+
+			return rex.details() + " (" + sourceLocation + "#" + lineNumber + ")";
+		}
+
+		return rex.details();
+	}
+
 	private static String embedInFunction(final ActionContext actionContext, final String source) {
 
 		final StringBuilder buf = new StringBuilder();
@@ -31,6 +31,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -65,6 +67,7 @@ public class SchemaService implements Service {
 	private static final AtomicBoolean compiling                  = new AtomicBoolean(false);
 	private static final AtomicBoolean updating                   = new AtomicBoolean(false);
 	private static final Map<String, String> builtinTypeMap       = new LinkedHashMap<>();
+	private static final Map<String, Object> statistics           = new ConcurrentHashMap<>();
 
 	@Override
 	public void injectArguments(final Command command) {
@@ -86,6 +89,16 @@ public class SchemaService implements Service {
 		builtinTypeMap.put(type, fqcn);
 	}
 
+	/**
+	 * Returns the durations (in milliseconds) of the phases of the last
+	 * schema reload, and the number of compiled and reused types.
+	 *
+	 * @return a map with statistics
+	 */
+	public static Map<String, Object> getStatistics() {
+		return new TreeMap<>(statistics);
+	}
+
 	public static boolean reloadSchema(final ErrorBuffer errorBuffer) {
 
 		final ConfigurationProvider config = StructrApp.getConfiguration();
@@ -99,6 +112,7 @@ public class SchemaService implements Service {
 				final Map<String, Map<String, PropertyKey>> removedClasses = new HashMap<>(StructrApp.getConfiguration().getTypeAndPropertyMapping());
 				final Set<String> dynamicViews                             = new LinkedHashSet<>();
 				final NodeExtender nodeExtender                            = new NodeExtender();
+				long t0                                                    = System.currentTimeMillis();
 
 				try (final Tx tx = StructrApp.getInstance().tx()) {
 
@@ -133,6 +147,9 @@ public class SchemaService implements Service {
 						dynamicViews.addAll(schemaRelationship.getViews());
 					}
 
+					statistics.put("sourceGeneration", System.currentTimeMillis() - t0);
+					t0 = System.currentTimeMillis();
+
 					// this is a very critical section :)
 					synchronized (SchemaService.class) {
 
@@ -156,6 +173,10 @@ public class SchemaService implements Service {
 						removedClasses.keySet().removeAll(StructrApp.getConfiguration().getTypeAndPropertyMapping().keySet());
 					}
 
+					statistics.put("compilation",   System.currentTimeMillis() - t0);
+					statistics.put("compiledTypes", nodeExtender.getCompiledCount());
+					statistics.put("cachedTypes",   nodeExtender.getCachedCount());
+
 					// create properties and views etc.
 					for (final SchemaNode schemaNode : StructrApp.getInstance().nodeQuery(SchemaNode.class).getAsList()) {
 						schemaNode.createBuiltInSchemaEntities(errorBuffer);
@@ -191,10 +212,23 @@ public class SchemaService implements Service {
 				// disable hierarchy calculation and automatic index creation for testing runs
 				if (!Settings.Testing.getValue()) {
 
+					t0 = System.currentTimeMillis();
+
 					calculateHierarchy();
+
+					statistics.put("hierarchyCalculation", System.currentTimeMillis() - t0);
+
 					updateIndexConfiguration(removedClasses);
 				}
 
+				logger.info("Schema reload: source generation {} ms, compilation {} ms ({} types compiled, {} reused), hierarchy calculation {} ms", new Object[] {
+					statistics.get("sourceGeneration"),
+					statistics.get("compilation"),
+					statistics.get("compiledTypes"),
+					statistics.get("cachedTypes"),
+					statistics.getOrDefault("hierarchyCalculation", 0L)
+				});
+
 			} finally {
 
 				// compiling done
@@ -323,6 +357,8 @@ public class SchemaService implements Service {
 				// critical section, only one thread should update the index at a time
 				if (updating.compareAndSet(false, true)) {
 
+					final long t0 = System.currentTimeMillis();
+
 					try {
 
 						final Map<String, Object> params = new HashMap<>();
@@ -429,6 +465,11 @@ public class SchemaService implements Service {
 
 					} finally {
 
+						final long duration = System.currentTimeMillis() - t0;
+
+						statistics.put("indexUpdate", duration);
+						logger.info("Schema reload: index update {} ms", duration);
+
 						updating.set(false);
 					}
 				}
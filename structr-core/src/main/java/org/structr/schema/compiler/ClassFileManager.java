@@ -20,25 +20,41 @@ package org.structr.schema.compiler;
 
 import java.io.IOException;
 import java.security.SecureClassLoader;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.tools.FileObject;
 import javax.tools.ForwardingJavaFileManager;
 import javax.tools.JavaFileObject;
 import javax.tools.JavaFileObject.Kind;
 import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
 
 /**
  *
  *
  */
-public class ClassFileManager extends ForwardingJavaFileManager {
+public class ClassFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
 
 	/**
 	 * Instance of JavaClassObject that will store the compiled byte code of
 	 * our class
 	 */
-	private final Map<String, JavaClassObject> objects = new LinkedHashMap<>();
+	private final Map<String, JavaClassObject> objects = new ConcurrentHashMap<>();
+
+	/**
+	 * Byte code of previously compiled classes that the compiler can
+	 * resolve from the class path during an incremental compilation
+	 */
+	private final Map<String, JavaClassObject> classPath = new LinkedHashMap<>();
+
+	/**
+	 * Byte code written by the compiler in the current compilation
+	 */
+	private final Map<String, JavaClassObject> outputs = new LinkedHashMap<>();
 
 	/**
 	 * Will initialize the manager with the specified standard java file
@@ -93,8 +109,98 @@ public class ClassFileManager extends ForwardingJavaFileManager {
 		
 		JavaClassObject obj = new JavaClassObject(className, kind);
 		
-		objects.put(className, obj);
+		outputs.put(className, obj);
 		
 		return obj;
 	}
+
+	/**
+	 * Adds the given previously compiled classes to the class path of
+	 * the dynamic types package, replacing the current class path.
+	 *
+	 * @param classes map of binary name to byte code
+	 */
+	public void setClassPath(final Map<String, byte[]> classes) {
+
+		classPath.clear();
+		outputs.clear();
+
+		for (final Map.Entry<String, byte[]> entry : classes.entrySet()) {
+			classPath.put(entry.getKey(), new JavaClassObject(entry.getKey(), entry.getValue()));
+		}
+	}
+
+	/**
+	 * Returns the byte code written by the compiler since the last call
+	 * to {@link #setClassPath}.
+	 *
+	 * @return map of binary name to byte code
+	 */
+	public Map<String, byte[]> getOutputs() {
+
+		final Map<String, byte[]> result = new LinkedHashMap<>();
+
+		for (final JavaClassObject obj : outputs.values()) {
+			result.put(obj.getBinaryName(), obj.getBytes());
+		}
+
+		return result;
+	}
+
+	/**
+	 * Replaces the set of classes that can be loaded by the class
+	 * loaders of this file manager.
+	 *
+	 * @param classes map of binary name to byte code
+	 */
+	public void define(final Map<String, byte[]> classes) {
+
+		objects.keySet().retainAll(classes.keySet());
+
+		for (final Map.Entry<String, byte[]> entry : classes.entrySet()) {
+			objects.put(entry.getKey(), new JavaClassObject(entry.getKey(), entry.getValue()));
+		}
+
+		classPath.clear();
+		outputs.clear();
+	}
+
+	@Override
+	public Iterable<JavaFileObject> list(final Location location, final String packageName, final Set<Kind> kinds, final boolean recurse) throws IOException {
+
+		final Iterable<JavaFileObject> files = super.list(location, packageName, kinds, recurse);
+
+		if (StandardLocation.CLASS_PATH.equals(location) && kinds.contains(Kind.CLASS) && !classPath.isEmpty()) {
+
+			final String prefix               = packageName + ".";
+			final List<JavaFileObject> result = new ArrayList<>();
+
+			for (final JavaFileObject file : files) {
+				result.add(file);
+			}
+
+			for (final JavaClassObject obj : classPath.values()) {
+
+				final String name = obj.getBinaryName();
+
+				if (name.startsWith(prefix) && (recurse || name.indexOf('.', prefix.length()) < 0)) {
+					result.add(obj);
+				}
+			}
+
+			return result;
+		}
+
+		return files;
+	}
+
+	@Override
+	public String inferBinaryName(final Location location, final JavaFileObject file) {
+
+		if (file instanceof JavaClassObject) {
+			return ((JavaClassObject)file).getBinaryName();
+		}
+
+		return super.inferBinaryName(location, file);
+	}
 }
\ No newline at end of file
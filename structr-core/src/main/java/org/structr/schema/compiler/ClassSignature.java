@@ -0,0 +1,244 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.schema.compiler;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Calculates a hash of the externally visible signature of compiled
+ * classes, i.e. of everything another class can be compiled against:
+ * class names, modifiers, supertypes, non-private fields and methods,
+ * generic signatures and constant values. Method bodies and private
+ * members do not contribute to the hash, so a change in the body of a
+ * method does not require the recompilation of dependent classes.
+ */
+public class ClassSignature {
+
+	private static final int ACC_PRIVATE = 0x0002;
+
+	/**
+	 * Returns a hash of the signatures of all given classes.
+	 *
+	 * @param classes map of binary name to byte code
+	 * @return the hash
+	 */
+	public static String hash(final Map<String, byte[]> classes) {
+
+		final StringBuilder buf = new StringBuilder();
+
+		for (final Entry<String, byte[]> entry : new TreeMap<>(classes).entrySet()) {
+
+			try {
+				buf.append(describe(entry.getValue()));
+
+			} catch (IOException ioex) {
+
+				// unparseable class file, use the whole byte code
+				buf.append(entry.getKey()).append(DigestUtils.sha256Hex(entry.getValue()));
+			}
+
+			buf.append("\n");
+		}
+
+		return DigestUtils.sha256Hex(buf.toString());
+	}
+
+	// ----- private methods -----
+	private static String describe(final byte[] bytes) throws IOException {
+
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		final StringBuilder buf  = new StringBuilder();
+
+		if (in.readInt() != 0xCAFEBABE) {
+			throw new IOException("Not a class file");
+		}
+
+		// skip minor and major version
+		in.readUnsignedShort();
+		in.readUnsignedShort();
+
+		final Object[] pool  = readConstantPool(in);
+		final int access     = in.readUnsignedShort();
+		final int thisClass  = in.readUnsignedShort();
+		final int superClass = in.readUnsignedShort();
+
+		buf.append(access).append(" ").append(className(pool, thisClass)).append(" extends ").append(className(pool, superClass));
+
+		final int interfaceCount = in.readUnsignedShort();
+		for (int i=0; i<interfaceCount; i++) {
+
+			buf.append(" ").append(className(pool, in.readUnsignedShort()));
+		}
+
+		buf.append(readMembers(in, pool));	// fields
+		buf.append(readMembers(in, pool));	// methods
+		buf.append(readAttributes(in, pool));
+
+		return buf.toString();
+	}
+
+	private static Object[] readConstantPool(final DataInputStream in) throws IOException {
+
+		final int count     = in.readUnsignedShort();
+		final Object[] pool = new Object[count];
+
+		for (int i=1; i<count; i++) {
+
+			final int tag = in.readUnsignedByte();
+
+			switch (tag) {
+
+				case 1:		// Utf8
+					pool[i] = in.readUTF();
+					break;
+
+				case 3:		// Integer
+					pool[i] = in.readInt();
+					break;
+
+				case 4:		// Float
+					pool[i] = in.readFloat();
+					break;
+
+				case 5:		// Long, takes two slots
+					pool[i++] = in.readLong();
+					break;
+
+				case 6:		// Double, takes two slots
+					pool[i++] = in.readDouble();
+					break;
+
+				case 7:		// Class
+				case 8:		// String
+				case 16:	// MethodType
+				case 19:	// Module
+				case 20:	// Package
+					pool[i] = new int[] { in.readUnsignedShort() };
+					break;
+
+				case 9:		// Fieldref
+				case 10:	// Methodref
+				case 11:	// InterfaceMethodref
+				case 12:	// NameAndType
+				case 17:	// Dynamic
+				case 18:	// InvokeDynamic
+					in.readUnsignedShort();
+					in.readUnsignedShort();
+					break;
+
+				case 15:	// MethodHandle
+					in.readUnsignedByte();
+					in.readUnsignedShort();
+					break;
+
+				default:
+					throw new IOException("Unknown constant pool tag " + tag);
+			}
+		}
+
+		return pool;
+	}
+
+	private static String readMembers(final DataInputStream in, final Object[] pool) throws IOException {
+
+		final TreeSet<String> members = new TreeSet<>();
+		final int count               = in.readUnsignedShort();
+
+		for (int i=0; i<count; i++) {
+
+			final int access        = in.readUnsignedShort();
+			final String name       = (String)pool[in.readUnsignedShort()];
+			final String descriptor = (String)pool[in.readUnsignedShort()];
+			final String attributes = readAttributes(in, pool);
+
+			if ((access & ACC_PRIVATE) == 0) {
+
+				members.add(access + " " + name + " " + descriptor + attributes);
+			}
+		}
+
+		return members.toString();
+	}
+
+	private static String readAttributes(final DataInputStream in, final Object[] pool) throws IOException {
+
+		final StringBuilder buf = new StringBuilder();
+		final int count         = in.readUnsignedShort();
+
+		for (int i=0; i<count; i++) {
+
+			final String name = (String)pool[in.readUnsignedShort()];
+			final int length  = in.readInt();
+
+			switch (name) {
+
+				case "ConstantValue":
+					buf.append(" = ").append(constant(pool, in.readUnsignedShort()));
+					break;
+
+				case "Signature":
+					buf.append(" <").append(pool[in.readUnsignedShort()]).append(">");
+					break;
+
+				case "Exceptions":
+				case "InnerClasses":
+				case "EnclosingMethod":
+					final byte[] data = new byte[length];
+					in.readFully(data);
+					buf.append(" ").append(name).append(":").append(DigestUtils.sha256Hex(data));
+					break;
+
+				default:
+					in.skipBytes(length);
+					break;
+			}
+		}
+
+		return buf.toString();
+	}
+
+	private static String className(final Object[] pool, final int index) {
+
+		if (index == 0) {
+			return "";
+		}
+
+		return (String)pool[((int[])pool[index])[0]];
+	}
+
+	private static String constant(final Object[] pool, final int index) {
+
+		final Object value = pool[index];
+
+		if (value instanceof int[]) {
+
+			// String constant, resolve Utf8 entry
+			return "\"" + pool[((int[])value)[0]] + "\"";
+		}
+
+		return String.valueOf(value);
+	}
+}
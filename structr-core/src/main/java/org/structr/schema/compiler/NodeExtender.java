@@ -18,24 +18,40 @@
  */
 package org.structr.schema.compiler;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javax.tools.Diagnostic;
 import javax.tools.Diagnostic.Kind;
 import javax.tools.DiagnosticListener;
 import javax.tools.JavaCompiler;
-import javax.tools.JavaFileManager;
 import javax.tools.JavaFileObject;
 import javax.tools.ToolProvider;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.api.config.Settings;
@@ -48,24 +64,39 @@ import org.structr.core.graph.TransactionCommand;
 import org.structr.module.JarConfigurationProvider;
 
 /**
+ * Compiles the generated source code of dynamic types.
  *
- *
+ * Compilation is incremental: each type is identified by a hash of its
+ * source code, and only types whose source has changed are compiled.
+ * Types that depend on a recompiled type are recompiled as well if the
+ * signature of the recompiled type has changed (see {@link ClassSignature}).
+ * The byte code of compiled types can be stored on disk, keyed by the
+ * source hash, so that a restart with an unchanged schema does not
+ * need to invoke the compiler at all.
  */
 public class NodeExtender {
 
 	private static final Logger logger   = LoggerFactory.getLogger(NodeExtender.class.getName());
 
-	private static final JavaCompiler compiler       = ToolProvider.getSystemJavaCompiler();
-	private static final JavaFileManager fileManager = new ClassFileManager(compiler.getStandardFileManager(null, null, null));
-	private static final ClassLoader classLoader     = fileManager.getClassLoader(null);
-	private static final Map<String, Class> classes  = new TreeMap<>();
+	private static final Pattern IDENTIFIER                      = Pattern.compile("[A-Za-z_$][A-Za-z0-9_$]*");
+	private static final int CACHE_FILE_MAGIC                    = 0x53545243;
+	private static final int MAX_COMPILATION_ROUNDS              = 5;
+
+	private static final JavaCompiler compiler                   = ToolProvider.getSystemJavaCompiler();
+	private static final ClassFileManager fileManager            = new ClassFileManager(compiler.getStandardFileManager(null, null, null));
+	private static final ClassLoader classLoader                 = fileManager.getClassLoader(null);
+	private static final Map<String, Class> classes              = new TreeMap<>();
+	private static final Map<String, CompiledType> compiledTypes = new LinkedHashMap<>();
+	private static String classPathFingerprint                   = null;
 
-	private List<JavaFileObject> jfiles  = null;
-	private Set<String> fqcns            = null;
+	private Map<String, CharSequenceJavaFileObject> jfiles = null;
+	private Set<String> fqcns                              = null;
+	private int compiledCount                              = 0;
+	private int cachedCount                                = 0;
 
 	public NodeExtender() {
 
-		jfiles      = new ArrayList<>();
+		jfiles      = new LinkedHashMap<>();
 		fqcns       = new LinkedHashSet<>();
 	}
 
@@ -87,7 +118,7 @@ public class NodeExtender {
 
 			final String packageName = JarConfigurationProvider.DYNAMIC_TYPES_PACKAGE;
 
-			jfiles.add(new CharSequenceJavaFileObject(className, content));
+			jfiles.put(className, new CharSequenceJavaFileObject(className, content));
 			fqcns.add(packageName.concat(".".concat(className)));
 
 			if (Settings.LogSchemaOutput.getValue()) {
@@ -98,6 +129,26 @@ public class NodeExtender {
 		}
 	}
 
+	/**
+	 * Returns the number of types that were compiled in the last call to
+	 * {@link #compile}.
+	 *
+	 * @return the number of compiled types
+	 */
+	public int getCompiledCount() {
+		return compiledCount;
+	}
+
+	/**
+	 * Returns the number of types whose byte code was reused from memory
+	 * or from the disk cache in the last call to {@link #compile}.
+	 *
+	 * @return the number of reused types
+	 */
+	public int getCachedCount() {
+		return cachedCount;
+	}
+
 	public synchronized Map<String, Class> compile(final ErrorBuffer errorBuffer) throws ClassNotFoundException {
 
 		final Writer errorWriter     = new StringWriter();
@@ -105,12 +156,124 @@ public class NodeExtender {
 
 		if (!jfiles.isEmpty()) {
 
-			logger.debug("Compiling {} dynamic entities...", jfiles.size());
+			final Map<String, String> hashes          = new LinkedHashMap<>();
+			final Map<String, Set<String>> references = new LinkedHashMap<>();
+
+			for (final CharSequenceJavaFileObject file : jfiles.values()) {
+				hashes.put(file.getClassName(), getSourceHash(file));
+			}
+
+			for (final CharSequenceJavaFileObject file : jfiles.values()) {
+				references.put(file.getClassName(), getReferences(file, hashes.keySet()));
+			}
+
+			final Map<String, CompiledType> types = findUpToDateTypes(hashes, references);
+			final Set<String> compiled            = new LinkedHashSet<>();
+			Set<String> toCompile                 = new LinkedHashSet<>(jfiles.keySet());
+			Boolean success                       = true;
+			int round                             = 0;
+
+			toCompile.removeAll(types.keySet());
+
+			while (success && !toCompile.isEmpty()) {
+
+				// fall back to compiling everything at once if the signatures don't settle
+				if (++round > MAX_COMPILATION_ROUNDS) {
+
+					toCompile.addAll(jfiles.keySet());
+				}
+
+				final List<JavaFileObject> files = new ArrayList<>();
+				final Map<String, byte[]> path   = new LinkedHashMap<>();
+
+				for (final String name : toCompile) {
+					files.add(jfiles.get(name));
+				}
+
+				for (final CompiledType type : types.values()) {
+
+					if (!toCompile.contains(type.name)) {
+						path.putAll(type.classes);
+					}
+				}
+
+				logger.debug("Compiling {} of {} dynamic entities...", files.size(), jfiles.size());
+
+				fileManager.setClassPath(path);
+
+				success = compiler.getTask(errorWriter, fileManager, new Listener(errorBuffer), null, null, files).call();
+				if (success) {
+
+					final Map<String, byte[]> outputs = fileManager.getOutputs();
+
+					for (final String name : toCompile) {
+
+						final String fqcn       = JarConfigurationProvider.DYNAMIC_TYPES_PACKAGE + "." + name;
+						final CompiledType type = new CompiledType(name, hashes.get(name));
+
+						for (final Entry<String, byte[]> entry : outputs.entrySet()) {
+
+							final String binaryName = entry.getKey();
+
+							if (binaryName.equals(fqcn) || binaryName.startsWith(fqcn + "$")) {
+								type.classes.put(binaryName, entry.getValue());
+							}
+						}
+
+						type.signature = ClassSignature.hash(type.classes);
+
+						types.put(name, type);
+					}
+
+					// record the signatures this round was compiled against
+					for (final String name : toCompile) {
+
+						final CompiledType type = types.get(name);
+
+						for (final String dependency : references.get(name)) {
+
+							final CompiledType dependencyType = types.get(dependency);
+							type.dependencies.put(dependency, dependencyType != null ? dependencyType.signature : "");
+						}
+					}
+
+					compiled.addAll(toCompile);
+
+					// recompile types that were compiled against a different signature
+					final Set<String> next = new LinkedHashSet<>();
+
+					for (final CompiledType type : types.values()) {
+
+						if (!toCompile.contains(type.name)) {
+
+							for (final String name : toCompile) {
+
+								final String recorded = type.dependencies.get(name);
+								if (recorded != null && !recorded.equals(types.get(name).signature)) {
 
-			Boolean success = compiler.getTask(errorWriter, fileManager, new Listener(errorBuffer), null, null, jfiles).call();
+									next.add(type.name);
+								}
+							}
+						}
+					}
+
+					toCompile = next;
+				}
+			}
+
+			compiledCount = compiled.size();
+			cachedCount   = jfiles.size() - compiledCount;
 
 			if (success) {
 
+				final Map<String, byte[]> byteCode = new LinkedHashMap<>();
+
+				for (final CompiledType type : types.values()) {
+					byteCode.putAll(type.classes);
+				}
+
+				fileManager.define(byteCode);
+
 				final ClassLoader loader = fileManager.getClassLoader(null);
 
 				for (final String fqcn : fqcns) {
@@ -142,7 +305,19 @@ public class NodeExtender {
 						classes.put(newType.getName(), newType);
 					}
 
-					logger.info("Successfully compiled {} dynamic entities: {}", new Object[] { jfiles.size(), jfiles.stream().map(f -> f.getName().replaceFirst("/", "")).collect(Collectors.joining(", ")) });
+					compiledTypes.clear();
+					compiledTypes.putAll(types);
+
+					if (compiled.isEmpty()) {
+
+						logger.info("Loaded {} dynamic entities without compilation", jfiles.size());
+
+					} else {
+
+						logger.info("Successfully compiled {} of {} dynamic entities: {}", new Object[] { compiled.size(), jfiles.size(), compiled.stream().collect(Collectors.joining(", ")) });
+					}
+
+					updateCache(compiled);
 
 					for (final StructrTransactionListener listener : TransactionCommand.getTransactionListeners()) {
 						listener.simpleBroadcast();
@@ -159,6 +334,263 @@ public class NodeExtender {
 		return classes;
 	}
 
+	// ----- private methods -----
+	/**
+	 * Returns the types whose byte code from a previous compilation can be
+	 * reused, i.e. whose source is unchanged and which were compiled
+	 * against the current signatures of all the types they reference.
+	 */
+	private Map<String, CompiledType> findUpToDateTypes(final Map<String, String> hashes, final Map<String, Set<String>> references) {
+
+		final Map<String, CompiledType> candidates = new LinkedHashMap<>();
+		final Map<String, CompiledType> result     = new LinkedHashMap<>();
+
+		for (final Entry<String, String> entry : hashes.entrySet()) {
+
+			final String name = entry.getKey();
+			final String hash = entry.getValue();
+			CompiledType type = compiledTypes.get(name);
+
+			if (type == null || !hash.equals(type.sourceHash)) {
+
+				type = readFromCache(hash);
+			}
+
+			if (type != null && name.equals(type.name) && type.dependencies.keySet().equals(references.get(name))) {
+
+				candidates.put(name, type);
+			}
+		}
+
+		// dependencies that are recompiled are checked after their compilation
+		for (final CompiledType type : candidates.values()) {
+
+			boolean upToDate = true;
+
+			for (final Entry<String, String> dependency : type.dependencies.entrySet()) {
+
+				final CompiledType dependencyType = candidates.get(dependency.getKey());
+				if (dependencyType != null && !dependencyType.signature.equals(dependency.getValue())) {
+
+					upToDate = false;
+					break;
+				}
+			}
+
+			if (upToDate) {
+				result.put(type.name, type);
+			}
+		}
+
+		return result;
+	}
+
+	private Set<String> getReferences(final CharSequenceJavaFileObject file, final Set<String> typeNames) {
+
+		final Set<String> references = new TreeSet<>();
+		final Matcher matcher        = IDENTIFIER.matcher(file.getCharContent(true));
+
+		while (matcher.find()) {
+
+			final String identifier = matcher.group();
+
+			if (typeNames.contains(identifier) && !identifier.equals(file.getClassName())) {
+				references.add(identifier);
+			}
+		}
+
+		return references;
+	}
+
+	private String getSourceHash(final CharSequenceJavaFileObject file) {
+		return DigestUtils.sha256Hex(getClassPathFingerprint() + "\n" + file.getClassName() + "\n" + file.getCharContent(true));
+	}
+
+	/**
+	 * Identifies the Java version and the class path that the dynamic
+	 * types are compiled against, so that cached byte code is not reused
+	 * after an update of Structr or of a module.
+	 */
+	private static synchronized String getClassPathFingerprint() {
+
+		if (classPathFingerprint == null) {
+
+			final StringBuilder buf = new StringBuilder(System.getProperty("java.version"));
+
+			for (final String entry : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+
+				final File file = new File(entry);
+
+				buf.append(File.pathSeparator).append(entry);
+
+				if (file.isDirectory()) {
+
+					try (final Stream<Path> stream = Files.walk(file.toPath())) {
+
+						buf.append(":").append(stream.mapToLong(p -> p.toFile().lastModified()).max().orElse(0L));
+
+					} catch (IOException ioex) {
+
+						buf.append(":").append(System.currentTimeMillis());
+					}
+
+				} else {
+
+					buf.append(":").append(file.length()).append(":").append(file.lastModified());
+				}
+			}
+
+			classPathFingerprint = DigestUtils.sha256Hex(buf.toString());
+		}
+
+		return classPathFingerprint;
+	}
+
+	private static Path getCachePath() {
+
+		if (Settings.SchemaCache.getValue()) {
+			return Paths.get(Settings.getFullSettingPath(Settings.SchemaCachePath));
+		}
+
+		return null;
+	}
+
+	private static CompiledType readFromCache(final String hash) {
+
+		final Path cachePath = getCachePath();
+		if (cachePath != null) {
+
+			final Path file = cachePath.resolve(hash + ".class-cache");
+			if (Files.exists(file)) {
+
+				try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+
+					return CompiledType.read(in, hash);
+
+				} catch (IOException ioex) {
+
+					logger.warn("Unable to read cached byte code from {}: {}", file, ioex.getMessage());
+				}
+			}
+		}
+
+		return null;
+	}
+
+	private static void updateCache(final Set<String> compiled) {
+
+		final Path cachePath = getCachePath();
+		if (cachePath != null) {
+
+			try {
+
+				Files.createDirectories(cachePath);
+
+				for (final String name : compiled) {
+
+					final CompiledType type = compiledTypes.get(name);
+					final Path file         = cachePath.resolve(type.sourceHash + ".class-cache");
+					final Path tmp          = cachePath.resolve(type.sourceHash + ".tmp");
+
+					try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+						type.write(out);
+					}
+
+					Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+				}
+
+				// remove byte code of types that no longer exist
+				final Set<String> current = compiledTypes.values().stream().map(t -> t.sourceHash + ".class-cache").collect(Collectors.toSet());
+
+				try (final Stream<Path> files = Files.list(cachePath)) {
+
+					for (final Path file : files.collect(Collectors.toList())) {
+
+						final String fileName = file.getFileName().toString();
+
+						if (fileName.endsWith(".class-cache") && !current.contains(fileName)) {
+							Files.deleteIfExists(file);
+						}
+					}
+				}
+
+			} catch (IOException ioex) {
+
+				logger.warn("Unable to write byte code cache to {}: {}", cachePath, ioex.getMessage());
+			}
+		}
+	}
+
+	// ----- nested classes -----
+	private static class CompiledType {
+
+		private final Map<String, String> dependencies = new TreeMap<>();
+		private final Map<String, byte[]> classes      = new LinkedHashMap<>();
+		private String sourceHash                      = null;
+		private String signature                       = null;
+		private String name                            = null;
+
+		public CompiledType(final String name, final String sourceHash) {
+
+			this.name       = name;
+			this.sourceHash = sourceHash;
+		}
+
+		public void write(final DataOutputStream out) throws IOException {
+
+			out.writeInt(CACHE_FILE_MAGIC);
+			out.writeUTF(name);
+			out.writeUTF(signature);
+
+			out.writeInt(dependencies.size());
+
+			for (final Entry<String, String> entry : dependencies.entrySet()) {
+
+				out.writeUTF(entry.getKey());
+				out.writeUTF(entry.getValue());
+			}
+
+			out.writeInt(classes.size());
+
+			for (final Entry<String, byte[]> entry : classes.entrySet()) {
+
+				out.writeUTF(entry.getKey());
+				out.writeInt(entry.getValue().length);
+				out.write(entry.getValue());
+			}
+		}
+
+		public static CompiledType read(final DataInputStream in, final String sourceHash) throws IOException {
+
+			if (in.readInt() != CACHE_FILE_MAGIC) {
+				throw new IOException("Invalid cache file");
+			}
+
+			final CompiledType type = new CompiledType(in.readUTF(), sourceHash);
+
+			type.signature = in.readUTF();
+
+			final int dependencyCount = in.readInt();
+			for (int i=0; i<dependencyCount; i++) {
+
+				type.dependencies.put(in.readUTF(), in.readUTF());
+			}
+
+			final int classCount = in.readInt();
+			for (int i=0; i<classCount; i++) {
+
+				final String binaryName = in.readUTF();
+				final byte[] bytes      = new byte[in.readInt()];
+
+				in.readFully(bytes);
+
+				type.classes.put(binaryName, bytes);
+			}
+
+			return type;
+		}
+	}
+
 	private static class Listener implements DiagnosticListener<JavaFileObject> {
 
 		private ErrorBuffer errorBuffer = null;
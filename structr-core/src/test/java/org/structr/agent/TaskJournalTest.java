@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.agent;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the restart behaviour of the {@link TaskJournal}.
+ */
+public class TaskJournalTest {
+
+	private Path directory = null;
+	private Path path      = null;
+
+	@Before
+	public void setup() throws IOException {
+
+		directory = Files.createTempDirectory("structr-task-journal");
+		path      = directory.resolve("agent-tasks.journal");
+	}
+
+	@After
+	public void cleanup() throws IOException {
+
+		Files.deleteIfExists(path);
+		Files.deleteIfExists(directory);
+	}
+
+	@Test
+	public void testRestoreUnfinishedTasks() throws IOException {
+
+		final TaskJournal journal = new TaskJournal(path);
+
+		assertTrue(journal.open().isEmpty());
+		assertEquals(0L, journal.getLastId());
+
+		assertTrue(journal.append(createEntry(1L)));
+		assertTrue(journal.append(createEntry(2L)));
+		assertTrue(journal.append(createEntry(3L)));
+
+		journal.remove(2L);
+		journal.close();
+
+		// restart
+		final TaskJournal restarted = new TaskJournal(path);
+
+		assertEquals(Arrays.asList(1L, 3L), getIds(restarted.open()));
+		assertEquals(3L, restarted.getLastId());
+
+		// new tasks continue after the restored ones
+		assertTrue(restarted.append(createEntry(restarted.getLastId() + 1)));
+
+		restarted.remove(1L);
+		restarted.close();
+
+		// second restart
+		final TaskJournal restartedAgain = new TaskJournal(path);
+
+		assertEquals(Arrays.asList(3L, 4L), getIds(restartedAgain.open()));
+
+		restartedAgain.close();
+	}
+
+	@Test
+	public void testAppendBeforeOpen() throws IOException {
+
+		final TaskJournal journal = new TaskJournal(path);
+
+		// entries can not be persisted before the journal is opened
+		assertFalse(journal.append(createEntry(1L)));
+
+		journal.open();
+
+		assertTrue(journal.append(createEntry(2L)));
+
+		journal.close();
+
+		assertFalse(journal.append(createEntry(3L)));
+
+		final TaskJournal restarted = new TaskJournal(path);
+
+		assertEquals(Arrays.asList(2L), getIds(restarted.open()));
+
+		restarted.close();
+	}
+
+	@Test
+	public void testCompactWhileRunning() throws IOException {
+
+		final TaskJournal journal = new TaskJournal(path, 10);
+
+		journal.open();
+
+		assertTrue(journal.append(createEntry(1L)));
+
+		for (long id = 2L; id < 100L; id++) {
+
+			assertTrue(journal.append(createEntry(id)));
+			journal.remove(id);
+		}
+
+		// 98 done entries with a threshold of 10 leave 8 entries after the last compaction
+		assertEquals(1 + 2 * 8, Files.readAllLines(path).size());
+
+		journal.close();
+
+		final TaskJournal restarted = new TaskJournal(path);
+
+		assertEquals(Arrays.asList(1L), getIds(restarted.open()));
+		assertEquals(99L, restarted.getLastId());
+
+		restarted.close();
+	}
+
+	// ----- private methods -----
+	private TaskJournal.Entry createEntry(final long id) {
+		return new TaskJournal.Entry(id, AbstractTask.class.getName(), "type", 0, "user", Arrays.asList("node" + id));
+	}
+
+	private List<Long> getIds(final Iterable<TaskJournal.Entry> entries) {
+
+		final List<Long> ids = new ArrayList<>();
+
+		for (final TaskJournal.Entry entry : entries) {
+			ids.add(entry.getId());
+		}
+
+		return ids;
+	}
+}
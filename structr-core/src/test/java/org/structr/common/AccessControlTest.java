@@ -28,6 +28,7 @@ import static org.junit.Assert.fail;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
 import org.structr.api.graph.Direction;
 import org.structr.api.graph.Relationship;
 import org.structr.api.util.Iterables;
@@ -1048,7 +1049,77 @@ public class AccessControlTest extends StructrTest {
 
 	}
 
+	@Test
+	public void test10PagingWithParallelInstantiation() {
+
+		// remove auto-generated resource access objects
+		clearResourceAccess();
+
+		final int threshold   = Settings.InstantiationThreshold.getValue();
+		final int parallelism = Settings.InstantiationParallelism.getValue();
+
+		try {
+
+			final TestUser user = createTestNode(TestUser.class);
+
+			try (final Tx tx = app.tx()) {
+
+				for (int i=0; i<3000; i++) {
+
+					final TestOne node = app.create(TestOne.class, "node" + String.format("%04d", i));
+
+					// every other node is readable for the user
+					if (i % 2 == 0) {
+						node.grant(Permission.read, user);
+					}
+				}
+
+				tx.success();
+			}
+
+			final SecurityContext userContext = SecurityContext.getInstance(user, AccessMode.Backend);
+			final App userApp                 = StructrApp.getInstance(userContext);
+
+			Settings.InstantiationThreshold.setValue(0);
+
+			final Result serial = getPage(userApp);
+
+			Settings.InstantiationThreshold.setValue(100);
+			Settings.InstantiationParallelism.setValue(4);
+
+			final Result parallel = getPage(userApp);
+
+			assertEquals("Invalid result count", 1500, (int)serial.getRawResultCount());
+			assertEquals("Parallel instantiation must not change the result count", serial.getRawResultCount(), parallel.getRawResultCount());
+			assertEquals("Invalid page size", 20, parallel.size());
+
+			for (int i=0; i<20; i++) {
+
+				assertEquals("Parallel instantiation must not change the result", serial.get(i).getUuid(), parallel.get(i).getUuid());
+				assertEquals("Invalid node on page", "node" + String.format("%04d", (1000 + i) * 2), parallel.get(i).getProperty(AbstractNode.name));
+			}
+
+		} catch (FrameworkException ex) {
+
+			logger.warn("", ex);
+			fail("Unexpected exception");
+
+		} finally {
+
+			Settings.InstantiationThreshold.setValue(threshold);
+			Settings.InstantiationParallelism.setValue(parallelism);
+		}
+	}
+
 	// ----- private methods -----
+	private Result getPage(final App userApp) throws FrameworkException {
+
+		try (final Tx tx = userApp.tx()) {
+
+			return userApp.nodeQuery(TestOne.class).sort(AbstractNode.name).pageSize(20).page(51).getResult();
+		}
+	}
+
 	public static void clearResourceAccess() {
 
 		final App app = StructrApp.getInstance();
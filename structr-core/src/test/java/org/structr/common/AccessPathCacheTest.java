@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+import org.structr.api.config.Settings;
+import org.structr.api.util.Cachable;
+import org.structr.core.entity.Principal;
+import org.structr.core.graph.NodeInterface;
+
+/**
+ * Tests the reverse indexes of {@link AccessPathCache} without a database.
+ */
+public class AccessPathCacheTest {
+
+	@Test
+	public void testRevokeAfterEvictionAndRecreation() {
+
+		final NodeInterface node = createNode(NodeInterface.class, "node");
+		final Principal user     = createNode(Principal.class, "user");
+		final Set<String> grant  = Collections.singleton("grant");
+		final Set<String> empty  = Collections.emptySet();
+
+		AccessPathCache.putPermission(node, user, Permission.read, true, grant, empty);
+
+		final Cachable evicted = AccessPathCache.getCacheEntry(node, user);
+		assertNotNull("Permission should be cached", evicted);
+
+		// fill the cache so that the entry is evicted
+		final int count = Settings.PermissionCacheSize.getValue() * 2;
+		for (int i=0; i<count; i++) {
+
+			AccessPathCache.putPermission(createNode(NodeInterface.class, "other" + i), user, Permission.read, true, empty, empty);
+		}
+
+		AccessPathCache.putPermission(node, user, Permission.read, true, grant, empty);
+
+		final Cachable recreated = AccessPathCache.getCacheEntry(node, user);
+		assertNotSame("Entry should have been evicted and re-created", evicted, recreated);
+
+		// the eviction callback of the old entry runs outside of the
+		// cache lock and can therefore run after the re-creation
+		evicted.invalidate();
+
+		assertEquals("Permission should be cached", Boolean.TRUE, AccessPathCache.getPermission(node, user, Permission.read));
+
+		// revoke grant
+		AccessPathCache.invalidateForId("grant");
+
+		assertNull("Revoked permission must not be cached", AccessPathCache.getPermission(node, user, Permission.read));
+	}
+
+	// ----- private methods -----
+	private <T extends NodeInterface> T createNode(final Class<T> type, final String uuid) {
+
+		return (T)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { type }, (proxy, method, args) -> {
+
+			switch (method.getName()) {
+
+				case "getUuid":
+					return uuid;
+
+				case "hashCode":
+					return uuid.hashCode();
+
+				case "equals":
+					return proxy == args[0];
+
+				case "toString":
+					return uuid;
+			}
+
+			throw new UnsupportedOperationException(method.getName());
+		});
+	}
+}
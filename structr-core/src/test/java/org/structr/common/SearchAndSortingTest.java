@@ -2103,6 +2103,72 @@ public class SearchAndSortingTest extends StructrTest {
 
 	}
 
+	@Test
+	public void test09PagingResultCountWithIgnoreResultCount() {
+
+		Principal tester = null;
+
+		try (final Tx tx = app.tx()) {
+
+			tester = app.create(TestUser.class, "tester");
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception");
+		}
+
+		try {
+
+			final Class type                   = TestOne.class;
+			final int number                   = 30;
+			final int pageSize                 = 10;
+			final List<NodeInterface> allNodes = this.createTestNodes(type, number);
+
+			try (final Tx tx = app.tx()) {
+
+				for (final NodeInterface node : allNodes) {
+					node.setProperty(NodeInterface.owner, tester);
+				}
+
+				tx.success();
+			}
+
+			// non-superuser contexts make the query page in Factory instead of the database
+			final SecurityContext fullCountContext = SecurityContext.getInstance(tester, AccessMode.Backend);
+			final SecurityContext noCountContext   = SecurityContext.getInstance(tester, AccessMode.Backend);
+
+			noCountContext.ignoreResultCount(true);
+
+			try (final Tx tx = app.tx()) {
+
+				final Result result = StructrApp.getInstance(fullCountContext).nodeQuery(type).sort(AbstractNode.name).pageSize(pageSize).page(1).getResult();
+
+				assertEquals("Invalid result size", pageSize, result.size());
+				assertEquals("Raw result count should include all visible nodes", number, (int)result.getRawResultCount());
+
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				final Result result = StructrApp.getInstance(noCountContext).nodeQuery(type).sort(AbstractNode.name).pageSize(pageSize).page(1).getResult();
+
+				assertEquals("Invalid result size", pageSize, result.size());
+				assertEquals("Raw result count should stop one element after the page when the count is ignored", pageSize + 1, (int)result.getRawResultCount());
+
+				tx.success();
+			}
+
+		} catch (FrameworkException ex) {
+
+			logger.error(ex.toString());
+			fail("Unexpected exception");
+		}
+	}
+
 	// ----- private methods -----
 	private void testPaging(final Class type, final int pageSize, final int page, final int number, final int offset, final boolean includeDeletedAndHidden, final boolean publicOnly, final PropertyKey sortKey, final boolean sortDesc) throws FrameworkException {
 
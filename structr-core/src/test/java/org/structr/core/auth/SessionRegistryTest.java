@@ -0,0 +1,172 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.auth;
+
+import java.util.LinkedList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Before;
+import org.junit.Test;
+import org.structr.api.config.Settings;
+import org.structr.core.Services;
+
+/**
+ * Tests for the {@link SessionRegistry}.
+ */
+public class SessionRegistryTest {
+
+	private final SessionRegistry registry                      = SessionRegistry.getInstance();
+	private final List<String> invalidated                      = new LinkedList<>();
+	private final SessionRegistry.InvalidationListener listener = invalidated::add;
+
+	@Before
+	public void setup() {
+
+		registry.clear();
+		registry.addInvalidationListener(listener);
+	}
+
+	@After
+	public void cleanup() {
+
+		registry.removeInvalidationListener(listener);
+		registry.clear();
+	}
+
+	@Test
+	public void testRegisterAndUnregister() {
+
+		registry.register("session1", "user1");
+		registry.register("session2", "user1");
+		registry.register("session3", "user2");
+
+		assertEquals("user1", registry.getPrincipalId("session1"));
+		assertEquals("user1", registry.getPrincipalId("session2"));
+		assertEquals("user2", registry.getPrincipalId("session3"));
+		assertNull(registry.getPrincipalId("unknown"));
+		assertNull(registry.getPrincipalId(null));
+
+		registry.unregister("session1");
+
+		assertNull(registry.getPrincipalId("session1"));
+
+		registry.unregisterPrincipal("user1");
+
+		assertNull(registry.getPrincipalId("session2"));
+		assertEquals("user2", registry.getPrincipalId("session3"));
+
+		// every local change is reported to the other cluster members
+		assertEquals(5, invalidated.size());
+		assertTrue(invalidated.contains("session1"));
+		assertTrue(invalidated.contains("session2"));
+	}
+
+	@Test
+	public void testInvalidateDoesNotNotify() {
+
+		registry.register("session1", "user1");
+		invalidated.clear();
+
+		registry.invalidate("session1");
+
+		assertNull(registry.getPrincipalId("session1"));
+		assertTrue(invalidated.isEmpty());
+	}
+
+	@Test
+	public void testAnonymousCaching() {
+
+		// sessions without a principal are cached as anonymous
+		registry.cache("anonymous1", null);
+
+		assertEquals(SessionRegistry.ANONYMOUS, registry.getPrincipalId("anonymous1"));
+		assertEquals(1, registry.getStatistics().get("anonymous"));
+
+		// a database lookup does not replace a registration
+		registry.register("session1", "user1");
+		registry.cache("session1", null);
+
+		assertEquals("user1", registry.getPrincipalId("session1"));
+
+		// but a registration replaces a cached lookup
+		registry.register("anonymous1", "user2");
+
+		assertEquals("user2", registry.getPrincipalId("anonymous1"));
+		assertEquals(0, registry.getStatistics().get("anonymous"));
+	}
+
+	@Test
+	public void testExpiry() {
+
+		final long timeout = Services.getGlobalSessionTimeout() * 1000L;
+
+		assumeTrue(timeout > 0);
+
+		final long now         = System.currentTimeMillis();
+		final long expirations = (Long)registry.getStatistics().get("expirations");
+
+		registry.register("session1", "user1");
+		registry.register("session2", "user2");
+
+		// access keeps a session alive
+		assertEquals("user1", registry.getPrincipalId("session1", now + timeout - 1000));
+		assertEquals("user1", registry.getPrincipalId("session1", now + timeout + 1000));
+
+		// sessions expire after the timeout without access
+		assertNull(registry.getPrincipalId("session2", now + timeout + 1000));
+		assertNull(registry.getPrincipalId("session2"));
+
+		assertEquals(expirations + 1, registry.getStatistics().get("expirations"));
+	}
+
+	@Test
+	public void testPurgeAnonymousEntries() {
+
+		final int maxSize = Settings.SessionCacheSize.getValue();
+
+		try {
+
+			Settings.SessionCacheSize.setValue(10);
+
+			for (int i = 0; i < 2000; i++) {
+				registry.cache("anonymous" + i, null);
+			}
+
+			// the registry is purged at least once during the next 1024 writes
+			for (int i = 0; i < 1024; i++) {
+				registry.register("session" + i, "user" + i);
+			}
+
+			assertEquals(0, registry.getStatistics().get("anonymous"));
+
+			// sessions of principals are kept
+			for (int i = 0; i < 1024; i++) {
+				assertEquals("user" + i, registry.getPrincipalId("session" + i));
+			}
+
+		} finally {
+
+			Settings.SessionCacheSize.setValue(maxSize);
+		}
+	}
+}
@@ -0,0 +1,241 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.structr.api.config.Settings;
+import org.structr.common.StructrTest;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.graph.ValueCacheCommand;
+
+/**
+ * Tests expiry, single-flight refresh and statistics of {@link ValueCache}.
+ */
+public class ValueCacheTest extends StructrTest {
+
+	private final boolean serveStale = Settings.ValueCacheStale.getValue();
+
+	@Before
+	public void clearValueCache() {
+		ValueCache.clear();
+	}
+
+	@After
+	public void resetSettings() {
+		Settings.ValueCacheStale.setValue(serveStale);
+	}
+
+	@Test
+	public void testExpiry() throws Exception {
+
+		final AtomicInteger calls = new AtomicInteger();
+		final long t0             = System.currentTimeMillis();
+
+		assertEquals("Invalid cached value", 1, ValueCache.get("expiry", 1, () -> calls.incrementAndGet()));
+		assertEquals("Value should not be recomputed before it expires", 1, ValueCache.get("expiry", 1, () -> calls.incrementAndGet()));
+
+		// the timeout includes a random delay of up to 10 seconds
+		Object value = 1;
+		while (value.equals(1) && System.currentTimeMillis() - t0 < 15000) {
+
+			Thread.sleep(100);
+			value = ValueCache.get("expiry", 1, () -> calls.incrementAndGet());
+		}
+
+		assertEquals("Value should be recomputed after it expired", 2, value);
+		assertTrue("Value should not expire before its timeout", System.currentTimeMillis() - t0 >= 1000);
+		assertEquals("Supplier should be called once per expiry", 2, calls.get());
+	}
+
+	@Test
+	public void testSingleFlightLoad() throws Exception {
+
+		final List<Future<Object>> results = new ArrayList<>();
+		final ExecutorService executor     = Executors.newFixedThreadPool(8);
+		final CountDownLatch entered       = new CountDownLatch(1);
+		final CountDownLatch release       = new CountDownLatch(1);
+		final AtomicInteger calls          = new AtomicInteger();
+
+		try {
+
+			for (int i=0; i<8; i++) {
+
+				results.add(executor.submit(() -> ValueCache.get("single", 60, () -> {
+
+					calls.incrementAndGet();
+					entered.countDown();
+
+					await(release);
+
+					return "loaded";
+				})));
+			}
+
+			assertTrue("Supplier was not called", entered.await(10, TimeUnit.SECONDS));
+
+			// give the other callers time to reach the cache
+			Thread.sleep(500);
+
+			release.countDown();
+
+			for (final Future<Object> result : results) {
+				assertEquals("All callers should receive the loaded value", "loaded", result.get(10, TimeUnit.SECONDS));
+			}
+
+			assertEquals("Supplier should be called only once for concurrent callers", 1, calls.get());
+
+		} finally {
+
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testStaleValueIsServedDuringRefresh() throws Exception {
+
+		Settings.ValueCacheStale.setValue(true);
+
+		final CountDownLatch entered = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger calls    = new AtomicInteger();
+
+		assertEquals("Invalid cached value", "old", ValueCache.get("stale", 1, () -> "old"));
+
+		// refresh the value as soon as it has expired, blocking in the supplier
+		final Thread refresher = new Thread(() -> {
+
+			final long t0 = System.currentTimeMillis();
+
+			try {
+
+				while (entered.getCount() > 0 && System.currentTimeMillis() - t0 < 15000) {
+
+					ValueCache.get("stale", 1, () -> {
+
+						entered.countDown();
+						await(release);
+
+						return "new";
+					});
+
+					Thread.sleep(100);
+				}
+
+			} catch (FrameworkException | InterruptedException ex) {
+				ex.printStackTrace();
+			}
+		});
+
+		refresher.start();
+
+		try {
+
+			assertTrue("Value did not expire", entered.await(20, TimeUnit.SECONDS));
+
+			final long staleHits = (Long)ValueCache.getStatistics().get("staleHits");
+
+			assertEquals("Stale value should be served during refresh", "old", ValueCache.get("stale", 1, () -> calls.incrementAndGet()));
+			assertEquals("Supplier should not be called during refresh", 0, calls.get());
+			assertEquals("Invalid number of stale hits", staleHits + 1, (long)(Long)ValueCache.getStatistics().get("staleHits"));
+
+		} finally {
+
+			release.countDown();
+			refresher.join(10000);
+		}
+
+		assertEquals("Refreshed value should be served after refresh", "new", ValueCache.get("stale", 1, () -> calls.incrementAndGet()));
+		assertEquals("Supplier should not be called after refresh", 0, calls.get());
+	}
+
+	@Test
+	public void testLoadFailures() throws Exception {
+
+		final long loadFailures = (Long)ValueCache.getStatistics().get("loadFailures");
+		final long loads        = (Long)ValueCache.getStatistics().get("loads");
+
+		try {
+
+			ValueCache.get("failure", 60, () -> { throw new FrameworkException(422, "Expected failure"); });
+			fail("Exception from supplier should be passed to the caller");
+
+		} catch (FrameworkException fex) {
+
+			assertEquals("Invalid status code", 422, fex.getStatus());
+		}
+
+		try {
+
+			ValueCache.get("failure", 60, () -> { throw new IllegalStateException("Expected failure"); });
+			fail("Exception from supplier should be passed to the caller");
+
+		} catch (IllegalStateException expected) {}
+
+		assertEquals("Invalid number of load failures", loadFailures + 2, (long)(Long)ValueCache.getStatistics().get("loadFailures"));
+		assertEquals("Failed loads should not be counted as loads", loads, (long)(Long)ValueCache.getStatistics().get("loads"));
+
+		// a failed load must not block the next caller
+		assertEquals("Value should be loaded after a failure", "loaded", ValueCache.get("failure", 60, () -> "loaded"));
+		assertEquals("Invalid number of loads", loads + 1, (long)(Long)ValueCache.getStatistics().get("loads"));
+	}
+
+	@Test
+	public void testValueCacheCommand() throws Exception {
+
+		ValueCache.get("command", 60, () -> "value");
+
+		final ValueCacheCommand command = app.command(ValueCacheCommand.class);
+
+		command.execute(Collections.emptyMap());
+
+		assertEquals("Invalid cache size", 1, ((Map<String, Object>)command.getCommandResult()).get("size"));
+		assertEquals("Cache should not be cleared without clear attribute", "value", ValueCache.get("command", 60, () -> "other"));
+
+		command.execute(Collections.singletonMap("clear", true));
+
+		assertEquals("Cache should be empty after clearing", 0, ValueCache.getStatistics().get("size"));
+		assertEquals("Value should be loaded after clearing", "other", ValueCache.get("command", 60, () -> "other"));
+	}
+
+	// ----- private methods -----
+	private void await(final CountDownLatch latch) {
+
+		try {
+			latch.await(10, TimeUnit.SECONDS);
+
+		} catch (InterruptedException iex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -18,6 +18,7 @@
  */
 package org.structr.core.script;
 
+import java.lang.reflect.Proxy;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.text.SimpleDateFormat;
@@ -27,7 +28,9 @@ import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Random;
+import javax.servlet.http.HttpServletRequest;
 import org.apache.commons.lang3.StringUtils;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -37,6 +40,7 @@ import static org.junit.Assert.fail;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
 import org.structr.common.AccessMode;
 import org.structr.common.SecurityContext;
 import org.structr.common.StructrTest;
@@ -63,10 +67,12 @@ import org.structr.core.entity.TestTwo;
 import org.structr.core.entity.TestUser;
 import org.structr.core.function.DateFormatFunction;
 import org.structr.core.function.FindFunction;
+import org.structr.core.function.Functions;
 import org.structr.core.function.NumberFormatFunction;
 import org.structr.core.function.ParseDateFunction;
 import org.structr.core.function.RoundFunction;
 import org.structr.core.function.ToDateFunction;
+import org.structr.core.graph.FlushCachesCommand;
 import org.structr.core.graph.NodeAttribute;
 import org.structr.core.graph.Tx;
 import org.structr.core.property.EnumProperty;
@@ -2208,4 +2214,201 @@ public class ScriptingTest extends StructrTest {
 		}
 
 	}
+
+	@Test
+	public void testScriptCache() {
+
+		Scripting.clearCache();
+
+		try (final Tx tx = app.tx()) {
+
+			final ActionContext ctx = new ActionContext(securityContext, null);
+			final TestOne testOne1  = createTestNode(TestOne.class, "one");
+			final TestOne testOne2  = createTestNode(TestOne.class, "two");
+			final long hits         = (Long)Scripting.getCacheStatistics().get("hits");
+			final long misses       = (Long)Scripting.getCacheStatistics().get("misses");
+
+			assertEquals("Invalid script result", "ab", Scripting.replaceVariables(ctx, null, "${{ return 'a' + 'b'; }}"));
+			assertEquals("Cached script should return the same result", "ab", Scripting.replaceVariables(ctx, null, "${{ return 'a' + 'b'; }}"));
+
+			// the compiled script is shared, but must be evaluated for each entity
+			assertEquals("Invalid script result", "one", Scripting.replaceVariables(ctx, testOne1, "${{ return Structr.this.name; }}"));
+			assertEquals("Cached script should be evaluated with the current entity", "two", Scripting.replaceVariables(ctx, testOne2, "${{ return Structr.this.name; }}"));
+
+			assertEquals("Each script should be compiled only once", 2, Scripting.getCacheStatistics().get("size"));
+			assertEquals("Invalid number of cache misses", misses + 2, (long)(Long)Scripting.getCacheStatistics().get("misses"));
+			assertEquals("Invalid number of cache hits", hits + 2, (long)(Long)Scripting.getCacheStatistics().get("hits"));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+
+			fail(fex.getMessage());
+		}
+	}
+
+	@Test
+	public void testSharedScopeIsNotModified() {
+
+		try (final Tx tx = app.tx()) {
+
+			final ActionContext ctx = new ActionContext(securityContext, null);
+
+			// global assignments must not be visible to later evaluations
+			assertEquals("Invalid script result", "set", Scripting.replaceVariables(ctx, null, "${{ leakedValue = 'leaked'; return 'set'; }}"));
+			assertEquals("Global assignment should not leak into other scripts", "undefined", Scripting.replaceVariables(ctx, null, "${{ return typeof leakedValue; }}"));
+
+			// the same (cached) script must not see the assignment of its previous evaluation
+			assertEquals("Global assignment should not leak into cached script", "undefined", Scripting.replaceVariables(ctx, null, "${{ var before = typeof leakedCounter; leakedCounter = 1; return before; }}"));
+			assertEquals("Global assignment should not leak into cached script", "undefined", Scripting.replaceVariables(ctx, null, "${{ var before = typeof leakedCounter; leakedCounter = 1; return before; }}"));
+
+			// standard objects are sealed, so modifications either fail or stay invisible
+			try {
+
+				Scripting.replaceVariables(ctx, null, "${{ String.prototype.leakedFunction = function() { return 'leaked'; }; return 'set'; }}");
+
+			} catch (FrameworkException expected) {}
+
+			try {
+
+				Scripting.replaceVariables(ctx, null, "${{ Math.max = function() { return 'leaked'; }; return 'set'; }}");
+
+			} catch (FrameworkException expected) {}
+
+			assertEquals("Modification of standard objects should not leak", "undefined", Scripting.replaceVariables(ctx, null, "${{ return typeof ''.leakedFunction; }}"));
+			assertEquals("Modification of standard objects should not leak", "2", Scripting.replaceVariables(ctx, null, "${{ return '' + Math.max(1, 2); }}"));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+
+			fail(fex.getMessage());
+		}
+	}
+
+	@Test
+	public void testFlushCachesClearsScriptCache() {
+
+		try (final Tx tx = app.tx()) {
+
+			final ActionContext ctx = new ActionContext(securityContext, null);
+
+			assertEquals("Invalid script result", "cached", Scripting.replaceVariables(ctx, null, "${{ return 'cached'; }}"));
+			assertTrue("Script should be cached", (Integer)Scripting.getCacheStatistics().get("size") > 0);
+
+			app.command(FlushCachesCommand.class).execute(Collections.emptyMap());
+
+			assertEquals("Script cache should be empty after flushing the caches", 0, Scripting.getCacheStatistics().get("size"));
+
+			// scripts are compiled again after flushing
+			assertEquals("Invalid script result", "cached", Scripting.replaceVariables(ctx, null, "${{ return 'cached'; }}"));
+			assertEquals("Script should be cached again", 1, Scripting.getCacheStatistics().get("size"));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+
+			fail(fex.getMessage());
+		}
+	}
+
+	@Test
+	public void testExpressionCacheWithDifferentData() {
+
+		Functions.clearCache();
+
+		try (final Tx tx = app.tx()) {
+
+			final TestOne testOne1      = createTestNode(TestOne.class, "one");
+			final TestOne testOne2      = createTestNode(TestOne.class, "two");
+			final ActionContext ctx     = new ActionContext(securityContext, null);
+			final ActionContext first   = new ActionContext(SecurityContext.getSuperUserInstance(createRequest("param", "first")), Collections.singletonMap("key", "first"));
+			final ActionContext second  = new ActionContext(SecurityContext.getSuperUserInstance(createRequest("param", "second")), Collections.singletonMap("key", "second"));
+			final long parseCount       = (Long)Functions.getStatistics().get("parseCount");
+
+			// the same parsed expression must be evaluated with the current entity
+			assertEquals("Invalid expression result", "one", Scripting.replaceVariables(ctx, testOne1, "${this.name}"));
+			assertEquals("Cached expression should be evaluated with the current entity", "two", Scripting.replaceVariables(ctx, testOne2, "${this.name}"));
+			assertEquals("Cached expression should be evaluated with the current entity", "one", Scripting.replaceVariables(ctx, testOne1, "${this.name}"));
+
+			// ... and with the current request
+			assertEquals("Invalid expression result", "first", Scripting.replaceVariables(first, null, "${request.param}"));
+			assertEquals("Cached expression should be evaluated with the current request", "second", Scripting.replaceVariables(second, null, "${request.param}"));
+
+			// ... and with the current action context
+			assertEquals("Invalid expression result", "first", Scripting.replaceVariables(first, null, "${retrieve('key')}"));
+			assertEquals("Cached expression should be evaluated with the current context", "second", Scripting.replaceVariables(second, null, "${retrieve('key')}"));
+
+			assertEquals("Each expression should be parsed only once", parseCount + 3, (long)(Long)Functions.getStatistics().get("parseCount"));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+
+			fail(fex.getMessage());
+		}
+	}
+
+	@Test
+	public void testExpressionCacheEviction() {
+
+		Functions.clearCache();
+
+		try (final Tx tx = app.tx()) {
+
+			final ActionContext ctx = new ActionContext(securityContext, null);
+			final int maxSize       = (Integer)getExpressionCacheStatistics().get("maxSize");
+			final long evictions    = (Long)getExpressionCacheStatistics().get("evictions");
+			final int count         = maxSize + 100;
+
+			assertEquals("Expression cache should use the configured size", Settings.ExpressionCacheSize.getValue().intValue(), maxSize);
+
+			for (int i=0; i<count; i++) {
+
+				assertEquals("Invalid expression result", "value" + i, Functions.evaluate(ctx, null, "lower('VALUE" + i + "')"));
+			}
+
+			assertTrue("Expression cache should not exceed the configured size", (Integer)getExpressionCacheStatistics().get("size") <= maxSize);
+			assertTrue("Expression cache should evict old entries", (Long)getExpressionCacheStatistics().get("evictions") - evictions >= 100);
+
+			// the most recently used expression must still be cached
+			final long hits = (Long)getExpressionCacheStatistics().get("hits");
+
+			assertEquals("Invalid expression result", "value" + (count - 1), Functions.evaluate(ctx, null, "lower('VALUE" + (count - 1) + "')"));
+			assertEquals("Most recently used expression should not be evicted", hits + 1, (long)(Long)getExpressionCacheStatistics().get("hits"));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+
+			fail(fex.getMessage());
+		}
+	}
+
+	// ----- private methods -----
+	private Map<String, Object> getExpressionCacheStatistics() {
+		return (Map<String, Object>)Functions.getStatistics().get("cache");
+	}
+
+	private HttpServletRequest createRequest(final String name, final String value) {
+
+		return (HttpServletRequest)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { HttpServletRequest.class }, (proxy, method, args) -> {
+
+			if ("getParameter".equals(method.getName()) && name.equals(args[0])) {
+				return value;
+			}
+
+			return null;
+		});
+	}
 }
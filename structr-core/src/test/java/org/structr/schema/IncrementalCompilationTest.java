@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.schema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.common.StructrTest;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.app.StructrApp;
+import org.structr.core.entity.SchemaNode;
+import org.structr.core.graph.NodeAttribute;
+import org.structr.core.graph.Tx;
+import org.structr.core.property.StringProperty;
+
+/**
+ * Tests that a schema reload only recompiles the dynamic types whose source
+ * changed, plus the types that were compiled against a changed signature.
+ */
+public class IncrementalCompilationTest extends StructrTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(IncrementalCompilationTest.class.getName());
+
+	@Test
+	public void testIncrementalCompilation() {
+
+		SchemaNode base  = null;
+		SchemaNode other = null;
+
+		try (final Tx tx = app.tx()) {
+
+			base = app.create(SchemaNode.class,
+				new NodeAttribute(SchemaNode.name, "Base"),
+				new NodeAttribute(new StringProperty("_name"), "String")
+			);
+
+			app.create(SchemaNode.class,
+				new NodeAttribute(SchemaNode.name, "Derived"),
+				new NodeAttribute(SchemaNode.extendsClass, "org.structr.dynamic.Base")
+			);
+
+			other = app.create(SchemaNode.class,
+				new NodeAttribute(SchemaNode.name, "Other"),
+				new NodeAttribute(new StringProperty("_name"), "String")
+			);
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception.");
+		}
+
+		assertNotNull(StructrApp.getConfiguration().getNodeEntityClass("Derived"));
+
+		// a change in a type nobody depends on compiles only that type
+		try (final Tx tx = app.tx()) {
+
+			other.setProperty(new StringProperty("_description"), "String");
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception.");
+		}
+
+		assertEquals("Only the changed type should be compiled", 1, getStatistic("compiledTypes"));
+		assertTrue("Unchanged types should be reused", getStatistic("cachedTypes") >= 2);
+
+		// a new property changes the signature of the base type, so the derived type must be recompiled
+		try (final Tx tx = app.tx()) {
+
+			base.setProperty(new StringProperty("_age"), "Integer");
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception.");
+		}
+
+		assertEquals("Changed type and its dependent should be compiled", 2, getStatistic("compiledTypes"));
+		assertNotNull(StructrApp.getConfiguration().getPropertyKeyForJSONName(StructrApp.getConfiguration().getNodeEntityClass("Derived"), "age", false));
+
+		// a new supertype of the base type must be visible in the derived type as well
+		try (final Tx tx = app.tx()) {
+
+			base.setProperty(SchemaNode.extendsClass, "org.structr.dynamic.Other");
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception.");
+		}
+
+		final Class otherType   = StructrApp.getConfiguration().getNodeEntityClass("Other");
+		final Class derivedType = StructrApp.getConfiguration().getNodeEntityClass("Derived");
+
+		assertEquals("Changed type and its dependent should be compiled", 2, getStatistic("compiledTypes"));
+		assertTrue("Derived type should be recompiled against the new supertype", otherType.isAssignableFrom(derivedType));
+	}
+
+	// ----- private methods -----
+	private int getStatistic(final String key) {
+
+		final Object value = SchemaService.getStatistics().get(key);
+		assertNotNull("Missing schema statistic " + key, value);
+
+		return ((Number)value).intValue();
+	}
+}
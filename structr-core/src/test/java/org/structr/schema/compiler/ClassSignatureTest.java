@@ -0,0 +1,167 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.schema.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests the signature hash that decides whether dependent dynamic types
+ * must be recompiled.
+ */
+public class ClassSignatureTest {
+
+	@Test
+	public void testMethodBodyDoesNotChangeSignature() {
+
+		final String a = hash("public class Foo { public int get() { return 1; } }");
+		final String b = hash("public class Foo { public int get() { int x = 2; return x * 21; } }");
+
+		assertEquals("Changing a method body must not change the signature", a, b);
+	}
+
+	@Test
+	public void testPrivateMembersDoNotChangeSignature() {
+
+		final String a = hash("public class Foo { public void run() {} }");
+		final String b = hash("public class Foo { private String cache; private void helper() {} public void run() { helper(); } }");
+
+		assertEquals("Adding private members must not change the signature", a, b);
+	}
+
+	@Test
+	public void testConstantValueChangesSignature() {
+
+		final String a = hash("public class Foo { public static final int SIZE = 10; }");
+		final String b = hash("public class Foo { public static final int SIZE = 20; }");
+
+		assertNotEquals("Changing an inlined constant must change the signature", a, b);
+	}
+
+	@Test
+	public void testSupertypeChangesSignature() {
+
+		final String a = hash("public class Foo extends java.util.ArrayList<String> {}");
+		final String b = hash("public class Foo extends java.util.LinkedList<String> {}");
+		final String c = hash("public class Foo extends java.util.ArrayList<String> implements Runnable { public void run() {} }");
+
+		assertNotEquals("Changing the superclass must change the signature", a, b);
+		assertNotEquals("Adding an interface must change the signature", a, c);
+	}
+
+	@Test
+	public void testPublicMembersChangeSignature() {
+
+		final String base = hash("public class Foo { public void run() {} }");
+
+		assertNotEquals("Adding a public method must change the signature",  base, hash("public class Foo { public void run() {} public void stop() {} }"));
+		assertNotEquals("Adding a public field must change the signature",   base, hash("public class Foo { public String name; public void run() {} }"));
+		assertNotEquals("Changing a return type must change the signature",  base, hash("public class Foo { public int run() { return 0; } }"));
+		assertNotEquals("Changing a modifier must change the signature",     base, hash("public class Foo { public synchronized void run() {} }"));
+		assertNotEquals("Changing a generic type must change the signature", hash("public class Foo { public java.util.List<String> list; }"), hash("public class Foo { public java.util.List<Integer> list; }"));
+	}
+
+	@Test
+	public void testNestedClassesContributeToSignature() {
+
+		final String a = hash("public class Foo { public static class Bar { public void run() {} } }");
+		final String b = hash("public class Foo { public static class Bar { public void run() {} public void stop() {} } }");
+
+		assertNotEquals("Changes in nested classes must change the signature", a, b);
+	}
+
+	@Test
+	public void testInvalidByteCode() {
+
+		final Map<String, byte[]> a = new LinkedHashMap<>();
+		final Map<String, byte[]> b = new LinkedHashMap<>();
+
+		a.put("Foo", new byte[] { 1, 2, 3 });
+		b.put("Foo", new byte[] { 1, 2, 4 });
+
+		assertEquals("Hash of invalid byte code must be stable", ClassSignature.hash(a), ClassSignature.hash(new LinkedHashMap<>(a)));
+		assertNotEquals("Hash of invalid byte code must depend on its content", ClassSignature.hash(a), ClassSignature.hash(b));
+	}
+
+	// ----- private methods -----
+	private String hash(final String source) {
+		return ClassSignature.hash(compile("Foo", source));
+	}
+
+	private Map<String, byte[]> compile(final String className, final String source) {
+
+		final JavaCompiler compiler            = ToolProvider.getSystemJavaCompiler();
+		final StandardJavaFileManager standard = compiler.getStandardFileManager(null, null, null);
+		final Map<String, ByteArrayOutputStream> output = new LinkedHashMap<>();
+
+		final JavaFileManager fileManager = new ForwardingJavaFileManager<JavaFileManager>(standard) {
+
+			@Override
+			public JavaFileObject getJavaFileForOutput(final Location location, final String name, final Kind kind, final FileObject sibling) {
+
+				return new SimpleJavaFileObject(URI.create("bytes:///" + name.replace('.', '/') + kind.extension), kind) {
+
+					@Override
+					public OutputStream openOutputStream() {
+
+						final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+						output.put(name, bytes);
+
+						return bytes;
+					}
+				};
+			}
+		};
+
+		final JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///" + className + Kind.SOURCE.extension), Kind.SOURCE) {
+
+			@Override
+			public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+				return source;
+			}
+		};
+
+		assertTrue("Test source must compile", compiler.getTask(null, fileManager, null, null, null, Arrays.asList(file)).call());
+
+		final Map<String, byte[]> classes = new LinkedHashMap<>();
+
+		for (final Map.Entry<String, ByteArrayOutputStream> entry : output.entrySet()) {
+			classes.put(entry.getKey(), entry.getValue().toByteArray());
+		}
+
+		return classes;
+	}
+}
@@ -59,4 +59,12 @@ public interface DatabaseService {
 	NativeResult execute(final String nativeQuery);
 
 	void invalidateQueryCache();
+
+	/**
+	 * Returns size, hit, miss and eviction counts of the internal
+	 * caches of this database service, keyed by cache name.
+	 *
+	 * @return a map of cache statistics
+	 */
+	Map<String, Map<String, Object>> getCacheStatistics();
 }
@@ -62,10 +62,12 @@ public class Settings {
 	public static final Setting<String> DataExchangePath      = new StringSetting(generalGroup,   "Paths",       "data.exchange.path",         "exchange/", "IMPORTANT: Path is relative to base.path");
 	public static final Setting<String> SnapshotsPath         = new StringSetting(generalGroup,   "Paths",       "snapshot.path",              "snapshots/", "IMPORTANT: Path is relative to base.path");
 	public static final Setting<String> LayoutsPath           = new StringSetting(generalGroup,   "Paths",       "layouts.path",               "layouts/", "IMPORTANT: Path is relative to base.path");
+	public static final Setting<String> SchemaCachePath       = new StringSetting(generalGroup,   "Paths",       "schema.cache.path",          "schema-cache/", "IMPORTANT: Path is relative to base.path");
 	public static final Setting<Boolean> LogSchemaOutput      = new BooleanSetting(generalGroup,  "Logging",     "NodeExtender.log",           false);
 	public static final Setting<Boolean> RequestLogging       = new BooleanSetting(generalGroup,  "Logging",     "log.requests",               false);
 	public static final Setting<String> LogPrefix             = new StringSetting(generalGroup,   "Logging",     "log.prefix",                 "structr");
 	public static final Setting<String> LogName               = new StringSetting(generalGroup,   "Logging",     "log.name",                   "structr-yyyy_mm_dd.request.log");
+	public static final Setting<Integer> LogRollupInterval    = new IntegerSetting(generalGroup,  "Logging",     "log.rollup.flushinterval",   5);
 	public static final Setting<String> Configuration         = new StringSetting(generalGroup,   "hidden",      "configuration.provider",     "org.structr.module.JarConfigurationProvider");
 	public static final Setting<Boolean> Testing              = new BooleanSetting(generalGroup,  "hidden",      "testing",                    false);
 	public static final StringSetting Services                = new StringSetting(generalGroup,   "Services",    "configured.services",        "NodeService AgentService CronService SchemaService LogService HttpService FtpService SSHService");
@@ -90,6 +92,7 @@ public class Settings {
 	public static final Setting<Boolean> HtmlIndentation      = new BooleanSetting(serverGroup, "HTTP Settings", "html.indentation",                true);
 	public static final Setting<Boolean> WsIndentation        = new BooleanSetting(serverGroup, "HTTP Settings", "ws.indentation",                  true);
 	public static final Setting<Integer> SessionTimeout       = new IntegerSetting(serverGroup, "HTTP Settings", "application.session.timeout",     1800);
+	public static final Setting<Integer> SessionCacheSize     = new IntegerSetting(serverGroup, "HTTP Settings", "application.session.cache.size",  100000);
 
 	public static final Setting<String> AccessControlMaxAge           = new StringSetting(serverGroup, "CORS Settings", "access.control.max.age",           "3600");
 	public static final Setting<String> AccessControlAllowMethods     = new StringSetting(serverGroup, "CORS Settings", "access.control.allow.methods",     "");
@@ -112,13 +115,23 @@ public class Settings {
 	public static final Setting<Integer> RelationshipCacheSize = new IntegerSetting(databaseGroup, "Caching",             "database.cache.relationship.size", 100000);
 	public static final Setting<Integer> NodeCacheSize         = new IntegerSetting(databaseGroup, "Caching",             "database.cache.node.size",         100000);
 	public static final Setting<Integer> UuidCacheSize         = new IntegerSetting(databaseGroup, "Caching",             "database.cache.uuid.size",         100000);
+	public static final Setting<Boolean> UuidCachePrefill      = new BooleanSetting(databaseGroup, "Caching",             "database.cache.uuid.prefill",      false);
+	public static final Setting<Boolean> UuidCachePersist      = new BooleanSetting(databaseGroup, "Caching",             "database.cache.uuid.persist",      false);
 	public static final Setting<Integer> QueryCacheSize        = new IntegerSetting(databaseGroup, "Caching",             "database.cache.query.size",        1000);
+	public static final Setting<Boolean> WriteBehind           = new BooleanSetting(databaseGroup, "Performance",         "database.writebehind.enabled",     false);
 	public static final Setting<Boolean> CypherDebugLogging    = new BooleanSetting(databaseGroup, "Debugging",           "log.cypher.debug",                 false);
 	public static final Setting<Boolean> SyncDebugging         = new BooleanSetting(databaseGroup, "Sync debugging",      "sync.debug",                       false);
 
 	// application settings
 	public static final Setting<Integer> ResolutionDepth      = new IntegerSetting(applicationGroup, "Security",   "application.security.resolution.depth",     5);
 	public static final Setting<String> OwnerlessNodes        = new StringSetting(applicationGroup,  "Security",   "application.security.ownerless.nodes",      "read");
+	public static final Setting<Integer> PermissionCacheSize  = new IntegerSetting(applicationGroup, "Security",   "application.security.cache.size",           100000);
+	public static final Setting<Boolean> PermissionWarmup     = new BooleanSetting(applicationGroup, "Security",   "application.security.cache.warmup",         false);
+	public static final Setting<Integer> JavaScriptCacheSize  = new IntegerSetting(applicationGroup, "Scripting",  "application.scripting.cache.size",          1000);
+	public static final Setting<Integer> JavaScriptOptLevel   = new IntegerSetting(applicationGroup, "Scripting",  "application.scripting.optimization.level",  0);
+	public static final Setting<Integer> ExpressionCacheSize  = new IntegerSetting(applicationGroup, "Scripting",  "application.scripting.expression.cache.size", 10000);
+	public static final Setting<Integer> ValueCacheSize       = new IntegerSetting(applicationGroup, "Scripting",  "application.scripting.valuecache.size",     1000);
+	public static final Setting<Boolean> ValueCacheStale      = new BooleanSetting(applicationGroup, "Scripting",  "application.scripting.valuecache.stale",    true);
 	public static final Setting<Boolean> ChangelogEnabled     = new BooleanSetting(applicationGroup, "Changelog",  "application.changelog.enabled",             false);
 	public static final Setting<Boolean> FilesystemEnabled    = new BooleanSetting(applicationGroup, "Filesystem", "application.filesystem.enabled",            false);
 	public static final Setting<Boolean> UniquePaths          = new BooleanSetting(applicationGroup, "Filesystem", "application.filesystem.unique.paths",       false);
@@ -126,9 +139,17 @@ public class Settings {
 	public static final Setting<Integer> IndexingMinLength    = new IntegerSetting(applicationGroup, "Filesystem", "application.filesystem.indexing.minlength", 4);
 	public static final Setting<Integer> IndexingMaxLength    = new IntegerSetting(applicationGroup, "Filesystem", "application.filesystem.indexing.maxlength", 40);
 	public static final Setting<String> DefaultUploadFolder   = new StringSetting(applicationGroup,  "Filesystem", "application.uploads.folder",                "");
+	public static final Setting<Boolean> ContentStoreEnabled  = new BooleanSetting(applicationGroup, "Filesystem", "application.filesystem.contentstore",        false);
+	public static final Setting<Integer> ContentStoreGcDelay  = new IntegerSetting(applicationGroup, "Filesystem", "application.filesystem.contentstore.gcdelay", 60);
 	public static final Setting<String> HttpProxyUrl          = new StringSetting(applicationGroup,  "Proxy",      "application.proxy.http.url",                "");
 	public static final Setting<String> HttpProxyUser         = new StringSetting(applicationGroup,  "Proxy",      "application.proxy.http.username",           "");
 	public static final Setting<String> HttpProxyPassword     = new StringSetting(applicationGroup,  "Proxy",      "application.proxy.http.password",           "");
+	public static final Setting<Integer> InstantiationThreshold   = new IntegerSetting(applicationGroup, "Performance", "application.instantiation.parallel.threshold", 0);
+	public static final Setting<Integer> InstantiationParallelism = new IntegerSetting(applicationGroup, "Performance", "application.instantiation.parallelism",        Runtime.getRuntime().availableProcessors());
+	public static final Setting<Boolean> SchemaCache              = new BooleanSetting(applicationGroup, "Performance", "application.schema.cache",                     true);
+	public static final Setting<Boolean> ThumbnailsAsync          = new BooleanSetting(applicationGroup, "Performance", "application.thumbnails.async",                 true);
+	public static final Setting<Integer> ThumbnailThreads         = new IntegerSetting(applicationGroup, "Performance", "application.thumbnails.threads",               Runtime.getRuntime().availableProcessors());
+	public static final Setting<Integer> ThumbnailQueueSize       = new IntegerSetting(applicationGroup, "Performance", "application.thumbnails.queuesize",             1000);
 
 	// mail settings
 	public static final Setting<String> SmtpHost              = new StringSetting(smtpGroup,  "SMTP Settings", "smtp.host",         "localhost");
@@ -151,6 +172,14 @@ public class Settings {
 	public static final Setting<Boolean> InheritanceDetection    = new BooleanSetting(advancedGroup, "hidden",      "importer.inheritancedetection", true);
 	public static final Setting<Boolean> CmisEnabled             = new BooleanSetting(advancedGroup, "hidden",      "cmis.enabled",                  false);
 
+	public static final Setting<Integer> AgentMaxWorkers         = new IntegerSetting(advancedGroup, "Agents",      "AgentService.maxworkers",       8);
+	public static final Setting<Integer> AgentConcurrency        = new IntegerSetting(advancedGroup, "Agents",      "AgentService.concurrency",      4);
+	public static final Setting<Integer> AgentMaxRetries         = new IntegerSetting(advancedGroup, "Agents",      "AgentService.retries",          3);
+	public static final Setting<Integer> AgentRetryDelay         = new IntegerSetting(advancedGroup, "Agents",      "AgentService.retrydelay",       1000);
+	public static final Setting<Boolean> AgentJournal            = new BooleanSetting(advancedGroup, "Agents",      "AgentService.journal",          true);
+	public static final Setting<String> AgentJournalPath         = new StringSetting(advancedGroup,  "Agents",      "AgentService.journal.path",     "agent-tasks.journal", "IMPORTANT: Path is relative to base.path");
+	public static final Setting<Integer> AgentJournalCompaction  = new IntegerSetting(advancedGroup, "Agents",      "AgentService.journal.compaction", 10000);
+
 	// servlets
 	public static final Setting<String> Servlets              = new StringSetting(servletsGroup,  "General", "HttpService.servlets",             "JsonRestServlet HtmlServlet WebSocketServlet CsvServlet UploadServlet");
 
@@ -176,6 +205,10 @@ public class Settings {
 	public static final Setting<Boolean> HtmlUserAutocreate       = new BooleanSetting(servletsGroup, "HtmlServlet", "HtmlServlet.user.autocreate",       true);
 	public static final Setting<String> HtmlResolveProperties     = new StringSetting(servletsGroup,  "HtmlServlet", "HtmlServlet.resolveProperties",     "AbstractNode.name");
 	public static final Setting<String> HtmlCustomResponseHeaders = new TextSetting(servletsGroup,    "HtmlServlet", "HtmlServlet.customResponseHeaders", "Strict-Transport-Security:max-age=60,X-Content-Type-Options:nosniff,X-Frame-Options:SAMEORIGIN,X-XSS-Protection:1;mode=block");
+	public static final Setting<Integer> HtmlRenderThreads        = new IntegerSetting(servletsGroup, "HtmlServlet", "HtmlServlet.async.threads",         Runtime.getRuntime().availableProcessors() * 4);
+	public static final Setting<Integer> HtmlRenderQueueSize      = new IntegerSetting(servletsGroup, "HtmlServlet", "HtmlServlet.async.queuesize",       1000);
+	public static final Setting<Integer> HtmlRenderBufferSize     = new IntegerSetting(servletsGroup, "HtmlServlet", "HtmlServlet.async.buffersize",      65536);
+	public static final Setting<Integer> HtmlRoutingRefresh       = new IntegerSetting(servletsGroup, "HtmlServlet", "HtmlServlet.routing.refresh",       300);
 
 	public static final Setting<String> WebsocketServletPath       = new StringSetting(servletsGroup,  "WebSocketServlet", "WebSocketServlet.path",              "/structr/ws/*");
 	public static final Setting<String> WebsocketServletClass      = new StringSetting(servletsGroup,  "WebSocketServlet", "WebSocketServlet.class",             "org.structr.websocket.servlet.WebSocketServlet");
@@ -186,6 +219,9 @@ public class Settings {
 	public static final Setting<Boolean> WebsocketUserAutologin    = new BooleanSetting(servletsGroup, "WebSocketServlet", "WebSocketServlet.user.autologin",    false);
 	public static final Setting<Boolean> WebsocketUserAutocreate   = new BooleanSetting(servletsGroup, "WebSocketServlet", "WebSocketServlet.user.autocreate",   false);
 	public static final Setting<Boolean> WebsocketFrontendAccess   = new BooleanSetting(servletsGroup, "WebSocketServlet", "WebSocketServlet.frontendAccess",    false);
+	public static final Setting<Integer> WebsocketBroadcastQueue   = new IntegerSetting(servletsGroup, "WebSocketServlet", "WebSocketServlet.broadcast.queuesize",       10000);
+	public static final Setting<Integer> WebsocketClientQueue      = new IntegerSetting(servletsGroup, "WebSocketServlet", "WebSocketServlet.broadcast.clientqueuesize", 1000);
+	public static final Setting<Integer> WebsocketSenderThreads    = new IntegerSetting(servletsGroup, "WebSocketServlet", "WebSocketServlet.broadcast.threads",         Runtime.getRuntime().availableProcessors());
 
 	public static final Setting<String> CsvServletPath       = new StringSetting(servletsGroup,  "CsvServlet", "CsvServlet.path",              "/structr/csv/*");
 	public static final Setting<String> CsvServletClass      = new StringSetting(servletsGroup,  "CsvServlet", "CsvServlet.class",             "org.structr.rest.servlet.CsvServlet");
@@ -196,6 +232,11 @@ public class Settings {
 	public static final Setting<Boolean> CsvUserAutologin    = new BooleanSetting(servletsGroup, "CsvServlet", "CsvServlet.user.autologin",    false);
 	public static final Setting<Boolean> CsvUserAutocreate   = new BooleanSetting(servletsGroup, "CsvServlet", "CsvServlet.user.autocreate",   false);
 	public static final Setting<Boolean> CsvFrontendAccess   = new BooleanSetting(servletsGroup, "CsvServlet", "CsvServlet.frontendAccess",    false);
+	public static final Setting<Boolean> CsvImportStreaming  = new BooleanSetting(servletsGroup, "CsvServlet", "CsvServlet.import.streaming",  false);
+	public static final Setting<Integer> CsvImportBatchSize  = new IntegerSetting(servletsGroup, "CsvServlet", "CsvServlet.import.batchsize",  1000);
+	public static final Setting<Integer> CsvImportWorkers    = new IntegerSetting(servletsGroup, "CsvServlet", "CsvServlet.import.workers",    1);
+	public static final Setting<Integer> CsvImportMaxBatchSize = new IntegerSetting(servletsGroup, "CsvServlet", "CsvServlet.import.maxbatchsize", 10000);
+	public static final Setting<Integer> CsvImportMaxWorkers   = new IntegerSetting(servletsGroup, "CsvServlet", "CsvServlet.import.maxworkers",   8);
 
 	public static final Setting<String> UploadServletPath       = new StringSetting(servletsGroup,  "UploadServlet", "UploadServlet.path",                  "/structr/upload");
 	public static final Setting<String> UploadServletClass      = new StringSetting(servletsGroup,  "UploadServlet", "UploadServlet.class",                 "org.structr.web.servlet.UploadServlet");
@@ -208,6 +249,7 @@ public class Settings {
 	public static final Setting<Boolean> UploadAllowAnonymous   = new BooleanSetting(servletsGroup, "UploadServlet", "UploadServlet.allowAnonymousUploads", false);
 	public static final Setting<Integer> UploadMaxFileSize      = new IntegerSetting(servletsGroup, "UploadServlet", "UploadServlet.maxFileSize",           1000);
 	public static final Setting<Integer> UploadMaxRequestSize   = new IntegerSetting(servletsGroup, "UploadServlet", "UploadServlet.maxRequestSize",        1200);
+	public static final Setting<Integer> UploadMaxConcurrent    = new IntegerSetting(servletsGroup, "UploadServlet", "UploadServlet.maxConcurrentUploads",  16);
 
 	public static final Setting<String> DeploymentServletPath                = new StringSetting(servletsGroup,  "DeploymentServlet", "DeploymentServlet.path",                      "/structr/deploy");
 	public static final Setting<String> DeploymentServletClass               = new StringSetting(servletsGroup,  "DeploymentServlet", "DeploymentServlet.class",                     "org.structr.web.servlet.DeploymentServlet");
@@ -31,4 +31,28 @@ public interface Index<T> {
 	void remove(final T t, final String key);
 
 	Iterable<T> query(final QueryPredicate predicate);
+
+	/**
+	 * Returns a single page of the results of the given query, sorted
+	 * and paged by the database if possible.
+	 *
+	 * @param predicate
+	 * @param pageSize
+	 * @param page the 1-based page number
+	 *
+	 * @return the results on the given page
+	 */
+	Iterable<T> query(final QueryPredicate predicate, final int pageSize, final int page);
+
+	/**
+	 * Returns the number of results of the given query without
+	 * loading the results themselves. Counting stops at the given
+	 * limit, so the returned value is never larger than the limit.
+	 *
+	 * @param predicate
+	 * @param limit the maximum number of results to count
+	 *
+	 * @return the number of results, up to the given limit
+	 */
+	long count(final QueryPredicate predicate, final int limit);
 }
@@ -26,6 +26,7 @@ import org.structr.api.DatabaseService;
 public interface StructrServices {
 
 	void registerInitializationCallback(final InitializationCallback callback);
+	void registerShutdownCallback(final ShutdownCallback callback);
 	<T extends Service> T getService(final Class<T> serviceClass);
 	DatabaseService getDatabaseService();
 }
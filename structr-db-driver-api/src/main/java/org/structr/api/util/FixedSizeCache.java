@@ -18,9 +18,9 @@
  */
 package org.structr.api.util;
 
-import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import org.apache.commons.collections4.map.LRUMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A map-like storage structure with a fixed maximum size that
@@ -28,57 +28,254 @@ import org.apache.commons.collections4.map.LRUMap;
  * a new entry causes the map to exceed the specified maximum
  * size.
  *
+ * The cache is split into a number of independently locked
+ * segments so that concurrent readers do not contend on a single
+ * monitor. Each segment maintains its own LRU order, so eviction
+ * is approximately LRU with respect to the whole cache. Small
+ * caches use a single segment and are therefore exact LRU.
+ *
  * @param <K>
  * @param <V>
  */
 public class FixedSizeCache<K, V> {
 
-	private Map<K, V> cache  = null;
+	private static final int MIN_SEGMENT_SIZE = 256;
+	private static final int MAX_SEGMENTS     = 16;
+
+	private final LongAdder hits      = new LongAdder();
+	private final LongAdder misses    = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private Segment<K, V>[] segments  = null;
+	private int maxSize               = 0;
 
 	public FixedSizeCache(final int maxSize) {
-		this.cache   = Collections.synchronizedMap(new InvalidatingLRUMap<>(maxSize));
+
+		final int segmentCount = Math.max(1, Integer.highestOneBit(Math.min(MAX_SEGMENTS, maxSize / MIN_SEGMENT_SIZE)));
+		final int segmentSize  = maxSize / segmentCount;
+		final int remainder    = maxSize % segmentCount;
+
+		this.segments = newSegmentArray(segmentCount);
+		this.maxSize  = maxSize;
+
+		for (int i=0; i<segmentCount; i++) {
+
+			// distribute remainder so that the sum of all segment sizes equals maxSize
+			segments[i] = new Segment<>(i < remainder ? segmentSize + 1 : segmentSize);
+		}
 	}
 
-	public synchronized void put(final K key, final V value) {
-		cache.put(key, value);
+	public void put(final K key, final V value) {
+
+		final Segment<K, V> segment = segmentFor(key);
+		final V evicted;
+
+		synchronized (segment) {
+
+			segment.put(key, value);
+			evicted = segment.takeEvicted();
+		}
+
+		invalidate(evicted);
 	}
 
-	public synchronized V get(final K key) {
-		return cache.get(key);
+	/**
+	 * Stores the given value if no value is present for the given key.
+	 *
+	 * @param key
+	 * @param value
+	 *
+	 * @return the existing value or null if the given value was stored
+	 */
+	public V putIfAbsent(final K key, final V value) {
+
+		final Segment<K, V> segment = segmentFor(key);
+		final V existing;
+		final V evicted;
+
+		synchronized (segment) {
+
+			existing = segment.get(key);
+			if (existing == null) {
+
+				segment.put(key, value);
+			}
+
+			evicted = segment.takeEvicted();
+		}
+
+		invalidate(evicted);
+
+		return existing;
 	}
 
-	public synchronized void remove(final K key) {
-		cache.remove(key);
+	public V get(final K key) {
+
+		final Segment<K, V> segment = segmentFor(key);
+		final V value;
+
+		synchronized (segment) {
+			value = segment.get(key);
+		}
+
+		if (value != null) {
+
+			hits.increment();
+
+		} else {
+
+			misses.increment();
+		}
+
+		return value;
 	}
 
-	public synchronized void clear() {
-		cache.clear();
+	public V remove(final K key) {
+
+		final Segment<K, V> segment = segmentFor(key);
+
+		synchronized (segment) {
+			return segment.remove(key);
+		}
 	}
 
-	public synchronized int size() {
-		return cache.size();
+	public void clear() {
+
+		for (final Segment<K, V> segment : segments) {
+
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
 	}
 
-	public synchronized boolean isEmpty() {
-		return cache.isEmpty();
+	public int size() {
+
+		int size = 0;
+
+		for (final Segment<K, V> segment : segments) {
+
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+
+		return size;
 	}
 
-	private static class InvalidatingLRUMap<K, V> extends LRUMap<K, V> {
+	public boolean isEmpty() {
+
+		for (final Segment<K, V> segment : segments) {
+
+			synchronized (segment) {
 
-		public InvalidatingLRUMap(final int maxSize) {
-			super(maxSize, true);
+				if (!segment.isEmpty()) {
+					return false;
+				}
+			}
 		}
 
-		@Override
-		protected boolean removeLRU(final LinkEntry<K, V> entry) {
+		return true;
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Returns a snapshot of the size and the hit, miss and eviction
+	 * counters of this cache, suitable for JSON output.
+	 *
+	 * @return a map with statistics
+	 */
+	public Map<String, Object> getStatistics() {
+
+		final Map<String, Object> statistics = new LinkedHashMap<>();
+
+		statistics.put("size",      size());
+		statistics.put("maxSize",   maxSize);
+		statistics.put("hits",      getHitCount());
+		statistics.put("misses",    getMissCount());
+		statistics.put("evictions", getEvictionCount());
+
+		return statistics;
+	}
+
+	// ----- private methods -----
+	private Segment<K, V> segmentFor(final K key) {
+
+		if (segments.length == 1) {
+			return segments[0];
+		}
+
+		final int hash = key != null ? key.hashCode() : 0;
+
+		// spread higher bits downwards, see ConcurrentHashMap
+		return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+	}
 
-			final V value = entry.getValue();
-			if (value != null && value instanceof Cachable) {
+	@SuppressWarnings("unchecked")
+	private static <K, V> Segment<K, V>[] newSegmentArray(final int length) {
+		return (Segment<K, V>[])new Segment<?, ?>[length];
+	}
+
+	private void invalidate(final V value) {
+
+		if (value != null) {
+
+			evictions.increment();
+
+			// invalidate outside of the segment lock so that
+			// Cachable implementations can access other caches
+			if (value instanceof Cachable) {
 
 				((Cachable)value).invalidate();
 			}
+		}
+	}
+
+	// ----- nested classes -----
+	private static class Segment<K, V> extends LinkedHashMap<K, V> {
+
+		private int maxSize = 0;
+		private V evicted   = null;
+
+		public Segment(final int maxSize) {
+
+			super(16, 0.75f, true);
+
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+
+			if (size() > maxSize) {
+
+				evicted = eldest.getValue();
+				return true;
+			}
+
+			return false;
+		}
+
+		public V takeEvicted() {
+
+			final V value = evicted;
+			evicted       = null;
 
-			return true;
+			return value;
 		}
 	}
 }
@@ -0,0 +1,481 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.api.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A compact, primitive map from UUIDs to database ids.
+ *
+ * Structr UUIDs consist of 32 hexadecimal characters, which are stored
+ * as two longs in open-addressing hash tables with linear probing, so a
+ * lookup is a single probe sequence over three parallel long arrays and
+ * costs 24 bytes per slot instead of a String, a boxed Long and a map
+ * entry. UUIDs that are not in this format are not indexed, lookups for
+ * them always miss.
+ *
+ * The index is split into a number of independently locked segments.
+ * When a segment reaches its share of the maximum size, the entry that
+ * occupies the probe position of the new key is evicted, so the index
+ * degrades to a randomly evicting cache if it is too small to hold all
+ * UUIDs of the database.
+ */
+public class UuidIndex {
+
+	private static final int FILE_MAGIC       = 0x55554944;
+	private static final int MIN_CAPACITY     = 64;
+	private static final int MIN_SEGMENT_SIZE = 4096;
+	private static final int MAX_SEGMENTS     = 16;
+
+	private final LongAdder hits      = new LongAdder();
+	private final LongAdder misses    = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private Segment[] segments        = null;
+	private int maxSize               = 0;
+
+	public UuidIndex(final int maxSize) {
+
+		final int segmentCount = Math.max(1, Integer.highestOneBit(Math.min(MAX_SEGMENTS, maxSize / MIN_SEGMENT_SIZE)));
+		final int segmentSize  = Math.max(1, maxSize / segmentCount);
+
+		this.segments = new Segment[segmentCount];
+		this.maxSize  = maxSize;
+
+		for (int i=0; i<segmentCount; i++) {
+
+			segments[i] = new Segment(segmentSize);
+		}
+	}
+
+	/**
+	 * Returns the id that is stored for the given UUID.
+	 *
+	 * @param uuid
+	 *
+	 * @return the id or -1 if the UUID is not indexed
+	 */
+	public long get(final String uuid) {
+
+		if (isIndexable(uuid)) {
+
+			final long hi   = parse(uuid, 0);
+			final long lo   = parse(uuid, 16);
+			final long hash = hash(hi, lo);
+			final long id;
+
+			final Segment segment = segmentFor(hash);
+			synchronized (segment) {
+
+				id = segment.get(hi, lo, (int)hash);
+			}
+
+			if (id >= 0) {
+
+				hits.increment();
+				return id;
+			}
+		}
+
+		misses.increment();
+
+		return -1L;
+	}
+
+	public void put(final String uuid, final long id) {
+
+		if (id >= 0 && isIndexable(uuid)) {
+
+			final long hi   = parse(uuid, 0);
+			final long lo   = parse(uuid, 16);
+			final long hash = hash(hi, lo);
+
+			final Segment segment = segmentFor(hash);
+			synchronized (segment) {
+
+				if (segment.put(hi, lo, id, (int)hash)) {
+					evictions.increment();
+				}
+			}
+		}
+	}
+
+	public void remove(final String uuid) {
+
+		if (isIndexable(uuid)) {
+
+			final long hi   = parse(uuid, 0);
+			final long lo   = parse(uuid, 16);
+			final long hash = hash(hi, lo);
+
+			final Segment segment = segmentFor(hash);
+			synchronized (segment) {
+
+				segment.remove(hi, lo, (int)hash);
+			}
+		}
+	}
+
+	public void clear() {
+
+		for (final Segment segment : segments) {
+
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	public int size() {
+
+		int size = 0;
+
+		for (final Segment segment : segments) {
+
+			synchronized (segment) {
+				size += segment.size;
+			}
+		}
+
+		return size;
+	}
+
+	public boolean isFull() {
+		return size() >= maxSize;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Returns a snapshot of the size, the memory footprint and the hit,
+	 * miss and eviction counters of this index, suitable for JSON output.
+	 *
+	 * @return a map with statistics
+	 */
+	public Map<String, Object> getStatistics() {
+
+		final Map<String, Object> statistics = new LinkedHashMap<>();
+		long bytes                           = 0L;
+
+		for (final Segment segment : segments) {
+
+			synchronized (segment) {
+				bytes += segment.ids.length * 24L;
+			}
+		}
+
+		statistics.put("size",      size());
+		statistics.put("maxSize",   maxSize);
+		statistics.put("bytes",     bytes);
+		statistics.put("hits",      hits.sum());
+		statistics.put("misses",    misses.sum());
+		statistics.put("evictions", evictions.sum());
+
+		return statistics;
+	}
+
+	/**
+	 * Writes the contents of this index to the given stream.
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public void write(final DataOutputStream out) throws IOException {
+
+		out.writeInt(FILE_MAGIC);
+		out.writeInt(size());
+
+		for (final Segment segment : segments) {
+
+			synchronized (segment) {
+
+				for (int i=0; i<segment.ids.length; i++) {
+
+					if (segment.ids[i] != 0L) {
+
+						out.writeLong(segment.hi[i]);
+						out.writeLong(segment.lo[i]);
+						out.writeLong(segment.ids[i] - 1);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the entries written by {@link #write} to this index.
+	 *
+	 * @param in
+	 * @return the number of entries read
+	 * @throws IOException
+	 */
+	public int read(final DataInputStream in) throws IOException {
+
+		if (in.readInt() != FILE_MAGIC) {
+			throw new IOException("Invalid UUID index file");
+		}
+
+		final int count = in.readInt();
+
+		for (int i=0; i<count; i++) {
+
+			final long hi   = in.readLong();
+			final long lo   = in.readLong();
+			final long id   = in.readLong();
+			final long hash = hash(hi, lo);
+
+			final Segment segment = segmentFor(hash);
+			synchronized (segment) {
+
+				segment.put(hi, lo, id, (int)hash);
+			}
+		}
+
+		return count;
+	}
+
+	// ----- private methods -----
+	private Segment segmentFor(final long hash) {
+		return segments[(int)(hash >>> 32) & (segments.length - 1)];
+	}
+
+	private static boolean isIndexable(final String uuid) {
+
+		if (uuid == null || uuid.length() != 32) {
+			return false;
+		}
+
+		for (int i=0; i<32; i++) {
+
+			if (Character.digit(uuid.charAt(i), 16) < 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static long parse(final String uuid, final int offset) {
+
+		long value = 0L;
+
+		for (int i=offset; i<offset+16; i++) {
+			value = (value << 4) | Character.digit(uuid.charAt(i), 16);
+		}
+
+		return value;
+	}
+
+	private static long hash(final long hi, final long lo) {
+
+		// 64 bit finalizer of MurmurHash3, spreads non-random UUIDs
+		long h = hi * 31 + lo;
+
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+
+		return h;
+	}
+
+	// ----- nested classes -----
+	private static class Segment {
+
+		private final int maxSize;
+		private final int maxCapacity;
+		private long[] hi     = null;
+		private long[] lo     = null;
+		private long[] ids    = null;	// id + 1, 0 marks an empty slot
+		private int size      = 0;
+
+		public Segment(final int maxSize) {
+
+			this.maxSize     = maxSize;
+			this.maxCapacity = capacityFor(maxSize);
+
+			allocate(Math.min(MIN_CAPACITY, maxCapacity));
+		}
+
+		public long get(final long keyHi, final long keyLo, final int hash) {
+
+			final int mask = ids.length - 1;
+
+			for (int i = hash & mask; ids[i] != 0L; i = (i + 1) & mask) {
+
+				if (hi[i] == keyHi && lo[i] == keyLo) {
+					return ids[i] - 1;
+				}
+			}
+
+			return -1L;
+		}
+
+		/**
+		 * Stores the given id and returns true if an entry was evicted.
+		 */
+		public boolean put(final long keyHi, final long keyLo, final long id, final int hash) {
+
+			int mask = ids.length - 1;
+			int i    = hash & mask;
+
+			for (; ids[i] != 0L; i = (i + 1) & mask) {
+
+				if (hi[i] == keyHi && lo[i] == keyLo) {
+
+					ids[i] = id + 1;
+					return false;
+				}
+			}
+
+			boolean evicted = false;
+
+			if (size >= maxSize) {
+
+				// evict the first entry in the probe sequence of the new key
+				int victim = hash & mask;
+				while (ids[victim] == 0L) {
+					victim = (victim + 1) & mask;
+				}
+
+				delete(victim);
+				evicted = true;
+
+			} else if (size + 1 > ids.length * 3 / 4 && ids.length < maxCapacity) {
+
+				allocate(ids.length * 2);
+				mask = ids.length - 1;
+			}
+
+			// find insertion point again, deletion or resize may have moved entries
+			for (i = hash & mask; ids[i] != 0L; i = (i + 1) & mask) {}
+
+			hi[i]  = keyHi;
+			lo[i]  = keyLo;
+			ids[i] = id + 1;
+
+			size++;
+
+			return evicted;
+		}
+
+		public void remove(final long keyHi, final long keyLo, final int hash) {
+
+			final int mask = ids.length - 1;
+
+			for (int i = hash & mask; ids[i] != 0L; i = (i + 1) & mask) {
+
+				if (hi[i] == keyHi && lo[i] == keyLo) {
+
+					delete(i);
+					return;
+				}
+			}
+		}
+
+		public void clear() {
+
+			allocate(Math.min(MIN_CAPACITY, maxCapacity));
+		}
+
+		// ----- private methods -----
+		private void delete(final int slot) {
+
+			final int mask = ids.length - 1;
+			int gap        = slot;
+			int i          = slot;
+
+			// backward shift deletion: move subsequent entries of the
+			// probe sequence into the gap so that no tombstones are needed
+			while (true) {
+
+				i = (i + 1) & mask;
+
+				if (ids[i] == 0L) {
+					break;
+				}
+
+				final int home = (int)hash(hi[i], lo[i]) & mask;
+
+				// skip entries whose home slot lies cyclically in (gap, i]
+				if (gap <= i ? (gap < home && home <= i) : (gap < home || home <= i)) {
+					continue;
+				}
+
+				hi[gap]  = hi[i];
+				lo[gap]  = lo[i];
+				ids[gap] = ids[i];
+				gap      = i;
+			}
+
+			ids[gap] = 0L;
+			size--;
+		}
+
+		private void allocate(final int capacity) {
+
+			final long[] oldHi  = hi;
+			final long[] oldLo  = lo;
+			final long[] oldIds = ids;
+
+			hi   = new long[capacity];
+			lo   = new long[capacity];
+			ids  = new long[capacity];
+			size = 0;
+
+			if (oldIds != null && oldIds.length < capacity) {
+
+				final int mask = capacity - 1;
+
+				for (int j=0; j<oldIds.length; j++) {
+
+					if (oldIds[j] != 0L) {
+
+						int i = (int)hash(oldHi[j], oldLo[j]) & mask;
+						while (ids[i] != 0L) {
+							i = (i + 1) & mask;
+						}
+
+						hi[i]  = oldHi[j];
+						lo[i]  = oldLo[j];
+						ids[i] = oldIds[j];
+
+						size++;
+					}
+				}
+			}
+		}
+
+		private static int capacityFor(final int maxSize) {
+
+			// smallest power of two that keeps the load factor at or below 0.75
+			final long required = Math.max(MIN_CAPACITY, ((long)maxSize * 4 + 2) / 3 + 1);
+			final long capacity = Long.highestOneBit(required - 1) << 1;
+
+			return (int)Math.min(capacity, 1 << 30);
+		}
+	}
+}
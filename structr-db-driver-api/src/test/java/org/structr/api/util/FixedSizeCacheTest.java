@@ -56,4 +56,53 @@ public class FixedSizeCacheTest {
 		}
 
 	}
+
+	@org.junit.Test
+	public void testFixedSizeCacheStatistics() {
+
+		final FixedSizeCache<Long, TestCachable> test = new FixedSizeCache<>(10);
+		final TestCachable first                      = new TestCachable();
+
+		test.put(0L, first);
+
+		for (int i=1; i<20; i++) {
+
+			test.put(Long.valueOf(i), new TestCachable());
+		}
+
+		Assert.assertTrue("Evicted FixedSizeCache entry was not invalidated", first.invalidated);
+		Assert.assertNull("Invalid FixedSizeCache contents", test.get(0L));
+		Assert.assertNotNull("Invalid FixedSizeCache contents", test.get(19L));
+
+		Assert.assertEquals("Invalid FixedSizeCache hit count",      1L,  test.getHitCount());
+		Assert.assertEquals("Invalid FixedSizeCache miss count",     1L,  test.getMissCount());
+		Assert.assertEquals("Invalid FixedSizeCache eviction count", 10L, test.getEvictionCount());
+	}
+
+	@org.junit.Test
+	public void testFixedSizeCachePutIfAbsent() {
+
+		final FixedSizeCache<Long, Long> test = new FixedSizeCache<>(100000);
+
+		Assert.assertNull("Invalid FixedSizeCache putIfAbsent result", test.putIfAbsent(1L, 1L));
+		Assert.assertEquals("Invalid FixedSizeCache putIfAbsent result", Long.valueOf(1L), test.putIfAbsent(1L, 2L));
+		Assert.assertEquals("Invalid FixedSizeCache contents", Long.valueOf(1L), test.get(1L));
+
+		for (long i=0; i<200000; i++) {
+			test.put(i, i);
+		}
+
+		Assert.assertEquals("Invalid FixedSizeCache size", 100000, test.size());
+	}
+
+	// ----- nested classes -----
+	private static class TestCachable implements Cachable {
+
+		private boolean invalidated = false;
+
+		@Override
+		public void invalidate() {
+			invalidated = true;
+		}
+	}
 }
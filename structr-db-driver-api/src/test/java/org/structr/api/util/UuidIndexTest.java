@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.api.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import org.junit.Assert;
+
+/**
+ *
+ */
+public class UuidIndexTest {
+
+	@org.junit.Test
+	public void testPutGetRemove() {
+
+		final UuidIndex index       = new UuidIndex(100000);
+		final Map<String, Long> ref = new HashMap<>();
+		final List<String> uuids    = new ArrayList<>();
+		final Random random         = new Random(42);
+
+		for (int i=0; i<50000; i++) {
+
+			final String uuid = newUuid();
+
+			uuids.add(uuid);
+			index.put(uuid, i);
+			ref.put(uuid, Long.valueOf(i));
+		}
+
+		// remove random entries to exercise backward shift deletion
+		for (int i=0; i<25000; i++) {
+
+			final String uuid = uuids.get(random.nextInt(uuids.size()));
+
+			index.remove(uuid);
+			ref.remove(uuid);
+		}
+
+		Assert.assertEquals("Invalid UuidIndex size", ref.size(), index.size());
+
+		for (final String uuid : uuids) {
+
+			final Long expected = ref.get(uuid);
+			Assert.assertEquals("Invalid UuidIndex contents", expected != null ? expected.longValue() : -1L, index.get(uuid));
+		}
+
+		// upper case UUIDs are the same key, non-hex UUIDs are not indexed
+		final String uuid = newUuid();
+
+		index.put(uuid, 123L);
+		index.put("not-a-valid-uuid", 1L);
+
+		Assert.assertEquals("Invalid UuidIndex contents", 123L, index.get(uuid.toUpperCase()));
+		Assert.assertEquals("Invalid UuidIndex contents", -1L,  index.get("not-a-valid-uuid"));
+	}
+
+	@org.junit.Test
+	public void testEviction() {
+
+		final UuidIndex index = new UuidIndex(1000);
+
+		for (int i=0; i<5000; i++) {
+			index.put(newUuid(), i);
+		}
+
+		Assert.assertEquals("Invalid UuidIndex size", 1000, index.size());
+		Assert.assertEquals("Invalid UuidIndex eviction count", 4000L, index.getStatistics().get("evictions"));
+	}
+
+	@org.junit.Test
+	public void testReadWrite() throws IOException {
+
+		final UuidIndex index             = new UuidIndex(1000);
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final List<String> uuids          = new ArrayList<>();
+
+		for (int i=0; i<500; i++) {
+
+			final String uuid = newUuid();
+
+			uuids.add(uuid);
+			index.put(uuid, i);
+		}
+
+		try (final DataOutputStream out = new DataOutputStream(bytes)) {
+			index.write(out);
+		}
+
+		final UuidIndex restored = new UuidIndex(1000);
+
+		try (final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			Assert.assertEquals("Invalid UuidIndex entry count", 500, restored.read(in));
+		}
+
+		for (int i=0; i<500; i++) {
+			Assert.assertEquals("Invalid UuidIndex contents", i, restored.get(uuids.get(i)));
+		}
+	}
+
+	// ----- private methods -----
+	private String newUuid() {
+		return UUID.randomUUID().toString().replaceAll("\\-", "");
+	}
+}
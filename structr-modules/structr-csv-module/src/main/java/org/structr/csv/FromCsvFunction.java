@@ -18,14 +18,12 @@
  */
 package org.structr.csv;
 
+import au.com.bytecode.opencsv.CSVParser;
 import java.io.StringReader;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
-import org.apache.commons.csv.QuoteMode;
+import org.structr.rest.common.CsvRecordReader;
 import org.structr.schema.action.ActionContext;
 import org.structr.web.function.UiFunction;
 
@@ -53,28 +51,22 @@ public class FromCsvFunction extends UiFunction {
 				final String source                     = sources[0].toString();
 				String delimiter                        = ";";
 				String quoteChar                        = "\"";
-				String recordSeparator                  = "\n";
 
+				// the record separator is only relevant for output, records are read line by line
 				switch (sources.length) {
 
-					case 4: recordSeparator = (String)sources[3];
+					case 4:
 					case 3: quoteChar = (String)sources[2];
 					case 2: delimiter = (String)sources[1];
 						break;
 				}
 
-				CSVFormat format = CSVFormat.newFormat(delimiter.charAt(0)).withHeader();
-				format = format.withQuote(quoteChar.charAt(0));
-				format = format.withRecordSeparator(recordSeparator);
-				format = format.withIgnoreEmptyLines(true);
-				format = format.withIgnoreSurroundingSpaces(true);
-				format = format.withSkipHeaderRecord(true);
-				format = format.withQuoteMode(QuoteMode.ALL);
+				try (final CsvRecordReader records = new CsvRecordReader(new StringReader(source), delimiter.charAt(0), quoteChar.charAt(0), CSVParser.NULL_CHARACTER, true)) {
 
-				CSVParser parser = new CSVParser(new StringReader(source), format);
-				for (final CSVRecord record : parser.getRecords()) {
+					while (records.hasNext()) {
 
-					objects.add(record.toMap());
+						objects.add(records.next());
+					}
 				}
 
 				return objects;
@@ -0,0 +1,192 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.files.common;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.Principal;
+import org.structr.web.common.FileHelper;
+import org.structr.web.entity.AbstractFile;
+import org.structr.web.entity.FileBase;
+import org.structr.web.entity.Folder;
+
+/**
+ * Immutable snapshot of the metadata of a file or folder.
+ *
+ * All values are read at once, inside the transaction of the caller, so
+ * that the FTP and SFTP attribute getters don't need to open a transaction
+ * for every single attribute. A snapshot keeps a reference to the file
+ * node for operations that modify the file.
+ */
+public class FileSnapshot {
+
+	private final AbstractFile file;
+	private final String uuid;
+	private final String name;
+	private final String path;
+	private final String ownerName;
+	private final String groupName;
+	private final Date lastModifiedDate;
+	private final Date createdDate;
+	private final boolean folder;
+	private final boolean hidden;
+	private final boolean visibleToPublicUsers;
+	private final boolean visibleToAuthenticatedUsers;
+	private final long size;
+	private final int childCount;
+
+	private FileSnapshot(final AbstractFile file, final Map<String, String[]> owners, final boolean countChildren) {
+
+		final Principal owner = file.getOwnerNode();
+		final String[] names  = getOwnerAndGroupName(owner, owners);
+		final Long fileSize   = file.getProperty(FileBase.size);
+
+		this.file                        = file;
+		this.uuid                        = file.getUuid();
+		this.name                        = file.getProperty(AbstractNode.name);
+		this.path                        = FileHelper.getFolderPath(file);
+		this.ownerName                   = names[0];
+		this.groupName                   = names[1];
+		this.lastModifiedDate            = file.getLastModifiedDate();
+		this.createdDate                 = file.getCreatedDate();
+		this.folder                      = file instanceof Folder;
+		this.hidden                      = file.getProperty(AbstractNode.hidden);
+		this.visibleToPublicUsers        = file.isVisibleToPublicUsers();
+		this.visibleToAuthenticatedUsers = file.isVisibleToAuthenticatedUsers();
+		this.size                        = fileSize != null ? fileSize : 0L;
+		this.childCount                  = countChildren && folder ? countChildren((Folder)file) : -1;
+	}
+
+	/**
+	 * Creates a snapshot of the given file. Must be called in a transaction.
+	 *
+	 * @param file
+	 * @param countChildren whether to count the children of folders
+	 * @return the snapshot
+	 */
+	public static FileSnapshot create(final AbstractFile file, final boolean countChildren) {
+		return new FileSnapshot(file, new HashMap<>(), countChildren);
+	}
+
+	/**
+	 * Creates snapshots of the given files, resolving the names of each owner
+	 * and its group only once. Must be called in a transaction.
+	 *
+	 * @param files
+	 * @param countChildren whether to count the children of folders
+	 * @return the snapshots
+	 */
+	public static List<FileSnapshot> createAll(final Iterable<? extends AbstractFile> files, final boolean countChildren) {
+
+		final Map<String, String[]> owners = new HashMap<>();
+		final List<FileSnapshot> snapshots = new ArrayList<>();
+
+		for (final AbstractFile file : files) {
+			snapshots.add(new FileSnapshot(file, owners, countChildren));
+		}
+
+		return snapshots;
+	}
+
+	public AbstractFile getFile() {
+		return file;
+	}
+
+	public String getUuid() {
+		return uuid;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public String getOwnerName() {
+		return ownerName;
+	}
+
+	public String getGroupName() {
+		return groupName;
+	}
+
+	public Date getLastModifiedDate() {
+		return lastModifiedDate;
+	}
+
+	public Date getCreatedDate() {
+		return createdDate;
+	}
+
+	public boolean isFolder() {
+		return folder;
+	}
+
+	public boolean isHidden() {
+		return hidden;
+	}
+
+	public boolean isVisibleToPublicUsers() {
+		return visibleToPublicUsers;
+	}
+
+	public boolean isVisibleToAuthenticatedUsers() {
+		return visibleToAuthenticatedUsers;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * @return the number of children of a folder, or -1 if they were not counted
+	 */
+	public int getChildCount() {
+		return childCount;
+	}
+
+	// ----- private methods -----
+	private String[] getOwnerAndGroupName(final Principal owner, final Map<String, String[]> owners) {
+
+		if (owner == null) {
+			return new String[2];
+		}
+
+		String[] names = owners.get(owner.getUuid());
+		if (names == null) {
+
+			final List<Principal> parents = owner.getParents();
+
+			names = new String[] { owner.getProperty(AbstractNode.name), parents.isEmpty() ? null : parents.get(0).getProperty(AbstractNode.name) };
+			owners.put(owner.getUuid(), names);
+		}
+
+		return names;
+	}
+
+	private int countChildren(final Folder folder) {
+		return folder.getProperty(Folder.folders).size() + folder.getProperty(Folder.files).size();
+	}
+}
@@ -19,7 +19,6 @@
 package org.structr.files.ftp;
 
 import java.util.Date;
-import java.util.List;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.slf4j.Logger;
@@ -29,12 +28,10 @@ import org.structr.common.error.FrameworkException;
 import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
-import org.structr.core.entity.AbstractUser;
-import org.structr.core.entity.Principal;
 import org.structr.core.graph.Tx;
+import org.structr.files.common.FileSnapshot;
 import org.structr.web.common.FileHelper;
 import org.structr.web.entity.AbstractFile;
-import org.structr.web.entity.FileBase;
 import org.structr.web.entity.Folder;
 
 /**
@@ -46,6 +43,7 @@ public abstract class AbstractStructrFtpFile implements FtpFile {
 	private static final Logger logger = LoggerFactory.getLogger(AbstractStructrFtpFile.class.getName());
 
 	protected AbstractFile structrFile;
+	protected FileSnapshot snapshot;
 
 	protected SecurityContext securityContext = null;
 
@@ -58,6 +56,12 @@ public abstract class AbstractStructrFtpFile implements FtpFile {
 		this.securityContext = securityContext;
 	}
 
+	public AbstractStructrFtpFile(final SecurityContext securityContext, final FileSnapshot snapshot) {
+		this.structrFile     = snapshot.getFile();
+		this.snapshot        = snapshot;
+		this.securityContext = securityContext;
+	}
+
 	public AbstractStructrFtpFile(final String path, final StructrFtpUser user) {
 		this.newPath = path;
 		this.owner   = user;
@@ -71,17 +75,11 @@ public abstract class AbstractStructrFtpFile implements FtpFile {
 		if (structrFile == null) {
 			return newPath;
 		}
-		
-		try (Tx tx = StructrApp.getInstance(securityContext).tx()) {
-		
-			String path = FileHelper.getFolderPath(structrFile);
-			
-			tx.success();
-			
-			return path;
-			
-		} catch (FrameworkException fex) {
-			logger.error("Error in getName() of abstract ftp file", fex);
+
+		final FileSnapshot snapshot = getSnapshot();
+		if (snapshot != null) {
+
+			return snapshot.getPath();
 		}
 
 		return null;
@@ -90,45 +88,31 @@ public abstract class AbstractStructrFtpFile implements FtpFile {
 	@Override
 	public String getName() {
 
-		try (Tx tx = StructrApp.getInstance(securityContext).tx()) {
+		String name = null;
 
-			String name = null;
-			
-			if (!("/").equals(newPath)) {
-			
-				name = newPath.contains("/") ? StringUtils.substringAfterLast(newPath, "/") : newPath;
-			
-			} else {
-			
-				if (structrFile != null) {
-					name = structrFile.getProperty(FileBase.name);
-				}
-			}
+		if (!("/").equals(newPath)) {
 
-			tx.success();
-			
-			return name == null ? structrFile.getUuid() : name;
+			name = newPath.contains("/") ? StringUtils.substringAfterLast(newPath, "/") : newPath;
+
+		} else {
 
-		} catch (FrameworkException fex) {
-			logger.error("Error in getName() of abstract ftp file", fex);
+			final FileSnapshot snapshot = getSnapshot();
+			if (snapshot != null) {
+
+				name = snapshot.getName() != null ? snapshot.getName() : snapshot.getUuid();
+			}
 		}
 
-		return null;
+		return name;
 	}
 
 	@Override
 	public boolean isHidden() {
 
-		try (Tx tx = StructrApp.getInstance(securityContext).tx()) {
-
-			final boolean hidden = structrFile.getProperty(FileBase.hidden);
-
-			tx.success();
+		final FileSnapshot snapshot = getSnapshot();
+		if (snapshot != null) {
 
-			return hidden;
-
-		} catch (FrameworkException fex) {
-			logger.error("Error in isHidden() of abstract ftp file", fex);
+			return snapshot.isHidden();
 		}
 
 		return true;
@@ -157,22 +141,10 @@ public abstract class AbstractStructrFtpFile implements FtpFile {
 	@Override
 	public String getOwnerName() {
 
-		try (Tx tx = StructrApp.getInstance(securityContext).tx()) {
-
-			final Principal owner = getOwner();
-
-			String name = "";
-
-			if (owner != null) {
-				name = owner.getProperty(AbstractUser.name);
-			}
-
-			tx.success();
-
-			return name;
+		final FileSnapshot snapshot = getSnapshot();
+		if (snapshot != null) {
 
-		} catch (FrameworkException fex) {
-			logger.error("Error while getting owner name of " + this, fex);
+			return snapshot.getOwnerName() != null ? snapshot.getOwnerName() : "";
 		}
 
 		return null;
@@ -181,25 +153,10 @@ public abstract class AbstractStructrFtpFile implements FtpFile {
 	@Override
 	public String getGroupName() {
 
-		try (Tx tx = StructrApp.getInstance(securityContext).tx()) {
-
-			final Principal owner = getOwner();
-			String name = "";
-
-			if (owner != null) {
-
-				final List<Principal> parents = owner.getParents();
-				if (!parents.isEmpty()) {
+		final FileSnapshot snapshot = getSnapshot();
+		if (snapshot != null && snapshot.getGroupName() != null) {
 
-					name = parents.get(0).getProperty(AbstractNode.name);
-				}
-			}
-
-			tx.success();
-			return name;
-
-		} catch (FrameworkException fex) {
-			logger.error("Error while getting group name of " + this, fex);
+			return snapshot.getGroupName();
 		}
 
 		return "";
@@ -213,16 +170,10 @@ public abstract class AbstractStructrFtpFile implements FtpFile {
 	@Override
 	public long getLastModified() {
 
-		try (Tx tx = StructrApp.getInstance(securityContext).tx()) {
-
-			final Date date = structrFile.getProperty(AbstractFile.lastModifiedDate);
+		final FileSnapshot snapshot = getSnapshot();
+		if (snapshot != null && snapshot.getLastModifiedDate() != null) {
 
-			tx.success();
-
-			return date.getTime();
-
-		} catch (FrameworkException fex) {
-			logger.error("Error while last modified date of " + this, fex);
+			return snapshot.getLastModifiedDate().getTime();
 		}
 
 		return 0L;
@@ -241,6 +192,8 @@ public abstract class AbstractStructrFtpFile implements FtpFile {
 			logger.error("", ex);
 		}
 
+		invalidate();
+
 		return true;
 	}
 
@@ -259,6 +212,8 @@ public abstract class AbstractStructrFtpFile implements FtpFile {
 			logger.error("", ex);
 		}
 
+		invalidate();
+
 		return true;
 
 	}
@@ -309,26 +264,44 @@ public abstract class AbstractStructrFtpFile implements FtpFile {
 
 		} catch (FrameworkException ex) {
 			logger.error("", ex);
+
+		} finally {
+
+			invalidate();
 		}
 
 		return false;
 	}
 
-	private Principal getOwner() {
+	/**
+	 * Returns the metadata snapshot of this file, reading all attributes
+	 * in a single transaction if this file was not created from a snapshot.
+	 *
+	 * @return the snapshot, or null if there is no file
+	 */
+	protected FileSnapshot getSnapshot() {
 
-		try (Tx tx = StructrApp.getInstance(securityContext).tx()) {
+		if (snapshot == null && structrFile != null) {
 
-			Principal owner = structrFile.getProperty(FileBase.owner);
+			try (Tx tx = StructrApp.getInstance(securityContext).tx()) {
 
-			tx.success();
+				snapshot = FileSnapshot.create(structrFile, false);
 
-			return owner;
+				tx.success();
 
-		} catch (FrameworkException fex) {
-			logger.error("Error while getting owner of " + this, fex);
+			} catch (FrameworkException fex) {
+				logger.error("Error while reading metadata of " + this, fex);
+			}
 		}
 
-		return null;
+		return snapshot;
+	}
+
+	/**
+	 * Discards the snapshot of this file after a modification.
+	 */
+	protected void invalidate() {
+		snapshot = null;
 	}
 
 	protected AbstractFile getStructrFile() {
@@ -108,6 +108,8 @@ public class FileOrFolder extends AbstractStructrFtpFile {
 
 			tx.success();
 
+			invalidate();
+
 			return true;
 
 		} catch (FrameworkException ex) {
@@ -148,6 +150,8 @@ public class FileOrFolder extends AbstractStructrFtpFile {
 
 			tx.success();
 
+			invalidate();
+
 			return ((FileBase) structrFile).getOutputStream();
 
 		} catch (FrameworkException fex) {
@@ -29,6 +29,7 @@ import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.app.StructrApp;
 import org.structr.core.graph.Tx;
+import org.structr.files.common.FileSnapshot;
 import org.structr.web.entity.FileBase;
 
 /**
@@ -43,6 +44,10 @@ public class StructrFtpFile extends AbstractStructrFtpFile {
 		super(securityContext, file);
 	}
 
+	public StructrFtpFile(final SecurityContext securityContext, final FileSnapshot snapshot) {
+		super(securityContext, snapshot);
+	}
+
 	@Override
 	public boolean isDirectory() {
 		return false;
@@ -56,16 +61,12 @@ public class StructrFtpFile extends AbstractStructrFtpFile {
 	@Override
 	public long getSize() {
 		
-		try (Tx tx = StructrApp.getInstance(securityContext).tx()) {
-		
-			final Long size = ((FileBase) structrFile).getSize();
-			
-			tx.success();
-			
-			return size == null ? 0L : size;
-			
-		} catch (FrameworkException fex) {}
-		
+		final FileSnapshot snapshot = getSnapshot();
+		if (snapshot != null) {
+
+			return snapshot.getSize();
+		}
+
 		return 0L;
 	}
 
@@ -83,6 +84,8 @@ public class StructrFtpFile extends AbstractStructrFtpFile {
 			final OutputStream outputStream = ((FileBase) structrFile).getOutputStream();
 			
 			tx.success();
+
+			invalidate();
 			
 			return outputStream;
 
@@ -22,7 +22,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.slf4j.Logger;
@@ -33,6 +32,7 @@ import org.structr.core.Result;
 import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
 import org.structr.core.graph.Tx;
+import org.structr.files.common.FileSnapshot;
 import org.structr.web.entity.AbstractFile;
 import org.structr.web.entity.FileBase;
 import org.structr.web.entity.Folder;
@@ -50,6 +50,10 @@ public class StructrFtpFolder extends AbstractStructrFtpFile implements FtpFile
 		super(securityContext, folder);		
 	}
 
+	public StructrFtpFolder(final SecurityContext securityContext, final FileSnapshot snapshot) {
+		super(securityContext, snapshot);
+	}
+
 	@Override
 	public boolean doesExist() {
 		boolean exists = "/".equals(newPath) || super.doesExist();
@@ -72,112 +76,55 @@ public class StructrFtpFolder extends AbstractStructrFtpFile implements FtpFile
 	}
 
 	@Override
-	public long getLastModified() {
-		
-		try (Tx tx = StructrApp.getInstance(securityContext).tx()) {
-		
-			final Date date = structrFile.getProperty(Folder.lastModifiedDate);
-			
-			tx.success();
-			
-			return date.getTime();
-		
-		} catch (Exception ex) {
+	public long getSize() {
+
+		final FileSnapshot snapshot = getSnapshot();
+		if (snapshot != null && snapshot.getChildCount() >= 0) {
+
+			return snapshot.getChildCount();
 		}
-		
-		return 0L;
-	}
 
-	@Override
-	public long getSize() {
-		return listFiles().size();
+		final List<FtpFile> children = listFiles();
+
+		return children != null ? children.size() : 0L;
 	}
 
 	@Override
 	public List<FtpFile> listFiles() {
 
 		final List<FtpFile> ftpFiles = new ArrayList();
+		final App app                = StructrApp.getInstance(securityContext);
+		final String requestedPath   = getAbsolutePath();
+		final boolean isRoot         = "/".equals(requestedPath);
 
-		final App app = StructrApp.getInstance(securityContext);
+		logger.debug("Children of {} requested", requestedPath);
 
 		try (final Tx tx = app.tx()) {
 
-			String requestedPath = getAbsolutePath();
-			logger.debug("Children of {} requested", requestedPath);
-
-			if ("/".equals(requestedPath)) {
-				try {
-					Result<Folder> folders = app.nodeQuery(Folder.class).getResult();
-					logger.debug("{} folders found", folders.size());
-
-					for (Folder f : folders.getResults()) {
-
-						if (f.getProperty(AbstractFile.hasParent)) {
-							continue;
-						}
-
-						FtpFile ftpFile = new StructrFtpFolder(securityContext, f);
-						logger.debug("Folder found: {}", ftpFile.getAbsolutePath());
-
-						ftpFiles.add(ftpFile);
-
-					}
-
-					Result<FileBase> files = app.nodeQuery(FileBase.class).getResult();
-					logger.debug("{} files found", files.size());
-
-					for (FileBase f : files.getResults()) {
-
-						if (f.getProperty(AbstractFile.hasParent)) {
-							continue;
-						}
-
-						logger.debug("Structr file found: {}", f);
+			// read the metadata of all children in this transaction
+			for (final FileSnapshot child : FileSnapshot.createAll(getChildren(app, isRoot), true)) {
 
-						FtpFile ftpFile = new StructrFtpFile(securityContext, f);
-						logger.debug("File found: {}", ftpFile.getAbsolutePath());
+				if (child.isFolder()) {
 
-						ftpFiles.add(ftpFile);
+					ftpFiles.add(new StructrFtpFolder(securityContext, child));
 
-					}
+				} else {
 
-					Result<Page> pages = app.nodeQuery(Page.class).getResult();
-					logger.debug("{} pages found", pages.size());
-
-					for (Page p : pages.getResults()) {
-
-						logger.debug("Structr page found: {}", p);
-
-						ftpFiles.add(new FtpFilePageWrapper(p));
-
-					}
-
-					return ftpFiles;
-
-				} catch (FrameworkException ex) {
-					logger.error("", ex);
+					ftpFiles.add(new StructrFtpFile(securityContext, child));
 				}
-
 			}
 
-			List<Folder> folders = ((Folder) structrFile).getProperty(Folder.folders);
-
-			for (Folder f : folders) {
-
-				FtpFile ftpFile = new StructrFtpFolder(securityContext, f);
-				logger.debug("Subfolder found: {}", ftpFile.getAbsolutePath());
-
-				ftpFiles.add(ftpFile);
-			}
+			if (isRoot) {
 
-			List<FileBase> files = ((Folder) structrFile).getProperty(Folder.files);
+				final Result<Page> pages = app.nodeQuery(Page.class).getResult();
+				logger.debug("{} pages found", pages.size());
 
-			for (FileBase f : files) {
+				for (Page p : pages.getResults()) {
 
-				FtpFile ftpFile = new StructrFtpFile(securityContext, f);
-				logger.debug("File found: {}", ftpFile.getAbsolutePath());
+					logger.debug("Structr page found: {}", p);
 
-				ftpFiles.add(ftpFile);
+					ftpFiles.add(new FtpFilePageWrapper(p));
+				}
 			}
 
 			tx.success();
@@ -210,4 +157,22 @@ public class StructrFtpFolder extends AbstractStructrFtpFile implements FtpFile
 		throw new UnsupportedOperationException("Not supported.");
 	}
 
+	// ----- private methods -----
+	private List<AbstractFile> getChildren(final App app, final boolean isRoot) throws FrameworkException {
+
+		final List<AbstractFile> children = new ArrayList<>();
+
+		if (isRoot) {
+
+			children.addAll(app.nodeQuery(Folder.class).and(AbstractFile.hasParent, false).getAsList());
+			children.addAll(app.nodeQuery(FileBase.class).and(AbstractFile.hasParent, false).getAsList());
+
+		} else if (structrFile != null) {
+
+			children.addAll(((Folder) structrFile).getProperty(Folder.folders));
+			children.addAll(((Folder) structrFile).getProperty(Folder.files));
+		}
+
+		return children;
+	}
 }
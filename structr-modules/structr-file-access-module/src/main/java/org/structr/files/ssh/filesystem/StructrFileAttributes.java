@@ -27,12 +27,9 @@ import java.nio.file.attribute.PosixFileAttributes;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.UserPrincipal;
 import java.util.Arrays;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import org.slf4j.Logger;
@@ -41,13 +38,9 @@ import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
-import org.structr.core.entity.Group;
-import org.structr.core.entity.Principal;
 import org.structr.core.graph.Tx;
+import org.structr.files.common.FileSnapshot;
 import org.structr.web.entity.AbstractFile;
-import org.structr.web.entity.FileBase;
-import org.structr.web.entity.Folder;
-import org.structr.web.entity.User;
 
 /**
  *
@@ -58,91 +51,68 @@ public class StructrFileAttributes implements PosixFileAttributes, DosFileAttrib
 	public static final Set<String> SUPPORTED_VIEWS = new LinkedHashSet<>(Arrays.asList(new String[] { "owner", "dos", "basic", "posix", "permissions" } ));
 
 	private SecurityContext securityContext = null;
-	private AbstractFile file               = null;
+	private FileSnapshot snapshot           = null;
 
 	public StructrFileAttributes(final SecurityContext securityContext, final AbstractFile file) {
 
 		this.securityContext = securityContext;
-		this.file            = file;
-	}
-
-	@Override
-	public UserPrincipal owner() {
-
-		if (file == null) {
-			return null;
-		}
 
-		UserPrincipal owner = null;
+		if (file != null) {
 
-		try (Tx tx = StructrApp.getInstance(securityContext).tx()) {
+			try (Tx tx = StructrApp.getInstance(securityContext).tx()) {
 
-			final Principal fileOwner = file.getOwnerNode();
-			if (fileOwner == null) {
+				this.snapshot = FileSnapshot.create(file, false);
 
-				owner = securityContext.getUser(false)::getName;
+				tx.success();
 
-			} else {
-				owner = fileOwner::getName;
+			} catch (FrameworkException fex) {
+				logger.error("", fex);
 			}
-			tx.success();
-		} catch (FrameworkException fex) {
-			logger.error("", fex);
 		}
+	}
 
-		return owner;
+	public StructrFileAttributes(final SecurityContext securityContext, final FileSnapshot snapshot) {
+
+		this.securityContext = securityContext;
+		this.snapshot        = snapshot;
 	}
 
 	@Override
-	public GroupPrincipal group() {
+	public UserPrincipal owner() {
 
-		if (file == null) {
+		if (snapshot == null) {
 			return null;
 		}
 
-		final List<Group> groups = new LinkedList<>();
-
-		try (Tx tx = StructrApp.getInstance(securityContext).tx()) {
-
-			final Principal owner = file.getOwnerNode();
-			if (owner != null) {
-
-				groups.addAll(owner.getProperty(User.groups));
-			}
-
-			tx.success();
+		final String name = snapshot.getOwnerName();
+		if (name == null) {
 
-		} catch (FrameworkException fex) {
-			logger.error("", fex);
+			return securityContext.getUser(false)::getName;
 		}
 
-		return groups.size() > 0 ? groups.get(0)::getName : null;
+		return () -> name;
 	}
 
 	@Override
-	public FileTime lastModifiedTime() {
+	public GroupPrincipal group() {
 
-		if (file == null) {
+		if (snapshot == null) {
 			return null;
 		}
 
-		FileTime time = null;
+		final String name = snapshot.getGroupName();
 
-		try (Tx tx = StructrApp.getInstance(securityContext).tx()) {
-
-			final Date date = file.getLastModifiedDate();
-			if (date != null) {
+		return name != null ? () -> name : null;
+	}
 
-				time = FileTime.fromMillis(date.getTime());
-			}
+	@Override
+	public FileTime lastModifiedTime() {
 
-			tx.success();
-		} catch (FrameworkException fex) {
-			logger.error("", fex);
+		if (snapshot == null || snapshot.getLastModifiedDate() == null) {
+			return null;
 		}
 
-		return time;
-
+		return FileTime.fromMillis(snapshot.getLastModifiedDate().getTime());
 	}
 
 	@Override
@@ -153,63 +123,23 @@ public class StructrFileAttributes implements PosixFileAttributes, DosFileAttrib
 	@Override
 	public FileTime creationTime() {
 
-		if (file == null) {
+		if (snapshot == null || snapshot.getCreatedDate() == null) {
 			return null;
 		}
 
-		FileTime time = null;
-
-		try (Tx tx = StructrApp.getInstance(securityContext).tx()) {
-
-			final Date date = file.getCreatedDate();
-			if (date != null) {
-
-				time = FileTime.fromMillis(date.getTime());
-			}
-			tx.success();
-		} catch (FrameworkException fex) {
-			logger.error("", fex);
-		}
-
-		return time;
+		return FileTime.fromMillis(snapshot.getCreatedDate().getTime());
 	}
 
 	@Override
 	public boolean isRegularFile() {
 
-		if (file == null) {
-			return false;
-		}
-
-		boolean isRegularFile = false;
-
-		try (Tx tx = StructrApp.getInstance(securityContext).tx()) {
-			isRegularFile = file.getProperty(FileBase.isFile);
-			tx.success();
-		} catch (FrameworkException fex) {
-			logger.error("", fex);
-		}
-
-		return isRegularFile;
+		return snapshot != null && !snapshot.isFolder();
 	}
 
 	@Override
 	public boolean isDirectory() {
 
-		if (file == null) {
-			return false;
-		}
-
-		boolean isDirectory = false;
-
-		try (Tx tx = StructrApp.getInstance(securityContext).tx()) {
-			isDirectory = file.getProperty(Folder.isFolder);
-			tx.success();
-		} catch (FrameworkException fex) {
-			logger.error("", fex);
-		}
-
-		return isDirectory;
+		return snapshot != null && snapshot.isFolder();
 	}
 
 	@Override
@@ -226,44 +156,13 @@ public class StructrFileAttributes implements PosixFileAttributes, DosFileAttrib
 	@Override
 	public long size() {
 
-		if (file == null) {
-			return 0L;
-		}
-
-		long size = 0;
-
-		try (Tx tx = StructrApp.getInstance(securityContext).tx()) {
-
-			final Number s = file.getProperty(FileBase.size);
-			if (s != null) {
-
-				size = s.longValue();
-			}
-
-			tx.success();
-		} catch (FrameworkException fex) {
-			logger.error("", fex);
-		}
-
-		return size;
+		return snapshot != null ? snapshot.getSize() : 0L;
 	}
 
 	@Override
 	public Object fileKey() {
 
-		if (file == null) {
-			return null;
-		}
-
-		String uuid = null;
-		try (Tx tx = StructrApp.getInstance(securityContext).tx()) {
-			uuid = file.getUuid();
-			tx.success();
-		} catch (FrameworkException fex) {
-			logger.error("", fex);
-		}
-
-		return uuid;
+		return snapshot != null ? snapshot.getUuid() : null;
 	}
 
 	@Override
@@ -274,38 +173,30 @@ public class StructrFileAttributes implements PosixFileAttributes, DosFileAttrib
 		permissions.add(PosixFilePermission.OWNER_READ);
 		permissions.add(PosixFilePermission.OWNER_WRITE);
 
-		if (file != null) {
+		if (snapshot != null) {
 
-			if (file instanceof Folder) {
+			if (snapshot.isFolder()) {
 				permissions.add(PosixFilePermission.OWNER_EXECUTE);
 			}
 
-			try (Tx tx = StructrApp.getInstance(securityContext).tx()) {
+			if (snapshot.isVisibleToPublicUsers()) {
 
-				if (file.isVisibleToPublicUsers()) {
+				permissions.add(PosixFilePermission.OTHERS_READ);
+				permissions.add(PosixFilePermission.OTHERS_WRITE);
 
-					permissions.add(PosixFilePermission.OTHERS_READ);
-					permissions.add(PosixFilePermission.OTHERS_WRITE);
-
-					if (file instanceof Folder) {
-						permissions.add(PosixFilePermission.OTHERS_EXECUTE);
-					}
+				if (snapshot.isFolder()) {
+					permissions.add(PosixFilePermission.OTHERS_EXECUTE);
 				}
+			}
 
-				if (file.isVisibleToAuthenticatedUsers()) {
+			if (snapshot.isVisibleToAuthenticatedUsers()) {
 
-					permissions.add(PosixFilePermission.GROUP_READ);
-					permissions.add(PosixFilePermission.GROUP_WRITE);
+				permissions.add(PosixFilePermission.GROUP_READ);
+				permissions.add(PosixFilePermission.GROUP_WRITE);
 
-					if (file instanceof Folder) {
-						permissions.add(PosixFilePermission.GROUP_EXECUTE);
-					}
+				if (snapshot.isFolder()) {
+					permissions.add(PosixFilePermission.GROUP_EXECUTE);
 				}
-
-				tx.success();
-
-			} catch (FrameworkException fex) {
-				logger.error("", fex);
 			}
 		}
 
@@ -397,22 +288,7 @@ public class StructrFileAttributes implements PosixFileAttributes, DosFileAttrib
 	@Override
 	public String name() {
 
-		if (file == null) {
-			return null;
-		}
-
-		String name = null;
-
-		try (Tx tx = StructrApp.getInstance(securityContext).tx()) {
-
-			name = file.getName();
-			tx.success();
-
-		} catch (FrameworkException fex) {
-			logger.error("", fex);
-		}
-
-		return name;
+		return snapshot != null ? snapshot.getName() : null;
 	}
 
 	@Override
@@ -423,10 +299,12 @@ public class StructrFileAttributes implements PosixFileAttributes, DosFileAttrib
 	@Override
 	public void setPermissions(final Set<PosixFilePermission> perms) throws IOException {
 
-		if (file == null) {
+		if (snapshot == null) {
 			return;
 		}
 
+		final AbstractFile file = snapshot.getFile();
+
 		try (Tx tx = StructrApp.getInstance(securityContext).tx()) {
 
 			file.setProperty(AbstractNode.visibleToAuthenticatedUsers, perms.contains(PosixFilePermission.GROUP_READ));
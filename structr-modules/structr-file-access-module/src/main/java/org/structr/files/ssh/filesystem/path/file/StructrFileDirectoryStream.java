@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.files.ssh.filesystem.path.file;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.util.LinkedList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.app.App;
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.Tx;
+import org.structr.files.common.FileSnapshot;
+import org.structr.files.ssh.filesystem.AbstractDirectoryStream;
+import org.structr.files.ssh.filesystem.StructrFilesystem;
+import org.structr.files.ssh.filesystem.StructrPath;
+import org.structr.web.entity.AbstractFile;
+import org.structr.web.entity.FileBase;
+import org.structr.web.entity.Folder;
+
+/**
+ * Directory stream for the files and folders of a folder, or of the toplevel
+ * files directory if no folder is given.
+ *
+ * The metadata of all children is read in a single transaction and attached
+ * to the paths of the stream, so that the attribute requests of the SFTP
+ * subsystem for the entries of this listing don't need to look up each file
+ * again.
+ */
+public class StructrFileDirectoryStream extends AbstractDirectoryStream {
+
+	private static final Logger logger = LoggerFactory.getLogger(StructrFileDirectoryStream.class.getName());
+
+	public StructrFileDirectoryStream(final StructrFilesystem fs, final StructrPath parent, final Folder folder, final DirectoryStream.Filter<? super Path> filter) {
+
+		final App app             = StructrApp.getInstance(fs.getSecurityContext());
+
+		try (final Tx tx = app.tx()) {
+
+			final List<AbstractFile> children = new LinkedList<>();
+
+			if (folder != null) {
+
+				children.addAll(folder.getProperty(Folder.folders));
+				children.addAll(folder.getProperty(Folder.files));
+
+			} else {
+
+				children.addAll(app.nodeQuery(Folder.class).and(AbstractFile.hasParent, false).getAsList());
+				children.addAll(app.nodeQuery(FileBase.class).and(AbstractFile.hasParent, false).getAsList());
+			}
+
+			for (final FileSnapshot snapshot : FileSnapshot.createAll(children, false)) {
+
+				final StructrFilePath path = new StructrFilePath(fs, parent, snapshot);
+
+				if (filter == null || filter.accept(path)) {
+					paths.add(path);
+				}
+			}
+
+			tx.success();
+
+		} catch (FrameworkException | IOException ex) {
+			logger.warn("Unable to create directory stream", ex);
+		}
+	}
+}
@@ -32,10 +32,6 @@ import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.FileAttributeView;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import org.slf4j.Logger;
@@ -47,6 +43,7 @@ import org.structr.core.entity.AbstractNode;
 import org.structr.core.graph.NodeAttribute;
 import org.structr.core.graph.Tx;
 import org.structr.dynamic.File;
+import org.structr.files.common.FileSnapshot;
 import org.structr.files.ssh.filesystem.StructrFileAttributes;
 import org.structr.files.ssh.filesystem.StructrFileChannel;
 import org.structr.files.ssh.filesystem.StructrFilesystem;
@@ -65,61 +62,27 @@ public class StructrFilePath extends StructrPath {
 	private static final Logger logger = LoggerFactory.getLogger(StructrFilePath.class.getName());
 
 	private AbstractFile cachedActualFile = null;
+	private FileSnapshot snapshot         = null;
 
 	public StructrFilePath(final StructrFilesystem fs, final StructrPath parent, final String name) {
 		super(fs, parent, name);
 	}
 
+	StructrFilePath(final StructrFilesystem fs, final StructrPath parent, final FileSnapshot snapshot) {
+
+		super(fs, parent, snapshot.getName());
+
+		this.cachedActualFile = snapshot.getFile();
+		this.snapshot         = snapshot;
+	}
+
 	@Override
 	public DirectoryStream<Path> getDirectoryStream(DirectoryStream.Filter<? super Path> filter) {
 
 		final Folder folder = (Folder)getActualFile();
 		if (folder != null) {
 
-			return new DirectoryStream() {
-
-				boolean closed = false;
-
-				@Override
-				public Iterator iterator() {
-
-					if (!closed) {
-
-						final App app                 = StructrApp.getInstance(fs.getSecurityContext());
-						final List<StructrPath> files = new LinkedList<>();
-
-						try (final Tx tx = app.tx()) {
-
-
-							for (final Folder folder : folder.getProperty(Folder.folders)) {
-
-								files.add(new StructrFilePath(fs, StructrFilePath.this, folder.getName()));
-							}
-
-							for (final FileBase file : folder.getProperty(Folder.files)) {
-
-								files.add(new StructrFilePath(fs, StructrFilePath.this, file.getName()));
-							}
-
-							tx.success();
-
-						} catch (FrameworkException fex) {
-							logger.warn("", fex);
-						}
-
-						return files.iterator();
-
-					}
-
-					return Collections.emptyIterator();
-				}
-
-				@Override
-				public void close() throws IOException {
-					closed = true;
-				}
-			};
-
+			return new StructrFileDirectoryStream(fs, this, folder, filter);
 		}
 
 		return null;
@@ -172,6 +135,8 @@ public class StructrFilePath extends StructrPath {
 
 				tx.success();
 
+				invalidateSnapshots();
+
 			} catch (FrameworkException fex) {
 
 				logger.warn("Unable to open file channel for writing of {}: {}", new Object[] { path, fex.getMessage() });
@@ -216,6 +181,8 @@ public class StructrFilePath extends StructrPath {
 
 			tx.success();
 
+			invalidateSnapshots();
+
 		} catch (FrameworkException fex) {
 
 			logger.warn("Unable to delete file {}: {}", new Object[] { path, fex.getMessage() } );
@@ -245,6 +212,8 @@ public class StructrFilePath extends StructrPath {
 
 			tx.success();
 
+			invalidateSnapshots();
+
 		} catch (FrameworkException fex) {
 			logger.warn("Unable to delete file {}: {}", new Object[] { path, fex.getMessage() } );
 		}
@@ -258,10 +227,10 @@ public class StructrFilePath extends StructrPath {
 	@Override
 	public Map<String, Object> getAttributes(final String attributes, final LinkOption... options) throws IOException {
 
-		final AbstractFile actualFile = getActualFile();
-		if (actualFile != null) {
+		final FileSnapshot snapshot = getSnapshot();
+		if (snapshot != null) {
 
-			return new StructrFileAttributes(fs.getSecurityContext(), actualFile).toMap(attributes);
+			return new StructrFileAttributes(fs.getSecurityContext(), snapshot).toMap(attributes);
 		}
 
 		throw new NoSuchFileException(toString());
@@ -270,10 +239,10 @@ public class StructrFilePath extends StructrPath {
 	@Override
 	public <T extends BasicFileAttributes> T getAttributes(Class<T> type, LinkOption... options) throws IOException {
 
-		final AbstractFile actualFile = getActualFile();
-		if (actualFile != null) {
+		final FileSnapshot snapshot = getSnapshot();
+		if (snapshot != null) {
 
-			return (T)new StructrFileAttributes(fs.getSecurityContext(), actualFile);
+			return (T)new StructrFileAttributes(fs.getSecurityContext(), snapshot);
 		}
 
 		throw new NoSuchFileException(toString());
@@ -332,6 +301,8 @@ public class StructrFilePath extends StructrPath {
 
 				tx.success();
 
+				invalidateSnapshots();
+
 			} catch (FrameworkException fex) {
 
 				logger.warn("", fex);
@@ -392,6 +363,33 @@ public class StructrFilePath extends StructrPath {
 	}
 
 	// ----- private methods -----
+	private FileSnapshot getSnapshot() {
+
+		if (snapshot == null) {
+
+			final AbstractFile actualFile = getActualFile();
+			if (actualFile != null) {
+
+				try (final Tx tx = StructrApp.getInstance(fs.getSecurityContext()).tx()) {
+
+					snapshot = FileSnapshot.create(actualFile, false);
+
+					tx.success();
+
+				} catch (FrameworkException fex) {
+
+					logger.warn("Unable to read metadata of {}: {}", new Object[] { toString(), fex.getMessage() } );
+				}
+			}
+		}
+
+		return snapshot;
+	}
+
+	private void invalidateSnapshots() {
+		snapshot = null;
+	}
+
 	private void setParentFolder(final AbstractFile file) throws FrameworkException {
 
 		final Path parentPath = getParent();
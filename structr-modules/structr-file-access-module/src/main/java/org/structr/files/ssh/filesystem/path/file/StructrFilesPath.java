@@ -30,24 +30,13 @@ import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.FileAttributeView;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.structr.common.error.FrameworkException;
-import org.structr.core.app.App;
-import org.structr.core.app.StructrApp;
-import org.structr.core.graph.Tx;
 import org.structr.files.ssh.filesystem.StructrFilesystem;
 import org.structr.files.ssh.filesystem.StructrPath;
 import org.structr.files.ssh.filesystem.StructrToplevelAttributes;
-import org.structr.web.entity.AbstractFile;
-import org.structr.web.entity.FileBase;
-import org.structr.web.entity.Folder;
 
 /**
  *
@@ -67,50 +56,7 @@ public class StructrFilesPath extends StructrPath {
 
 	@Override
 	public DirectoryStream<Path> getDirectoryStream(final DirectoryStream.Filter<? super Path> filter) {
-
-		return new DirectoryStream() {
-
-			boolean closed = false;
-
-			@Override
-			public Iterator iterator() {
-
-				if (!closed) {
-
-					final App app                 = StructrApp.getInstance(fs.getSecurityContext());
-					final List<StructrPath> files = new LinkedList<>();
-
-					try (final Tx tx = app.tx()) {
-
-						for (final Folder folder : app.nodeQuery(Folder.class).and(AbstractFile.hasParent, false).getAsList()) {
-
-							files.add(new StructrFilePath(fs, StructrFilesPath.this, folder.getName()));
-						}
-
-						for (final FileBase file : app.nodeQuery(FileBase.class).and(AbstractFile.hasParent, false).getAsList()) {
-
-							files.add(new StructrFilePath(fs, StructrFilesPath.this, file.getName()));
-						}
-
-						tx.success();
-
-					} catch (FrameworkException fex) {
-						logger.warn("", fex);
-					}
-
-					return files.iterator();
-
-				}
-
-				return Collections.emptyIterator();
-			}
-
-			@Override
-			public void close() throws IOException {
-				closed = true;
-			}
-		};
-
+		return new StructrFileDirectoryStream(fs, this, null, filter);
 	}
 
 	@Override
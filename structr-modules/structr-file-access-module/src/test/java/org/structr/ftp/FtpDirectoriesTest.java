@@ -30,8 +30,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.app.StructrApp;
+import org.structr.core.entity.AbstractNode;
 import org.structr.core.graph.Tx;
 import org.structr.web.common.FtpTest;
+import org.structr.web.entity.Folder;
 
 /**
  * Tests for FTP directories.
@@ -416,4 +418,64 @@ public class FtpDirectoriesTest extends FtpTest {
 		}
 	}
 
+	@Test
+	public void test09ListingShowsChangesMadeOutsideTheSession() {
+
+		final String name1 = "FTPdir1";
+		final String name2 = "FTPdir2";
+
+		FTPClient ftp = setupFTPClient("ftpuser1");
+		Folder folder = null;
+
+		try (final Tx tx = app.tx()) {
+
+			folder = createFTPDirectory(null, name1);
+
+			tx.success();
+
+		} catch (FrameworkException ex) {
+			logger.warn("", ex);
+			fail("Unexpected exception: " + ex.getMessage());
+		}
+
+		try {
+
+			FTPFile[] dirs = ftp.listDirectories();
+
+			assertNotNull(dirs);
+			assertEquals(1, dirs.length);
+			assertEquals(name1, dirs[0].getName());
+
+			// rename the folder outside of the FTP session
+			try (final Tx tx = app.tx()) {
+
+				folder.setProperty(AbstractNode.name, name2);
+				tx.success();
+			}
+
+			dirs = ftp.listDirectories();
+
+			assertNotNull(dirs);
+			assertEquals(1, dirs.length);
+			assertEquals(name2, dirs[0].getName());
+
+			// delete the folder outside of the FTP session
+			try (final Tx tx = app.tx()) {
+
+				app.delete(folder);
+				tx.success();
+			}
+
+			dirs = ftp.listDirectories();
+
+			assertNotNull(dirs);
+			assertEquals(0, dirs.length);
+
+			ftp.disconnect();
+
+		} catch (IOException | FrameworkException ex) {
+			logger.warn("", ex);
+			fail("Unexpected exception: " + ex.getMessage());
+		}
+	}
 }
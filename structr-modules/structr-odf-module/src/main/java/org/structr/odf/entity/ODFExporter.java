@@ -157,7 +157,7 @@ public abstract class ODFExporter extends AbstractNode {
 
 			}
 			pkg.insert(new URI(result.getFileOnDisk().getAbsolutePath()), ODF_IMAGE_DIRECTORY + imageName, contentType);
-			pkg.save(output.getFileOnDisk().getAbsolutePath());
+			pkg.save(output.getWritableFileOnDisk(false).getAbsolutePath());
 			pkg.close();
 			doc.close();
 
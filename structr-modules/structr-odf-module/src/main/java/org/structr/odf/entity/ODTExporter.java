@@ -111,7 +111,7 @@ public class ODTExporter extends ODFExporter {
 
 			}
 
-			text.save(output.getFileOnDisk().getAbsolutePath());
+			text.save(output.getWritableFileOnDisk(false).getAbsolutePath());
 			text.close();
 
 		} catch (Exception e) {
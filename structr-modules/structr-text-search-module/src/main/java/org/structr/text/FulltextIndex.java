@@ -0,0 +1,365 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.text;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.util.CharArraySet;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.store.FSDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
+import org.structr.common.fulltext.FulltextSearchCursor;
+
+/**
+ * Embedded inverted index for extracted document text, stored in a Lucene
+ * index next to the database. Documents are keyed by node UUID, updated
+ * incrementally by the {@link FulltextIndexingAgent} and ranked with BM25.
+ * Changes are committed once per indexing batch and become visible to
+ * searches on the next refresh.
+ */
+public class FulltextIndex {
+
+	private static final Logger logger              = LoggerFactory.getLogger(FulltextIndex.class.getName());
+	private static final String UUID_FIELD          = "uuid";
+	private static final String CONTENT_FIELD       = "content";
+	private static FulltextIndex instance           = null;
+
+	private final Map<String, Analyzer> analyzers   = new ConcurrentHashMap<>();
+	private final Analyzer queryAnalyzer            = new StandardAnalyzer(CharArraySet.EMPTY_SET);
+	private final LongAdder indexedDocuments        = new LongAdder();
+	private final LongAdder indexedCharacters       = new LongAdder();
+	private final LongAdder indexingTime            = new LongAdder();
+	private final LongAdder commits                 = new LongAdder();
+	private final LongAdder commitTime              = new LongAdder();
+	private final LongAdder searches                = new LongAdder();
+	private final LongAdder searchTime              = new LongAdder();
+	private SearcherManager searcherManager         = null;
+	private IndexWriter writer                      = null;
+	private Path path                               = null;
+
+	private FulltextIndex() throws IOException {
+
+		this.path = Paths.get(Settings.DatabasePath.getValue(), "fulltext");
+
+		Files.createDirectories(path);
+
+		final IndexWriterConfig config = new IndexWriterConfig(queryAnalyzer);
+
+		config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+		config.setSimilarity(new BM25Similarity());
+
+		this.writer          = new IndexWriter(FSDirectory.open(path), config);
+		this.searcherManager = new SearcherManager(writer, true, new SearcherFactory() {
+
+			@Override
+			public IndexSearcher newSearcher(final IndexReader reader, final IndexReader previousReader) throws IOException {
+
+				final IndexSearcher searcher = new IndexSearcher(reader);
+
+				searcher.setSimilarity(new BM25Similarity());
+
+				return searcher;
+			}
+		});
+
+		Runtime.getRuntime().addShutdownHook(new Thread(this::close, "FulltextIndexShutdown"));
+
+		logger.info("Fulltext index opened at {}, {} documents", path, writer.numDocs());
+	}
+
+	public static synchronized FulltextIndex getInstance() throws IOException {
+
+		if (instance == null) {
+			instance = new FulltextIndex();
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Adds or replaces the document for the given UUID. The text is
+	 * analyzed with the stop words of the given language, if any.
+	 *
+	 * @param uuid
+	 * @param text
+	 * @param language
+	 * @param stopWords
+	 * @throws IOException
+	 */
+	public void update(final String uuid, final String text, final String language, final Set<String> stopWords) throws IOException {
+
+		final long t0             = System.currentTimeMillis();
+		final Analyzer analyzer   = getAnalyzer(language, stopWords);
+		final Document document   = new Document();
+
+		document.add(new StringField(UUID_FIELD, uuid, Field.Store.YES));
+		document.add(new TextField(CONTENT_FIELD, analyzer.tokenStream(CONTENT_FIELD, text)));
+
+		writer.updateDocument(new Term(UUID_FIELD, uuid), document);
+
+		indexedDocuments.increment();
+		indexedCharacters.add(text.length());
+		indexingTime.add(System.currentTimeMillis() - t0);
+	}
+
+	public void remove(final String uuid) throws IOException {
+		writer.deleteDocuments(new Term(UUID_FIELD, uuid));
+	}
+
+	/**
+	 * Commits all pending changes and makes them visible to searches.
+	 *
+	 * @throws IOException
+	 */
+	public void commit() throws IOException {
+
+		final long t0 = System.currentTimeMillis();
+
+		writer.commit();
+		searcherManager.maybeRefresh();
+
+		commits.increment();
+		commitTime.add(System.currentTimeMillis() - t0);
+	}
+
+	/**
+	 * Returns the UUIDs of the documents matching the given search term,
+	 * ordered by BM25 score. The term supports the Lucene query syntax;
+	 * if it can not be parsed, it is searched literally.
+	 *
+	 * @param searchTerm
+	 * @param offset the number of best matching documents to skip
+	 * @param maxResults
+	 * @return the UUIDs of the best matching documents
+	 * @throws IOException
+	 */
+	public List<String> search(final String searchTerm, final int offset, final int maxResults) throws IOException {
+
+		final long t0              = System.currentTimeMillis();
+		final List<String> result  = new LinkedList<>();
+		final IndexSearcher searcher;
+
+		searcherManager.maybeRefresh();
+		searcher = searcherManager.acquire();
+
+		try {
+
+			final TopDocs topDocs = searcher.search(parse(searchTerm), offset + maxResults);
+
+			for (int i = offset; i < topDocs.scoreDocs.length; i++) {
+
+				result.add(searcher.doc(topDocs.scoreDocs[i].doc).get(UUID_FIELD));
+			}
+
+		} finally {
+
+			searcherManager.release(searcher);
+
+			searches.increment();
+			searchTime.add(System.currentTimeMillis() - t0);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Opens a cursor over the documents matching the given search term,
+	 * ordered by BM25 score. The cursor keeps a single searcher and
+	 * continues after the last returned document, so reading n matches
+	 * in batches costs the same as reading them at once.
+	 *
+	 * @param searchTerm
+	 * @return the cursor, which must be closed after use
+	 * @throws IOException
+	 */
+	public FulltextSearchCursor openCursor(final String searchTerm) throws IOException {
+
+		searcherManager.maybeRefresh();
+
+		return new Cursor(searcherManager.acquire(), parse(searchTerm));
+	}
+
+	public Map<String, Object> getStatistics() {
+
+		final Map<String, Object> statistics = new LinkedHashMap<>();
+		final long documents                 = indexedDocuments.sum();
+		final long indexingMillis            = indexingTime.sum();
+		final long commitMillis              = commitTime.sum();
+		final long searchCount               = searches.sum();
+
+		statistics.put("path",                  path.toString());
+		statistics.put("documents",             writer.numDocs());
+		statistics.put("indexed",               documents);
+		statistics.put("indexedCharacters",     indexedCharacters.sum());
+		statistics.put("indexingTime",          indexingMillis);
+		statistics.put("commits",               commits.sum());
+		statistics.put("commitTime",            commitMillis);
+		statistics.put("documentsPerSecond",    indexingMillis + commitMillis > 0 ? (documents * 1000L) / (indexingMillis + commitMillis) : documents);
+		statistics.put("searches",              searchCount);
+		statistics.put("averageSearchTime",     searchCount > 0 ? searchTime.sum() / searchCount : 0);
+
+		return statistics;
+	}
+
+	// ----- private methods -----
+	private Query parse(final String searchTerm) {
+
+		final QueryParser parser = new QueryParser(CONTENT_FIELD, queryAnalyzer);
+
+		try {
+
+			return parser.parse(searchTerm);
+
+		} catch (ParseException pex) {
+
+			try {
+
+				return parser.parse(QueryParser.escape(searchTerm));
+
+			} catch (ParseException ignore) {
+			}
+		}
+
+		return new MatchNoDocsQuery();
+	}
+
+	private Analyzer getAnalyzer(final String language, final Set<String> stopWords) {
+
+		if (language == null || stopWords == null) {
+			return queryAnalyzer;
+		}
+
+		return analyzers.computeIfAbsent(language, k -> new StandardAnalyzer(new CharArraySet(stopWords, true)));
+	}
+
+	private void release(final IndexSearcher searcher) {
+
+		try {
+
+			searcherManager.release(searcher);
+
+		} catch (IOException ioex) {
+			logger.warn("Unable to release fulltext index searcher: {}", ioex.getMessage());
+		}
+	}
+
+	private void close() {
+
+		try {
+
+			searcherManager.close();
+			writer.close();
+
+		} catch (IOException ioex) {
+			logger.warn("Unable to close fulltext index: {}", ioex.getMessage());
+		}
+	}
+
+	// ----- nested classes -----
+	private class Cursor implements FulltextSearchCursor {
+
+		private IndexSearcher searcher = null;
+		private ScoreDoc last          = null;
+		private Query query            = null;
+		private boolean exhausted      = false;
+
+		public Cursor(final IndexSearcher searcher, final Query query) {
+
+			this.searcher = searcher;
+			this.query    = query;
+		}
+
+		@Override
+		public List<String> next(final int batchSize) {
+
+			final List<String> result = new LinkedList<>();
+
+			if (exhausted || searcher == null) {
+				return result;
+			}
+
+			final long t0 = System.currentTimeMillis();
+
+			try {
+
+				final TopDocs topDocs = last != null ? searcher.searchAfter(last, query, batchSize) : searcher.search(query, batchSize);
+
+				for (final ScoreDoc scoreDoc : topDocs.scoreDocs) {
+
+					result.add(searcher.doc(scoreDoc.doc).get(UUID_FIELD));
+					last = scoreDoc;
+				}
+
+				exhausted = topDocs.scoreDocs.length < batchSize;
+
+			} catch (IOException ioex) {
+
+				logger.warn("Unable to search fulltext index: {}", ioex.getMessage());
+				exhausted = true;
+
+			} finally {
+
+				searches.increment();
+				searchTime.add(System.currentTimeMillis() - t0);
+			}
+
+			return result;
+		}
+
+		@Override
+		public void close() {
+
+			if (searcher != null) {
+
+				release(searcher);
+				searcher = null;
+			}
+		}
+	}
+}
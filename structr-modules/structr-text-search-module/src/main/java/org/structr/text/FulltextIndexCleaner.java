@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.text;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.common.fulltext.Indexable;
+import org.structr.core.StructrTransactionListener;
+import org.structr.core.TransactionSource;
+import org.structr.core.graph.ModificationEvent;
+
+/**
+ * Removes deleted {@link Indexable} nodes from the fulltext index.
+ *
+ * The documents are removed after the graph transaction has committed, so
+ * that a rollback keeps them in the index, and all deletions of a
+ * transaction share a single commit of the index.
+ */
+public class FulltextIndexCleaner implements StructrTransactionListener {
+
+	private static final Logger logger = LoggerFactory.getLogger(FulltextIndexCleaner.class.getName());
+
+	@Override
+	public void beforeCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) throws FrameworkException {
+	}
+
+	@Override
+	public void afterCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) {
+
+		final Set<String> deleted = new LinkedHashSet<>();
+
+		for (final ModificationEvent event : modificationEvents) {
+
+			if (event.isNode() && event.isDeleted() && event.getGraphObject() instanceof Indexable) {
+
+				deleted.add(event.getUuid());
+			}
+		}
+
+		if (!deleted.isEmpty()) {
+
+			try {
+
+				final FulltextIndex index = FulltextIndex.getInstance();
+
+				for (final String uuid : deleted) {
+					index.remove(uuid);
+				}
+
+				index.commit();
+
+			} catch (IOException ioex) {
+
+				logger.warn("Unable to remove {} deleted nodes from fulltext index: {}", deleted.size(), ioex.getMessage());
+			}
+		}
+	}
+
+	@Override
+	public void simpleBroadcast() {
+	}
+}
@@ -18,15 +18,22 @@
  */
 package org.structr.text;
 
+import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.structr.common.error.FrameworkException;
 import org.structr.common.fulltext.FulltextIndexer;
+import org.structr.common.fulltext.FulltextSearchCursor;
 import org.structr.common.fulltext.Indexable;
 import org.structr.core.GraphObjectMap;
 import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractSchemaNode;
+import org.structr.core.graph.TransactionCommand;
 import org.structr.core.property.GenericProperty;
 import org.structr.module.StructrModule;
 import org.structr.schema.action.Actions;
@@ -36,8 +43,13 @@ import org.structr.schema.action.Actions;
  */
 public class FulltextIndexerModule implements FulltextIndexer, StructrModule {
 
+	private static final Logger logger = LoggerFactory.getLogger(FulltextIndexerModule.class.getName());
+
 	@Override
 	public void onLoad() {
+
+		// deleted content must not be found by fulltext searches
+		TransactionCommand.registerTransactionListener(new FulltextIndexCleaner());
 	}
 
 	@Override
@@ -189,6 +201,36 @@ public class FulltextIndexerModule implements FulltextIndexer, StructrModule {
 
 	}
 
+	@Override
+	public FulltextSearchCursor search(final String searchTerm) {
+
+		try {
+
+			return FulltextIndex.getInstance().openCursor(searchTerm);
+
+		} catch (IOException ioex) {
+
+			logger.warn("Unable to search fulltext index: {}", ioex.getMessage());
+		}
+
+		return null;
+	}
+
+	@Override
+	public Map<String, Object> getStatistics() {
+
+		try {
+
+			return FulltextIndex.getInstance().getStatistics();
+
+		} catch (IOException ioex) {
+
+			logger.warn("Unable to open fulltext index: {}", ioex.getMessage());
+		}
+
+		return new LinkedHashMap<>();
+	}
+
 	// ----- interface StructrModule -----
 	@Override
 	public String getName() {
@@ -22,7 +22,6 @@ import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
@@ -46,15 +45,11 @@ import org.slf4j.LoggerFactory;
 import org.structr.agent.Agent;
 import org.structr.agent.ReturnValue;
 import org.structr.agent.Task;
-import org.structr.api.graph.Node;
-import org.structr.api.index.Index;
 import org.structr.common.fulltext.Indexable;
-import org.structr.core.Services;
 import org.structr.core.app.StructrApp;
 import org.structr.core.entity.Person;
 import org.structr.core.entity.Principal;
 import static org.structr.core.graph.NodeInterface.owner;
-import org.structr.core.graph.NodeService;
 import org.structr.core.graph.Tx;
 
 /**
@@ -77,6 +72,8 @@ public class FulltextIndexingAgent extends Agent<Indexable> {
 				doIndexing(file);
 			}
 
+			// one commit per batch
+			FulltextIndex.getInstance().commit();
 
 			return ReturnValue.Success;
 		}
@@ -97,9 +94,11 @@ public class FulltextIndexingAgent extends Agent<Indexable> {
 	// ----- private methods -----
 	private void doIndexing(final Indexable file) {
 
-		boolean parsingSuccessful         = false;
-		InputStream inputStream           = null;
-		String fileName                   = "unknown file";
+		final StringBuilder additionalText = new StringBuilder();
+		boolean parsingSuccessful          = false;
+		InputStream inputStream            = null;
+		String fileName                    = "unknown file";
+		String uuid                        = null;
 
 		try {
 
@@ -107,6 +106,7 @@ public class FulltextIndexingAgent extends Agent<Indexable> {
 
 				inputStream = file.getInputStream();
 				fileName = file.getName();
+				uuid = file.getUuid();
 
 				tx.success();
 			}
@@ -145,6 +145,7 @@ public class FulltextIndexingAgent extends Agent<Indexable> {
 
 							// tokenize name
 							tokenizer.write(getName());
+							additionalText.append(fileName);
 
 							// tokenize owner name
 							final Principal _owner = file.getProperty(owner);
@@ -154,56 +155,45 @@ public class FulltextIndexingAgent extends Agent<Indexable> {
 								if (ownerName != null) {
 
 									tokenizer.write(ownerName);
+									additionalText.append(" ").append(ownerName);
 								}
 
 								final String eMail = _owner.getProperty(Person.eMail);
 								if (eMail != null) {
 
 									tokenizer.write(eMail);
+									additionalText.append(" ").append(eMail);
 								}
 
 								final String twitterName = _owner.getProperty(Person.twitterName);
 								if (twitterName != null) {
 
 									tokenizer.write(twitterName);
+									additionalText.append(" ").append(twitterName);
 								}
 							}
 
 							tx.success();
 						}
 
-						// index document excluding stop words
-						final NodeService nodeService       = Services.getInstance().getService(NodeService.class);
-						final Index<Node> fulltextIndex     = nodeService.getNodeIndex();
-						final Set<String> stopWords         = languageStopwordMap.get(tokenizer.getLanguage());
-						final String indexKeyName           = Indexable.indexedWords.jsonName();
-						final Iterator<String> wordIterator = tokenizer.getWords().iterator();
-						final Node node                     = file.getNode();
-						final Set<String> indexedWords      = new TreeSet<>();
+						// collect indexed words excluding stop words
+						final Set<String> stopWords    = languageStopwordMap.get(tokenizer.getLanguage());
+						final Set<String> indexedWords = new TreeSet<>();
 
-						while (wordIterator.hasNext()) {
+						for (final String token : tokenizer.getWords()) {
 
-							try (Tx tx = StructrApp.getInstance().tx()) {
+							// strip double quotes
+							final String word = StringUtils.strip(token, "\"");
 
-								// remove node from index (in case of previous indexing runs)
-								fulltextIndex.remove(node, indexKeyName);
+							if (stopWords == null || !stopWords.contains(word)) {
 
-								while (wordIterator.hasNext()) {
-
-									// strip double quotes
-									final String word = StringUtils.strip(wordIterator.next(), "\"");
-
-									if (!stopWords.contains(word)) {
-
-										indexedWords.add(word);
-										fulltextIndex.add(node, indexKeyName, word, String.class);
-									}
-								}
-
-								tx.success();
+								indexedWords.add(word);
 							}
 						}
 
+						// add the full text to the inverted index, replacing previous versions
+						FulltextIndex.getInstance().update(uuid, tokenizer.getRawText() + "\n" + additionalText.toString(), tokenizer.getLanguage(), stopWords);
+
 						// store indexed words separately
 						try (Tx tx = StructrApp.getInstance().tx()) {
 
@@ -0,0 +1,171 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.text;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.structr.api.config.Settings;
+import org.structr.common.fulltext.FulltextSearchCursor;
+import org.structr.common.fulltext.Indexable;
+import org.structr.core.GraphObject;
+import org.structr.core.graph.ModificationEvent;
+
+/**
+ * Round trip tests for the fulltext index: index, search, page and remove.
+ */
+public class FulltextIndexTest {
+
+	@BeforeClass
+	public static void setup() throws IOException {
+
+		Settings.DatabasePath.setValue(Files.createTempDirectory("structr-fulltext").toString());
+	}
+
+	@Test
+	public void testSearchRoundTrip() throws IOException {
+
+		final FulltextIndex index = FulltextIndex.getInstance();
+
+		index.update("roundtrip1", "The quick brown fox jumps over the lazy dog", null, null);
+		index.update("roundtrip2", "A slow green turtle", null, null);
+		index.commit();
+
+		assertEquals(Arrays.asList("roundtrip1"), index.search("fox", 0, 10));
+		assertEquals(Arrays.asList("roundtrip2"), index.search("turtle", 0, 10));
+
+		// updates replace the previous version of a document
+		index.update("roundtrip1", "A quick red fox", null, null);
+		index.commit();
+
+		assertTrue(index.search("dog", 0, 10).isEmpty());
+		assertEquals(Arrays.asList("roundtrip1"), index.search("fox", 0, 10));
+
+		// removed documents are not found anymore
+		index.remove("roundtrip1");
+		index.commit();
+
+		assertTrue(index.search("fox", 0, 10).isEmpty());
+		assertEquals(Arrays.asList("roundtrip2"), index.search("turtle", 0, 10));
+	}
+
+	@Test
+	public void testSearchPaging() throws IOException {
+
+		final FulltextIndex index = FulltextIndex.getInstance();
+
+		for (int i = 0; i < 25; i++) {
+			index.update("paging" + i, "page marker " + i, null, null);
+		}
+
+		index.commit();
+
+		final List<String> all = index.search("marker", 0, 100);
+
+		assertEquals(25, all.size());
+
+		// consecutive pages return all matches in the same order
+		assertEquals(all.subList(0, 10),  index.search("marker", 0, 10));
+		assertEquals(all.subList(10, 20), index.search("marker", 10, 10));
+		assertEquals(all.subList(20, 25), index.search("marker", 20, 10));
+		assertTrue(index.search("marker", 30, 10).isEmpty());
+	}
+
+	@Test
+	public void testSearchCursor() throws IOException {
+
+		final FulltextIndex index = FulltextIndex.getInstance();
+
+		for (int i = 0; i < 25; i++) {
+			index.update("cursor" + i, "cursor beacon " + i, null, null);
+		}
+
+		index.commit();
+
+		final List<String> all = index.search("beacon", 0, 100);
+
+		try (final FulltextSearchCursor cursor = index.openCursor("beacon")) {
+
+			// consecutive batches continue where the previous one ended
+			assertEquals(all.subList(0, 10),  cursor.next(10));
+			assertEquals(all.subList(10, 20), cursor.next(10));
+			assertEquals(all.subList(20, 25), cursor.next(10));
+			assertTrue(cursor.next(10).isEmpty());
+		}
+	}
+
+	@Test
+	public void testRemoveDeletedNodesAfterCommit() throws IOException {
+
+		final FulltextIndex index          = FulltextIndex.getInstance();
+		final FulltextIndexCleaner cleaner = new FulltextIndexCleaner();
+
+		index.update("deleted1", "first removal candidate", null, null);
+		index.update("deleted2", "second removal candidate", null, null);
+		index.update("modified", "modified removal candidate", null, null);
+		index.commit();
+
+		assertEquals(3, index.search("candidate", 0, 10).size());
+
+		final long commits = (Long)index.getStatistics().get("commits");
+
+		cleaner.afterCommit(null, Arrays.asList(
+			createEvent("deleted1", true, Indexable.class),
+			createEvent("deleted2", true, Indexable.class),
+			createEvent("modified", false, Indexable.class),
+			createEvent("other",    true, GraphObject.class)
+		), null);
+
+		// only the deleted documents are removed, with a single commit
+		assertEquals(Arrays.asList("modified"), index.search("candidate", 0, 10));
+		assertEquals(commits + 1, index.getStatistics().get("commits"));
+	}
+
+	// ----- private methods -----
+	private ModificationEvent createEvent(final String uuid, final boolean deleted, final Class<? extends GraphObject> type) {
+
+		final Object graphObject = Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { type }, (proxy, method, args) -> null);
+
+		return (ModificationEvent)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { ModificationEvent.class }, (proxy, method, args) -> {
+
+			switch (method.getName()) {
+
+				case "isNode":
+					return true;
+
+				case "isDeleted":
+					return deleted;
+
+				case "getUuid":
+					return uuid;
+
+				case "getGraphObject":
+					return graphObject;
+			}
+
+			return null;
+		});
+	}
+}
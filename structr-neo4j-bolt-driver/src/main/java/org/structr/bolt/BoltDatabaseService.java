@@ -28,6 +28,7 @@ import java.text.SimpleDateFormat;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -78,6 +79,7 @@ public class BoltDatabaseService implements DatabaseService, GraphProperties {
 	private CypherNodeIndex nodeIndex                                 = null;
 	private GraphDatabaseService graphDb                              = null;
 	private boolean needsIndexRebuild                                 = false;
+	private boolean writeBehind                                       = false;
 	private String databaseUrl                                        = null;
 	private String databasePath                                       = null;
 	private Driver driver                                             = null;
@@ -147,6 +149,7 @@ public class BoltDatabaseService implements DatabaseService, GraphProperties {
 		final int relCacheSize  = Settings.RelationshipCacheSize.getValue();
 		final int nodeCacheSize = Settings.NodeCacheSize.getValue();
 		this.queryCacheSize     = Settings.QueryCacheSize.getValue();
+		this.writeBehind        = Settings.WriteBehind.getValue();
 
 		NodeWrapper.initialize(nodeCacheSize);
 		logger.info("Node cache size set to {}", nodeCacheSize);
@@ -304,6 +307,41 @@ public class BoltDatabaseService implements DatabaseService, GraphProperties {
 		}
 	}
 
+	/**
+	 * Invalidates cached query results for the given labels only.
+	 *
+	 * @param labels
+	 */
+	public void invalidateQueryCache(final Set<String> labels) {
+
+		if (nodeIndex != null) {
+			nodeIndex.invalidateCache(labels);
+		}
+
+		if (relationshipIndex != null) {
+			relationshipIndex.invalidateCache(labels);
+		}
+	}
+
+	@Override
+	public Map<String, Map<String, Object>> getCacheStatistics() {
+
+		final Map<String, Map<String, Object>> statistics = new LinkedHashMap<>();
+
+		statistics.put("nodes",         NodeWrapper.getCacheStatistics());
+		statistics.put("relationships", RelationshipWrapper.getCacheStatistics());
+
+		if (nodeIndex != null) {
+			statistics.put("nodeQueries", nodeIndex.getCacheStatistics());
+		}
+
+		if (relationshipIndex != null) {
+			statistics.put("relationshipQueries", relationshipIndex.getCacheStatistics());
+		}
+
+		return statistics;
+	}
+
 	public SessionTransaction getCurrentTransaction() {
 
 		final SessionTransaction tx = sessions.get();
@@ -315,6 +353,10 @@ public class BoltDatabaseService implements DatabaseService, GraphProperties {
 		return tx;
 	}
 
+	public boolean isWriteBehindEnabled() {
+		return writeBehind;
+	}
+
 	public boolean logQueries() {
 		return Settings.CypherDebugLogging.getValue();
 	}
@@ -19,9 +19,14 @@
 package org.structr.bolt;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import org.neo4j.driver.v1.Record;
 import org.neo4j.driver.v1.Session;
@@ -29,6 +34,8 @@ import org.neo4j.driver.v1.StatementResult;
 import org.neo4j.driver.v1.Transaction;
 import org.neo4j.driver.v1.Value;
 import org.neo4j.driver.v1.Values;
+import org.neo4j.driver.v1.exceptions.ClientException;
+import org.neo4j.driver.v1.exceptions.DatabaseException;
 import org.neo4j.driver.v1.exceptions.NoSuchRecordException;
 import org.neo4j.driver.v1.exceptions.TransientException;
 import org.neo4j.driver.v1.types.Entity;
@@ -49,18 +56,24 @@ import org.structr.bolt.wrapper.StatementResultWrapper;
  */
 public class SessionTransaction implements org.structr.api.Transaction {
 
-	private final Set<EntityWrapper> modifiedEntities = new HashSet<>();
-	private BoltDatabaseService db                    = null;
-	private Session session                           = null;
-	private Transaction tx                            = null;
-	private boolean closed                            = false;
-	private boolean success                           = false;
+	private static final int MAX_DESCRIBED_ROWS                         = 10;
+
+	private final Map<EntityWrapper, Map<String, Object>> pendingWrites = new LinkedHashMap<>();
+	private final Set<EntityWrapper> modifiedEntities                   = new HashSet<>();
+	private final Set<String> modifiedLabels                            = new HashSet<>();
+	private BoltDatabaseService db                                      = null;
+	private Session session                                             = null;
+	private Transaction tx                                              = null;
+	private boolean writeBehind                                         = false;
+	private boolean closed                                              = false;
+	private boolean success                                             = false;
 
 	public SessionTransaction(final BoltDatabaseService db, final Session session) {
 
-		this.session = session;
-		this.tx      = session.beginTransaction();
-		this.db      = db;
+		this.writeBehind = db.isWriteBehindEnabled();
+		this.session     = session;
+		this.tx          = session.beginTransaction();
+		this.db          = db;
 	}
 
 	@Override
@@ -80,6 +93,24 @@ public class SessionTransaction implements org.structr.api.Transaction {
 	@Override
 	public void close() {
 
+		RuntimeException flushFailure = null;
+
+		if (success) {
+
+			try {
+
+				// write buffered property changes before the transaction is committed
+				flush();
+
+			} catch (RuntimeException rex) {
+
+				tx.failure();
+
+				flushFailure = rex;
+				success      = false;
+			}
+		}
+
 		if (!success) {
 
 			// We need to invalidate all existing references because we cannot
@@ -92,8 +123,8 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 			if (!modifiedEntities.isEmpty()) {
 
-				// data was written, invalidate query cache
-				db.invalidateQueryCache();
+				// data was written, invalidate query cache for the modified types
+				db.invalidateQueryCache(modifiedLabels);
 			}
 
 			// Invalidate all nodes that are modified in this transaction
@@ -124,6 +155,10 @@ public class SessionTransaction implements org.structr.api.Transaction {
 				session.close();
 			}
 		}
+
+		if (flushFailure != null) {
+			throw flushFailure;
+		}
 	}
 
 	public boolean isClosed() {
@@ -156,6 +191,7 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
 			logQuery(statement, map);
 
 			return tx.run(statement, map).next().get(0).asLong();
@@ -172,6 +208,7 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
 			logQuery(statement, map);
 
 			final StatementResult result = tx.run(statement, map);
@@ -194,6 +231,7 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
 			logQuery(statement, map);
 
 			return tx.run(statement, map).next().get(0).asEntity();
@@ -210,6 +248,7 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
 			logQuery(statement, map);
 
 			return tx.run(statement, map).next().get(0).asNode();
@@ -226,6 +265,7 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
 			logQuery(statement, map);
 
 			return tx.run(statement, map).next().get(0).asRelationship();
@@ -242,6 +282,7 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
 			logQuery(statement, map);
 
 			return Iterables.map(new RecordNodeMapper(), new StatementIterable(tx.run(statement, map)));
@@ -258,6 +299,7 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
 			logQuery(statement, map);
 
 			return Iterables.map(new RecordRelationshipMapper(), new StatementIterable(tx.run(statement, map)));
@@ -274,6 +316,7 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
 			logQuery(statement, map);
 
 			return Iterables.map(new RecordLongMapper(), new StatementIterable(tx.run(statement, map)));
@@ -290,6 +333,7 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
 			logQuery(statement, map);
 
 			final StatementResult result = tx.run(statement, map);
@@ -310,6 +354,7 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
 			logQuery(statement, map);
 
 			return new StatementResultWrapper(db, tx.run(statement, map));
@@ -326,6 +371,7 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 		try {
 
+			flush();
 			logQuery(statement, map);
 
 			tx.run(statement, map).consume();
@@ -362,14 +408,149 @@ public class SessionTransaction implements org.structr.api.Transaction {
 
 	}
 
+	public boolean isWriteBehind() {
+		return writeBehind;
+	}
+
+	/**
+	 * Buffers the given property changes for the given entity until the
+	 * transaction is committed or the next statement is executed. Null
+	 * values remove the corresponding property.
+	 *
+	 * @param wrapper
+	 * @param properties
+	 */
+	public void defer(final EntityWrapper wrapper, final Map<String, Object> properties) {
+
+		Map<String, Object> pending = pendingWrites.get(wrapper);
+		if (pending == null) {
+
+			pending = new HashMap<>();
+			pendingWrites.put(wrapper, pending);
+		}
+
+		pending.putAll(properties);
+	}
+
+	/**
+	 * Writes all buffered property changes to the database, using one
+	 * statement per entity type.
+	 */
+	public void flush() {
+
+		if (pendingWrites.isEmpty()) {
+			return;
+		}
+
+		final Map<String, List<Map<String, Object>>> batches = new LinkedHashMap<>();
+
+		for (final Entry<EntityWrapper, Map<String, Object>> entry : pendingWrites.entrySet()) {
+
+			final EntityWrapper wrapper    = entry.getKey();
+			final String prefix            = wrapper.getQueryPrefix();
+			List<Map<String, Object>> rows = batches.get(prefix);
+
+			if (rows == null) {
+
+				rows = new LinkedList<>();
+				batches.put(prefix, rows);
+			}
+
+			final Map<String, Object> row = new HashMap<>();
+
+			row.put("id",    wrapper.getId());
+			row.put("props", entry.getValue());
+
+			rows.add(row);
+		}
+
+		// clear buffer before executing statements
+		pendingWrites.clear();
+
+		for (final Entry<String, List<Map<String, Object>>> batch : batches.entrySet()) {
+
+			final String statement        = "UNWIND {batch} AS row " + batch.getKey() + " WHERE ID(n) = row.id SET n += row.props";
+			final Map<String, Object> map = new HashMap<>();
+
+			map.put("batch", batch.getValue());
+
+			try {
+
+				logQuery(statement, map);
+
+				tx.run(statement, map).consume();
+
+			} catch (TransientException tex) {
+				closed = true;
+				throw new RetryException(tex);
+			} catch (NoSuchRecordException nex) {
+				throw new NotFoundException(nex);
+			} catch (ClientException cex) {
+				throw attribute(new ClientException(cex.code(), describeDeferredWrite(batch.getValue(), cex)), cex);
+			} catch (DatabaseException dex) {
+				throw attribute(new DatabaseException(dex.code(), describeDeferredWrite(batch.getValue(), dex)), dex);
+			}
+		}
+	}
+
 	public void modified(final EntityWrapper wrapper) {
 
-		// data was written, invalidate query cache
-		db.invalidateQueryCache();
+		final Set<String> labels = wrapper.getLabelNames();
+
+		// data was written, invalidate query cache for the modified types
+		db.invalidateQueryCache(labels);
 
+		modifiedLabels.addAll(labels);
 		modifiedEntities.add(wrapper);
 	}
 
+	// ----- private methods -----
+	/**
+	 * Creates an error message that names the entities and keys of a failed
+	 * deferred write, because the exception is raised by whichever statement
+	 * triggers the flush and not by the original property write.
+	 */
+	private String describeDeferredWrite(final List<Map<String, Object>> rows, final Exception cause) {
+
+		final StringBuilder buf = new StringBuilder("Deferred write failed for ");
+		int count               = 0;
+
+		buf.append(rows.size());
+		buf.append(rows.size() == 1 ? " entity" : " entities");
+		buf.append(" (");
+
+		for (final Map<String, Object> row : rows) {
+
+			if (count++ > 0) {
+				buf.append(", ");
+			}
+
+			if (count > MAX_DESCRIBED_ROWS) {
+
+				buf.append("...");
+				break;
+			}
+
+			buf.append("#");
+			buf.append(row.get("id"));
+			buf.append(" ");
+			buf.append(((Map)row.get("props")).keySet());
+		}
+
+		buf.append("): ");
+		buf.append(cause.getMessage());
+
+		return buf.toString();
+	}
+
+	private <T extends RuntimeException> T attribute(final T exception, final Throwable cause) {
+
+		exception.initCause(cause);
+
+		return exception;
+	}
+
+	// ----- nested classes -----
 	private class StatementIterable implements Iterable<Record> {
 
 		private StatementResult result = null;
@@ -20,12 +20,21 @@ package org.structr.bolt.index;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.api.QueryResult;
@@ -43,6 +52,7 @@ import org.structr.api.search.SpatialQuery;
 import org.structr.api.search.TypeConverter;
 import org.structr.api.search.TypeQuery;
 import org.structr.api.search.UuidQuery;
+import org.structr.api.util.Cachable;
 import org.structr.api.util.FixedSizeCache;
 import org.structr.api.util.Iterables;
 import org.structr.bolt.*;
@@ -74,6 +84,8 @@ public abstract class AbstractCypherIndex<T extends PropertyContainer> implement
 	public static final Map<Class, TypeConverter> CONVERTERS = new HashMap<>();
 	public static final Map<Class, QueryFactory> FACTORIES   = new HashMap<>();
 
+	private static final String ANY_LABEL                    = "*";
+
 	public static final Set<Class> INDEXABLE = new HashSet<>(Arrays.asList(new Class[] {
 		String.class, Boolean.class, Double.class, Integer.class, Long.class, Character.class, Float.class
 	}));
@@ -99,6 +111,12 @@ public abstract class AbstractCypherIndex<T extends PropertyContainer> implement
 		CONVERTERS.put(Double.class,  new DoubleTypeConverter());
 	}
 
+	private final Map<String, Map<Integer, CachedQueryResult>> labelIndex = new ConcurrentHashMap<>();
+	private final Map<String, TypeStatistics> typeStatistics              = new ConcurrentHashMap<>();
+	private final Map<String, Long> invalidationStamps                    = new HashMap<>();
+	private final AtomicLong cacheStamp                                   = new AtomicLong();
+	private final Object cacheLock                                        = new Object();
+	private long clearStamp                                               = 0L;
 	protected final FixedSizeCache<Integer, CachedQueryResult> queryCache;
 	protected final BoltDatabaseService db;
 
@@ -140,6 +158,144 @@ public abstract class AbstractCypherIndex<T extends PropertyContainer> implement
 
 	@Override
 	public Iterable<T> query(final QueryPredicate predicate) {
+		return getResult(createCypherQuery(predicate));
+	}
+
+	@Override
+	public Iterable<T> query(final QueryPredicate predicate, final int pageSize, final int page) {
+
+		final CypherQuery query = createCypherQuery(predicate);
+
+		if (query.getTypeLabels().size() > 1) {
+
+			// UNION queries cannot be sorted and paged as a whole, so we page in memory
+			final List<T> list = Iterables.toList(getResult(query));
+			final int size     = list.size();
+			final int from     = (int)Math.min(size, (long)(page - 1) * pageSize);
+			final int to       = (int)Math.min(size, (long)from + pageSize);
+
+			return list.subList(from, to);
+		}
+
+		query.page(pageSize, page);
+
+		return getResult(query);
+	}
+
+	@Override
+	public long count(final QueryPredicate predicate, final int limit) {
+
+		final CypherQuery query = new CypherQuery(this);
+
+		createQuery(this, predicate, query, true);
+
+		if (query.getTypeLabels().size() > 1) {
+
+			// UNION queries cannot be counted as a whole
+			return Math.min(limit, Iterables.count(getResult(query)));
+		}
+
+		return db.getCurrentTransaction().getLong(query.getCountStatement(limit), query.getParameters());
+	}
+
+	public void invalidateCache() {
+
+		synchronized (cacheLock) {
+
+			clearStamp = cacheStamp.incrementAndGet();
+
+			queryCache.clear();
+			labelIndex.clear();
+		}
+	}
+
+	/**
+	 * Removes all cached query results that can contain entities with
+	 * at least one of the given labels. Results of queries without a
+	 * type label are always removed.
+	 *
+	 * @param labels
+	 */
+	public void invalidateCache(final Set<String> labels) {
+
+		invalidateLabel(ANY_LABEL);
+
+		for (final String label : labels) {
+			invalidateLabel(label);
+		}
+	}
+
+	public Map<String, Object> getCacheStatistics() {
+
+		final Map<String, Object> statistics = queryCache.getStatistics();
+		final Map<String, Object> types      = new TreeMap<>();
+
+		for (final Entry<String, TypeStatistics> entry : typeStatistics.entrySet()) {
+			types.put(entry.getKey(), entry.getValue().toMap());
+		}
+
+		statistics.put("types", types);
+
+		return statistics;
+	}
+
+	// ----- protected methods -----
+	protected CachedQueryResult getCachedResult(final CypherQuery query, final int hashCode) {
+
+		final CachedQueryResult result = queryCache.get(hashCode);
+
+		for (final String label : getCacheLabels(query)) {
+
+			final TypeStatistics statistics = getTypeStatistics(label);
+			if (result != null) {
+
+				statistics.hits.increment();
+
+			} else {
+
+				statistics.misses.increment();
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the current cache stamp. The stamp must be obtained before
+	 * a query is executed and passed to {@link #cacheResult} afterwards,
+	 * so that results which were read while a write to one of their
+	 * labels happened are not cached.
+	 *
+	 * @return the current cache stamp
+	 */
+	protected long getCacheStamp() {
+		return cacheStamp.get();
+	}
+
+	protected void cacheResult(final CypherQuery query, final int hashCode, final CachedQueryResult result, final long stamp) {
+
+		final Set<String> labels = getCacheLabels(query);
+
+		synchronized (cacheLock) {
+
+			if (isInvalidatedSince(labels, stamp)) {
+
+				// the result may already be stale
+				return;
+			}
+
+			result.setCacheKey(hashCode, labels);
+
+			for (final String label : labels) {
+				labelIndex.computeIfAbsent(label, k -> new ConcurrentHashMap<>()).put(hashCode, result);
+			}
+
+			queryCache.put(hashCode, result);
+		}
+	}
+
+	// ----- private methods -----
+	private CypherQuery createCypherQuery(final QueryPredicate predicate) {
 
 		final CypherQuery query = new CypherQuery(this);
 
@@ -151,15 +307,58 @@ public abstract class AbstractCypherIndex<T extends PropertyContainer> implement
 			query.sort(predicate.getSortType(), sortKey, predicate.sortDescending());
 		}
 
-		return getResult(query);
+		return query;
 	}
 
-	public void invalidateCache() {
+	private Set<String> getCacheLabels(final CypherQuery query) {
 
-		if (!queryCache.isEmpty()) {
+		final List<String> typeLabels = query.getTypeLabels();
+		if (typeLabels.isEmpty()) {
 
-			queryCache.clear();
+			return Collections.singleton(ANY_LABEL);
+		}
+
+		return new LinkedHashSet<>(typeLabels);
+	}
+
+	private void invalidateLabel(final String label) {
+
+		synchronized (cacheLock) {
+
+			invalidationStamps.put(label, cacheStamp.incrementAndGet());
+
+			final Map<Integer, CachedQueryResult> entries = labelIndex.remove(label);
+			if (entries != null) {
+
+				for (final Integer key : entries.keySet()) {
+					queryCache.remove(key);
+				}
+
+				getTypeStatistics(label).invalidations.increment();
+			}
+		}
+	}
+
+	private boolean isInvalidatedSince(final Set<String> labels, final long stamp) {
+
+		if (clearStamp > stamp) {
+			return true;
+		}
+
+		for (final String label : labels) {
+
+			final Long invalidated = invalidationStamps.get(label);
+			if (invalidated != null && invalidated > stamp) {
+
+				return true;
+			}
 		}
+
+		return false;
+	}
+
+	private TypeStatistics getTypeStatistics(final String label) {
+		return typeStatistics.computeIfAbsent(label, k -> new TypeStatistics());
 	}
 
 	// ----- interface QueryFactory -----
@@ -184,9 +383,11 @@ public abstract class AbstractCypherIndex<T extends PropertyContainer> implement
 	}
 
 	// ----- nested classes -----
-	protected class CachedQueryResult implements QueryResult<T> {
+	protected class CachedQueryResult implements QueryResult<T>, Cachable {
 
 		private Collection<T> result = null;
+		private Set<String> labels   = null;
+		private Integer key          = null;
 
 		public CachedQueryResult(final Iterable<T> source) {
 
@@ -213,5 +414,47 @@ public abstract class AbstractCypherIndex<T extends PropertyContainer> implement
 		public boolean isEmpty() {
 			return result.isEmpty();
 		}
+
+		@Override
+		public void invalidate() {
+
+			// remove evicted entry from label index, but only if
+			// the index has not been updated with a newer result
+			if (key != null) {
+
+				for (final String label : labels) {
+
+					final Map<Integer, CachedQueryResult> entries = labelIndex.get(label);
+					if (entries != null) {
+
+						entries.remove(key, this);
+					}
+				}
+			}
+		}
+
+		private void setCacheKey(final Integer key, final Set<String> labels) {
+
+			this.labels = labels;
+			this.key    = key;
+		}
+	}
+
+	private static class TypeStatistics {
+
+		private final LongAdder invalidations = new LongAdder();
+		private final LongAdder misses        = new LongAdder();
+		private final LongAdder hits          = new LongAdder();
+
+		public Map<String, Object> toMap() {
+
+			final Map<String, Object> map = new LinkedHashMap<>();
+
+			map.put("hits",          hits.sum());
+			map.put("misses",        misses.sum());
+			map.put("invalidations", invalidations.sum());
+
+			return map;
+		}
 	}
 }
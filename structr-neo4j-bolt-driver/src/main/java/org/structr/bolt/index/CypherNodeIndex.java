@@ -53,7 +53,8 @@ public class CypherNodeIndex extends AbstractCypherIndex<Node> {
 	public QueryResult<Node> getResult(final CypherQuery query) {
 
 		final int queryHashCode  = query.getHashCode();
-		CachedQueryResult result = queryCache.get(queryHashCode);
+		final long stamp         = getCacheStamp();
+		CachedQueryResult result = getCachedResult(query, queryHashCode);
 
 		if (result == null) {
 
@@ -64,7 +65,7 @@ public class CypherNodeIndex extends AbstractCypherIndex<Node> {
 			result = new CachedQueryResult(mapped);
 			if (!result.isEmpty()) {
 
-				queryCache.put(queryHashCode, result);
+				cacheResult(query, queryHashCode, result, stamp);
 			}
 		}
 
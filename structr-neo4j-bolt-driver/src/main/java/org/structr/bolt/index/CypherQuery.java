@@ -40,7 +40,9 @@ public class CypherQuery {
 	private boolean sortDescending               = false;
 	private SortType sortType                    = null;
 	private String sortKey                       = null;
+	private int pageSize                         = 0;
 	private int count                            = 0;
+	private int page                             = 1;
 
 	public CypherQuery(final AbstractCypherIndex<?> index) {
 		this.index = index;
@@ -58,7 +60,10 @@ public class CypherQuery {
 		hashCode += 27 * typeLabels.hashCode();
 		hashCode += 37 * getStatement().hashCode();
 		hashCode += 47 * deepHashCode(parameters);
-		hashCode += 57 * sortKey.hashCode();
+
+		if (sortKey != null) {
+			hashCode += 57 * sortKey.hashCode();
+		}
 
 		if (sortDescending) {
 			hashCode += 1;
@@ -75,25 +80,13 @@ public class CypherQuery {
 		switch (typeCount) {
 			case 0:
 
-				buf.append(index.getQueryPrefix(null, sourceTypeLabel, targetTypeLabel));
-
-				if (buffer.length() > 0) {
-					buf.append(" WHERE ");
-					buf.append(buffer);
-				}
-
+				appendMatch(buf, null);
 				buf.append(index.getQuerySuffix());
 				break;
 
 			case 1:
 
-				buf.append(index.getQueryPrefix(typeLabels.get(0), sourceTypeLabel, targetTypeLabel));
-
-				if (buffer.length() > 0) {
-					buf.append(" WHERE ");
-					buf.append(buffer);
-				}
-
+				appendMatch(buf, typeLabels.get(0));
 				buf.append(index.getQuerySuffix());
 				break;
 
@@ -102,13 +95,7 @@ public class CypherQuery {
 				// create UNION query
 				for (final Iterator<String> it = typeLabels.iterator(); it.hasNext();) {
 
-					buf.append(index.getQueryPrefix(it.next(), sourceTypeLabel, targetTypeLabel));
-
-					if (buffer.length() > 0) {
-						buf.append(" WHERE ");
-						buf.append(buffer);
-					}
-
+					appendMatch(buf, it.next());
 					buf.append(index.getQuerySuffix());
 
 					if (it.hasNext()) {
@@ -147,9 +134,41 @@ public class CypherQuery {
 			}
 		}
 
+		if (pageSize > 0) {
+
+			buf.append(" SKIP ");
+			buf.append((long)(page - 1) * pageSize);
+			buf.append(" LIMIT ");
+			buf.append(pageSize);
+		}
+
+		return buf.toString();
+	}
+
+	/**
+	 * Returns a statement that counts the results of this query. Only
+	 * queries with at most one type label can be counted this way.
+	 *
+	 * @param limit the maximum number of results to count
+	 *
+	 * @return the count statement
+	 */
+	public String getCountStatement(final int limit) {
+
+		final StringBuilder buf = new StringBuilder();
+
+		appendMatch(buf, typeLabels.isEmpty() ? null : typeLabels.get(0));
+		buf.append(" WITH DISTINCT n LIMIT ");
+		buf.append(limit);
+		buf.append(" RETURN COUNT(n)");
+
 		return buf.toString();
 	}
 
+	public List<String> getTypeLabels() {
+		return typeLabels;
+	}
+
 	public Map<String, Object> getParameters() {
 		return parameters;
 	}
@@ -293,6 +312,12 @@ public class CypherQuery {
 		this.sortKey        = sortKey;
 	}
 
+	public void page(final int pageSize, final int page) {
+
+		this.pageSize = pageSize;
+		this.page     = page;
+	}
+
 	public void setSourceType(final String sourceTypeLabel) {
 		this.sourceTypeLabel = sourceTypeLabel;
 	}
@@ -301,6 +326,16 @@ public class CypherQuery {
 		this.targetTypeLabel = targetTypeLabel;
 	}
 
+	private void appendMatch(final StringBuilder buf, final String typeLabel) {
+
+		buf.append(index.getQueryPrefix(typeLabel, sourceTypeLabel, targetTypeLabel));
+
+		if (buffer.length() > 0) {
+			buf.append(" WHERE ");
+			buf.append(buffer);
+		}
+	}
+
 	private int deepHashCode(final Map<String, Object> map) {
 
 		final StringBuilder buf = new StringBuilder();
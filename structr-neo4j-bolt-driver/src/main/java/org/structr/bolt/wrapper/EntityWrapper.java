@@ -23,6 +23,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import org.neo4j.driver.v1.exceptions.NoSuchRecordException;
 import org.neo4j.driver.v1.types.Entity;
@@ -52,7 +53,15 @@ public abstract class EntityWrapper<T extends Entity> implements PropertyContain
 		this.db   = db;
 	}
 
-	protected abstract String getQueryPrefix();
+	public abstract String getQueryPrefix();
+
+	/**
+	 * Returns the labels (or the relationship type) of this entity, used
+	 * to invalidate cached query results when this entity is modified.
+	 *
+	 * @return the label names of this entity
+	 */
+	public abstract Set<String> getLabelNames();
 
 	@Override
 	public long getId() {
@@ -119,13 +128,24 @@ public abstract class EntityWrapper<T extends Entity> implements PropertyContain
 
 		final SessionTransaction tx   = db.getCurrentTransaction();
 		final Map<String, Object> map = new HashMap<>();
-		final String query            = getQueryPrefix() + " WHERE ID(n) = {id} SET n.`" + key + "` = {value}";
 
-		map.put("id", id);
-		map.put("value", value);
+		if (tx.isWriteBehind()) {
+
+			map.put(key, value);
+
+			// write property on commit
+			tx.defer(this, map);
+
+		} else {
+
+			final String query = getQueryPrefix() + " WHERE ID(n) = {id} SET n.`" + key + "` = {value}";
+
+			map.put("id", id);
+			map.put("value", value);
 
-		// update entity handle
-		tx.set(query, map);
+			// update entity handle
+			tx.set(query, map);
+		}
 
 		// update data
 		update(key, value);
@@ -138,16 +158,25 @@ public abstract class EntityWrapper<T extends Entity> implements PropertyContain
 
 		assertNotStale();
 
-		final SessionTransaction tx   = db.getCurrentTransaction();
-		final Map<String, Object> map = new HashMap<>(values);
-		final String query            = getQueryPrefix() + " WHERE ID(n) = {id} SET n += {properties}";
+		final SessionTransaction tx = db.getCurrentTransaction();
 
-		// overwrite a potential "id" property
-		map.put("id", id);
-		map.put("properties", values);
+		if (tx.isWriteBehind()) {
 
-		// execute query
-		tx.set(query, map);
+			// write properties on commit
+			tx.defer(this, values);
+
+		} else {
+
+			final Map<String, Object> map = new HashMap<>(values);
+			final String query            = getQueryPrefix() + " WHERE ID(n) = {id} SET n += {properties}";
+
+			// overwrite a potential "id" property
+			map.put("id", id);
+			map.put("properties", values);
+
+			// execute query
+			tx.set(query, map);
+		}
 
 		// update data
 		update(values);
@@ -162,12 +191,23 @@ public abstract class EntityWrapper<T extends Entity> implements PropertyContain
 
 		final SessionTransaction tx   = db.getCurrentTransaction();
 		final Map<String, Object> map = new HashMap<>();
-		final String query            = getQueryPrefix() + " WHERE ID(n) = {id} SET n.`" + key + "` = Null";
 
-		map.put("id", id);
+		if (tx.isWriteBehind()) {
+
+			// null values are removed by SET n += {props}
+			map.put(key, null);
+
+			tx.defer(this, map);
+
+		} else {
 
-		// execute query
-		tx.set(query, map);
+			final String query = getQueryPrefix() + " WHERE ID(n) = {id} SET n.`" + key + "` = Null";
+
+			map.put("id", id);
+
+			// execute query
+			tx.set(query, map);
+		}
 
 		// remove key from data
 		data.remove(key);
@@ -215,6 +255,14 @@ public abstract class EntityWrapper<T extends Entity> implements PropertyContain
 	}
 
 	// ----- protected methods -----
+	/**
+	 * Called after the data of a stale entity was reloaded from the database.
+	 *
+	 * @param entity the reloaded entity
+	 */
+	protected void refresh(final Entity entity) {
+	}
+
 	protected synchronized void assertNotStale() {
 
 		if (stale) {
@@ -232,9 +280,12 @@ public abstract class EntityWrapper<T extends Entity> implements PropertyContain
 
 			try {
 
+				final Entity entity = tx.getEntity(getQueryPrefix() + " WHERE ID(n) = {id} RETURN n", map);
+
 				// update data
 				data.clear();
-				update(tx.getEntity(getQueryPrefix() + " WHERE ID(n) = {id} RETURN n", map).asMap());
+				update(entity.asMap());
+				refresh(entity);
 
 			} catch (NoSuchRecordException nex) {
 				throw new NotFoundException(nex);
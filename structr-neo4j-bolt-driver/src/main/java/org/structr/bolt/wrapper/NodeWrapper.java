@@ -22,6 +22,9 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import org.neo4j.driver.v1.types.Entity;
 import org.structr.api.graph.Direction;
 import org.structr.api.graph.Label;
 import org.structr.api.graph.Node;
@@ -39,10 +42,14 @@ import org.structr.bolt.mapper.RelationshipRelationshipMapper;
 public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> implements Node {
 
 	private final Map<String, Map<String, List<Relationship>>> relationshipCache = new HashMap<>();
+	private final Set<String> labels                                             = new CopyOnWriteArraySet<>();
 	private static FixedSizeCache<Long, NodeWrapper> nodeCache                   = null;
 
 	private NodeWrapper(final BoltDatabaseService db, final org.neo4j.driver.v1.types.Node node) {
+
 		super(db, node);
+
+		Iterables.addAll(labels, node.labels());
 	}
 
 	public static void initialize(final int cacheSize) {
@@ -50,7 +57,7 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 	}
 
 	@Override
-	protected String getQueryPrefix() {
+	public String getQueryPrefix() {
 		return "MATCH (n)";
 	}
 
@@ -60,6 +67,11 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 		this.stale = true;
 	}
 
+	@Override
+	public Set<String> getLabelNames() {
+		return labels;
+	}
+
 	@Override
 	public Relationship createRelationshipTo(final Node endNode, final RelationshipType relationshipType) {
 
@@ -111,6 +123,9 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 		map.put("id", id);
 
 		tx.set("MATCH (n) WHERE ID(n) = {id} SET n :" + label.name(), map);
+
+		labels.add(label.name());
+
 		tx.modified(this);
 	}
 
@@ -125,7 +140,11 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 		map.put("id", id);
 
 		tx.set("MATCH (n) WHERE ID(n) = {id} REMOVE n:" + label.name(), map);
+
+		// invalidate queries for the removed label as well
 		tx.modified(this);
+
+		labels.remove(label.name());
 	}
 
 	@Override
@@ -254,39 +273,60 @@ public class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> i
 		nodeCache.clear();
 	}
 
+	public static Map<String, Object> getCacheStatistics() {
+		return nodeCache.getStatistics();
+	}
+
 	// ----- public static methods -----
 	public static NodeWrapper newInstance(final BoltDatabaseService db, final org.neo4j.driver.v1.types.Node node) {
 
-		synchronized (nodeCache) {
+		NodeWrapper wrapper = nodeCache.get(node.id());
+		if (wrapper == null) {
 
-			NodeWrapper wrapper = nodeCache.get(node.id());
-			if (wrapper == null) {
+			wrapper = new NodeWrapper(db, node);
 
-				wrapper = new NodeWrapper(db, node);
-				nodeCache.put(node.id(), wrapper);
-			}
+			// another thread may have stored a wrapper in the meantime
+			final NodeWrapper existing = nodeCache.putIfAbsent(node.id(), wrapper);
+			if (existing != null) {
 
-			return wrapper;
+				return existing;
+			}
 		}
+
+		return wrapper;
 	}
 
 	public static NodeWrapper newInstance(final BoltDatabaseService db, final long id) {
 
-		synchronized (nodeCache) {
+		NodeWrapper wrapper = nodeCache.get(id);
+		if (wrapper == null) {
+
+			final SessionTransaction tx   = db.getCurrentTransaction();
+			final Map<String, Object> map = new HashMap<>();
 
-			NodeWrapper wrapper = nodeCache.get(id);
-			if (wrapper == null) {
+			map.put("id", id);
 
-				final SessionTransaction tx   = db.getCurrentTransaction();
-				final Map<String, Object> map = new HashMap<>();
+			wrapper = new NodeWrapper(db, tx.getNode("MATCH (n) WHERE ID(n) = {id} RETURN n", map));
 
-				map.put("id", id);
+			// another thread may have stored a wrapper in the meantime
+			final NodeWrapper existing = nodeCache.putIfAbsent(id, wrapper);
+			if (existing != null) {
 
-				wrapper = new NodeWrapper(db, tx.getNode("MATCH (n) WHERE ID(n) = {id} RETURN n", map));
-				nodeCache.put(id, wrapper);
+				return existing;
 			}
+		}
+
+		return wrapper;
+	}
+
+	// ----- protected methods -----
+	@Override
+	protected void refresh(final Entity entity) {
+
+		if (entity instanceof org.neo4j.driver.v1.types.Node) {
 
-			return wrapper;
+			labels.clear();
+			Iterables.addAll(labels, ((org.neo4j.driver.v1.types.Node)entity).labels());
 		}
 	}
 
@@ -18,8 +18,10 @@
  */
 package org.structr.bolt.wrapper;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import org.structr.api.NotFoundException;
 import org.structr.api.graph.Node;
 import org.structr.api.graph.Relationship;
@@ -53,7 +55,7 @@ public class RelationshipWrapper extends EntityWrapper<org.neo4j.driver.v1.types
 	}
 
 	@Override
-	protected String getQueryPrefix() {
+	public String getQueryPrefix() {
 		return "MATCH ()-[n]-()";
 	}
 
@@ -79,6 +81,11 @@ public class RelationshipWrapper extends EntityWrapper<org.neo4j.driver.v1.types
 		stale = true;
 	}
 
+	@Override
+	public Set<String> getLabelNames() {
+		return Collections.singleton(type);
+	}
+
 	@Override
 	public Node getStartNode() {
 
@@ -125,39 +132,49 @@ public class RelationshipWrapper extends EntityWrapper<org.neo4j.driver.v1.types
 		relationshipCache.clear();
 	}
 
+	public static Map<String, Object> getCacheStatistics() {
+		return relationshipCache.getStatistics();
+	}
+
 	// ----- public static methods -----
 	public static RelationshipWrapper newInstance(final BoltDatabaseService db, final org.neo4j.driver.v1.types.Relationship relationship) {
 
-		synchronized (relationshipCache) {
+		RelationshipWrapper wrapper = relationshipCache.get(relationship.id());
+		if (wrapper == null) {
 
-			RelationshipWrapper wrapper = relationshipCache.get(relationship.id());
-			if (wrapper == null) {
+			wrapper = new RelationshipWrapper(db, relationship);
 
-				wrapper = new RelationshipWrapper(db, relationship);
-				relationshipCache.put(relationship.id(), wrapper);
-			}
+			// another thread may have stored a wrapper in the meantime
+			final RelationshipWrapper existing = relationshipCache.putIfAbsent(relationship.id(), wrapper);
+			if (existing != null) {
 
-			return wrapper;
+				return existing;
+			}
 		}
+
+		return wrapper;
 	}
 
 	public static RelationshipWrapper newInstance(final BoltDatabaseService db, final long id) {
 
-		synchronized (relationshipCache) {
+		RelationshipWrapper wrapper = relationshipCache.get(id);
+		if (wrapper == null) {
 
-			RelationshipWrapper wrapper = relationshipCache.get(id);
-			if (wrapper == null) {
+			final SessionTransaction tx   = db.getCurrentTransaction();
+			final Map<String, Object> map = new HashMap<>();
 
-				final SessionTransaction tx   = db.getCurrentTransaction();
-				final Map<String, Object> map = new HashMap<>();
+			map.put("id", id);
 
-				map.put("id", id);
+			wrapper = new RelationshipWrapper(db, tx.getRelationship("MATCH ()-[n]-() WHERE ID(n) = {id} RETURN n", map));
 
-				wrapper = new RelationshipWrapper(db, tx.getRelationship("MATCH ()-[n]-() WHERE ID(n) = {id} RETURN n", map));
-				relationshipCache.put(id, wrapper);
-			}
+			// another thread may have stored a wrapper in the meantime
+			final RelationshipWrapper existing = relationshipCache.putIfAbsent(id, wrapper);
+			if (existing != null) {
 
-			return wrapper;
+				return existing;
+			}
 		}
+
+		return wrapper;
 	}
 }
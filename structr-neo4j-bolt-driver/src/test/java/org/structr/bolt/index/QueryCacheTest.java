@@ -0,0 +1,244 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.bolt.index;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+import org.structr.api.NotInTransactionException;
+import org.structr.api.QueryResult;
+import org.structr.api.graph.PropertyContainer;
+
+/**
+ * Tests the query cache of {@link AbstractCypherIndex} without a database.
+ * The simulated database consists of a single version number that is
+ * incremented by each write.
+ */
+public class QueryCacheTest {
+
+	private static final Set<String> LABELS = Collections.singleton("Item");
+
+	@Test
+	public void testEvictionDoesNotUnregisterNewerResult() {
+
+		final TestIndex index   = new TestIndex(10);
+		final CypherQuery query = index.createItemQuery();
+		final int hashCode      = query.getHashCode();
+
+		final AbstractCypherIndex<Version>.CachedQueryResult first  = index.createResult(1);
+		final AbstractCypherIndex<Version>.CachedQueryResult second = index.createResult(2);
+
+		index.cacheResult(query, hashCode, first, index.getCacheStamp());
+		index.cacheResult(query, hashCode, second, index.getCacheStamp());
+
+		// late eviction callback of the replaced result
+		first.invalidate();
+
+		assertSame("Cache should contain the newer result", second, index.getCachedResult(query, hashCode));
+
+		index.invalidateCache(LABELS);
+
+		assertNull("Invalidation should remove the newer result", index.getCachedResult(query, hashCode));
+	}
+
+	@Test
+	public void testResultReadBeforeWriteIsNotCached() {
+
+		final TestIndex index   = new TestIndex(10);
+		final CypherQuery query = index.createItemQuery();
+		final int hashCode      = query.getHashCode();
+		final long stamp        = index.getCacheStamp();
+
+		// a write is committed while the query is running
+		index.invalidateCache(LABELS);
+
+		index.cacheResult(query, hashCode, index.createResult(1), stamp);
+
+		assertNull("Result that was read before a write must not be cached", index.getCachedResult(query, hashCode));
+	}
+
+	@Test
+	public void testConcurrentWritesAndReads() throws InterruptedException {
+
+		final AtomicReference<String> failure = new AtomicReference<>();
+		final AtomicLong committed            = new AtomicLong();
+		final TestIndex index                 = new TestIndex(10);
+		final List<Thread> readers            = new LinkedList<>();
+		final int writeCount                  = 5000;
+
+		final Thread writer = new Thread(() -> {
+
+			for (int i=1; i<=writeCount; i++) {
+
+				index.database.set(i);
+				index.invalidateCache(LABELS);
+
+				committed.set(i);
+			}
+		});
+
+		for (int i=0; i<4; i++) {
+
+			readers.add(new Thread(() -> {
+
+				while (committed.get() < writeCount && failure.get() == null) {
+
+					final long expected = committed.get();
+					final long actual   = index.read();
+
+					if (actual < expected) {
+						failure.set("Read version " + actual + " after version " + expected + " was committed");
+					}
+				}
+			}));
+		}
+
+		readers.forEach(Thread::start);
+		writer.start();
+
+		writer.join();
+
+		for (final Thread reader : readers) {
+			reader.join();
+		}
+
+		assertNull(failure.get(), failure.get());
+		assertEquals("Cache should not contain stale results after all writes", writeCount, index.read());
+	}
+
+	// ----- nested classes -----
+	private static class TestIndex extends AbstractCypherIndex<Version> {
+
+		private final AtomicLong database = new AtomicLong();
+
+		public TestIndex(final int queryCacheSize) {
+			super(null, queryCacheSize);
+		}
+
+		public CypherQuery createItemQuery() {
+
+			final CypherQuery query = new CypherQuery(this);
+
+			query.typeLabel("Item");
+
+			return query;
+		}
+
+		public CachedQueryResult createResult(final long version) {
+			return new CachedQueryResult(Collections.singletonList(new Version(version)));
+		}
+
+		public long read() {
+			return getResult(createItemQuery()).iterator().next().getId();
+		}
+
+		@Override
+		public QueryResult<Version> getResult(final CypherQuery query) {
+
+			final int hashCode       = query.getHashCode();
+			final long stamp         = getCacheStamp();
+			CachedQueryResult result = getCachedResult(query, hashCode);
+
+			if (result == null) {
+
+				result = createResult(database.get());
+
+				// give writers a chance to run between read and cache update
+				Thread.yield();
+
+				cacheResult(query, hashCode, result, stamp);
+			}
+
+			return result;
+		}
+
+		@Override
+		public String getQueryPrefix(final String mainType, final String sourceTypeLabel, final String targetTypeLabel) {
+			return "MATCH (n:" + mainType + ")";
+		}
+
+		@Override
+		public String getQuerySuffix() {
+			return " RETURN n";
+		}
+	}
+
+	private static class Version implements PropertyContainer {
+
+		private long version = 0L;
+
+		public Version(final long version) {
+			this.version = version;
+		}
+
+		@Override
+		public long getId() {
+			return version;
+		}
+
+		@Override
+		public boolean hasProperty(final String name) {
+			return false;
+		}
+
+		@Override
+		public Object getProperty(final String name) {
+			return null;
+		}
+
+		@Override
+		public Object getProperty(final String name, final Object defaultValue) {
+			return defaultValue;
+		}
+
+		@Override
+		public void setProperty(final String name, final Object value) {
+		}
+
+		@Override
+		public void setProperties(final Map<String, Object> values) {
+		}
+
+		@Override
+		public void removeProperty(final String name) {
+		}
+
+		@Override
+		public Iterable<String> getPropertyKeys() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public void delete() throws NotInTransactionException {
+		}
+
+		@Override
+		public boolean isSpatialEntity() {
+			return false;
+		}
+	}
+}
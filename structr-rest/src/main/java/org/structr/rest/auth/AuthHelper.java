@@ -20,16 +20,20 @@ package org.structr.rest.auth;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.api.config.Settings;
+import org.structr.common.AccessPathCache;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.app.StructrApp;
+import org.structr.core.auth.SessionRegistry;
 import org.structr.core.auth.exception.AuthenticationException;
 import org.structr.core.entity.AbstractUser;
 import org.structr.core.entity.Principal;
 import org.structr.core.entity.SuperUser;
+import org.structr.core.graph.NodeInterface;
 import org.structr.core.property.PropertyKey;
 import org.structr.schema.action.Actions;
 
@@ -169,13 +173,52 @@ public class AuthHelper {
 	/**
 	 * Find a {@link Principal} for the given session id
 	 *
+	 * The session registry is consulted first, the database is only
+	 * queried for sessions that are unknown to the registry.
+	 *
 	 * @param sessionId
 	 * @return principal
 	 */
 	public static Principal getPrincipalForSessionId(final String sessionId) {
 
-		return getPrincipalForCredential(Principal.sessionIds, new String[]{ sessionId });
+		final SessionRegistry registry = SessionRegistry.getInstance();
+		final String principalId       = registry.getPrincipalId(sessionId);
+
+		if (principalId != null) {
+
+			if (SessionRegistry.ANONYMOUS.equals(principalId)) {
+				return null;
+			}
+
+			try {
+
+				final NodeInterface node = StructrApp.getInstance().getNodeById(principalId);
+
+				// the principal must still own the session (it may have been
+				// removed by a transaction that did not go through the registry)
+				if (node instanceof Principal && ArrayUtils.contains(node.getProperty(Principal.sessionIds), sessionId)) {
+
+					return (Principal)node;
+				}
+
+			} catch (FrameworkException fex) {
+
+				logger.warn("Error while fetching principal", fex);
+			}
+
+			registry.invalidate(sessionId);
+
+			// don't cache a negative result here, the mismatch may be caused by
+			// a login transaction that has registered the session but not yet
+			// committed, see AbstractUser#addSessionId
+			return getPrincipalForCredential(Principal.sessionIds, new String[]{ sessionId });
+		}
 
+		final Principal principal = getPrincipalForCredential(Principal.sessionIds, new String[]{ sessionId });
+
+		registry.cache(sessionId, principal != null ? principal.getUuid() : null);
+
+		return principal;
 	}
 
 	public static void doLogin(final HttpServletRequest request, final Principal user) throws FrameworkException {
@@ -195,6 +238,10 @@ public class AuthHelper {
 			user.addSessionId(session.getId());
 
 			Actions.call(Actions.NOTIFICATION_LOGIN, user);
+
+			if (Settings.PermissionWarmup.getValue()) {
+				AccessPathCache.warmup(user);
+			}
 		}
 	}
 
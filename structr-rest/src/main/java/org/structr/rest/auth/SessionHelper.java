@@ -31,6 +31,7 @@ import org.structr.core.Services;
 import org.structr.core.app.App;
 import org.structr.core.app.Query;
 import org.structr.core.app.StructrApp;
+import org.structr.core.auth.SessionRegistry;
 import org.structr.core.entity.Principal;
 import org.structr.rest.service.HttpService;
 
@@ -111,6 +112,11 @@ public class SessionHelper {
 	 */
 	public static void clearSession(final String sessionId) {
 
+		// no need to search if the session is known to belong to nobody
+		if (SessionRegistry.ANONYMOUS.equals(SessionRegistry.getInstance().getPrincipalId(sessionId))) {
+			return;
+		}
+
 		final App app = StructrApp.getInstance();
 		final Query<Principal> query = app.nodeQuery(Principal.class).and(Principal.sessionIds, new String[]{sessionId});
 
@@ -0,0 +1,366 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.common;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.RetryException;
+import org.structr.api.config.Settings;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.app.App;
+import org.structr.core.graph.Tx;
+
+/**
+ * Imports a stream of CSV records in batches. Each batch is written in its
+ * own transaction, so a failing record only rolls back its own batch, and
+ * batches can optionally be written by several workers in parallel if the
+ * records are independent of each other.
+ *
+ * Running and recently finished imports can be inspected with
+ * {@link #getImports()}.
+ */
+public class CsvImport {
+
+	private static final Logger logger                  = LoggerFactory.getLogger(CsvImport.class.getName());
+	private static final Map<String, CsvImport> imports = new ConcurrentHashMap<>();
+	private static final int MAX_FINISHED_IMPORTS       = 20;
+	private static final int MAX_ERRORS                 = 100;
+	private static final int MAX_RETRIES                = 3;
+
+	private final List<Map<String, Object>> errors = new LinkedList<>();
+	private final AtomicLong recordsRead           = new AtomicLong();
+	private final AtomicLong recordsImported       = new AtomicLong();
+	private final AtomicLong recordsFailed         = new AtomicLong();
+	private final AtomicLong batchesFailed         = new AtomicLong();
+	private final AtomicLong batches               = new AtomicLong();
+	private RecordHandler handler                  = null;
+	private boolean transactional                  = true;
+	private String name                            = null;
+	private String id                              = null;
+	private App app                                = null;
+	private volatile String state                  = "created";
+	private volatile long startTime                = 0L;
+	private volatile long endTime                  = 0L;
+	private int batchSize                          = 0;
+	private int workers                            = 0;
+
+	/**
+	 * Imports a single record.
+	 */
+	public interface RecordHandler {
+
+		public void handle(final Map<String, String> record) throws FrameworkException;
+	}
+
+	/**
+	 * Creates a new import.
+	 *
+	 * @param app the app to create transactions with
+	 * @param name a name that identifies the import in the status
+	 * @param batchSize the number of records per transaction, at most CsvServlet.import.maxbatchsize
+	 * @param workers the number of parallel batch writers, at most CsvServlet.import.maxworkers
+	 * @param transactional whether each batch needs an enclosing transaction
+	 * @param handler the record handler
+	 */
+	public CsvImport(final App app, final String name, final int batchSize, final int workers, final boolean transactional, final RecordHandler handler) {
+
+		this.id            = UUID.randomUUID().toString().replaceAll("[\\-]+", "");
+		this.app           = app;
+		this.name          = name;
+		this.batchSize     = Math.max(1, Math.min(batchSize, Settings.CsvImportMaxBatchSize.getValue()));
+		this.workers       = Math.max(1, Math.min(workers, Settings.CsvImportMaxWorkers.getValue()));
+		this.transactional = transactional;
+		this.handler       = handler;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * Reads all records and writes them in batches. Returns when all
+	 * batches have been written.
+	 *
+	 * @param records
+	 */
+	public void run(final CsvRecordReader records) {
+
+		final ExecutorService executor = workers > 1 ? Executors.newFixedThreadPool(workers) : null;
+
+		// allow two batches per worker to be in flight, so the
+		// reader does not get too far ahead of the writers
+		final Semaphore inFlight = new Semaphore(workers * 2);
+
+		register(this);
+
+		startTime = System.currentTimeMillis();
+		state     = "running";
+
+		try {
+
+			while (records.hasNext()) {
+
+				final Batch batch = readBatch(records);
+				if (batch.records.isEmpty()) {
+					continue;
+				}
+
+				if (executor != null) {
+
+					inFlight.acquire();
+
+					executor.execute(() -> {
+
+						try {
+							write(batch);
+
+						} finally {
+
+							inFlight.release();
+						}
+					});
+
+				} else {
+
+					write(batch);
+				}
+			}
+
+			if (executor != null) {
+
+				executor.shutdown();
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+			}
+
+			state = "finished";
+
+		} catch (Throwable t) {
+
+			logger.warn("CSV import {} aborted: {}", id, t.getMessage());
+
+			addError(records.getLineNumber(), records.getLineNumber(), t.getMessage());
+			state = "aborted";
+
+		} finally {
+
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+
+			endTime = System.currentTimeMillis();
+		}
+	}
+
+	public Map<String, Object> getStatus() {
+
+		final Map<String, Object> status = new LinkedHashMap<>();
+		final long end                   = endTime > 0 ? endTime : System.currentTimeMillis();
+		final long duration              = startTime > 0 ? end - startTime : 0L;
+		final long imported              = recordsImported.get();
+
+		status.put("id",                id);
+		status.put("name",              name);
+		status.put("state",             state);
+		status.put("batchSize",         batchSize);
+		status.put("workers",           workers);
+		status.put("recordsRead",       recordsRead.get());
+		status.put("recordsImported",   imported);
+		status.put("recordsFailed",     recordsFailed.get());
+		status.put("batches",           batches.get());
+		status.put("batchesFailed",     batchesFailed.get());
+		status.put("duration",          duration);
+		status.put("recordsPerSecond",  duration > 0 ? (imported * 1000) / duration : 0L);
+
+		synchronized (errors) {
+			status.put("errors", new ArrayList<>(errors));
+		}
+
+		return status;
+	}
+
+	public boolean isFinished() {
+		return endTime > 0;
+	}
+
+	public static Collection<CsvImport> getImports() {
+		return imports.values();
+	}
+
+	public static CsvImport getImport(final String id) {
+		return imports.get(id);
+	}
+
+	// ----- private methods -----
+	private Batch readBatch(final CsvRecordReader records) {
+
+		final Batch batch = new Batch();
+
+		while (batch.records.size() < batchSize && records.hasNext()) {
+
+			try {
+
+				final Map<String, String> record = records.next();
+
+				if (batch.records.isEmpty()) {
+					batch.firstLine = records.getLineNumber();
+				}
+
+				batch.records.add(record);
+				batch.lastLine = records.getLineNumber();
+
+				recordsRead.incrementAndGet();
+
+			} catch (CsvRecordReader.CsvRecordException rex) {
+
+				// unparseable record, skip it
+				recordsFailed.incrementAndGet();
+				addError(rex.getLineNumber(), rex.getLineNumber(), rex.getMessage());
+			}
+		}
+
+		if (!batch.records.isEmpty()) {
+			batch.number = batches.incrementAndGet();
+		}
+
+		return batch;
+	}
+
+	private void write(final Batch batch) {
+
+		int attempts = 0;
+
+		while (true) {
+
+			try {
+
+				if (transactional) {
+
+					try (final Tx tx = app.tx()) {
+
+						handle(batch);
+						tx.success();
+					}
+
+				} else {
+
+					handle(batch);
+				}
+
+				recordsImported.addAndGet(batch.records.size());
+
+				return;
+
+			} catch (RetryException rex) {
+
+				if (++attempts < MAX_RETRIES) {
+					continue;
+				}
+
+				fail(batch, rex.getMessage());
+				return;
+
+			} catch (Throwable t) {
+
+				fail(batch, t.getMessage());
+				return;
+			}
+		}
+	}
+
+	private void handle(final Batch batch) throws FrameworkException {
+
+		for (final Map<String, String> record : batch.records) {
+
+			handler.handle(record);
+		}
+	}
+
+	private void fail(final Batch batch, final String message) {
+
+		logger.warn("CSV import {}: batch {} (lines {} to {}) failed: {}", id, batch.number, batch.firstLine, batch.lastLine, message);
+
+		recordsFailed.addAndGet(batch.records.size());
+		batchesFailed.incrementAndGet();
+
+		addError(batch.firstLine, batch.lastLine, message);
+	}
+
+	private void addError(final long firstLine, final long lastLine, final String message) {
+
+		synchronized (errors) {
+
+			if (errors.size() < MAX_ERRORS) {
+
+				final Map<String, Object> error = new LinkedHashMap<>();
+
+				error.put("firstLine", firstLine);
+				error.put("lastLine",  lastLine);
+				error.put("message",   message);
+
+				errors.add(error);
+			}
+		}
+	}
+
+	private static void register(final CsvImport csvImport) {
+
+		imports.put(csvImport.getId(), csvImport);
+
+		// forget the oldest finished imports
+		final List<CsvImport> finished = new ArrayList<>();
+
+		for (final CsvImport existing : imports.values()) {
+
+			if (existing.isFinished()) {
+				finished.add(existing);
+			}
+		}
+
+		if (finished.size() > MAX_FINISHED_IMPORTS) {
+
+			finished.sort((a, b) -> Long.compare(a.endTime, b.endTime));
+
+			for (final CsvImport old : finished.subList(0, finished.size() - MAX_FINISHED_IMPORTS)) {
+				imports.remove(old.getId());
+			}
+		}
+	}
+
+	// ----- nested classes -----
+	private static class Batch {
+
+		private final List<Map<String, String>> records = new ArrayList<>();
+		private long firstLine                          = 0L;
+		private long lastLine                           = 0L;
+		private long number                             = 0L;
+	}
+}
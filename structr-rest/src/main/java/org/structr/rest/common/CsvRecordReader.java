@@ -0,0 +1,228 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.common;
+
+import au.com.bytecode.opencsv.CSVParser;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Reads CSV records one at a time from a {@link Reader}, using the first
+ * line as the header. Quoted values may span multiple lines, blank lines
+ * are skipped.
+ */
+public class CsvRecordReader implements Iterator<Map<String, String>>, AutoCloseable {
+
+	private BufferedReader reader    = null;
+	private CSVParser parser         = null;
+	private String[] header          = null;
+	private Map<String, String> next = null;
+	private IOException error        = null;
+	private boolean trim             = false;
+	private char delimiter           = 0;
+	private char quoteChar           = 0;
+	private char escapeChar          = 0;
+	private long recordLine          = 0L;
+	private long startLine           = 0L;
+	private long lineNumber          = 0L;
+
+	public CsvRecordReader(final Reader reader, final char delimiter, final char quoteChar) throws IOException {
+		this(reader, delimiter, quoteChar, CSVParser.DEFAULT_ESCAPE_CHARACTER, false);
+	}
+
+	public CsvRecordReader(final Reader reader, final char delimiter, final char quoteChar, final char escapeChar, final boolean trim) throws IOException {
+
+		this.reader     = reader instanceof BufferedReader ? (BufferedReader)reader : new BufferedReader(reader);
+		this.parser     = new CSVParser(delimiter, quoteChar, escapeChar);
+		this.delimiter  = delimiter;
+		this.quoteChar  = quoteChar;
+		this.escapeChar = escapeChar;
+		this.trim       = trim;
+		this.header     = readRecord();
+
+		if (header == null) {
+
+			header = new String[0];
+
+		} else if (trim) {
+
+			for (int i=0; i<header.length; i++) {
+				header[i] = header[i].trim();
+			}
+		}
+	}
+
+	public String[] getHeader() {
+		return header;
+	}
+
+	/**
+	 * Returns the line number on which the record that was returned
+	 * last by {@link #next()} starts.
+	 *
+	 * @return the line number
+	 */
+	public long getLineNumber() {
+		return recordLine;
+	}
+
+	@Override
+	public boolean hasNext() {
+
+		if (next == null && error == null) {
+
+			try {
+
+				final String[] columns = readRecord();
+				if (columns != null) {
+
+					next = toMap(columns);
+				}
+
+			} catch (IOException ioex) {
+
+				// start over with a fresh parser after a broken record
+				parser = new CSVParser(delimiter, quoteChar, escapeChar);
+				error  = ioex;
+			}
+
+			recordLine = startLine;
+		}
+
+		return next != null || error != null;
+	}
+
+	/**
+	 * Returns the next record.
+	 *
+	 * @return the next record
+	 * @throws CsvRecordException if the record could not be parsed
+	 */
+	@Override
+	public Map<String, String> next() {
+
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		if (error != null) {
+
+			final IOException ioex = error;
+
+			// continue with the next line after a parse error
+			error = null;
+
+			throw new CsvRecordException(recordLine, ioex);
+		}
+
+		final Map<String, String> record = next;
+
+		next = null;
+
+		return record;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	// ----- private methods -----
+	private String[] readRecord() throws IOException {
+
+		String[] result = null;
+
+		do {
+
+			final String line = reader.readLine();
+			if (line == null) {
+
+				if (parser.isPending()) {
+					throw new IOException("Unterminated quoted value at end of input");
+				}
+
+				return result;
+			}
+
+			lineNumber++;
+
+			if (result == null) {
+
+				if (StringUtils.isBlank(line)) {
+					continue;
+				}
+
+				startLine = lineNumber;
+			}
+
+			final String[] columns = parser.parseLineMulti(line);
+			if (result == null) {
+
+				result = columns;
+
+			} else {
+
+				final String[] joined = Arrays.copyOf(result, result.length + columns.length);
+				System.arraycopy(columns, 0, joined, result.length, columns.length);
+
+				result = joined;
+			}
+
+		} while (result == null || parser.isPending());
+
+		return result;
+	}
+
+	private Map<String, String> toMap(final String[] columns) {
+
+		final Map<String, String> record = new LinkedHashMap<>();
+		final int len                    = Math.min(header.length, columns.length);
+
+		for (int i=0; i<len; i++) {
+
+			record.put(header[i], trim ? columns[i].trim() : columns[i]);
+		}
+
+		return record;
+	}
+
+	// ----- nested classes -----
+	public static class CsvRecordException extends RuntimeException {
+
+		private long lineNumber = 0L;
+
+		public CsvRecordException(final long lineNumber, final IOException cause) {
+
+			super("Unable to parse CSV record in line " + lineNumber + ": " + cause.getMessage(), cause);
+
+			this.lineNumber = lineNumber;
+		}
+
+		public long getLineNumber() {
+			return lineNumber;
+		}
+	}
+}
@@ -0,0 +1,719 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.logging;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
+import org.structr.core.app.App;
+import org.structr.core.app.Query;
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.Tx;
+import org.structr.core.property.PropertyMap;
+import org.structr.rest.logging.entity.LogEvent;
+import org.structr.rest.logging.entity.LogRollup;
+
+/**
+ * Time-bucketed counts of {@link LogEvent}s, stored as {@link LogRollup}
+ * nodes per minute, hour and day.
+ *
+ * Counts are accumulated in memory and written by a single flusher thread,
+ * so concurrent log writers never contend for the same rollup node. The
+ * remaining counts are written when Structr shuts down. While rollups are
+ * maintained, a marker with the resolution {@link #OPEN} exists, so that
+ * counts that were lost in a crash can be detected on the next start.
+ *
+ * Events that were written before the rollups existed are not counted
+ * until the rollups are rebuilt, so the rollups must only be used when
+ * they are complete, see {@link #isComplete()}.
+ */
+public class LogRollups {
+
+	private static final Logger logger       = LoggerFactory.getLogger(LogRollups.class.getName());
+	private static final LogRollups instance = new LogRollups();
+	private static final int BATCH_SIZE      = 10000;
+
+	public static final String WILDCARD      = "*";
+	public static final String NULL          = "null";
+	public static final String COMPLETE      = "Complete";
+	public static final String OPEN          = "Open";
+
+	public enum Resolution {
+
+		Day(TimeUnit.DAYS.toMillis(1)), Hour(TimeUnit.HOURS.toMillis(1)), Minute(TimeUnit.MINUTES.toMillis(1));
+
+		private long millis = 0L;
+
+		Resolution(final long millis) {
+			this.millis = millis;
+		}
+
+		public long getMillis() {
+			return millis;
+		}
+
+		public long bucket(final long timestamp) {
+			return timestamp - Math.floorMod(timestamp, millis);
+		}
+	}
+
+	private final Map<Key, Delta> pending            = new ConcurrentHashMap<>();
+	private volatile ScheduledExecutorService flusher = null;
+	private volatile boolean rebuilding              = false;
+	private volatile boolean complete                = false;
+	private boolean opened                           = false;
+
+	private LogRollups() {}
+
+	public static LogRollups getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Counts a single (committed) log event.
+	 *
+	 * @param action
+	 * @param subject
+	 * @param object
+	 * @param timestamp
+	 * @param count 1 for a new event, -1 for a deleted event
+	 */
+	public void add(final String action, final String subject, final String object, final long timestamp, final int count) {
+
+		add(pending, action, subject, object, timestamp, count);
+
+		if (flusher == null) {
+			getFlusher();
+		}
+	}
+
+	/**
+	 * Hands the counts of a committed batch over to the flusher.
+	 *
+	 * @param batch
+	 */
+	public void publish(final Batch batch) {
+
+		for (final Entry<Key, Delta> entry : batch.deltas.entrySet()) {
+			merge(pending, entry.getKey(), entry.getValue());
+		}
+
+		batch.deltas.clear();
+
+		if (flusher == null) {
+			getFlusher();
+		}
+	}
+
+	/**
+	 * Waits until all counts that were added before this call have been
+	 * written.
+	 */
+	public void awaitFlush() {
+
+		try {
+
+			getFlusher().submit(this::flushPending).get(30, TimeUnit.SECONDS);
+
+		} catch (Throwable t) {
+			logger.warn("Unable to flush log rollups: {}", t.getMessage());
+		}
+	}
+
+	/**
+	 * Writes the remaining counts, removes the {@link #OPEN} marker and
+	 * stops the flusher. Called when Structr shuts down.
+	 */
+	public void shutdown() {
+
+		final ScheduledExecutorService executor;
+
+		synchronized (this) {
+
+			executor = flusher;
+			flusher  = null;
+		}
+
+		if (executor == null) {
+			return;
+		}
+
+		try {
+
+			executor.submit(this::close).get(30, TimeUnit.SECONDS);
+
+		} catch (Throwable t) {
+
+			logger.warn("Unable to flush log rollups on shutdown: {}", t.getMessage());
+		}
+
+		executor.shutdown();
+
+		try {
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+
+		} catch (InterruptedException iex) {
+			logger.warn("Interrupted while waiting for log rollups to be written.");
+		}
+	}
+
+	/**
+	 * Returns whether the rollups contain all existing log events. This
+	 * is the case after a rebuild, or if the rollups have been maintained
+	 * since the log was empty. The state is persisted as a rollup with the
+	 * resolution {@link #COMPLETE}, so it survives restarts.
+	 *
+	 * @return whether the rollups can be used instead of the log events
+	 */
+	public boolean isComplete() {
+
+		if (complete) {
+			return true;
+		}
+
+		if (rebuilding) {
+			return false;
+		}
+
+		try {
+
+			return getFlusher().submit(this::checkComplete).get(30, TimeUnit.SECONDS);
+
+		} catch (Throwable t) {
+			logger.warn("Unable to check log rollups: {}", t.getMessage());
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the rollups of the given resolution, optionally filtered by
+	 * action, subject, object and bucket range. If neither subject nor
+	 * object are given, the per-action totals are returned.
+	 *
+	 * @param resolution
+	 * @param action the action or null for all actions
+	 * @param subject the subject or null
+	 * @param object the object or null
+	 * @param start first bucket (inclusive) or null
+	 * @param end last bucket (exclusive) or null
+	 * @return rollups
+	 * @throws FrameworkException
+	 */
+	public List<LogRollup> query(final Resolution resolution, final String action, final String subject, final String object, final Long start, final Long end) throws FrameworkException {
+
+		awaitFlush();
+
+		final Query<LogRollup> query = StructrApp.getInstance().nodeQuery(LogRollup.class).and(LogRollup.resolutionProperty, resolution.name());
+
+		if (action != null) {
+			query.and(LogRollup.actionProperty, action);
+		}
+
+		if (subject == null && object == null) {
+
+			query.and(LogRollup.subjectProperty, WILDCARD);
+			query.and(LogRollup.objectProperty,  WILDCARD);
+
+		} else {
+
+			if (subject != null) {
+				query.and(LogRollup.subjectProperty, subject);
+			}
+
+			if (object != null) {
+				query.and(LogRollup.objectProperty, object);
+			}
+		}
+
+		if (start != null && end != null) {
+			query.andRange(LogRollup.bucketProperty, start, end - 1);
+		}
+
+		return query.getAsList();
+	}
+
+	/**
+	 * Deletes all rollups and recreates them from the existing log events.
+	 * Events that are written while the rebuild runs may be counted twice.
+	 *
+	 * @return the number of events counted
+	 */
+	public Future<Long> rebuild() {
+
+		rebuilding = true;
+		complete   = false;
+
+		return getFlusher().submit(() -> {
+
+			try {
+
+				return rebuildRollups();
+
+			} finally {
+
+				rebuilding = false;
+			}
+		});
+	}
+
+	// ----- private methods -----
+	private long rebuildRollups() throws FrameworkException {
+
+		final App app = StructrApp.getInstance();
+		long count    = 0L;
+
+		complete = false;
+
+		pending.clear();
+
+		open();
+
+		// delete existing rollups
+		while (true) {
+
+			try (final Tx tx = app.tx(false, false, false)) {
+
+				final List<LogRollup> rollups = app.nodeQuery(LogRollup.class).pageSize(BATCH_SIZE).page(1).getAsList();
+				int deleted                   = 0;
+
+				for (final LogRollup rollup : rollups) {
+
+					// keep the marker of this instance
+					if (!OPEN.equals(rollup.getProperty(LogRollup.resolutionProperty))) {
+
+						app.delete(rollup);
+						deleted++;
+					}
+				}
+
+				tx.success();
+
+				if (deleted == 0) {
+					break;
+				}
+			}
+		}
+
+		// count events, continuing after the timestamp of the previous batch
+		// instead of skipping the already counted events again
+		final Set<String> countedAtLast = new HashSet<>();
+		int pageSize                    = BATCH_SIZE;
+		boolean hasLast                 = false;
+		long last                       = 0L;
+
+		while (true) {
+
+			final Batch batch = new Batch();
+			int counted       = 0;
+			final int size;
+
+			try (final Tx tx = app.tx(false, false, false)) {
+
+				final Query<LogEvent> query = app.nodeQuery(LogEvent.class).sort(LogEvent.timestampProperty).pageSize(pageSize).page(1);
+
+				if (hasLast) {
+					query.andRange(LogEvent.timestampProperty, new Date(last), new Date(Long.MAX_VALUE));
+				}
+
+				final List<LogEvent> events = query.getAsList();
+				for (final LogEvent event : events) {
+
+					final long timestamp = event.getTimestamp();
+					final String uuid    = event.getUuid();
+
+					if (hasLast && timestamp == last) {
+
+						// events with the same timestamp as the end of the
+						// previous batch are returned again
+						if (!countedAtLast.add(uuid)) {
+							continue;
+						}
+
+					} else {
+
+						countedAtLast.clear();
+						countedAtLast.add(uuid);
+
+						hasLast = true;
+						last    = timestamp;
+					}
+
+					batch.add(event.getAction(), event.getSubjectId(), event.getObjectId(), timestamp, 1);
+					counted++;
+				}
+
+				size = events.size();
+				tx.success();
+			}
+
+			publish(batch);
+			flushPending();
+
+			count += counted;
+
+			logger.info("Counted {} log events", count);
+
+			if (size < pageSize) {
+				break;
+			}
+
+			// a full batch of already counted events with the same timestamp
+			pageSize = counted > 0 ? BATCH_SIZE : pageSize * 2;
+		}
+
+		// all existing events are counted now
+		try (final Tx tx = app.tx(false, false, false)) {
+
+			createMarker(app, COMPLETE);
+			tx.success();
+		}
+
+		complete = true;
+
+		return count;
+	}
+
+	private boolean checkComplete() throws FrameworkException {
+
+		if (complete || rebuilding) {
+			return complete;
+		}
+
+		open();
+
+		final App app = StructrApp.getInstance();
+
+		try (final Tx tx = app.tx(false, false, false)) {
+
+			if (app.nodeQuery(LogRollup.class).and(LogRollup.resolutionProperty, COMPLETE).getFirst() != null) {
+
+				complete = true;
+
+			} else if (app.nodeQuery(LogEvent.class).getFirst() == null) {
+
+				// all events of an empty log will be counted
+				createMarker(app, COMPLETE);
+				complete = true;
+			}
+
+			tx.success();
+		}
+
+		return complete;
+	}
+
+	/**
+	 * Creates the {@link #OPEN} marker of this instance before the first
+	 * counts are written. If a marker of a previous run still exists, that
+	 * run did not shut down cleanly and may have lost counts, so the rollups
+	 * are not complete anymore until they are rebuilt.
+	 *
+	 * Must be called on the flusher thread.
+	 */
+	private void open() {
+
+		if (opened) {
+			return;
+		}
+
+		final App app = StructrApp.getInstance();
+
+		try (final Tx tx = app.tx(false, false, false)) {
+
+			final List<LogRollup> markers = app.nodeQuery(LogRollup.class).and(LogRollup.resolutionProperty, OPEN).getAsList();
+			if (!markers.isEmpty()) {
+
+				for (final LogRollup marker : markers) {
+					app.delete(marker);
+				}
+
+				for (final LogRollup marker : app.nodeQuery(LogRollup.class).and(LogRollup.resolutionProperty, COMPLETE).getAsList()) {
+
+					logger.warn("Log rollups were not written completely before the last shutdown, they will not be used until they are rebuilt.");
+					app.delete(marker);
+				}
+
+				complete = false;
+			}
+
+			createMarker(app, OPEN);
+
+			tx.success();
+
+			opened = true;
+
+		} catch (Throwable t) {
+
+			logger.warn("Unable to open log rollups: {}", t.getMessage());
+		}
+	}
+
+	/**
+	 * Writes the remaining counts and removes the {@link #OPEN} marker.
+	 * Must be called on the flusher thread.
+	 */
+	private void close() {
+
+		flushPending();
+
+		if (!opened || !pending.isEmpty()) {
+			return;
+		}
+
+		final App app = StructrApp.getInstance();
+
+		try (final Tx tx = app.tx(false, false, false)) {
+
+			for (final LogRollup marker : app.nodeQuery(LogRollup.class).and(LogRollup.resolutionProperty, OPEN).getAsList()) {
+				app.delete(marker);
+			}
+
+			tx.success();
+
+			opened   = false;
+			complete = false;
+
+		} catch (Throwable t) {
+
+			logger.warn("Unable to close log rollups: {}", t.getMessage());
+		}
+	}
+
+	private void createMarker(final App app, final String resolution) throws FrameworkException {
+
+		final PropertyMap properties = new PropertyMap();
+
+		properties.put(LogRollup.resolutionProperty, resolution);
+		properties.put(LogRollup.bucketProperty,     System.currentTimeMillis());
+
+		app.create(LogRollup.class, properties);
+	}
+
+	private synchronized ScheduledExecutorService getFlusher() {
+
+		if (flusher == null) {
+
+			final int interval = Math.max(1, Settings.LogRollupInterval.getValue());
+
+			flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+
+				final Thread thread = new Thread(r, "LogRollupFlusher");
+				thread.setDaemon(true);
+
+				return thread;
+			});
+
+			// mark the rollups as open before the first counts are written
+			flusher.submit(this::open);
+			flusher.scheduleWithFixedDelay(this::flushPending, interval, interval, TimeUnit.SECONDS);
+
+			// write the remaining counts before the database is shut down
+			Services.getInstance().registerShutdownCallback(this::shutdown);
+		}
+
+		return flusher;
+	}
+
+	private void flushPending() {
+
+		if (pending.isEmpty()) {
+			return;
+		}
+
+		open();
+
+		final Map<Key, Delta> deltas = new LinkedHashMap<>();
+
+		for (final Key key : pending.keySet()) {
+
+			final Delta delta = pending.remove(key);
+			if (delta != null) {
+
+				deltas.put(key, delta);
+			}
+		}
+
+		final App app = StructrApp.getInstance();
+
+		try (final Tx tx = app.tx(false, false, false)) {
+
+			for (final Entry<Key, Delta> entry : deltas.entrySet()) {
+
+				final Key key          = entry.getKey();
+				final Delta delta      = entry.getValue();
+				final LogRollup rollup = app.nodeQuery(LogRollup.class)
+					.and(LogRollup.resolutionProperty, key.resolution.name())
+					.and(LogRollup.bucketProperty,     key.bucket)
+					.and(LogRollup.actionProperty,     key.action)
+					.and(LogRollup.subjectProperty,    key.subject)
+					.and(LogRollup.objectProperty,     key.object)
+					.getFirst();
+
+				if (rollup != null) {
+
+					final PropertyMap properties = new PropertyMap();
+
+					properties.put(LogRollup.countProperty,      rollup.getCount() + delta.count);
+					properties.put(LogRollup.firstEntryProperty, Math.min(rollup.getFirstEntry(), delta.first));
+					properties.put(LogRollup.lastEntryProperty,  Math.max(rollup.getLastEntry(), delta.last));
+
+					rollup.setProperties(rollup.getSecurityContext(), properties);
+
+				} else {
+
+					final PropertyMap properties = new PropertyMap();
+
+					properties.put(LogRollup.resolutionProperty,          key.resolution.name());
+					properties.put(LogRollup.bucketProperty,              key.bucket);
+					properties.put(LogRollup.actionProperty,              key.action);
+					properties.put(LogRollup.subjectProperty,             key.subject);
+					properties.put(LogRollup.objectProperty,              key.object);
+					properties.put(LogRollup.countProperty,               delta.count);
+					properties.put(LogRollup.firstEntryProperty,          delta.first);
+					properties.put(LogRollup.lastEntryProperty,           delta.last);
+					properties.put(LogRollup.visibleToPublicUsers,        true);
+					properties.put(LogRollup.visibleToAuthenticatedUsers, true);
+
+					app.create(LogRollup.class, properties);
+				}
+			}
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			logger.warn("Unable to write log rollups, will retry: {}", t.getMessage());
+
+			// keep the counts for the next attempt
+			for (final Entry<Key, Delta> entry : deltas.entrySet()) {
+				merge(pending, entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	private static void add(final Map<Key, Delta> deltas, final String action, final String subject, final String object, final long timestamp, final int count) {
+
+		final String actionValue  = action != null ? action : NULL;
+		final String subjectValue = subject != null ? subject : NULL;
+		final String objectValue  = object != null ? object : NULL;
+
+		for (final Resolution resolution : Resolution.values()) {
+
+			final long bucket = resolution.bucket(timestamp);
+
+			merge(deltas, new Key(resolution, bucket, actionValue, subjectValue, objectValue), new Delta(count, timestamp));
+			merge(deltas, new Key(resolution, bucket, actionValue, WILDCARD, WILDCARD),         new Delta(count, timestamp));
+		}
+	}
+
+	private static void merge(final Map<Key, Delta> deltas, final Key key, final Delta delta) {
+
+		deltas.compute(key, (k, existing) -> {
+
+			if (existing == null) {
+				return delta;
+			}
+
+			existing.count += delta.count;
+			existing.first  = Math.min(existing.first, delta.first);
+			existing.last   = Math.max(existing.last, delta.last);
+
+			return existing;
+		});
+	}
+
+	// ----- nested classes -----
+	/**
+	 * Counts of a transaction that has not been committed yet.
+	 */
+	public static class Batch {
+
+		private final Map<Key, Delta> deltas = new LinkedHashMap<>();
+
+		public void add(final String action, final String subject, final String object, final long timestamp, final int count) {
+			LogRollups.add(deltas, action, subject, object, timestamp, count);
+		}
+	}
+
+	private static class Key {
+
+		private Resolution resolution = null;
+		private String subject        = null;
+		private String action         = null;
+		private String object         = null;
+		private long bucket           = 0L;
+
+		public Key(final Resolution resolution, final long bucket, final String action, final String subject, final String object) {
+
+			this.resolution = resolution;
+			this.bucket     = bucket;
+			this.action     = action;
+			this.subject    = subject;
+			this.object     = object;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(resolution, bucket, action, subject, object);
+		}
+
+		@Override
+		public boolean equals(final Object other) {
+
+			if (other instanceof Key) {
+
+				final Key key = (Key)other;
+
+				return resolution == key.resolution && bucket == key.bucket && action.equals(key.action) && subject.equals(key.subject) && object.equals(key.object);
+			}
+
+			return false;
+		}
+	}
+
+	private static class Delta {
+
+		private long count = 0L;
+		private long first = 0L;
+		private long last  = 0L;
+
+		public Delta(final long count, final long timestamp) {
+
+			this.count = count;
+			this.first = timestamp;
+			this.last  = timestamp;
+		}
+	}
+}
@@ -20,11 +20,14 @@ package org.structr.rest.logging.entity;
 
 import java.util.Date;
 import org.structr.common.PropertyView;
+import org.structr.common.SecurityContext;
 import org.structr.common.View;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.property.ISO8601DateProperty;
 import org.structr.core.property.Property;
+import org.structr.core.property.PropertyMap;
 import org.structr.core.property.StringProperty;
+import org.structr.rest.logging.LogRollups;
 
 /**
  *
@@ -42,6 +45,26 @@ public class LogEvent extends AbstractNode {
 		actionProperty, messageProperty, timestampProperty, subjectProperty, objectProperty
 	);
 
+	@Override
+	public void afterCreation(final SecurityContext securityContext) {
+
+		super.afterCreation(securityContext);
+
+		LogRollups.getInstance().add(getAction(), getSubjectId(), getObjectId(), getTimestamp(), 1);
+	}
+
+	@Override
+	public void afterDeletion(final SecurityContext securityContext, final PropertyMap properties) {
+
+		super.afterDeletion(securityContext, properties);
+
+		final Date timestamp = properties.get(LogEvent.timestampProperty);
+		if (timestamp != null) {
+
+			LogRollups.getInstance().add(properties.get(LogEvent.actionProperty), properties.get(LogEvent.subjectProperty), properties.get(LogEvent.objectProperty), timestamp.getTime(), -1);
+		}
+	}
+
 	public long getTimestamp() {
 
 		final Date date = getProperty(LogEvent.timestampProperty);
@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.logging.entity;
+
+import org.structr.common.PropertyView;
+import org.structr.common.View;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.property.LongProperty;
+import org.structr.core.property.Property;
+import org.structr.core.property.StringProperty;
+
+/**
+ * Number of {@link LogEvent}s with a given action, subject and object in
+ * a single time bucket of a given resolution. Rollups with subject and
+ * object set to {@link org.structr.rest.logging.LogRollups#WILDCARD}
+ * contain the totals of an action.
+ *
+ *
+ */
+public class LogRollup extends AbstractNode {
+
+	public static final Property<String> resolutionProperty = new StringProperty("resolution").indexed();
+	public static final Property<Long>   bucketProperty     = new LongProperty("bucket").indexed();
+	public static final Property<String> actionProperty     = new StringProperty("action").indexed();
+	public static final Property<String> subjectProperty    = new StringProperty("subject").indexed();
+	public static final Property<String> objectProperty     = new StringProperty("object").indexed();
+	public static final Property<Long>   countProperty      = new LongProperty("count");
+	public static final Property<Long>   firstEntryProperty = new LongProperty("firstEntry");
+	public static final Property<Long>   lastEntryProperty  = new LongProperty("lastEntry");
+
+	public static final View defaultView = new View(LogRollup.class, PropertyView.Public,
+		resolutionProperty, bucketProperty, actionProperty, subjectProperty, objectProperty, countProperty, firstEntryProperty, lastEntryProperty
+	);
+
+	public long getBucket() {
+		return getLong(bucketProperty);
+	}
+
+	public String getAction() {
+		return getProperty(LogRollup.actionProperty);
+	}
+
+	public long getCount() {
+		return getLong(countProperty);
+	}
+
+	public long getFirstEntry() {
+		return getLong(firstEntryProperty);
+	}
+
+	public long getLastEntry() {
+		return getLong(lastEntryProperty);
+	}
+
+	// ----- private methods -----
+	private long getLong(final Property<Long> key) {
+
+		final Long value = getProperty(key);
+		if (value != null) {
+
+			return value;
+		}
+
+		return 0L;
+	}
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.maintenance;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.graph.MaintenanceCommand;
+import org.structr.core.graph.NodeServiceCommand;
+import org.structr.rest.common.CsvImport;
+
+/**
+ * Returns the progress and throughput of running and recently finished
+ * streaming CSV imports, or of a single import if the "id" attribute is
+ * set.
+ */
+public class CsvImportStatusCommand extends NodeServiceCommand implements MaintenanceCommand {
+
+	private Object result = null;
+
+	@Override
+	public void execute(final Map<String, Object> attributes) throws FrameworkException {
+
+		final Object id = attributes.get("id");
+		if (id != null) {
+
+			final CsvImport csvImport = CsvImport.getImport(id.toString());
+			if (csvImport == null) {
+
+				throw new FrameworkException(404, "No CSV import with id " + id);
+			}
+
+			result = csvImport.getStatus();
+
+		} else {
+
+			final List<Map<String, Object>> imports = new LinkedList<>();
+
+			for (final CsvImport csvImport : CsvImport.getImports()) {
+				imports.add(csvImport.getStatus());
+			}
+
+			result = imports;
+		}
+	}
+
+	@Override
+	public boolean requiresEnclosingTransaction() {
+		return false;
+	}
+
+	@Override
+	public boolean requiresFlushingOfCaches() {
+		return false;
+	}
+
+	@Override
+	public Object getCommandResult() {
+		return result;
+	}
+}
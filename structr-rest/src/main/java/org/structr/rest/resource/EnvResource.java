@@ -22,17 +22,23 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import javax.servlet.http.HttpServletRequest;
+import org.structr.common.AccessPathCache;
 import org.structr.common.SecurityContext;
 import org.structr.common.VersionHelper;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObjectMap;
 import org.structr.core.Result;
+import org.structr.core.app.StructrApp;
+import org.structr.core.auth.SessionRegistry;
+import org.structr.core.function.Functions;
 import org.structr.core.property.GenericProperty;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.property.StringProperty;
+import org.structr.core.script.Scripting;
 import org.structr.rest.RestMethodResult;
 import org.structr.rest.exception.IllegalMethodException;
 import org.structr.rest.exception.IllegalPathException;
+import org.structr.schema.SchemaService;
 
 /**
  *
@@ -68,6 +74,14 @@ public class EnvResource extends Resource {
 		info.setProperty(new StringProperty("classPath"),     VersionHelper.getClassPath());
 		info.setProperty(new StringProperty("instanceName"),  VersionHelper.getInstanceName());
 		info.setProperty(new StringProperty("instanceStage"), VersionHelper.getInstanceStage());
+		info.setProperty(new GenericProperty("caches"),       StructrApp.getInstance().getDatabaseService().getCacheStatistics());
+		info.setProperty(new GenericProperty("uuids"),        StructrApp.getUuidIndexStatistics());
+		info.setProperty(new GenericProperty("sessions"),     SessionRegistry.getInstance().getStatistics());
+		info.setProperty(new GenericProperty("schema"),       SchemaService.getStatistics());
+		info.setProperty(new GenericProperty("permissions"),  AccessPathCache.getStatistics());
+		info.setProperty(new GenericProperty("scripts"),      Scripting.getCacheStatistics());
+		info.setProperty(new GenericProperty("expressions"),  Functions.getStatistics());
+		info.setProperty(new GenericProperty("fulltext"),     StructrApp.getInstance().getFulltextIndexer().getStatistics());
 
 		resultList.add(info);
 
@@ -58,6 +58,7 @@ import org.structr.core.GraphObject;
 import org.structr.core.GraphObjectMap;
 import org.structr.core.Result;
 import org.structr.core.app.App;
+import org.structr.core.app.Query;
 import org.structr.core.app.StructrApp;
 import org.structr.core.graph.Tx;
 import org.structr.core.property.GenericProperty;
@@ -69,7 +70,9 @@ import org.structr.core.property.PropertyMap;
 import org.structr.core.property.StringProperty;
 import org.structr.rest.RestMethodResult;
 import org.structr.rest.exception.IllegalMethodException;
+import org.structr.rest.logging.LogRollups;
 import org.structr.rest.logging.entity.LogEvent;
+import org.structr.rest.logging.entity.LogRollup;
 
 /**
  *
@@ -149,53 +152,76 @@ public class LogResource extends Resource {
 			final String objectId            = request.getParameter(objectProperty.jsonName());
 			final GraphObjectMap overviewMap = new GraphObjectMap();
 			final LogState logState          = new LogState(request);
+			final App app                    = StructrApp.getInstance(securityContext);
+			Query<LogEvent> query            = null;
+			boolean correlate                = false;
 
 			if (StringUtils.isNotEmpty(subjectId) && StringUtils.isNotEmpty(objectId)) {
 
-				processData(logState, StructrApp.getInstance(securityContext)
-					.nodeQuery(LogEvent.class)
+				query = app.nodeQuery(LogEvent.class)
 					.and(LogEvent.subjectProperty, subjectId)
 					.and(LogEvent.objectProperty, objectId)
 					.and(LogEvent.actionProperty, logState.logAction)
-					.andRange(LogEvent.timestampProperty, new Date(logState.beginTimestamp()), new Date(logState.endTimestamp()))
-					.getAsList()
-				);
+					.andRange(LogEvent.timestampProperty, new Date(logState.beginTimestamp()), new Date(logState.endTimestamp()));
 
 			} else if (StringUtils.isNotEmpty(subjectId) && StringUtils.isEmpty(objectId)) {
 
-				processData(logState, StructrApp.getInstance(securityContext)
-					.nodeQuery(LogEvent.class)
+				query = app.nodeQuery(LogEvent.class)
 					.and(LogEvent.subjectProperty, subjectId)
 					.and(LogEvent.actionProperty, logState.logAction)
-					.andRange(LogEvent.timestampProperty, new Date(logState.beginTimestamp()), new Date(logState.endTimestamp()))
-					.getAsList()
-				);
+					.andRange(LogEvent.timestampProperty, new Date(logState.beginTimestamp()), new Date(logState.endTimestamp()));
 
 			} else if (StringUtils.isEmpty(subjectId) && StringUtils.isNotEmpty(objectId)) {
 
 				logState.inverse(true);
 
-				processData(logState, StructrApp.getInstance(securityContext)
-					.nodeQuery(LogEvent.class)
+				query = app.nodeQuery(LogEvent.class)
 					.and(LogEvent.objectProperty, objectId)
 					.and(LogEvent.actionProperty, logState.logAction)
-					.andRange(LogEvent.timestampProperty, new Date(logState.beginTimestamp()), new Date(logState.endTimestamp()))
-					.getAsList()
-				);
+					.andRange(LogEvent.timestampProperty, new Date(logState.beginTimestamp()), new Date(logState.endTimestamp()));
 
 			} else if (logState.doActionQuery()) {
 
-				processData(logState);
+				query = app.nodeQuery(LogEvent.class)
+					.and(LogEvent.actionProperty, logState.logAction)
+					.andRange(LogEvent.timestampProperty, new Date(logState.beginTimestamp()), new Date(logState.endTimestamp()));
+
+				correlate = logState.doCorrelate();
 
 			} else {
 
 				// create overview of existing logs
 				logState.overview(true);
 
-				processData(logState, StructrApp.getInstance(securityContext)
-					.nodeQuery(LogEvent.class)
-					.getAsList()
-				);
+				if (!overviewFromRollups(logState)) {
+
+					processData(logState, app.nodeQuery(LogEvent.class).getAsList());
+				}
+			}
+
+			if (query != null) {
+
+				if (!correlate && logState.canUseRollups()) {
+
+					// plain aggregations are answered from the rollups
+					final Result result = aggregateFromRollups(logState, subjectId, objectId);
+					if (result != null) {
+
+						return result;
+					}
+				}
+
+				if (!correlate && logState.canPage()) {
+
+					// plain listings are sorted and paged by the database
+					return page(logState, query, pageSize, page);
+				}
+
+				if (correlate) {
+					correlate(logState);
+				}
+
+				processData(logState, query.getAsList());
 			}
 
 			if (logState.overview()) {
@@ -252,6 +278,14 @@ public class LogResource extends Resource {
 				return new RestMethodResult(200);
 			}
 
+			// recreate rollups from existing log events (runs in the background)
+			if ("true".equals(request.getParameter("rebuildRollups"))) {
+
+				LogRollups.getInstance().rebuild();
+
+				return new RestMethodResult(202);
+			}
+
 			final String subjectId = (String) propertySet.get(subjectProperty.jsonName());
 			final String objectId  = (String) propertySet.get(objectProperty.jsonName());
 			final String action    = (String) propertySet.get(actionProperty.jsonName());
@@ -354,7 +388,7 @@ public class LogResource extends Resource {
 
 				} else {
 
-					context.update(storeLogEntry(p));
+					context.update(storeLogEntry(context, p));
 
 					// update object count and commit
 					context.commit(true);
@@ -369,46 +403,134 @@ public class LogResource extends Resource {
 		}
 	}
 
-	private void processData(final LogState state) throws FrameworkException {
-
-		if (state.doCorrelate()) {
-
-			// get the basic correlation set (pds_click in the test case)
-			final List<LogEvent> correlationResult = StructrApp.getInstance(securityContext)
-				.nodeQuery(LogEvent.class)
-				.and(LogEvent.actionProperty, state.correlationAction)
-				.getAsList();
+	private void correlate(final LogState state) throws FrameworkException {
 
-			for (final LogEvent entry : correlationResult) {
+		// get the basic correlation set (pds_click in the test case)
+		final List<LogEvent> correlationResult = StructrApp.getInstance(securityContext)
+			.nodeQuery(LogEvent.class)
+			.and(LogEvent.actionProperty, state.correlationAction)
+			.getAsList();
 
-				final String pathSubjectId = state.inverse() ? entry.getObjectId() : entry.getSubjectId();
-				final String pathObjectId  = state.inverse() ? entry.getSubjectId() : entry.getObjectId();
-				final String entryMessage  = entry.getMessage();
+		for (final LogEvent entry : correlationResult) {
 
-				if (state.correlationPattern != null) {
+			final String pathSubjectId = state.inverse() ? entry.getObjectId() : entry.getSubjectId();
+			final String pathObjectId  = state.inverse() ? entry.getSubjectId() : entry.getObjectId();
+			final String entryMessage  = entry.getMessage();
 
-					final Matcher matcher = state.correlationPattern.matcher(entryMessage);
-					if (matcher.matches()) {
+			if (state.correlationPattern != null) {
 
-						state.addCorrelationEntry(matcher.group(1), entry);
+				final Matcher matcher = state.correlationPattern.matcher(entryMessage);
+				if (matcher.matches()) {
 
-					}
+					state.addCorrelationEntry(matcher.group(1), entry);
 
-				} else {
-					// fallback: subjectId and objectId
-					state.addCorrelationEntry(key(pathSubjectId, pathObjectId), entry);
 				}
+
+			} else {
+				// fallback: subjectId and objectId
+				state.addCorrelationEntry(key(pathSubjectId, pathObjectId), entry);
 			}
 		}
 
 		logger.debug("No. of correlations: {}", state.getCorrelations().entrySet().size());
+	}
 
-		final List<LogEvent> result = StructrApp.getInstance(securityContext).nodeQuery(LogEvent.class)
-			.and(LogEvent.actionProperty, state.logAction)
-			.andRange(LogEvent.timestampProperty, new Date(state.beginTimestamp()), new Date(state.endTimestamp()))
-			.getAsList();
+	private Result page(final LogState state, final Query<LogEvent> query, final int pageSize, final int page) throws FrameworkException {
+
+		final Result<LogEvent> result = query.sort(LogEvent.timestampProperty).pageSize(pageSize).page(page).getResult();
+
+		for (final LogEvent event : result.getResults()) {
+
+			state.addEntry(toEntry(state, event));
+		}
+
+		return new Result(wrap(state.entries()), result.getRawResultCount(), true, false);
+	}
+
+	/**
+	 * Creates the overview from the rollups, or returns false if the
+	 * rollups don't contain all existing log events.
+	 */
+	private boolean overviewFromRollups(final LogState state) throws FrameworkException {
+
+		if (!LogRollups.getInstance().isComplete()) {
+			return false;
+		}
+
+		final List<LogRollup> rollups = LogRollups.getInstance().query(LogRollups.Resolution.Day, null, null, null, null, null);
+		if (rollups.isEmpty()) {
+
+			return false;
+		}
+
+		for (final LogRollup rollup : rollups) {
+
+			final long count = rollup.getCount();
+			if (count > 0) {
+
+				state.countAction(rollup.getAction(), (int)count);
+
+				state.beginTimestamp(Math.min(state.beginTimestamp(), rollup.getFirstEntry()));
+				state.endTimestamp(Math.max(state.endTimestamp(), rollup.getLastEntry()));
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Answers an aggregation request without patterns from the rollups, or
+	 * returns null if the rollups don't contain all existing log events or
+	 * no rollup resolution fits the requested intervals.
+	 */
+	private Result aggregateFromRollups(final LogState state, final String subjectId, final String objectId) throws FrameworkException {
+
+		if (!LogRollups.getInstance().isComplete()) {
+			return null;
+		}
+
+		final String dateFormat = state.aggregate();
+		final long interval     = findInterval(dateFormat);
+		final Range range       = state.range;
+
+		for (final LogRollups.Resolution resolution : LogRollups.Resolution.values()) {
+
+			final long millis = resolution.getMillis();
+
+			// buckets must not span interval or range boundaries
+			if (interval % millis != 0 || (range != null && (range.start % millis != 0 || range.end % millis != 0))) {
+				continue;
+			}
+
+			final String subject                              = StringUtils.isNotEmpty(subjectId) ? subjectId : null;
+			final String object                               = StringUtils.isNotEmpty(objectId) ? objectId : null;
+			final List<LogRollup> rollups                     = LogRollups.getInstance().query(resolution, state.logAction, subject, object, range != null ? range.start : null, range != null ? range.end : null);
+			final TreeMap<Long, Map<String, Object>> countMap = new TreeMap<>();
+			long begin                                        = range != null ? range.start : Long.MAX_VALUE;
+			long end                                          = range != null ? range.end : 0L;
 
-		processData(state, result);
+			for (final LogRollup rollup : rollups) {
+
+				final Map<String, Object> obj = countMap.computeIfAbsent(rollup.getBucket(), k -> new LinkedHashMap<>());
+				final Integer count           = (Integer)obj.get(totalProperty.jsonName());
+
+				obj.put(totalProperty.jsonName(), (count != null ? count : 0) + (int)rollup.getCount());
+
+				if (range == null) {
+
+					begin = Math.min(begin, rollup.getFirstEntry());
+					end   = Math.max(end, rollup.getLastEntry());
+				}
+			}
+
+			final long start = alignDateOnFormat(dateFormat, begin);
+			if (start % millis == 0) {
+
+				return sumIntervals(start, end, interval, countMap);
+			}
+		}
+
+		return null;
 	}
 
 	private void processData(final LogState state, final Iterable<LogEvent> result) throws FrameworkException {
@@ -453,21 +575,26 @@ public class LogResource extends Resource {
 				// passes filter? action present or matching?
 				if (state.passesFilter(entryMessage) && state.correlates(pathSubjectId, pathObjectId, entryMessage)) {
 
-					final Map<String, Object> map = new HashMap<>();
-
-					map.put(subjectProperty.jsonName(), pathSubjectId);
-					map.put(objectProperty.jsonName(), pathObjectId);
-					map.put(actionProperty.jsonName(), entryAction);
-					map.put(timestampProperty.jsonName(), timestamp);
-					map.put(messageProperty.jsonName(), entryMessage);
-
-					state.addEntry(map);
+					state.addEntry(toEntry(state, event));
 				}
 			}
 		}
 	}
 
-	private int storeLogEntry(final Path path) throws IOException, FrameworkException {
+	private Map<String, Object> toEntry(final LogState state, final LogEvent event) {
+
+		final Map<String, Object> map = new HashMap<>();
+
+		map.put(subjectProperty.jsonName(),   state.inverse() ? event.getObjectId() : event.getSubjectId());
+		map.put(objectProperty.jsonName(),    state.inverse() ? event.getSubjectId() : event.getObjectId());
+		map.put(actionProperty.jsonName(),    event.getAction());
+		map.put(timestampProperty.jsonName(), event.getTimestamp());
+		map.put(messageProperty.jsonName(),   event.getMessage());
+
+		return map;
+	}
+
+	private int storeLogEntry(final Context context, final Path path) throws IOException, FrameworkException {
 
 		final App app          = StructrApp.getInstance(securityContext);
 		final String fileName  = path.getFileName().toString();
@@ -502,6 +629,9 @@ public class LogResource extends Resource {
 
 				app.create(LogEvent.class, properties);
 
+				// import transactions run without callbacks
+				context.rollups.add(action, subjectId, objectId, timestamp, 1);
+
 				count++;
 			}
 
@@ -534,50 +664,11 @@ public class LogResource extends Resource {
 		// sort entries before aggregation
 		state.sortEntries();
 
-		final long startTimestamp                         = state.beginTimestamp();
-		final long endTimestamp                           = state.endTimestamp();
-		final GraphObjectMap result                       = new GraphObjectMap();
 		final long interval                               = findInterval(state.aggregate());
-		final long start                                  = alignDateOnFormat(state.aggregate(), startTimestamp);
+		final long start                                  = alignDateOnFormat(state.aggregate(), state.beginTimestamp());
 		final TreeMap<Long, Map<String, Object>> countMap = toAggregatedCountMap(state);
-		final Set<String> countProperties                 = getCountProperties(countMap);
-
-		for (long current = start; current <= endTimestamp; current += interval) {
-
-			final Map<Long, Map<String, Object>> counts = countMap.subMap(current, true, current + interval, false);
-			final GraphObjectMap sum = new GraphObjectMap();
-
-			// initialize interval sums with 0 (so each
-			// interval contains all keys regardless of
-			// whether there are actual values or not)
-			for (final String key : countProperties) {
-				sum.put(new IntProperty(key), 0);
-			}
-
-			// evaluate counts
-			for (final Map<String, Object> count : counts.values()) {
 
-				for (final String key : countProperties) {
-
-					final IntProperty prop = new IntProperty(key);
-					Integer sumValue = sum.get(prop);
-					if (sumValue == null) {
-						sumValue = 0;
-					}
-
-					Integer entryValue = (Integer) count.get(key);
-					if (entryValue == null) {
-						entryValue = 0;
-					}
-
-					sum.put(prop, sumValue + entryValue);
-				}
-			}
-
-			result.put(new GenericProperty(Long.toString(current)), sum);
-		}
-
-		return new Result(result, false);
+		return sumIntervals(start, state.endTimestamp(), interval, countMap);
 	}
 
 	private Result histogram(final LogState state) throws FrameworkException {
@@ -585,13 +676,16 @@ public class LogResource extends Resource {
 		// sort entries before creating the histogram
 		state.sortEntries();
 
-		final String dateFormat = state.aggregate();
-		final long startTimestamp = state.beginTimestamp();
-		final long endTimestamp = state.endTimestamp();
-		final GraphObjectMap result = new GraphObjectMap();
-		final long interval = findInterval(dateFormat);
-		final long start = alignDateOnFormat(dateFormat, startTimestamp);
+		final long interval                               = findInterval(state.aggregate());
+		final long start                                  = alignDateOnFormat(state.aggregate(), state.beginTimestamp());
 		final TreeMap<Long, Map<String, Object>> countMap = toHistogramCountMap(state);
+
+		return sumIntervals(start, state.endTimestamp(), interval, countMap);
+	}
+
+	private Result sumIntervals(final long start, final long endTimestamp, final long interval, final TreeMap<Long, Map<String, Object>> countMap) {
+
+		final GraphObjectMap result       = new GraphObjectMap();
 		final Set<String> countProperties = getCountProperties(countMap);
 
 		for (long current = start; current <= endTimestamp; current += interval) {
@@ -950,18 +1044,22 @@ public class LogResource extends Resource {
 		}
 
 		public void countAction(final String action) {
+			countAction(action, 1);
+		}
+
+		public void countAction(final String action, final int count) {
 
 			Integer actionCount = actions.get(action);
 			if (actionCount == null) {
 
-				actions.put(action, 1);
+				actions.put(action, count);
 
 			} else {
 
-				actions.put(action, actionCount + 1);
+				actions.put(action, actionCount + count);
 			}
 
-			this.actionCount++;
+			this.actionCount += count;
 		}
 
 		public int actionCount() {
@@ -1158,6 +1256,21 @@ public class LogResource extends Resource {
 			return StringUtils.isNotBlank(logAction);
 		}
 
+		/**
+		 * Aggregations that only count entries per interval can be
+		 * answered from the rollups.
+		 */
+		public boolean canUseRollups() {
+			return doAggregate() && StringUtils.isBlank(histogram) && StringUtils.isNotBlank(logAction) && aggregationPatterns.isEmpty() && filters == null && multiplier == null;
+		}
+
+		/**
+		 * Listings without in-memory filters can be paged by the database.
+		 */
+		public boolean canPage() {
+			return !doAggregate() && StringUtils.isBlank(histogram) && filters == null;
+		}
+
 		public boolean includeFile(final File file) {
 			return range == null || range.contains(file.lastModified());
 		}
@@ -1266,8 +1379,9 @@ public class LogResource extends Resource {
 
 	private static class Context implements AutoCloseable {
 
-		private final App app   = StructrApp.getInstance();
-		private Tx tx           = null;
+		private final LogRollups.Batch rollups = new LogRollups.Batch();
+		private final App app                  = StructrApp.getInstance();
+		private Tx tx                          = null;
 		private int total       = 0;
 		private int count       = 0;
 		private int commitCount = 0;
@@ -1287,6 +1401,8 @@ public class LogResource extends Resource {
 				tx.success();
 				tx.close();
 
+				LogRollups.getInstance().publish(rollups);
+
 				if (intermediate) {
 
 					tx = app.tx(false, false, false);
@@ -1310,6 +1426,8 @@ public class LogResource extends Resource {
 
 			tx.success();
 			tx.close();
+
+			LogRollups.getInstance().publish(rollups);
 		}
 	}
 }
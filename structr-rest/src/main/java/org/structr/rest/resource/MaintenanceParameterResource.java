@@ -21,6 +21,7 @@ package org.structr.rest.resource;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import javax.servlet.http.HttpServletRequest;
+import org.structr.agent.ListTasksCommand;
 import org.structr.agent.Task;
 import org.structr.api.service.Command;
 import org.structr.common.SecurityContext;
@@ -37,10 +38,12 @@ import org.structr.core.graph.BulkSetRelationshipPropertiesCommand;
 import org.structr.core.graph.BulkSetUuidCommand;
 import org.structr.core.graph.ClearDatabase;
 import org.structr.core.graph.FlushCachesCommand;
+import org.structr.core.graph.ValueCacheCommand;
 import org.structr.core.graph.SyncCommand;
 import org.structr.core.property.PropertyKey;
 import org.structr.rest.RestMethodResult;
 import org.structr.rest.exception.NotAllowedException;
+import org.structr.rest.maintenance.CsvImportStatusCommand;
 import org.structr.rest.maintenance.SnapshotCommand;
 import org.structr.schema.SchemaHelper;
 import org.structr.schema.importer.GraphGistImporter;
@@ -78,6 +81,9 @@ public class MaintenanceParameterResource extends Resource {
 		maintenanceCommandMap.put("sync", SyncCommand.class);
 		maintenanceCommandMap.put("snapshot", SnapshotCommand.class);
 		maintenanceCommandMap.put("flushCaches", FlushCachesCommand.class);
+		maintenanceCommandMap.put("valueCache", ValueCacheCommand.class);
+		maintenanceCommandMap.put("listTasks", ListTasksCommand.class);
+		maintenanceCommandMap.put("csvImports", CsvImportStatusCommand.class);
 
 	}
 
@@ -114,6 +114,16 @@ public class MaintenanceResource extends Resource {
 							cmd.execute(propertySet);
 						}
 
+						// return command result if present
+						final Object commandResult = cmd.getCommandResult();
+						if (commandResult != null) {
+
+							final RestMethodResult result = new RestMethodResult(HttpServletResponse.SC_OK);
+							result.setNonGraphObjectResult(commandResult);
+
+							return result;
+						}
+
 					} else {
 						return new RestMethodResult(HttpServletResponse.SC_NOT_FOUND);
 					}
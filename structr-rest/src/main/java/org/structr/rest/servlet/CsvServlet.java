@@ -38,6 +38,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.regex.Pattern;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -48,6 +49,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.api.RetryException;
+import org.structr.api.config.Settings;
 import org.structr.common.PagingHelper;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
@@ -64,6 +66,8 @@ import org.structr.core.graph.Tx;
 import org.structr.core.property.DateProperty;
 import org.structr.core.property.PropertyKey;
 import org.structr.rest.RestMethodResult;
+import org.structr.rest.common.CsvImport;
+import org.structr.rest.common.CsvRecordReader;
 import org.structr.rest.resource.Resource;
 import org.structr.rest.service.HttpServiceServlet;
 import org.structr.rest.service.StructrHttpServiceConfig;
@@ -83,6 +87,8 @@ public class CsvServlet extends HttpServlet implements HttpServiceServlet {
 	private static final String DELIMITER = ";";
 	private static final String REMOVE_LINE_BREAK_PARAM = "nolinebreaks";
 	private static final String WRITE_BOM = "bom";
+	private static final String BATCH_SIZE_PARAM = "batchSize";
+	private static final String WORKERS_PARAM = "workers";
 
 	//~--- fields ---------------------------------------------------------
 	private final Map<Pattern, Class<? extends Resource>> resourceMap = new LinkedHashMap<>();
@@ -300,7 +306,9 @@ public class CsvServlet extends HttpServlet implements HttpServiceServlet {
 			response.setContentType("application/json; charset=utf-8");
 
 			// get reader before initalizing security context
-			final String input = IOUtils.toString(request.getReader());
+			final BufferedReader reader = request.getReader();
+			final boolean streaming     = Settings.CsvImportStreaming.getValue() || request.getParameter(BATCH_SIZE_PARAM) != null || request.getParameter(WORKERS_PARAM) != null;
+			final String input          = streaming ? null : IOUtils.toString(reader);
 
 			// isolate request authentication in a transaction
 			try (final Tx tx = StructrApp.getInstance().tx()) {
@@ -321,6 +329,13 @@ public class CsvServlet extends HttpServlet implements HttpServiceServlet {
 					tx.success();
 				}
 
+				if (streaming) {
+
+					// import in batches directly from the request stream
+					importCsv(request, response, app, resource, reader);
+					return;
+				}
+
 				// isolate doPost
 				boolean retry = true;
 				while (retry) {
@@ -463,6 +478,75 @@ public class CsvServlet extends HttpServlet implements HttpServiceServlet {
 		}
 	}
 
+	private void importCsv(final HttpServletRequest request, final HttpServletResponse response, final App app, final Resource resource, final BufferedReader reader) throws FrameworkException, IOException {
+
+		final int batchSize = parseInt(request.getParameter(BATCH_SIZE_PARAM), Settings.CsvImportBatchSize.getValue());
+		final int workers   = parseInt(request.getParameter(WORKERS_PARAM), Settings.CsvImportWorkers.getValue());
+
+		final CsvImport csvImport = new CsvImport(app, resource.getResourceSignature(), batchSize, workers, resource.createPostTransaction(), (record) -> {
+
+			resource.doPost(convertRecord(record, resource));
+		});
+
+		try (final CsvRecordReader records = new CsvRecordReader(reader, ';', '"')) {
+
+			csvImport.run(records);
+		}
+
+		// isolate write output
+		try (final Tx tx = app.tx()) {
+
+			final RestMethodResult result = new RestMethodResult(HttpServletResponse.SC_OK);
+
+			result.setNonGraphObjectResult(csvImport.getStatus());
+			result.commitResponse(gson.get(), response);
+
+			tx.success();
+		}
+	}
+
+	private Map<String, Object> convertRecord(final Map<String, String> record, final Resource resource) throws FrameworkException {
+
+		final Map<String, Object> properties = new LinkedHashMap<>();
+
+		for (final Entry<String, String> entry : record.entrySet()) {
+
+			final String key = entry.getKey();
+
+			if (StructrApp.getConfiguration().getPropertyKeyForJSONName(resource.getEntityClass(), key).isCollection()) {
+
+				try {
+
+					// if the current property is a collection, split it into its parts
+					properties.put(key, extractArrayContentsFromArray(entry.getValue(), key));
+
+				} catch (IOException ioex) {
+
+					throw new FrameworkException(422, "Unable to parse array value for " + key + ": " + ioex.getMessage());
+				}
+
+			} else {
+
+				properties.put(key, entry.getValue());
+			}
+		}
+
+		return properties;
+	}
+
+	private static int parseInt(final String value, final int defaultValue) {
+
+		if (value != null) {
+
+			try {
+				return Integer.parseInt(value);
+
+			} catch (NumberFormatException ignore) {}
+		}
+
+		return defaultValue;
+	}
+
 	private static String escapeForCsv(final Object value) {
 
 		String result;
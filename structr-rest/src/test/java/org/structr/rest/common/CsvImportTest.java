@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.common;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.structr.common.error.FrameworkException;
+
+/**
+ * Tests for the batching and error handling of {@link CsvImport}. The
+ * records are handled without enclosing transactions.
+ */
+public class CsvImportTest {
+
+	@Test
+	public void testFailingBatch() throws IOException {
+
+		final Set<String> imported = ConcurrentHashMap.newKeySet();
+		final CsvImport csvImport  = new CsvImport(null, "failing batch", 3, 1, false, record -> {
+
+			if ("5".equals(record.get("id"))) {
+				throw new FrameworkException(422, "Invalid record " + record.get("id"));
+			}
+
+			imported.add(record.get("id"));
+		});
+
+		try (final CsvRecordReader reader = new CsvRecordReader(new StringReader(createInput(10)), ';', '"')) {
+			csvImport.run(reader);
+		}
+
+		final Map<String, Object> status = csvImport.getStatus();
+
+		assertEquals("finished", status.get("state"));
+		assertEquals(10L, status.get("recordsRead"));
+		assertEquals(4L,  status.get("batches"));
+		assertEquals(1L,  status.get("batchesFailed"));
+
+		// all records of the failed batch are reported as failed, the following batches are imported
+		assertEquals(7L,  status.get("recordsImported"));
+		assertEquals(3L,  status.get("recordsFailed"));
+		assertFalse(imported.contains("6"));
+		assertTrue(imported.contains("7"));
+
+		// the error refers to the lines of the failed batch
+		final List<Map<String, Object>> errors = (List<Map<String, Object>>)status.get("errors");
+
+		assertEquals(1, errors.size());
+		assertEquals(5L, errors.get(0).get("firstLine"));
+		assertEquals(7L, errors.get(0).get("lastLine"));
+		assertTrue(errors.get(0).get("message").toString().contains("Invalid record 5"));
+	}
+
+	@Test
+	public void testUnparseableRecord() throws IOException {
+
+		final Set<String> imported = ConcurrentHashMap.newKeySet();
+		final CsvImport csvImport  = new CsvImport(null, "unparseable record", 2, 1, false, record -> imported.add(record.get("id")));
+
+		try (final CsvRecordReader reader = new CsvRecordReader(new StringReader(createInput(3) + "\"4;unterminated\n"), ';', '"')) {
+			csvImport.run(reader);
+		}
+
+		final Map<String, Object> status = csvImport.getStatus();
+
+		assertEquals("finished", status.get("state"));
+		assertEquals(3L, status.get("recordsImported"));
+		assertEquals(1L, status.get("recordsFailed"));
+		assertEquals(0L, status.get("batchesFailed"));
+		assertEquals(3,  imported.size());
+
+		final List<Map<String, Object>> errors = (List<Map<String, Object>>)status.get("errors");
+
+		assertEquals(1, errors.size());
+		assertEquals(5L, errors.get(0).get("firstLine"));
+	}
+
+	@Test
+	public void testParallelWorkers() throws IOException {
+
+		final Set<String> imported = ConcurrentHashMap.newKeySet();
+		final CsvImport csvImport  = new CsvImport(null, "parallel workers", 7, 4, false, record -> imported.add(record.get("id")));
+
+		try (final CsvRecordReader reader = new CsvRecordReader(new StringReader(createInput(1000)), ';', '"')) {
+			csvImport.run(reader);
+		}
+
+		final Map<String, Object> status = csvImport.getStatus();
+
+		assertEquals("finished", status.get("state"));
+		assertEquals(1000L, status.get("recordsImported"));
+		assertEquals(0L,    status.get("recordsFailed"));
+		assertEquals(143L,  status.get("batches"));
+		assertEquals(1000,  imported.size());
+
+		assertTrue(csvImport.isFinished());
+		assertSame(csvImport, CsvImport.getImport(csvImport.getId()));
+	}
+
+	// ----- private methods -----
+	private String createInput(final int count) {
+
+		final StringBuilder buf = new StringBuilder("id;name\n");
+
+		for (int i = 1; i <= count; i++) {
+			buf.append(i).append(";name").append(i).append("\n");
+		}
+
+		return buf.toString();
+	}
+}
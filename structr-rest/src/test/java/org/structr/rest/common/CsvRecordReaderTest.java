@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.common;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * Tests for {@link CsvRecordReader}.
+ */
+public class CsvRecordReaderTest {
+
+	@Test
+	public void testSimpleRecords() throws IOException {
+
+		try (final CsvRecordReader reader = new CsvRecordReader(new StringReader("name;age\nAlice;30\nBob;40\n"), ';', '"')) {
+
+			assertArrayEquals(new String[] { "name", "age" }, reader.getHeader());
+
+			assertRecord(reader.next(), "Alice", "30");
+			assertEquals(2, reader.getLineNumber());
+
+			assertRecord(reader.next(), "Bob", "40");
+			assertEquals(3, reader.getLineNumber());
+
+			assertFalse(reader.hasNext());
+		}
+	}
+
+	@Test
+	public void testMultiLineRecords() throws IOException {
+
+		final String input = "name;age\n\"Alice\nand\nBob\";30\n\nCarol;\"4\n0\"\nDave;50\n";
+
+		try (final CsvRecordReader reader = new CsvRecordReader(new StringReader(input), ';', '"')) {
+
+			// quoted values may span multiple lines
+			assertRecord(reader.next(), "Alice\nand\nBob", "30");
+			assertEquals(2, reader.getLineNumber());
+
+			// blank lines are skipped, line numbers are those of the first line of a record
+			assertRecord(reader.next(), "Carol", "4\n0");
+			assertEquals(6, reader.getLineNumber());
+
+			assertRecord(reader.next(), "Dave", "50");
+			assertEquals(8, reader.getLineNumber());
+
+			assertFalse(reader.hasNext());
+		}
+	}
+
+	@Test
+	public void testTrimAndShortRecords() throws IOException {
+
+		try (final CsvRecordReader reader = new CsvRecordReader(new StringReader(" name , age \n Alice , 30 \nBob\n"), ',', '"', '\\', true)) {
+
+			assertArrayEquals(new String[] { "name", "age" }, reader.getHeader());
+
+			assertRecord(reader.next(), "Alice", "30");
+
+			// missing columns are not part of the record
+			final Map<String, String> partial = reader.next();
+
+			assertEquals(1, partial.size());
+			assertEquals("Bob", partial.get("name"));
+		}
+	}
+
+	@Test
+	public void testUnterminatedQuote() throws IOException {
+
+		try (final CsvRecordReader reader = new CsvRecordReader(new StringReader("name;age\nAlice;30\nBob;\"40\nCarol;50\n"), ';', '"')) {
+
+			assertRecord(reader.next(), "Alice", "30");
+
+			try {
+
+				reader.next();
+				fail("Unterminated quoted value must be reported");
+
+			} catch (CsvRecordReader.CsvRecordException rex) {
+
+				// reported with the line on which the broken record starts
+				assertEquals(3, rex.getLineNumber());
+				assertTrue(rex.getMessage().contains("line 3"));
+			}
+
+			// the rest of the input was consumed by the broken record
+			assertFalse(reader.hasNext());
+
+			try {
+
+				reader.next();
+				fail("Reading past the end must fail");
+
+			} catch (NoSuchElementException expected) {
+			}
+		}
+	}
+
+	@Test
+	public void testEmptyInput() throws IOException {
+
+		try (final CsvRecordReader reader = new CsvRecordReader(new StringReader(""), ';', '"')) {
+
+			assertEquals(0, reader.getHeader().length);
+			assertFalse(reader.hasNext());
+		}
+	}
+
+	// ----- private methods -----
+	private void assertRecord(final Map<String, String> record, final String name, final String age) {
+
+		assertEquals(name, record.get("name"));
+		assertEquals(age,  record.get("age"));
+	}
+}
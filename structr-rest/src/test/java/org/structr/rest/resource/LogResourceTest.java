@@ -0,0 +1,204 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.resource;
+
+import com.jayway.restassured.RestAssured;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Map;
+import java.util.TimeZone;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.graph.Tx;
+import org.structr.core.property.PropertyMap;
+import org.structr.rest.common.StructrRestTest;
+import org.structr.rest.logging.LogRollups;
+import org.structr.rest.logging.entity.LogEvent;
+import org.structr.rest.logging.entity.LogRollup;
+
+/**
+ * Compares the log overview and aggregations answered from the rollups
+ * with the answers computed from the raw log events.
+ */
+public class LogResourceTest extends StructrRestTest {
+
+	private static final String RANGE = "[2017-01-01T00:00:00-0000 TO 2017-01-04T00:00:00-0000]";
+
+	@Test
+	public void testRollupsMatchRawEvents() throws Exception {
+
+		final LogRollups rollups = LogRollups.getInstance();
+
+		reset();
+
+		createEvent("VIEW", "2017-01-01T10:15:00");
+		createEvent("VIEW", "2017-01-01T23:59:30");
+		createEvent("VIEW", "2017-01-02T08:00:00");
+		createEvent("VIEW", "2017-01-03T12:00:00");
+		createEvent("EDIT", "2017-01-02T14:30:00");
+		createEvent("EDIT", "2017-01-02T14:30:00");
+
+		// events existed before the rollups, so the raw events are used
+		assertFalse(rollups.isComplete());
+
+		final Map<String, Object> rawOverview  = getOverview();
+		final Map<String, Object> rawAggregate = getAggregate();
+
+		assertEquals(6, rawOverview.get("entryCount"));
+		assertEquals(4, sum(rawAggregate));
+
+		rollups.rebuild().get();
+
+		assertTrue(rollups.isComplete());
+		assertEquals(rawOverview,  getOverview());
+		assertEquals(rawAggregate, getAggregate());
+
+		// an existing day bucket and the current, unfinished bucket are updated incrementally
+		createEvent("VIEW", "2017-01-02T09:00:00");
+
+		RestAssured
+			.given()
+				.contentType("application/json; charset=UTF-8")
+				.body("{ \"subject\": \"subject\", \"object\": \"object\", \"action\": \"VIEW\", \"message\": \"now\" }")
+			.expect()
+				.statusCode(201)
+			.when()
+				.post("/log");
+
+		final Map<String, Object> incrementalOverview  = getOverview();
+		final Map<String, Object> incrementalAggregate = getAggregate();
+
+		assertEquals(8, incrementalOverview.get("entryCount"));
+		assertEquals(5, sum(incrementalAggregate));
+
+		// a clean shutdown writes all counts and keeps the rollups complete
+		rollups.shutdown();
+
+		assertTrue(rollups.isComplete());
+		assertEquals(incrementalOverview,  getOverview());
+		assertEquals(incrementalAggregate, getAggregate());
+
+		// compare with the raw events again
+		rollups.shutdown();
+		deleteRollups(LogRollups.COMPLETE);
+
+		assertFalse(rollups.isComplete());
+		assertEquals(getOverview(),  incrementalOverview);
+		assertEquals(getAggregate(), incrementalAggregate);
+	}
+
+	// ----- private methods -----
+	private void reset() throws FrameworkException {
+
+		try (final Tx tx = app.tx()) {
+
+			for (final LogEvent event : app.nodeQuery(LogEvent.class).getAsList()) {
+				app.delete(event);
+			}
+
+			tx.success();
+		}
+
+		// write the pending counts of previous tests before the rollups are removed
+		LogRollups.getInstance().shutdown();
+
+		deleteRollups(null);
+	}
+
+	private void deleteRollups(final String resolution) throws FrameworkException {
+
+		try (final Tx tx = app.tx()) {
+
+			for (final LogRollup rollup : app.nodeQuery(LogRollup.class).getAsList()) {
+
+				if (resolution == null || resolution.equals(rollup.getProperty(LogRollup.resolutionProperty))) {
+					app.delete(rollup);
+				}
+			}
+
+			tx.success();
+		}
+	}
+
+	private void createEvent(final String action, final String timestamp) throws FrameworkException, ParseException {
+
+		final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+		final PropertyMap properties  = new PropertyMap();
+
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+		properties.put(LogEvent.timestampProperty, format.parse(timestamp));
+		properties.put(LogEvent.actionProperty,    action);
+		properties.put(LogEvent.subjectProperty,   "subject");
+		properties.put(LogEvent.objectProperty,    "object");
+		properties.put(LogEvent.messageProperty,   action + " at " + timestamp);
+
+		try (final Tx tx = app.tx()) {
+
+			app.create(LogEvent.class, properties);
+			tx.success();
+		}
+	}
+
+	private Map<String, Object> getOverview() {
+
+		return RestAssured
+			.given()
+				.contentType("application/json; charset=UTF-8")
+			.expect()
+				.statusCode(200)
+			.when()
+				.get("/log")
+			.jsonPath().getMap("result");
+	}
+
+	private Map<String, Object> getAggregate() {
+
+		return RestAssured
+			.given()
+				.contentType("application/json; charset=UTF-8")
+				.param("action", "VIEW")
+				.param("aggregate", "yyyy-MM-dd")
+				.param("timestamp", RANGE)
+			.expect()
+				.statusCode(200)
+			.when()
+				.get("/log")
+			.jsonPath().getMap("result");
+	}
+
+	private int sum(final Map<String, Object> aggregate) {
+
+		int sum = 0;
+
+		for (final Object interval : aggregate.values()) {
+
+			final Object total = ((Map)interval).get("total");
+			if (total != null) {
+
+				sum += (Integer)total;
+			}
+		}
+
+		return sum;
+	}
+}
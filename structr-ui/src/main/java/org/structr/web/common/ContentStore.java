@@ -0,0 +1,546 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.StructrTransactionListener;
+import org.structr.core.TransactionSource;
+import org.structr.core.app.App;
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.ModificationEvent;
+import org.structr.core.graph.NodeInterface;
+import org.structr.core.graph.TransactionCommand;
+import org.structr.core.graph.Tx;
+import org.structr.core.property.PropertyMap;
+import org.structr.web.entity.FileBase;
+
+/**
+ * Content-addressed store for file content.
+ *
+ * If enabled, the content of a file is stored once per SHA-256 hash in the
+ * blobs directory below the files path, and all file nodes with the same
+ * content reference the same blob via their relative file path and the
+ * contentHash property. Blobs are immutable: new content is always written
+ * to a private file or a temporary file first and moved into the store
+ * atomically, and a file that is about to be modified is detached from its
+ * blob first, see {@link #detach(FileBase, boolean)}.
+ *
+ * The references to a blob are counted with the index on contentHash. Blobs
+ * and private files that are no longer referenced are removed after the
+ * configured delay, so that transactions which still reference them can
+ * either commit or roll back in the meantime.
+ */
+public class ContentStore implements StructrTransactionListener {
+
+	private static final Logger logger         = LoggerFactory.getLogger(ContentStore.class.getName());
+	public static final String BLOB_DIRECTORY  = "blobs";
+	private static final String TEMP_DIRECTORY = BLOB_DIRECTORY + "/tmp";
+	private static ContentStore instance       = null;
+
+	private final Map<String, Long> candidates = new ConcurrentHashMap<>();
+	private final Map<String, Long> added      = new HashMap<>();
+	private final AtomicBoolean collecting     = new AtomicBoolean(false);
+	private final Object lock                  = new Object();
+
+	private ContentStore() {}
+
+	public static synchronized ContentStore getInstance() {
+
+		if (instance == null) {
+
+			instance = new ContentStore();
+
+			TransactionCommand.registerTransactionListener(instance);
+		}
+
+		return instance;
+	}
+
+	public static boolean isEnabled() {
+		return Settings.ContentStoreEnabled.getValue();
+	}
+
+	public static boolean isBlobPath(final String relativeFilePath) {
+		return relativeFilePath != null && relativeFilePath.startsWith(BLOB_DIRECTORY + "/") && !relativeFilePath.startsWith(TEMP_DIRECTORY + "/");
+	}
+
+	public static String getBlobPath(final String hash) {
+		return BLOB_DIRECTORY + "/" + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash;
+	}
+
+	/**
+	 * Adds the given file on disk to the store. No data is copied if the
+	 * store already contains a blob with the same content.
+	 *
+	 * @param source
+	 * @return the hash of the content
+	 * @throws IOException
+	 */
+	public String add(final Path source) throws IOException {
+		return add(source, false);
+	}
+
+	/**
+	 * Adds the given file on disk to the store. No data is copied if the
+	 * store already contains a blob with the same content. Otherwise, the
+	 * source is either copied, or moved into place if the caller releases
+	 * it anyway.
+	 *
+	 * @param source
+	 * @param move whether the source can be moved into the store
+	 * @return the hash of the content
+	 * @throws IOException
+	 */
+	public String add(final Path source, final boolean move) throws IOException {
+
+		final String hash     = hash(source);
+		final String blobPath = getBlobPath(hash);
+		final Path target     = Paths.get(FileHelper.getFilePath(blobPath));
+		boolean exists        = false;
+
+		synchronized (lock) {
+
+			final long now = System.currentTimeMillis();
+
+			// the blob is about to be referenced by a transaction that has
+			// not committed yet, protect it from garbage collection until
+			// the configured delay has passed
+			protect(blobPath, now);
+
+			try {
+
+				Files.setLastModifiedTime(target, FileTime.fromMillis(now));
+				exists = true;
+
+			} catch (NoSuchFileException nsfex) {
+			}
+		}
+
+		if (!exists) {
+
+			if (move) {
+
+				moveIntoPlace(source, target);
+
+			} else {
+
+				final Path temp = createTempFile();
+
+				try {
+
+					Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+					moveIntoPlace(temp, target);
+
+				} finally {
+
+					Files.deleteIfExists(temp);
+				}
+			}
+		}
+
+		return hash;
+	}
+
+	/**
+	 * Moves the private content of the given file into the store and lets
+	 * the file reference the blob. The private file itself becomes the blob
+	 * if the store does not contain its content yet. Empty files are not
+	 * stored because many code paths create an empty file first and fill it
+	 * afterwards. Must be called in a transaction.
+	 *
+	 * @param file
+	 * @throws FrameworkException
+	 */
+	public void store(final FileBase file) throws FrameworkException {
+
+		final String relativeFilePath = file.getRelativeFilePath();
+		if (!isEnabled() || relativeFilePath == null || isBlobPath(relativeFilePath)) {
+			return;
+		}
+
+		final Path source = Paths.get(FileHelper.getFilePath(relativeFilePath));
+
+		try {
+
+			if (Files.isRegularFile(source) && Files.size(source) > 0) {
+
+				reference(file, add(source, true));
+			}
+
+		} catch (IOException ioex) {
+
+			logger.warn("Unable to add {} to content store: {}", relativeFilePath, ioex.getMessage());
+		}
+	}
+
+	/**
+	 * Lets the given file reference the given blob. The content that was
+	 * referenced before is released. Must be called in a transaction.
+	 *
+	 * @param file
+	 * @param hash
+	 * @throws FrameworkException
+	 */
+	public void reference(final FileBase file, final String hash) throws FrameworkException {
+
+		final String previousPath = file.getRelativeFilePath();
+		final String blobPath     = getBlobPath(hash);
+		final PropertyMap map     = new PropertyMap();
+
+		map.put(FileBase.relativeFilePath, blobPath);
+		map.put(FileBase.contentHash, hash);
+
+		file.unlockSystemPropertiesOnce();
+		file.setProperties(SecurityContext.getSuperUserInstance(), map);
+
+		if (previousPath != null && !previousPath.equals(blobPath)) {
+			release(previousPath);
+		}
+	}
+
+	/**
+	 * Lets the given target file reference the content of the given source
+	 * file without copying any data. Must be called in a transaction.
+	 *
+	 * @param source
+	 * @param target
+	 * @return whether the content could be shared
+	 * @throws FrameworkException
+	 */
+	public boolean share(final FileBase source, final FileBase target) throws FrameworkException {
+
+		if (!isBlobPath(source.getRelativeFilePath())) {
+			store(source);
+		}
+
+		final String hash = source.getProperty(FileBase.contentHash);
+		if (hash != null && isBlobPath(source.getRelativeFilePath())) {
+
+			reference(target, hash);
+
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Replaces the reference of the given file to a blob with a private file,
+	 * so that the file can be modified on disk. Must be called in a transaction.
+	 *
+	 * @param file
+	 * @param copyContent whether the private file needs the current content
+	 * @throws FrameworkException
+	 * @throws IOException
+	 */
+	public void detach(final FileBase file, final boolean copyContent) throws FrameworkException, IOException {
+
+		final String blobPath = file.getRelativeFilePath();
+		if (!isBlobPath(blobPath)) {
+			return;
+		}
+
+		final String uuid        = file.getUuid();
+		final String privatePath = FileBase.getDirectoryPath(uuid) + "/" + uuid;
+		final Path target        = Paths.get(FileHelper.getFilePath(privatePath));
+		final PropertyMap map    = new PropertyMap();
+
+		// the private file is not referenced by the committed file node until
+		// this transaction commits, protect it from garbage collection
+		synchronized (lock) {
+			protect(privatePath, System.currentTimeMillis());
+		}
+
+		Files.createDirectories(target.getParent());
+
+		if (copyContent) {
+
+			final Path temp = createTempFile();
+
+			try {
+
+				Files.copy(Paths.get(FileHelper.getFilePath(blobPath)), temp, StandardCopyOption.REPLACE_EXISTING);
+				moveIntoPlace(temp, target);
+
+			} finally {
+
+				Files.deleteIfExists(temp);
+			}
+		}
+
+		map.put(FileBase.relativeFilePath, privatePath);
+		map.put(FileBase.contentHash, null);
+
+		file.unlockSystemPropertiesOnce();
+		file.setProperties(SecurityContext.getSuperUserInstance(), map);
+
+		release(blobPath);
+	}
+
+	/**
+	 * Marks the given blob or private file as possibly unreferenced. It
+	 * is deleted by the next garbage collection after the configured delay
+	 * if no file references it anymore.
+	 *
+	 * @param relativeFilePath
+	 */
+	public void release(final String relativeFilePath) {
+		candidates.put(relativeFilePath, System.currentTimeMillis());
+	}
+
+	/**
+	 * Deletes the released blobs and private files that are no longer
+	 * referenced and that were released before the configured delay.
+	 *
+	 * @return the number of deleted files
+	 */
+	public int collectGarbage() {
+
+		final long threshold = System.currentTimeMillis() - getDelay();
+		int count            = 0;
+
+		if (!collecting.compareAndSet(false, true)) {
+			return 0;
+		}
+
+		try (final Tx tx = StructrApp.getInstance().tx(false, false, false)) {
+
+			for (final Iterator<Entry<String, Long>> it = candidates.entrySet().iterator(); it.hasNext();) {
+
+				final Entry<String, Long> entry = it.next();
+				if (entry.getValue() < threshold) {
+
+					it.remove();
+
+					if (deleteIfUnreferenced(entry.getKey(), threshold)) {
+						count++;
+					}
+				}
+			}
+
+			expireAdded(threshold);
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("Unable to collect unreferenced file content: {}", fex.getMessage());
+
+		} finally {
+
+			collecting.set(false);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Scans the whole store and deletes all blobs that are no longer
+	 * referenced, and all leftover temporary files.
+	 *
+	 * @return the number of deleted files
+	 * @throws IOException
+	 * @throws FrameworkException
+	 */
+	public int collectAllGarbage() throws IOException, FrameworkException {
+
+		final Path root      = Paths.get(FileHelper.getFilePath(BLOB_DIRECTORY));
+		final Path base      = Paths.get(FileHelper.getFilePath(""));
+		final long threshold = System.currentTimeMillis() - getDelay();
+		int count            = 0;
+
+		if (!Files.isDirectory(root)) {
+			return 0;
+		}
+
+		try (final Stream<Path> stream = Files.walk(root)) {
+
+			for (final Iterator<Path> it = stream.filter(Files::isRegularFile).iterator(); it.hasNext();) {
+
+				final Path path = it.next();
+
+				// skip content that was added recently and may not be referenced yet
+				if (Files.getLastModifiedTime(path).toMillis() >= threshold) {
+					continue;
+				}
+
+				final String relativePath = base.relativize(path).toString().replace('\\', '/');
+				if (relativePath.startsWith(TEMP_DIRECTORY + "/")) {
+
+					Files.deleteIfExists(path);
+					count++;
+
+				} else {
+
+					try (final Tx tx = StructrApp.getInstance().tx(false, false, false)) {
+
+						if (deleteIfUnreferenced(relativePath, threshold)) {
+							count++;
+						}
+
+						tx.success();
+					}
+				}
+			}
+		}
+
+		expireAdded(threshold);
+
+		return count;
+	}
+
+	// ----- interface StructrTransactionListener -----
+	@Override
+	public void beforeCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) throws FrameworkException {
+	}
+
+	@Override
+	public void afterCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) {
+
+		if (!candidates.isEmpty()) {
+			collectGarbage();
+		}
+	}
+
+	@Override
+	public void simpleBroadcast() {
+	}
+
+	// ----- private methods -----
+	private boolean deleteIfUnreferenced(final String relativeFilePath, final long threshold) throws FrameworkException {
+
+		final App app = StructrApp.getInstance();
+
+		if (isBlobPath(relativeFilePath)) {
+
+			final String hash = StringUtils.substringAfterLast(relativeFilePath, "/");
+			if (app.nodeQuery(FileBase.class).and(FileBase.contentHash, hash).getFirst() != null) {
+				return false;
+			}
+
+		} else {
+
+			final NodeInterface node = app.getNodeById(StringUtils.substringAfterLast(relativeFilePath, "/"));
+			if (node instanceof FileBase && relativeFilePath.equals(((FileBase)node).getRelativeFilePath())) {
+				return false;
+			}
+		}
+
+		synchronized (lock) {
+
+			// added or released again while the references were counted
+			final Long addedAt = added.get(relativeFilePath);
+			if ((addedAt != null && addedAt >= threshold) || candidates.containsKey(relativeFilePath)) {
+				return false;
+			}
+
+			try {
+
+				return Files.deleteIfExists(Paths.get(FileHelper.getFilePath(relativeFilePath)));
+
+			} catch (IOException ioex) {
+
+				logger.warn("Unable to delete unreferenced file {}: {}", relativeFilePath, ioex.getMessage());
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Must be called while holding the lock.
+	 */
+	private void protect(final String relativeFilePath, final long now) {
+
+		candidates.remove(relativeFilePath);
+		added.put(relativeFilePath, now);
+	}
+
+	private void expireAdded(final long threshold) {
+
+		synchronized (lock) {
+
+			added.values().removeIf(addedAt -> addedAt < threshold);
+		}
+	}
+
+	private String hash(final Path source) throws IOException {
+
+		try (final InputStream in = Files.newInputStream(source)) {
+
+			return DigestUtils.sha256Hex(in);
+		}
+	}
+
+	private Path createTempFile() throws IOException {
+
+		final Path temp = Paths.get(FileHelper.getFilePath(TEMP_DIRECTORY, "/", UUID.randomUUID().toString()));
+
+		Files.createDirectories(temp.getParent());
+
+		return temp;
+	}
+
+	private void moveIntoPlace(final Path temp, final Path target) throws IOException {
+
+		Files.createDirectories(target.getParent());
+
+		try {
+
+			Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+
+		} catch (FileAlreadyExistsException faex) {
+
+			// stored concurrently with the same content
+
+		} catch (AtomicMoveNotSupportedException amnsex) {
+
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private long getDelay() {
+		return Settings.ContentStoreGcDelay.getValue() * 1000L;
+	}
+}
@@ -28,6 +28,7 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.zip.CRC32;
 import javax.activation.MimetypesFileTypeMap;
 import net.sf.jmimemagic.Magic;
 import net.sf.jmimemagic.MagicException;
@@ -133,9 +134,91 @@ public class FileHelper {
 	public static <T extends org.structr.web.entity.FileBase> T createFile(final SecurityContext securityContext, final InputStream fileStream, final String contentType, final Class<T> fileType, final String name)
 		throws FrameworkException, IOException {
 
-		final byte[] data = IOUtils.toByteArray(fileStream);
-		return createFile(securityContext, data, contentType, fileType, name);
+		final StreamedFile data = StreamedFile.write(fileStream);
 
+		try {
+
+			return createFile(securityContext, data, contentType, fileType, name);
+
+		} catch (Throwable t) {
+
+			data.delete();
+			throw t;
+		}
+	}
+
+	/**
+	 * Create a new file node for content that has already been streamed
+	 * to the file store, using the checksum and size computed while
+	 * streaming.
+	 *
+	 * @param <T>
+	 * @param securityContext
+	 * @param data
+	 * @param contentType if null, try to auto-detect content type
+	 * @param fileType defaults to File.class if null
+	 * @param name
+	 * @return file
+	 * @throws FrameworkException
+	 * @throws IOException
+	 */
+	public static <T extends org.structr.web.entity.FileBase> T createFile(final SecurityContext securityContext, final StreamedFile data, final String contentType, final Class<T> fileType, final String name)
+		throws FrameworkException, IOException {
+
+		final PropertyMap props = new PropertyMap();
+
+		props.put(GraphObject.id, data.getUuid());
+		props.put(AbstractNode.name, name);
+		props.put(FileBase.contentType, contentType != null ? contentType : getContentMimeType(data, name));
+		props.put(FileBase.checksum, data.getChecksum());
+		props.put(FileBase.size, data.getSize());
+		props.put(FileBase.version, 1);
+
+		final T newFile = (T) StructrApp.getInstance(securityContext).create(fileType != null ? fileType : (Class<T>) org.structr.dynamic.File.class, props);
+
+		ContentStore.getInstance().store(newFile);
+
+		return newFile;
+	}
+
+	/**
+	 * Create a new file node with the content of the given file on disk.
+	 * If the content store is enabled and already contains the content,
+	 * no data is copied at all.
+	 *
+	 * @param <T>
+	 * @param securityContext
+	 * @param source
+	 * @param contentType if null, try to auto-detect content type
+	 * @param fileType defaults to File.class if null
+	 * @param name
+	 * @return file
+	 * @throws FrameworkException
+	 * @throws IOException
+	 */
+	public static <T extends org.structr.web.entity.FileBase> T createFile(final SecurityContext securityContext, final Path source, final String contentType, final Class<T> fileType, final String name)
+		throws FrameworkException, IOException {
+
+		if (!ContentStore.isEnabled()) {
+
+			try (final InputStream in = Files.newInputStream(source)) {
+
+				return createFile(securityContext, in, contentType, fileType, name);
+			}
+		}
+
+		final String hash       = ContentStore.getInstance().add(source);
+		final PropertyMap props = new PropertyMap();
+
+		props.put(AbstractNode.name, name);
+		props.put(FileBase.contentType, contentType != null ? contentType : getContentMimeType(source.toFile(), name));
+		props.put(FileBase.checksum, getChecksum(source.toFile()));
+		props.put(FileBase.size, Files.size(source));
+		props.put(FileBase.version, 1);
+		props.put(FileBase.relativeFilePath, ContentStore.getBlobPath(hash));
+		props.put(FileBase.contentHash, hash);
+
+		return (T) StructrApp.getInstance(securityContext).create(fileType != null ? fileType : (Class<T>) org.structr.dynamic.File.class, props);
 	}
 
 	/**
@@ -215,12 +298,18 @@ public class FileHelper {
 
 		final PropertyMap map = new PropertyMap();
 
+		final CRC32 crc = new CRC32();
+
+		crc.update(fileData);
+
 		map.put(FileBase.contentType, contentType != null ? contentType : getContentMimeType(file));
-		map.put(FileBase.checksum, FileHelper.getChecksum(file));
-		map.put(FileBase.size, FileHelper.getSize(file));
+		map.put(FileBase.checksum, crc.getValue());
+		map.put(FileBase.size, (long) fileData.length);
 		map.put(FileBase.version, 1);
 
 		file.setProperties(file.getSecurityContext(), map);
+
+		ContentStore.getInstance().store(file);
 	}
 
 	/**
@@ -307,8 +396,8 @@ public class FileHelper {
 	}
 
 	/**
-	 * Write binary data to a file and reference the file on disk at the
-	 * given file node
+	 * Stream binary data to the file on disk referenced by the given file
+	 * node and update its checksum and size
 	 *
 	 * @param fileNode
 	 * @param inStream
@@ -317,8 +406,24 @@ public class FileHelper {
 	 */
 	public static void writeToFile(final org.structr.dynamic.File fileNode, final InputStream inStream) throws FrameworkException, IOException {
 
-		writeToFile(fileNode, IOUtils.toByteArray(inStream));
+		// shared content must not be overwritten
+		ContentStore.getInstance().detach(fileNode, false);
+
+		if (fileNode.getRelativeFilePath() == null) {
+
+			// no file on disk yet, let the byte array variant set up the path
+			writeToFile(fileNode, new byte[0]);
+		}
+
+		final StreamedFile data = StreamedFile.write(inStream, fileNode.getUuid(), getFile(fileNode));
+		final PropertyMap map   = new PropertyMap();
+
+		map.put(FileBase.checksum, data.getChecksum());
+		map.put(FileBase.size, data.getSize());
+
+		fileNode.setProperties(fileNode.getSecurityContext(), map);
 
+		ContentStore.getInstance().store(fileNode);
 	}
 
 	/**
@@ -334,6 +439,7 @@ public class FileHelper {
 	public static File writeToFile(final FileBase fileNode, final byte[] data) throws FrameworkException, IOException {
 
 		final PropertyMap properties = new PropertyMap();
+		final String previousPath    = fileNode.getRelativeFilePath();
 
 		String id = fileNode.getProperty(GraphObject.id);
 		if (id == null) {
@@ -346,10 +452,16 @@ public class FileHelper {
 		}
 
 		properties.put(FileBase.relativeFilePath, FileBase.getDirectoryPath(id) + "/" + id);
+		properties.put(FileBase.contentHash, null);
 
 		fileNode.unlockSystemPropertiesOnce();
 		fileNode.setProperties(fileNode.getSecurityContext(), properties);
 
+		// shared content is replaced, not overwritten
+		if (ContentStore.isBlobPath(previousPath)) {
+			ContentStore.getInstance().release(previousPath);
+		}
+
 		final String filesPath = Settings.FilesPath.getValue();
 
 		final java.io.File fileOnDisk = new java.io.File(filesPath + "/" + fileNode.getRelativeFilePath());
@@ -382,6 +494,46 @@ public class FileHelper {
 		return getContentMimeType(file.getFileOnDisk(), file.getProperty(AbstractNode.name));
 	}
 
+	/**
+	 * Return mime type of the given streamed content, using the bytes
+	 * captured while streaming instead of reading the file again
+	 *
+	 * @param data
+	 * @param name
+	 * @return content type
+	 * @throws java.io.IOException
+	 */
+	public static String getContentMimeType(final StreamedFile data, final String name) throws IOException {
+
+		String mimeType;
+
+		// try name first, if not null
+		if (name != null) {
+			mimeType = mimeTypeMap.getContentType(name);
+			if (mimeType != null && !UNKNOWN_MIME_TYPE.equals(mimeType)) {
+				return mimeType;
+			}
+		}
+
+		// then the first bytes of the content
+		final byte[] header = data.getHeader();
+		if (header != null && header.length > 0) {
+
+			try {
+				final MagicMatch match = Magic.getMagicMatch(header, true);
+				if (match != null) {
+
+					return match.getMimeType();
+				}
+
+			} catch (MagicParseException | MagicMatchNotFoundException | MagicException ignore) {
+			}
+		}
+
+		// no success :(
+		return UNKNOWN_MIME_TYPE;
+	}
+
 	/**
 	 * Return mime type of given file
 	 *
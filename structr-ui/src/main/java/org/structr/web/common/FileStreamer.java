@@ -0,0 +1,354 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import org.eclipse.jetty.server.HttpOutput;
+import org.structr.web.entity.FileBase;
+
+/**
+ * Helper methods for the delivery of file content: byte range parsing,
+ * strong entity tags and copying of file regions to a response without
+ * moving the content through heap buffers.
+ */
+public class FileStreamer {
+
+	private static final long MAPPED_REGION_SIZE = 16 * 1024 * 1024;
+	public static final int MAX_RANGES           = 16;
+
+	/**
+	 * Returns a strong entity tag for the given file, based on the CRC32
+	 * checksum and the size that are stored when the file is written,
+	 * or null if the file has no checksum.
+	 *
+	 * @param file
+	 * @return the entity tag or null
+	 */
+	public static String getETag(final FileBase file) {
+
+		final Long checksum = file.getProperty(FileBase.checksum);
+		final Long size     = file.getProperty(FileBase.size);
+
+		if (checksum != null) {
+
+			return "\"" + Long.toHexString(checksum) + "-" + Long.toHexString(size != null ? size : 0L) + "\"";
+		}
+
+		return null;
+	}
+
+	/**
+	 * Checks whether the value of an If-None-Match header matches the given
+	 * entity tag.
+	 *
+	 * @param headerValue
+	 * @param etag
+	 * @return whether the header matches
+	 */
+	public static boolean matchesETag(final String headerValue, final String etag) {
+
+		if (headerValue == null || etag == null) {
+			return false;
+		}
+
+		for (final String candidate : headerValue.split(",")) {
+
+			final String value = candidate.trim();
+
+			// weak comparison is sufficient for If-None-Match
+			if ("*".equals(value) || etag.equals(value) || etag.equals(value.startsWith("W/") ? value.substring(2) : value)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Parses the value of a Range header. Returns an empty list if the
+	 * header is not a valid byte range specification or if it asks for
+	 * more than {@link #MAX_RANGES} ranges or for more bytes than the file
+	 * contains (in which case it must be ignored and the full content is
+	 * sent), and null if none of the ranges can be satisfied. Overlapping
+	 * and adjacent ranges are merged and returned in ascending order.
+	 *
+	 * @param headerValue
+	 * @param length the length of the file
+	 * @return the list of ranges, or null
+	 */
+	public static List<Range> parseRanges(final String headerValue, final long length) {
+
+		final List<Range> ranges = new ArrayList<>();
+		final String[] specs;
+		long requested           = 0L;
+
+		if (headerValue == null || !headerValue.startsWith("bytes=")) {
+			return new LinkedList<>();
+		}
+
+		specs = headerValue.substring(6).split(",");
+		if (specs.length > MAX_RANGES) {
+
+			// too many ranges, ignore the whole header
+			return new LinkedList<>();
+		}
+
+		for (final String spec : specs) {
+
+			final String value = spec.trim();
+			final int pos      = value.indexOf("-");
+
+			if (pos < 0) {
+
+				// invalid syntax, ignore the whole header
+				return new LinkedList<>();
+			}
+
+			try {
+
+				final String startValue = value.substring(0, pos).trim();
+				final String endValue   = value.substring(pos + 1).trim();
+				long start;
+				long end;
+
+				if (startValue.isEmpty()) {
+
+					// suffix range: the last n bytes
+					final long suffix = Long.parseLong(endValue);
+
+					start = Math.max(0, length - suffix);
+					end   = length - 1;
+
+					if (suffix == 0) {
+						continue;
+					}
+
+				} else {
+
+					start = Long.parseLong(startValue);
+					end   = endValue.isEmpty() ? length - 1 : Math.min(Long.parseLong(endValue), length - 1);
+
+					if (!endValue.isEmpty() && Long.parseLong(endValue) < start) {
+
+						// invalid syntax, ignore the whole header
+						return new LinkedList<>();
+					}
+				}
+
+				if (start < length) {
+
+					ranges.add(new Range(start, end));
+
+					requested += end - start + 1;
+				}
+
+			} catch (NumberFormatException nex) {
+
+				return new LinkedList<>();
+			}
+		}
+
+		if (ranges.isEmpty()) {
+			return null;
+		}
+
+		if (requested > length) {
+
+			// overlapping ranges that ask for more than the whole file, ignore the whole header
+			return new LinkedList<>();
+		}
+
+		return coalesce(ranges);
+	}
+
+	/**
+	 * Writes the given region of a file channel to the output stream. When
+	 * the stream is Jetty's own output, the region is memory-mapped and
+	 * handed to the connector, so the content is copied from the page cache
+	 * to the socket by the kernel. Other streams (e.g. compressing filters)
+	 * are served through {@link FileChannel#transferTo}.
+	 *
+	 * @param channel
+	 * @param start
+	 * @param count
+	 * @param out
+	 * @throws IOException
+	 */
+	public static void copy(final FileChannel channel, final long start, final long count, final OutputStream out) throws IOException {
+
+		long position  = start;
+		long remaining = count;
+
+		if (out instanceof HttpOutput) {
+
+			final HttpOutput httpOutput = (HttpOutput) out;
+
+			while (remaining > 0) {
+
+				final long size = Math.min(remaining, MAPPED_REGION_SIZE);
+
+				httpOutput.write(channel.map(FileChannel.MapMode.READ_ONLY, position, size));
+
+				position  += size;
+				remaining -= size;
+			}
+
+		} else {
+
+			final WritableByteChannel target = Channels.newChannel(out);
+
+			while (remaining > 0) {
+
+				final long transferred = channel.transferTo(position, remaining, target);
+				if (transferred <= 0) {
+					break;
+				}
+
+				position  += transferred;
+				remaining -= transferred;
+			}
+		}
+	}
+
+	/**
+	 * Writes the given ranges as a multipart/byteranges body.
+	 *
+	 * @param channel
+	 * @param ranges
+	 * @param length the length of the file
+	 * @param contentType the content type of the file
+	 * @param boundary
+	 * @param out
+	 * @throws IOException
+	 */
+	public static void copyMultipart(final FileChannel channel, final List<Range> ranges, final long length, final String contentType, final String boundary, final OutputStream out) throws IOException {
+
+		for (final Range range : ranges) {
+
+			out.write(getPartHeader(range, length, contentType, boundary));
+			copy(channel, range.getStart(), range.getLength(), out);
+		}
+
+		out.write(getClosingBoundary(boundary));
+	}
+
+	/**
+	 * Returns the exact length of a multipart/byteranges body, to be sent
+	 * as Content-Length.
+	 *
+	 * @param ranges
+	 * @param length the length of the file
+	 * @param contentType the content type of the file
+	 * @param boundary
+	 * @return the content length
+	 */
+	public static long getMultipartLength(final List<Range> ranges, final long length, final String contentType, final String boundary) {
+
+		long contentLength = getClosingBoundary(boundary).length;
+
+		for (final Range range : ranges) {
+
+			contentLength += getPartHeader(range, length, contentType, boundary).length;
+			contentLength += range.getLength();
+		}
+
+		return contentLength;
+	}
+
+	// ----- private methods -----
+	private static List<Range> coalesce(final List<Range> ranges) {
+
+		final List<Range> result = new LinkedList<>();
+		Range current            = null;
+
+		ranges.sort((a, b) -> Long.compare(a.getStart(), b.getStart()));
+
+		for (final Range range : ranges) {
+
+			if (current != null && range.getStart() <= current.getEnd() + 1) {
+
+				current = new Range(current.getStart(), Math.max(current.getEnd(), range.getEnd()));
+
+			} else {
+
+				if (current != null) {
+					result.add(current);
+				}
+
+				current = range;
+			}
+		}
+
+		result.add(current);
+
+		return result;
+	}
+
+	private static byte[] getPartHeader(final Range range, final long length, final String contentType, final String boundary) {
+
+		final StringBuilder buf = new StringBuilder();
+
+		buf.append("\r\n--").append(boundary).append("\r\n");
+		buf.append("Content-Type: ").append(contentType).append("\r\n");
+		buf.append("Content-Range: ").append(range.getContentRange(length)).append("\r\n\r\n");
+
+		return buf.toString().getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	private static byte[] getClosingBoundary(final String boundary) {
+		return ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	// ----- nested classes -----
+	public static class Range {
+
+		private long start = 0L;
+		private long end   = 0L;
+
+		public Range(final long start, final long end) {
+
+			this.start = start;
+			this.end   = end;
+		}
+
+		public long getStart() {
+			return start;
+		}
+
+		public long getEnd() {
+			return end;
+		}
+
+		public long getLength() {
+			return end - start + 1;
+		}
+
+		public String getContentRange(final long length) {
+			return "bytes " + start + "-" + end + "/" + length;
+		}
+	}
+}
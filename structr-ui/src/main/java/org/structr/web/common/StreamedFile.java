@@ -0,0 +1,179 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import org.structr.web.entity.FileBase;
+
+/**
+ * Copies an input stream to the file store in a single pass, computing
+ * the CRC32 checksum and the size on the way and keeping the first bytes
+ * of the content for content type detection. Only a fixed-size buffer is
+ * held in memory, regardless of the size of the stream.
+ */
+public class StreamedFile {
+
+	private static final int BUFFER_SIZE = 65536;
+	private static final int HEADER_SIZE = 4096;
+
+	private File fileOnDisk = null;
+	private byte[] header   = null;
+	private String uuid     = null;
+	private long checksum   = 0L;
+	private long size       = 0L;
+
+	private StreamedFile(final String uuid, final File fileOnDisk) {
+
+		this.uuid       = uuid;
+		this.fileOnDisk = fileOnDisk;
+	}
+
+	/**
+	 * Writes the given stream to the location of a new file node with a
+	 * freshly generated UUID, see {@link #getUuid()}.
+	 *
+	 * @param source
+	 * @return the streamed file
+	 * @throws IOException
+	 */
+	public static StreamedFile write(final InputStream source) throws IOException {
+
+		final String uuid = UUID.randomUUID().toString().replaceAll("[\\-]+", "");
+
+		return write(source, uuid, new File(FileHelper.getFilePath(FileBase.getDirectoryPath(uuid), "/", uuid)));
+	}
+
+	/**
+	 * Writes the given stream to the given file on disk, replacing its
+	 * content. The stream is copied to a temporary file in the same
+	 * directory first, which is moved over the target only after the
+	 * copy succeeded, so a failed write leaves the existing content
+	 * untouched.
+	 *
+	 * @param source
+	 * @param uuid
+	 * @param fileOnDisk
+	 * @return the streamed file
+	 * @throws IOException
+	 */
+	public static StreamedFile write(final InputStream source, final String uuid, final File fileOnDisk) throws IOException {
+
+		final StreamedFile streamedFile = new StreamedFile(uuid, fileOnDisk);
+		final File parent               = fileOnDisk.getAbsoluteFile().getParentFile();
+
+		parent.mkdirs();
+
+		final Path target = fileOnDisk.toPath();
+		final Path temp   = parent.toPath().resolve("." + fileOnDisk.getName() + "." + UUID.randomUUID().toString() + ".tmp");
+		boolean success   = false;
+
+		try {
+
+			// not Files.createTempFile, which restricts the file to its owner (0600) on POSIX systems
+			try (final OutputStream out = Files.newOutputStream(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+
+				streamedFile.copy(source, out);
+			}
+
+			try {
+
+				Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+			} catch (AtomicMoveNotSupportedException amnsex) {
+
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+
+			success = true;
+
+		} finally {
+
+			// don't leave partial uploads behind
+			if (!success) {
+				Files.deleteIfExists(temp);
+			}
+		}
+
+		return streamedFile;
+	}
+
+	public String getUuid() {
+		return uuid;
+	}
+
+	public File getFileOnDisk() {
+		return fileOnDisk;
+	}
+
+	public byte[] getHeader() {
+		return header;
+	}
+
+	public long getChecksum() {
+		return checksum;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public void delete() {
+		fileOnDisk.delete();
+	}
+
+	// ----- private methods -----
+	private void copy(final InputStream source, final OutputStream out) throws IOException {
+
+		final byte[] buffer     = new byte[BUFFER_SIZE];
+		final byte[] headBuffer = new byte[HEADER_SIZE];
+		final CRC32 crc         = new CRC32();
+		int headLength          = 0;
+		int count               = 0;
+
+		while ((count = source.read(buffer)) != -1) {
+
+			if (headLength < HEADER_SIZE) {
+
+				final int length = Math.min(count, HEADER_SIZE - headLength);
+
+				System.arraycopy(buffer, 0, headBuffer, headLength, length);
+				headLength += length;
+			}
+
+			crc.update(buffer, 0, count);
+			out.write(buffer, 0, count);
+
+			size += count;
+		}
+
+		checksum = crc.getValue();
+		header   = Arrays.copyOf(headBuffer, headLength);
+	}
+}
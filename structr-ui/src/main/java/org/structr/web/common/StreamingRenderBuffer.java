@@ -0,0 +1,233 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded render buffer that streams its content to a non-blocking
+ * servlet output stream.
+ *
+ * The rendering thread is suspended when the buffer holds more than
+ * the configured number of bytes and resumed when the client has
+ * received enough data. Output is written whenever the stream is ready,
+ * either by the rendering thread or by the container calling
+ * onWritePossible(), so no thread waits for output to become
+ * available.
+ */
+public class StreamingRenderBuffer extends AsyncBuffer implements WriteListener {
+
+	private static final Logger logger      = LoggerFactory.getLogger(StreamingRenderBuffer.class.getName());
+	private final Queue<byte[]> chunks      = new ArrayDeque<>();
+	private final ReentrantLock lock        = new ReentrantLock();
+	private final Condition notFull         = lock.newCondition();
+	private final Object writeLock          = new Object();
+	private ServletOutputStream out         = null;
+	private AsyncContext async              = null;
+	private volatile boolean finished       = false;
+	private volatile boolean aborted        = false;
+	private boolean completed               = false;
+	private int flushThreshold              = 0;
+	private int capacity                    = 0;
+	private int size                        = 0;
+
+	public StreamingRenderBuffer(final AsyncContext async, final ServletOutputStream out, final int capacity) {
+
+		this.async          = async;
+		this.out            = out;
+		this.capacity       = Math.max(1, capacity);
+		this.flushThreshold = Math.min(8192, this.capacity / 2);
+	}
+
+	@Override
+	public AsyncBuffer append(final String s) {
+
+		if (s == null || aborted) {
+			return this;
+		}
+
+		final byte[] data = s.getBytes(StandardCharsets.UTF_8);
+		boolean flush     = false;
+
+		lock.lock();
+		try {
+
+			// suspend renderer until the client has consumed enough data
+			while (size >= capacity && !aborted) {
+
+				notFull.await(1, TimeUnit.SECONDS);
+			}
+
+			if (!aborted) {
+
+				chunks.add(data);
+				size += data.length;
+
+				flush = size >= flushThreshold;
+			}
+
+		} catch (InterruptedException iex) {
+
+			Thread.currentThread().interrupt();
+			abort();
+
+		} finally {
+
+			lock.unlock();
+		}
+
+		if (flush) {
+			drain();
+		}
+
+		return this;
+	}
+
+	/**
+	 * Marks the end of the output and writes the remaining content.
+	 */
+	public void finish() {
+
+		finished = true;
+		drain();
+	}
+
+	/**
+	 * Discards all pending output and releases a waiting renderer.
+	 */
+	public void abort() {
+
+		aborted = true;
+
+		lock.lock();
+		try {
+
+			chunks.clear();
+			size = 0;
+
+			notFull.signalAll();
+
+		} finally {
+
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Discards all pending output and completes the asynchronous request
+	 * immediately, regardless of the state of the output stream.
+	 */
+	public void complete() {
+
+		abort();
+
+		synchronized (writeLock) {
+
+			if (!completed) {
+
+				completed = true;
+				async.complete();
+			}
+		}
+	}
+
+	public boolean isAborted() {
+		return aborted;
+	}
+
+	// ----- interface WriteListener -----
+	@Override
+	public void onWritePossible() throws IOException {
+		drain();
+	}
+
+	@Override
+	public void onError(final Throwable t) {
+
+		logger.warn("Error while streaming page: {}", t.getMessage());
+		abort();
+	}
+
+	// ----- private methods -----
+	private void drain() {
+
+		synchronized (writeLock) {
+
+			try {
+
+				while (!completed && out.isReady()) {
+
+					final byte[] data = poll();
+					if (data != null) {
+
+						out.write(data);
+
+					} else {
+
+						if (finished || aborted) {
+
+							completed = true;
+							async.complete();
+						}
+
+						// container will not call onWritePossible() again
+						// before the renderer has appended more data
+						break;
+					}
+				}
+
+			} catch (IOException | IllegalStateException ex) {
+
+				logger.warn("Unable to stream page: {}", ex.getMessage());
+				abort();
+			}
+		}
+	}
+
+	private byte[] poll() {
+
+		lock.lock();
+		try {
+
+			final byte[] data = chunks.poll();
+			if (data != null) {
+
+				size -= data.length;
+				notFull.signalAll();
+			}
+
+			return data;
+
+		} finally {
+
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,243 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
+import org.structr.core.app.App;
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.Tx;
+import org.structr.web.entity.Image;
+
+/**
+ * Creates image thumbnails in the background.
+ *
+ * Thumbnail properties ask this class for a thumbnail instead of creating
+ * it in the request that reads the property. Missing or outdated thumbnails
+ * are queued for a bounded pool of worker threads, and the caller gets the
+ * existing (possibly outdated) thumbnail right away, or null if there is
+ * none yet. Requests for the same image, size and crop mode are coalesced
+ * while the thumbnail is queued or being created.
+ */
+public class ThumbnailGenerator {
+
+	private static final Logger logger                   = LoggerFactory.getLogger(ThumbnailGenerator.class.getName());
+	private static final ThumbnailGenerator instance     = new ThumbnailGenerator();
+
+	private final Set<String> pending                    = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger threadCount              = new AtomicInteger();
+	private final LongAdder requested                    = new LongAdder();
+	private final LongAdder coalesced                    = new LongAdder();
+	private final LongAdder rejected                     = new LongAdder();
+	private final LongAdder processed                    = new LongAdder();
+	private final LongAdder failed                       = new LongAdder();
+	private final ThreadPoolExecutor threadPool;
+
+	private ThumbnailGenerator() {
+
+		threadPool = new ThreadPoolExecutor(
+			Math.max(1, Settings.ThumbnailThreads.getValue()),
+			Math.max(1, Settings.ThumbnailThreads.getValue()),
+			60L, TimeUnit.SECONDS,
+			new ArrayBlockingQueue<>(Math.max(1, Settings.ThumbnailQueueSize.getValue())),
+			(Runnable r) -> {
+
+				final Thread thread = new Thread(r, "ThumbnailGenerator-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+
+				return thread;
+			}
+		);
+
+		// let idle worker threads terminate
+		threadPool.allowCoreThreadTimeOut(true);
+	}
+
+	public static ThumbnailGenerator getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Returns the up-to-date thumbnail of the given size, or queues its
+	 * creation and returns the outdated thumbnail or null.
+	 *
+	 * @param image
+	 * @param maxWidth
+	 * @param maxHeight
+	 * @param cropToFit
+	 *
+	 * @return thumbnail or null
+	 */
+	public Image getThumbnail(final Image image, final int maxWidth, final int maxHeight, final boolean cropToFit) {
+
+		if (!image.isScalable()) {
+			return image;
+		}
+
+		final Image thumbnail = image.getExistingThumbnail(maxWidth, maxHeight, true);
+		if (thumbnail != null) {
+
+			return thumbnail;
+		}
+
+		enqueue(image.getUuid(), maxWidth, maxHeight, cropToFit);
+
+		return image.getExistingThumbnail(maxWidth, maxHeight, false);
+	}
+
+	/**
+	 * Queues the creation of a thumbnail, unless it is already queued.
+	 *
+	 * @param uuid
+	 * @param maxWidth
+	 * @param maxHeight
+	 * @param cropToFit
+	 *
+	 * @return false if the queue is full
+	 */
+	public boolean enqueue(final String uuid, final int maxWidth, final int maxHeight, final boolean cropToFit) {
+
+		final String key = getKey(uuid, maxWidth, maxHeight, cropToFit);
+
+		requested.increment();
+
+		if (!pending.add(key)) {
+
+			coalesced.increment();
+			return true;
+		}
+
+		try {
+
+			threadPool.execute(() -> {
+
+				try {
+
+					create(uuid, maxWidth, maxHeight, cropToFit);
+
+				} finally {
+
+					pending.remove(key);
+				}
+			});
+
+			return true;
+
+		} catch (RejectedExecutionException rex) {
+
+			pending.remove(key);
+			rejected.increment();
+
+			logger.debug("Thumbnail queue is full, not creating thumbnail for {}", uuid);
+		}
+
+		return false;
+	}
+
+	/**
+	 * Creates or updates a thumbnail in the calling thread, unless it is
+	 * already being created by another thread.
+	 *
+	 * @param uuid
+	 * @param maxWidth
+	 * @param maxHeight
+	 * @param cropToFit
+	 *
+	 * @return false if the thumbnail is already being created
+	 */
+	public boolean createNow(final String uuid, final int maxWidth, final int maxHeight, final boolean cropToFit) {
+
+		final String key = getKey(uuid, maxWidth, maxHeight, cropToFit);
+
+		if (!pending.add(key)) {
+
+			coalesced.increment();
+			return false;
+		}
+
+		try {
+
+			create(uuid, maxWidth, maxHeight, cropToFit);
+
+		} finally {
+
+			pending.remove(key);
+		}
+
+		return true;
+	}
+
+	public Map<String, Object> getStatistics() {
+
+		final Map<String, Object> stats = new LinkedHashMap<>();
+
+		stats.put("threads",   threadPool.getMaximumPoolSize());
+		stats.put("active",    threadPool.getActiveCount());
+		stats.put("queued",    threadPool.getQueue().size());
+		stats.put("pending",   pending.size());
+		stats.put("requested", requested.sum());
+		stats.put("coalesced", coalesced.sum());
+		stats.put("rejected",  rejected.sum());
+		stats.put("processed", processed.sum());
+		stats.put("failed",    failed.sum());
+
+		return stats;
+	}
+
+	// ----- private methods -----
+	private void create(final String uuid, final int maxWidth, final int maxHeight, final boolean cropToFit) {
+
+		final App app = StructrApp.getInstance();
+
+		try (final Tx tx = app.tx()) {
+
+			final Image image = app.get(Image.class, uuid);
+			if (image != null) {
+
+				// creates the thumbnail only if it is still missing or outdated
+				image.getScaledImage(maxWidth, maxHeight, cropToFit);
+			}
+
+			tx.success();
+
+			processed.increment();
+
+		} catch (Throwable t) {
+
+			failed.increment();
+
+			logger.warn("Unable to create thumbnail for {}: {}", uuid, t.getMessage());
+		}
+	}
+
+	private String getKey(final String uuid, final int maxWidth, final int maxHeight, final boolean cropToFit) {
+		return uuid + "_" + maxWidth + "x" + maxHeight + (cropToFit ? "_crop" : "");
+	}
+}
@@ -69,6 +69,7 @@ import org.structr.core.property.StartNodes;
 import org.structr.core.property.StringProperty;
 import org.structr.files.cmis.config.StructrFileActions;
 import org.structr.schema.action.JavaScriptSource;
+import org.structr.web.common.ContentStore;
 import org.structr.web.common.FileHelper;
 import org.structr.web.common.ImageHelper;
 import org.structr.web.entity.relation.Folders;
@@ -88,6 +89,7 @@ public class FileBase extends AbstractFile implements Indexable, Linkable, JavaS
 	public static final Property<Long> size                                      = new LongProperty("size").indexed().systemInternal();
 	public static final Property<String> url                                     = new StringProperty("url");
 	public static final Property<Long> checksum                                  = new LongProperty("checksum").indexed().unvalidated().systemInternal();
+	public static final Property<String> contentHash                             = new StringProperty("contentHash").indexed().unvalidated().systemInternal();
 	public static final Property<Integer> cacheForSeconds                        = new IntProperty("cacheForSeconds").cmis();
 	public static final Property<Integer> version                                = new IntProperty("version").indexed().systemInternal();
 	public static final Property<String> base64Data                              = new FileDataProperty<>("base64Data");
@@ -163,6 +165,11 @@ public class FileBase extends AbstractFile implements Indexable, Linkable, JavaS
 		final String uuid = getUuid();
 		final String filePath = getDirectoryPath(uuid) + "/" + uuid;
 
+		// content that is already in the content store is referenced directly
+		if (ContentStore.isBlobPath(getRelativeFilePath())) {
+			return;
+		}
+
 		try {
 			unlockSystemPropertiesOnce();
 			setProperties(securityContext, new PropertyMap(relativeFilePath, filePath));
@@ -181,7 +188,12 @@ public class FileBase extends AbstractFile implements Indexable, Linkable, JavaS
 		try {
 			final String path = getRelativeFilePath();
 
-			if (path != null) {
+			if (ContentStore.isBlobPath(path)) {
+
+				// shared content is removed when the last reference is gone
+				ContentStore.getInstance().release(path);
+
+			} else if (path != null) {
 
 				filePath = FileHelper.getFilePath(path);
 
@@ -417,6 +429,10 @@ public class FileBase extends AbstractFile implements Indexable, Linkable, JavaS
 
 	public FileOutputStream getOutputStream(final boolean notifyIndexerAfterClosing, final boolean append) {
 
+		if (!detachFromContentStore(append)) {
+			return null;
+		}
+
 		final String path = getRelativeFilePath();
 		if (path != null) {
 
@@ -463,6 +479,8 @@ public class FileBase extends AbstractFile implements Indexable, Linkable, JavaS
 								notifyUploadCompletion();
 							}
 
+							ContentStore.getInstance().store(FileBase.this);
+
 							tx.success();
 
 						} catch (Throwable ex) {
@@ -499,6 +517,24 @@ public class FileBase extends AbstractFile implements Indexable, Linkable, JavaS
 		return null;
 	}
 
+	/**
+	 * Returns the file on disk for direct modification. If the content of
+	 * this file is shared in the content store, it is replaced by a private
+	 * copy first.
+	 *
+	 * @param copyContent whether the private copy needs the current content
+	 * @return the file on disk, or null if the file could not be detached
+	 */
+	public java.io.File getWritableFileOnDisk(final boolean copyContent) {
+
+		if (detachFromContentStore(copyContent)) {
+
+			return getFileOnDisk();
+		}
+
+		return null;
+	}
+
 	public Path getPathOnDisk() {
 
 		final String path = getRelativeFilePath();
@@ -511,6 +547,26 @@ public class FileBase extends AbstractFile implements Indexable, Linkable, JavaS
 	}
 
 	// ----- private methods -----
+	private boolean detachFromContentStore(final boolean copyContent) {
+
+		if (ContentStore.isBlobPath(getRelativeFilePath())) {
+
+			try (final Tx tx = StructrApp.getInstance().tx()) {
+
+				ContentStore.getInstance().detach(this, copyContent);
+
+				tx.success();
+
+			} catch (FrameworkException | IOException ex) {
+
+				logger.error("Unable to detach {} from content store: {}", getUuid(), ex.getMessage());
+				return false;
+			}
+		}
+
+		return true;
+	}
+
 	/**
 	 * Returns the Folder entity for the current working directory,
 	 * or the user's home directory as a fallback.
@@ -265,6 +265,12 @@ public class Image extends org.structr.dynamic.File {
 		final Long currentChecksum                        = originalImage.getProperty(Image.checksum);
 		final Long newChecksum;
 
+		// Return self if SVG image
+		if (!isScalable()) {
+
+			return this;
+		}
+
 		if (currentChecksum == null || currentChecksum == 0) {
 
 			newChecksum = FileHelper.getChecksum(originalImage);
@@ -274,44 +280,41 @@ public class Image extends org.structr.dynamic.File {
 			newChecksum = currentChecksum;
 		}
 
-		// Return self if SVG image
-		final String _contentType = getProperty(Image.contentType);
-		if (_contentType != null && (_contentType.startsWith("image/svg") || (_contentType.startsWith("image/") && _contentType.endsWith("icon")))) {
-
-			return this;
-		}
-
 		if (origWidth != null && origHeight != null && thumbnailRelationships != null) {
 
 			for (final Thumbnails r : thumbnailRelationships) {
 
-				final Integer w = r.getProperty(Image.width);
-				final Integer h = r.getProperty(Image.height);
+				if (matchesSize(r, origWidth, origHeight, maxWidth, maxHeight)) {
 
-				if (w != null && h != null) {
+					thumbnail = r.getTargetNode();
 
-					// orginal image is equal or smaller than requested size
-					if (((w == maxWidth) && (h <= maxHeight)) || ((w <= maxWidth) && (h == maxHeight)) || ((origWidth <= w) && (origHeight <= h))) {
+					// Use thumbnail only if checksum of original image matches with stored checksum
+					final Long storedChecksum = r.getProperty(Image.checksum);
 
-						thumbnail = r.getTargetNode();
+					if (storedChecksum != null && storedChecksum.equals(newChecksum)) {
 
-						// Use thumbnail only if checksum of original image matches with stored checksum
-						final Long storedChecksum = r.getProperty(Image.checksum);
+						if (!newChecksum.equals(currentChecksum)) {
 
-						if (storedChecksum != null && storedChecksum.equals(newChecksum)) {
+							// store checksum so that it does not need to be computed again
+							try {
 
-							return thumbnail;
+								originalImage.unlockSystemPropertiesOnce();
+								originalImage.setProperty(File.checksum, newChecksum);
 
-						} else {
+							} catch (FrameworkException fex) {
 
-							oldThumbnails.add(thumbnail);
+								logger.warn("Unable to store checksum of " + getUuid(), fex);
+							}
 						}
-					}
 
-				}
+						return thumbnail;
 
-			}
+					} else {
 
+						oldThumbnails.add(thumbnail);
+					}
+				}
+			}
 		}
 
 		if (originalImage.getProperty(Image.isCreatingThumb).equals(Boolean.TRUE)) {
@@ -404,6 +407,52 @@ public class Image extends org.structr.dynamic.File {
 		return thumbnail;
 	}
 
+	/**
+	 * Returns the existing thumbnail of the given size without creating or
+	 * updating it, and without computing the checksum of this image.
+	 *
+	 * @param maxWidth
+	 * @param maxHeight
+	 * @param upToDateOnly if true, only return a thumbnail that was created from the current content of this image
+	 *
+	 * @return thumbnail or null
+	 */
+	public Image getExistingThumbnail(final int maxWidth, final int maxHeight, final boolean upToDateOnly) {
+
+		final Integer origWidth  = getWidth();
+		final Integer origHeight = getHeight();
+		final Long checksum      = getProperty(Image.checksum);
+
+		if (origWidth != null && origHeight != null) {
+
+			for (final Thumbnails r : getThumbnailRelationships()) {
+
+				if (matchesSize(r, origWidth, origHeight, maxWidth, maxHeight)) {
+
+					if (!upToDateOnly || (checksum != null && checksum.equals(r.getProperty(Image.checksum)))) {
+
+						return r.getTargetNode();
+					}
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Return false if this image is a vector image or an icon, which are used
+	 * as their own thumbnails.
+	 *
+	 * @return true if thumbnails can be created for this image
+	 */
+	public boolean isScalable() {
+
+		final String _contentType = getProperty(Image.contentType);
+
+		return !(_contentType != null && (_contentType.startsWith("image/svg") || (_contentType.startsWith("image/") && _contentType.endsWith("icon"))));
+	}
+
 	/**
 	 * Return true if this image is a thumbnail image.
 	 *
@@ -426,4 +475,19 @@ public class Image extends org.structr.dynamic.File {
 
 		return StringUtils.stripBack(getName(),  "_thumb_" + tnWidth + "x" + tnHeight);
 	}
+
+	// ----- private methods -----
+	private boolean matchesSize(final Thumbnails r, final int origWidth, final int origHeight, final int maxWidth, final int maxHeight) {
+
+		final Integer w = r.getProperty(Image.width);
+		final Integer h = r.getProperty(Image.height);
+
+		if (w != null && h != null) {
+
+			// orginal image is equal or smaller than requested size
+			return ((w == maxWidth) && (h <= maxHeight)) || ((w <= maxWidth) && (h == maxHeight)) || ((origWidth <= w) && (origHeight <= h));
+		}
+
+		return false;
+	}
 }
@@ -26,6 +26,7 @@ import org.structr.core.property.PropertyMap;
 import org.structr.core.property.StringProperty;
 import org.structr.schema.action.ActionContext;
 import org.structr.schema.action.Function;
+import org.structr.web.common.ContentStore;
 import org.structr.web.common.FileHelper;
 import org.structr.web.entity.FileBase;
 import static org.structr.web.entity.FileBase.checksum;
@@ -60,19 +61,29 @@ public class CopyFileContentsFunction extends Function<Object, Object> {
 
 					}
 
-					java.io.File fileToBeReplaced = nodeToBeReplaced.getFileOnDisk();
+					final PropertyMap changedProperties = new PropertyMap();
 
-					if (!fileToBeReplaced.exists()) {
+					// with the content store, only the reference to the content is copied
+					if (ContentStore.isEnabled() && ContentStore.getInstance().share(nodeToCopy, nodeToBeReplaced)) {
 
-						// Call afterCreation method to ensure that the file is properly initialized.
-						nodeToBeReplaced.afterCreation(nodeToBeReplaced.getSecurityContext());
+						changedProperties.put(checksum, nodeToCopy.getChecksum());
 
-					}
+					} else {
 
-					Files.copy(fileToCopy, fileToBeReplaced);
+						java.io.File fileToBeReplaced = nodeToBeReplaced.getWritableFileOnDisk(false);
+
+						if (!fileToBeReplaced.exists()) {
+
+							// Call afterCreation method to ensure that the file is properly initialized.
+							nodeToBeReplaced.afterCreation(nodeToBeReplaced.getSecurityContext());
+
+						}
+
+						Files.copy(fileToCopy, fileToBeReplaced);
+
+						changedProperties.put(checksum, FileHelper.getChecksum(fileToBeReplaced));
+					}
 
-					final PropertyMap changedProperties = new PropertyMap();
-					changedProperties.put(checksum, FileHelper.getChecksum(fileToBeReplaced));
 					changedProperties.put(version, 0);
 					changedProperties.put(new StringProperty("contentType"), nodeToCopy.getProperty(new StringProperty("contentType")));
 
@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.maintenance;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.structr.api.config.Settings;
+import org.structr.common.PropertyView;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.app.App;
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.MaintenanceCommand;
+import org.structr.core.graph.NodeServiceCommand;
+import org.structr.core.graph.Tx;
+import org.structr.core.property.PropertyKey;
+import org.structr.rest.resource.MaintenanceParameterResource;
+import org.structr.web.common.ThumbnailGenerator;
+import org.structr.web.entity.Image;
+import org.structr.web.property.ThumbnailProperty;
+
+/**
+ * Creates all missing or outdated thumbnails of all images of a given type,
+ * using a configurable number of threads.
+ */
+public class BulkCreateThumbnailsCommand extends NodeServiceCommand implements MaintenanceCommand {
+
+	static {
+
+		MaintenanceParameterResource.registerMaintenanceCommand("createThumbnails", BulkCreateThumbnailsCommand.class);
+	}
+
+	private Map<String, Object> result = null;
+
+	@Override
+	public void execute(final Map<String, Object> attributes) throws FrameworkException {
+
+		final String typeName = attributes.containsKey("type") ? attributes.get("type").toString() : Image.class.getSimpleName();
+		final int threads     = attributes.containsKey("threads") ? Integer.parseInt(attributes.get("threads").toString()) : Settings.ThumbnailThreads.getValue();
+		final Class type      = StructrApp.getConfiguration().getNodeEntityClass(typeName);
+
+		if (type == null || !Image.class.isAssignableFrom(type)) {
+			throw new FrameworkException(422, "Type " + typeName + " is not an image type.");
+		}
+
+		final ThumbnailGenerator generator                = ThumbnailGenerator.getInstance();
+		final Map<Class, List<ThumbnailProperty>> formats = new HashMap<>();
+		final List<Job> jobs                              = new ArrayList<>();
+		final LongAdder created                           = new LongAdder();
+		final LongAdder skipped                           = new LongAdder();
+		final long t0                                     = System.currentTimeMillis();
+		final App app                                     = StructrApp.getInstance();
+		int images                                        = 0;
+
+		try (final Tx tx = app.tx()) {
+
+			for (final Image image : (List<Image>)app.nodeQuery(type).and(Image.isThumbnail, false).getAsList()) {
+
+				if (image.isScalable()) {
+
+					for (final ThumbnailProperty format : getFormats(formats, image.getClass())) {
+						jobs.add(new Job(image.getUuid(), format));
+					}
+
+					images++;
+				}
+			}
+
+			tx.success();
+		}
+
+		info("Creating {} thumbnails for {} images of type {} with {} threads", jobs.size(), images, typeName, threads);
+
+		// the bounded queue makes the submitting thread help out when all workers are busy
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(threads * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+		int count                         = 0;
+
+		for (final Job job : jobs) {
+
+			executor.execute(() -> {
+
+				if (generator.createNow(job.uuid, job.format.getWidth(), job.format.getHeight(), job.format.getCrop())) {
+
+					created.increment();
+
+				} else {
+
+					// already being created by the background generator
+					skipped.increment();
+				}
+			});
+
+			if (++count % 1000 == 0) {
+				info("Processed {} of {} thumbnails", count, jobs.size());
+			}
+		}
+
+		executor.shutdown();
+
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+		} catch (InterruptedException iex) {
+			warn("Interrupted while waiting for thumbnails to be created.");
+		}
+
+		result = new LinkedHashMap<>();
+		result.put("images",     images);
+		result.put("thumbnails", jobs.size());
+		result.put("processed",  created.sum());
+		result.put("skipped",    skipped.sum());
+		result.put("duration",   System.currentTimeMillis() - t0);
+		result.put("generator",  generator.getStatistics());
+
+		info("Done with creating thumbnails for {} images in {} ms", images, System.currentTimeMillis() - t0);
+	}
+
+	@Override
+	public boolean requiresEnclosingTransaction() {
+		return false;
+	}
+
+	@Override
+	public boolean requiresFlushingOfCaches() {
+		return false;
+	}
+
+	@Override
+	public Object getCommandResult() {
+		return result;
+	}
+
+	// ----- private methods -----
+	private List<ThumbnailProperty> getFormats(final Map<Class, List<ThumbnailProperty>> formats, final Class type) {
+
+		List<ThumbnailProperty> list = formats.get(type);
+		if (list == null) {
+
+			list = new LinkedList<>();
+
+			for (final PropertyKey key : StructrApp.getConfiguration().getPropertySet(type, PropertyView.All)) {
+
+				if (key instanceof ThumbnailProperty) {
+					list.add((ThumbnailProperty)key);
+				}
+			}
+
+			formats.put(type, list);
+		}
+
+		return list;
+	}
+
+	// ----- nested classes -----
+	private static class Job {
+
+		private final String uuid;
+		private final ThumbnailProperty format;
+
+		public Job(final String uuid, final ThumbnailProperty format) {
+
+			this.uuid   = uuid;
+			this.format = format;
+		}
+	}
+}
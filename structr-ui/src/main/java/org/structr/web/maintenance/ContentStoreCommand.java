@@ -0,0 +1,147 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.maintenance;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.app.App;
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.MaintenanceCommand;
+import org.structr.core.graph.NodeServiceCommand;
+import org.structr.core.graph.Tx;
+import org.structr.rest.resource.MaintenanceParameterResource;
+import org.structr.web.common.ContentStore;
+import org.structr.web.entity.FileBase;
+
+/**
+ * Maintenance command for the content store. Mode "store" moves the
+ * content of all existing files into the content store, mode "gc" removes
+ * all blobs that are no longer referenced.
+ */
+public class ContentStoreCommand extends NodeServiceCommand implements MaintenanceCommand {
+
+	static {
+
+		MaintenanceParameterResource.registerMaintenanceCommand("contentStore", ContentStoreCommand.class);
+	}
+
+	private static final int BATCH_SIZE = 100;
+
+	private Map<String, Object> result = null;
+
+	@Override
+	public void execute(final Map<String, Object> attributes) throws FrameworkException {
+
+		final String mode        = attributes.containsKey("mode") ? attributes.get("mode").toString() : "store";
+		final ContentStore store = ContentStore.getInstance();
+		final long t0            = System.currentTimeMillis();
+
+		if (!ContentStore.isEnabled()) {
+			throw new FrameworkException(422, "Content store is not enabled.");
+		}
+
+		result = new LinkedHashMap<>();
+
+		switch (mode) {
+
+			case "store":
+				result.put("stored", storeAll(store));
+				break;
+
+			case "gc":
+				try {
+					result.put("deleted", store.collectAllGarbage());
+
+				} catch (IOException ioex) {
+					throw new FrameworkException(500, "Unable to collect unreferenced content: " + ioex.getMessage());
+				}
+				break;
+
+			default:
+				throw new FrameworkException(422, "Unknown mode " + mode + ", expected store or gc.");
+		}
+
+		result.put("duration", System.currentTimeMillis() - t0);
+
+		info("Done with content store command {} in {} ms", mode, System.currentTimeMillis() - t0);
+	}
+
+	@Override
+	public boolean requiresEnclosingTransaction() {
+		return false;
+	}
+
+	@Override
+	public boolean requiresFlushingOfCaches() {
+		return false;
+	}
+
+	@Override
+	public Object getCommandResult() {
+		return result;
+	}
+
+	// ----- private methods -----
+	private int storeAll(final ContentStore store) throws FrameworkException {
+
+		final App app          = StructrApp.getInstance();
+		final List<String> ids = new LinkedList<>();
+		int count              = 0;
+
+		try (final Tx tx = app.tx()) {
+
+			for (final FileBase file : app.nodeQuery(FileBase.class).and(FileBase.contentHash, null).getAsList()) {
+				ids.add(file.getUuid());
+			}
+
+			tx.success();
+		}
+
+		info("Storing content of {} files", ids.size());
+
+		while (!ids.isEmpty()) {
+
+			try (final Tx tx = app.tx(false, false, false)) {
+
+				for (int i = 0; i < BATCH_SIZE && !ids.isEmpty(); i++) {
+
+					final FileBase file = app.get(FileBase.class, ids.remove(0));
+					if (file != null) {
+
+						store.store(file);
+
+						if (ContentStore.isBlobPath(file.getRelativeFilePath())) {
+							count++;
+						}
+					}
+				}
+
+				tx.success();
+			}
+
+			info("{} files stored, {} remaining", count, ids.size());
+		}
+
+		return count;
+	}
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.maintenance;
+
+import java.util.Map;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.graph.MaintenanceCommand;
+import org.structr.core.graph.NodeServiceCommand;
+import org.structr.rest.resource.MaintenanceParameterResource;
+import org.structr.web.servlet.HtmlServlet;
+
+/**
+ * Returns the statistics of the asynchronous page render executor.
+ */
+public class RenderStatisticsCommand extends NodeServiceCommand implements MaintenanceCommand {
+
+	static {
+
+		MaintenanceParameterResource.registerMaintenanceCommand("renderStatistics", RenderStatisticsCommand.class);
+	}
+
+	private Map<String, Object> statistics = null;
+
+	@Override
+	public void execute(final Map<String, Object> attributes) throws FrameworkException {
+		statistics = HtmlServlet.getRenderStatistics();
+	}
+
+	@Override
+	public boolean requiresEnclosingTransaction() {
+		return false;
+	}
+
+	@Override
+	public boolean requiresFlushingOfCaches() {
+		return false;
+	}
+
+	@Override
+	public Object getCommandResult() {
+		return statistics;
+	}
+}
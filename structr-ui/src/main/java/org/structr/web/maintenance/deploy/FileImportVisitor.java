@@ -18,7 +18,6 @@
  */
 package org.structr.web.maintenance.deploy;
 
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
@@ -156,29 +155,25 @@ public class FileImportVisitor implements FileVisitor<Path> {
 
 				logger.info("Importing {}...", fullPath);
 
-				// close input stream
-				try (final FileInputStream fis = new FileInputStream(path.toFile())) {
+				// create file in folder structure, content that is already in the content store is not copied
+				file                     = FileHelper.createFile(securityContext, path, null, File.class, fileName);
+				final String contentType = file.getContentType();
 
-					// create file in folder structure
-					file                     = FileHelper.createFile(securityContext, fis, null, File.class, fileName);
-					final String contentType = file.getContentType();
+				final PropertyMap changedProperties = new PropertyMap();
 
-					final PropertyMap changedProperties = new PropertyMap();
+				// modify file type according to content
+				if (StringUtils.startsWith(contentType, "image") || ImageHelper.isImageType(file.getProperty(name))) {
 
-					// modify file type according to content
-					if (StringUtils.startsWith(contentType, "image") || ImageHelper.isImageType(file.getProperty(name))) {
-
-						changedProperties.put(NodeInterface.type, Image.class.getSimpleName());
-					}
+					changedProperties.put(NodeInterface.type, Image.class.getSimpleName());
+				}
 
-					// move file to folder
-					file.setProperty(FileBase.parent, parent);
+				// move file to folder
+				file.setProperty(FileBase.parent, parent);
 
-					file.unlockSystemPropertiesOnce();
-					file.setProperties(securityContext, changedProperties);
+				file.unlockSystemPropertiesOnce();
+				file.setProperties(securityContext, changedProperties);
 
-					newFileUuid = file.getUuid();
-				}
+				newFileUuid = file.getUuid();
 			}
 
 			// set properties from files.json
@@ -20,11 +20,13 @@ package org.structr.web.property;
 
 import org.apache.commons.lang3.StringUtils;
 import org.structr.api.Predicate;
+import org.structr.api.config.Settings;
 import org.structr.api.search.SortType;
 import org.structr.common.SecurityContext;
 import org.structr.core.GraphObject;
 import org.structr.core.property.AbstractReadOnlyProperty;
 import org.structr.core.property.Property;
+import org.structr.web.common.ThumbnailGenerator;
 import org.structr.web.entity.Image;
 
 //~--- classes ----------------------------------------------------------------
@@ -61,6 +63,12 @@ public class ThumbnailProperty extends AbstractReadOnlyProperty<Image> {
 			return null;
 		}
 
+		if (Settings.ThumbnailsAsync.getValue()) {
+
+			// don't create thumbnails in the reading transaction
+			return ThumbnailGenerator.getInstance().getThumbnail((Image)obj, width, height, crop);
+		}
+
 		return ((Image)obj).getScaledImage(width, height, crop);
 	}
 
@@ -19,8 +19,9 @@
 package org.structr.web.servlet;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -35,18 +36,18 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
 import java.util.TimeZone;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
-import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -58,7 +59,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.api.config.Settings;
 import org.structr.common.AccessMode;
-import org.structr.common.GraphObjectComparator;
 import org.structr.common.PathHelper;
 import org.structr.common.SecurityContext;
 import org.structr.common.ThreadLocalMatcher;
@@ -73,6 +73,7 @@ import org.structr.core.auth.Authenticator;
 import org.structr.core.converter.PropertyConverter;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.Principal;
+import org.structr.core.graph.TransactionCommand;
 import org.structr.core.graph.Tx;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.property.PropertyMap;
@@ -84,8 +85,11 @@ import org.structr.schema.ConfigurationProvider;
 import org.structr.util.Base64;
 import org.structr.web.auth.UiAuthenticator;
 import org.structr.web.common.FileHelper;
+import org.structr.web.common.FileStreamer;
+import org.structr.web.common.FileStreamer.Range;
 import org.structr.web.common.RenderContext;
 import org.structr.web.common.RenderContext.EditMode;
+import org.structr.web.common.StreamingRenderBuffer;
 import org.structr.web.common.StringRenderBuffer;
 import org.structr.web.entity.AbstractFile;
 import org.structr.web.entity.FileBase;
@@ -121,7 +125,19 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 	private static final List<String> customResponseHeaders        = new LinkedList<>();
 	private static final ThreadLocalMatcher threadLocalUUIDMatcher = new ThreadLocalMatcher("[a-fA-F0-9]{32}");
-	private static final ExecutorService threadPool                = Executors.newCachedThreadPool();
+	private static final ThreadPoolExecutor threadPool             = new ThreadPoolExecutor(
+		Settings.HtmlRenderThreads.getValue(),
+		Settings.HtmlRenderThreads.getValue(),
+		60L, TimeUnit.SECONDS,
+		new ArrayBlockingQueue<>(Settings.HtmlRenderQueueSize.getValue())
+	);
+	private static final LongAdder rejectedRenderTasks             = new LongAdder();
+
+	static {
+
+		// let idle render threads terminate
+		threadPool.allowCoreThreadTimeOut(true);
+	}
 
 	private final Pattern FilenameCleanerPattern                      = Pattern.compile("[\n\r]", Pattern.CASE_INSENSITIVE | Pattern.MULTILINE | Pattern.DOTALL);
 	private final StructrHttpServiceConfig config                     = new StructrHttpServiceConfig();
@@ -155,17 +171,20 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 		}
 
 		this.isAsync = Settings.Async.getValue();
+
+		// keep the routing table up to date
+		TransactionCommand.registerTransactionListener(RoutingTable.getInstance());
 	}
 
 	@Override
 	public void destroy() {
+		TransactionCommand.removeTransactionListener(RoutingTable.getInstance());
 	}
 
 	@Override
 	protected void doGet(final HttpServletRequest request, final HttpServletResponse response) {
 
 		final Authenticator auth        = getConfig().getAuthenticator();
-		List<Page> pages                = null;
 		boolean requestUriContainsUuids = false;
 
 		SecurityContext securityContext;
@@ -239,7 +258,7 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 				if ((uriParts == null) || (uriParts.length == 0)) {
 
 					// find a visible page
-					rootElement = findIndexPage(securityContext, pages, edit);
+					rootElement = findIndexPage(securityContext, edit);
 
 					logger.debug("No path supplied, trying to find index page");
 
@@ -247,7 +266,7 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 					if (rootElement == null) {
 
-						rootElement = findPage(securityContext, pages, path, edit);
+						rootElement = findPage(securityContext, path, edit);
 
 					} else {
 
@@ -308,7 +327,7 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 						// clear possible entry points
 						request.removeAttribute(POSSIBLE_ENTRY_POINTS_KEY);
 
-						rootElement = findPage(securityContext, pages, StringUtils.substringBeforeLast(path, PathHelper.PATH_SEP), edit);
+						rootElement = findPage(securityContext, StringUtils.substringBeforeLast(path, PathHelper.PATH_SEP), edit);
 
 						renderContext.setDetailsDataObject(dataNode);
 
@@ -352,8 +371,8 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 						// Page with Basic Auth found but not yet authenticated
 						case MustAuthenticate:
 
-							final Page errorPage = StructrApp.getInstance().nodeQuery(Page.class).and(Page.showOnErrorCodes, "401", false).getFirst();
-							if (errorPage != null && isVisibleForSite(request, errorPage)) {
+							final Page errorPage = RoutingTable.getInstance().findErrorPage(SecurityContext.getSuperUserInstance(), request, HttpServletResponse.SC_UNAUTHORIZED);
+							if (errorPage != null) {
 
 								// set error page
 								rootElement = errorPage;
@@ -443,87 +462,70 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 						// async or not?
 						if (isAsync && !createsRawData) {
 
-							final AsyncContext async = request.startAsync();
-							final ServletOutputStream out = async.getResponse().getOutputStream();
-							final AtomicBoolean finished = new AtomicBoolean(false);
-							final DOMNode rootNode = rootElement;
+							final AsyncContext async           = request.startAsync();
+							final ServletOutputStream out      = async.getResponse().getOutputStream();
+							final StreamingRenderBuffer buffer = new StreamingRenderBuffer(async, out, Settings.HtmlRenderBufferSize.getValue());
+							final DOMNode rootNode             = rootElement;
 
-							threadPool.submit(new Runnable() {
+							renderContext.setBuffer(buffer);
 
-								@Override
-								public void run() {
+							// start output write listener
+							out.setWriteListener(buffer);
 
-									try (final Tx tx = app.tx()) {
+							try {
 
-										// render
-										rootNode.render(renderContext, 0);
-										finished.set(true);
+								threadPool.submit(new Runnable() {
 
-										tx.success();
+									@Override
+									public void run() {
 
-									} catch (Throwable t) {
+										try (final Tx tx = app.tx()) {
 
-										t.printStackTrace();
-										logger.warn("Error while rendering page {}: {}", rootNode.getName(), t.getMessage());
+											// render
+											rootNode.render(renderContext, 0);
 
-										try {
+											tx.success();
 
-											response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-											finished.set(true);
+										} catch (Throwable t) {
 
-										} catch (IOException ex) {
-											logger.warn("", ex);
-										}
-									}
-								}
+											logger.warn("Error while rendering page {}: {}", rootNode.getName(), t.getMessage());
 
-							});
+											try {
 
-							// start output write listener
-							out.setWriteListener(new WriteListener() {
+												response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
 
-								@Override
-								public void onWritePossible() throws IOException {
+											} catch (IOException | IllegalStateException ex) {
+												logger.warn("", ex);
+											}
 
-									try {
+										} finally {
 
-										final Queue<String> queue = renderContext.getBuffer().getQueue();
-										while (out.isReady()) {
+											buffer.finish();
+										}
+									}
 
-											String buffer = null;
+								});
 
-											synchronized (queue) {
-												buffer = queue.poll();
-											}
+							} catch (RejectedExecutionException rex) {
 
-											if (buffer != null) {
+								rejectedRenderTasks.increment();
 
-												out.print(buffer);
+								logger.warn("Unable to render page {}, render queue is full.", rootNode.getName());
 
-											} else {
+								try {
 
-												if (finished.get()) {
+									response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
 
-													async.complete();
+								} catch (IOException | IllegalStateException ex) {
 
-													// prevent this block from being called again
-													break;
-												}
+									logger.warn("Unable to send error response: {}", ex.getMessage());
 
-												Thread.sleep(1);
-											}
-										}
+								} finally {
 
-									} catch (Throwable t) {
-										logger.warn("", t);
-									}
-								}
-
-								@Override
-								public void onError(Throwable t) {
-									logger.warn("", t);
+									// complete directly, the write listener may never be called
+									buffer.complete();
 								}
-							});
+							}
 
 						} else {
 
@@ -559,6 +561,26 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 		}
 	}
 
+	/**
+	 * Returns the size and queue depth of the asynchronous render executor.
+	 *
+	 * @return a map with statistics
+	 */
+	public static Map<String, Object> getRenderStatistics() {
+
+		final Map<String, Object> statistics = new LinkedHashMap<>();
+
+		statistics.put("threads",     threadPool.getPoolSize());
+		statistics.put("maxThreads",  threadPool.getMaximumPoolSize());
+		statistics.put("active",      threadPool.getActiveCount());
+		statistics.put("queued",      threadPool.getQueue().size());
+		statistics.put("queueSize",   Settings.HtmlRenderQueueSize.getValue());
+		statistics.put("completed",   threadPool.getCompletedTaskCount());
+		statistics.put("rejected",    rejectedRenderTasks.sum());
+
+		return statistics;
+	}
+
 	@Override
 	protected void doPost(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
 
@@ -570,7 +592,6 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 		final Authenticator auth = getConfig().getAuthenticator();
 		SecurityContext securityContext;
-		List<Page> pages                = null;
 		boolean requestUriContainsUuids = false;
 		final App app;
 
@@ -631,7 +652,7 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 				if ((uriParts == null) || (uriParts.length == 0)) {
 
 					// find a visible page
-					rootElement = findIndexPage(securityContext, pages, edit);
+					rootElement = findIndexPage(securityContext, edit);
 
 					logger.debug("No path supplied, trying to find index page");
 
@@ -639,7 +660,7 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 					if (rootElement == null) {
 
-						rootElement = findPage(securityContext, pages, path, edit);
+						rootElement = findPage(securityContext, path, edit);
 
 					} else {
 						dontCache = true;
@@ -689,7 +710,7 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 						// clear possible entry points
 						request.removeAttribute(POSSIBLE_ENTRY_POINTS_KEY);
 
-						rootElement = findPage(securityContext, pages, StringUtils.substringBeforeLast(path, PathHelper.PATH_SEP), edit);
+						rootElement = findPage(securityContext, StringUtils.substringBeforeLast(path, PathHelper.PATH_SEP), edit);
 
 						renderContext.setDetailsDataObject(dataNode);
 
@@ -881,16 +902,11 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 	 */
 	private Page notFound(final HttpServletResponse response, final SecurityContext securityContext) throws IOException, FrameworkException {
 
-		final List<Page> errorPages = StructrApp.getInstance(securityContext).nodeQuery(Page.class).and(Page.showOnErrorCodes, "404", false).getAsList();
-
-		for (final Page errorPage : errorPages) {
-
-			if (isVisibleForSite(securityContext.getRequest(), errorPage)) {
-
-				response.setStatus(HttpServletResponse.SC_NOT_FOUND);
-				return errorPage;
-			}
+		final Page errorPage = RoutingTable.getInstance().findErrorPage(securityContext, securityContext.getRequest(), HttpServletResponse.SC_NOT_FOUND);
+		if (errorPage != null) {
 
+			response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+			return errorPage;
 		}
 
 		response.sendError(HttpServletResponse.SC_NOT_FOUND);
@@ -996,43 +1012,13 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 	 * To be compatible with older versions, fallback to name-only lookup.
 	 *
 	 * @param securityContext
-	 * @param pages
 	 * @param path
 	 * @param edit
 	 * @return page
 	 * @throws FrameworkException
 	 */
-	private Page findPage(final SecurityContext securityContext, List<Page> pages, final String path, final EditMode edit) throws FrameworkException {
-
-		if (pages == null) {
-			pages = StructrApp.getInstance(securityContext).nodeQuery(Page.class).getAsList();
-			Collections.sort(pages, new GraphObjectComparator(Page.position, GraphObjectComparator.ASCENDING));
-		}
-
-		for (final Page page : pages) {
-			final String pagePath = page.getPath();
-			if (pagePath != null && pagePath.equals(path) && (EditMode.CONTENT.equals(edit) || isVisibleForSite(securityContext.getRequest(), page))) {
-				return page;
-			}
-		}
-
-		final String name     = PathHelper.getName(path);
-
-		for (final Page page : pages) {
-			final String pageName = page.getName();
-			if (pageName != null && pageName.equals(name) && (EditMode.CONTENT.equals(edit) || isVisibleForSite(securityContext.getRequest(), page))) {
-				return page;
-			}
-		}
-
-		for (final Page page : pages) {
-			final String pageUuid = page.getUuid();
-			if (pageUuid != null && pageUuid.equals(name) && (EditMode.CONTENT.equals(edit) || isVisibleForSite(securityContext.getRequest(), page))) {
-				return page;
-			}
-		}
-
-		return null;
+	private Page findPage(final SecurityContext securityContext, final String path, final EditMode edit) throws FrameworkException {
+		return RoutingTable.getInstance().findPage(securityContext, securityContext.getRequest(), path, edit);
 	}
 
 	/**
@@ -1040,27 +1026,12 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 	 * current security context and for the given site.
 	 *
 	 * @param securityContext
-	 * @param pages
 	 * @param edit
 	 * @return page
 	 * @throws FrameworkException
 	 */
-	private Page findIndexPage(final SecurityContext securityContext, List<Page> pages, final EditMode edit) throws FrameworkException {
-
-		if (pages == null) {
-			pages = StructrApp.getInstance(securityContext).nodeQuery(Page.class).getAsList();
-			Collections.sort(pages, new GraphObjectComparator(Page.position, GraphObjectComparator.ASCENDING));
-		}
-
-		for (Page page : pages) {
-
-			if (securityContext.isVisible(page) && page.getProperty(Page.position) != null && ((EditMode.CONTENT.equals(edit) || isVisibleForSite(securityContext.getRequest(), page)) || (page.getProperty(Page.enableBasicAuth) && page.getProperty(Page.visibleToAuthenticatedUsers)))) {
-
-				return page;
-			}
-		}
-
-		return null;
+	private Page findIndexPage(final SecurityContext securityContext, final EditMode edit) throws FrameworkException {
+		return RoutingTable.getInstance().findIndexPage(securityContext, securityContext.getRequest(), edit);
 	}
 
 	/**
@@ -1212,18 +1183,17 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 			logger.debug("Requested id: {}", uuid);
 
-			final Query query = StructrApp.getInstance(securityContext).nodeQuery();
-
-			query.and(GraphObject.id, uuid);
-			query.and().orType(Page.class).orTypes(File.class);
+			final List<Linkable> results = new LinkedList<>();
+			final GraphObject node       = StructrApp.getInstance(securityContext).getNodeById(uuid);
 
-			// Searching for pages needs super user context anyway
-			Result results = query.getResult();
+			if (node instanceof Page || node instanceof File) {
+				results.add((Linkable)node);
+			}
 
 			logger.debug("{} results", results.size());
-			request.setAttribute(POSSIBLE_ENTRY_POINTS_KEY, results.getResults());
+			request.setAttribute(POSSIBLE_ENTRY_POINTS_KEY, results);
 
-			return (List<Linkable>) results.getResults();
+			return results;
 		}
 
 		return Collections.EMPTY_LIST;
@@ -1241,10 +1211,7 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 			logger.debug("Requested path: {}", path);
 
-			final Query pageQuery = StructrApp.getInstance(securityContext).nodeQuery();
-
-			pageQuery.and(Page.path, path).andType(Page.class);
-			final Result pages = pageQuery.getResult();
+			final List<Page> pages = RoutingTable.getInstance().findPagesByPath(securityContext, path);
 
 			final Query fileQuery = StructrApp.getInstance(securityContext).nodeQuery();
 			fileQuery.and(AbstractFile.path, path).andTypes(File.class);
@@ -1253,7 +1220,7 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 			logger.debug("Found {} pages and {} files/folders", new Object[] { pages.size(), files.size() });
 
-			final List<Linkable> linkables = (List<Linkable>) pages.getResults();
+			final List<Linkable> linkables = new LinkedList<>(pages);
 			linkables.addAll(files.getResults());
 
 			request.setAttribute(POSSIBLE_ENTRY_POINTS_KEY, linkables);
@@ -1378,6 +1345,60 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 		return notModified;
 	}
 
+	/**
+	 * Evaluates If-None-Match against the strong entity tag of the given
+	 * file, falling back to If-Modified-Since if there is no entity tag or
+	 * no such header.
+	 */
+	private static boolean notModified(final HttpServletRequest request, final HttpServletResponse response, final FileBase file, final String etag) {
+
+		boolean notModified      = notModifiedSince(request, response, file, false);
+		final String ifNoneMatch = request.getHeader("If-None-Match");
+
+		// If-None-Match takes precedence over If-Modified-Since
+		if (etag != null && ifNoneMatch != null) {
+
+			notModified = FileStreamer.matchesETag(ifNoneMatch, etag);
+
+			response.setStatus(notModified ? HttpServletResponse.SC_NOT_MODIFIED : HttpServletResponse.SC_OK);
+		}
+
+		return notModified;
+	}
+
+	/**
+	 * Returns true if there is no If-Range header or if its value matches
+	 * the current entity tag (strong comparison) or modification date of
+	 * the given file, i.e. if a Range header may be honored.
+	 */
+	private static boolean ifRangeMatches(final HttpServletRequest request, final FileBase file, final String etag) {
+
+		final String ifRange = request.getHeader("If-Range");
+		if (ifRange == null) {
+			return true;
+		}
+
+		if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+			return etag != null && etag.equals(ifRange.trim());
+		}
+
+		final Date lastModified = file.getLastModifiedDate();
+		if (lastModified != null) {
+
+			final DateFormat httpDateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
+			httpDateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+
+			try {
+
+				return DateUtils.round(lastModified, Calendar.SECOND).equals(httpDateFormat.parse(ifRange));
+
+			} catch (ParseException ignore) {
+			}
+		}
+
+		return false;
+	}
+
 	private void streamFile(SecurityContext securityContext, final FileBase file, HttpServletRequest request, HttpServletResponse response, final EditMode edit) throws IOException {
 
 		if (!securityContext.isVisible(file)) {
@@ -1410,7 +1431,13 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 			callbackMap.put("requestedFileName", downloadAsFilename);
 		}
 
-		if (!EditMode.WIDGET.equals(edit) && notModifiedSince(request, response, file, false)) {
+		final String etag = FileStreamer.getETag(file);
+		if (etag != null) {
+
+			response.setHeader("ETag", etag);
+		}
+
+		if (!EditMode.WIDGET.equals(edit) && notModified(request, response, file, etag)) {
 
 			out.flush();
 			out.close();
@@ -1434,68 +1461,69 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 			} else {
 
 				// 2b: stream file to response
-				final InputStream in = file.getInputStream();
-				final String contentType = file.getContentType();
+				final java.io.File fileOnDisk = file.getFileOnDisk();
+				final String contentType      = file.getContentType() != null ? file.getContentType() : "application/octet-stream";
 
-				if (contentType != null) {
+				if (fileOnDisk == null || !fileOnDisk.isFile()) {
 
-					response.setContentType(contentType);
+					response.sendError(HttpServletResponse.SC_NOT_FOUND);
+					callbackMap.put("statusCode", HttpServletResponse.SC_NOT_FOUND);
 
 				} else {
 
-					// Default
-					response.setContentType("application/octet-stream");
-				}
+					try (final FileChannel channel = FileChannel.open(fileOnDisk.toPath(), StandardOpenOption.READ)) {
 
-				final String range = request.getHeader("Range");
+						final long len           = channel.size();
+						final String range       = request.getHeader("Range");
+						final List<Range> ranges = StringUtils.isNotEmpty(range) && ifRangeMatches(request, file, etag) ? FileStreamer.parseRanges(range, len) : Collections.emptyList();
 
-				try {
+						// Tell the client that we support byte ranges
+						response.setHeader("Accept-Ranges", "bytes");
 
-					if (StringUtils.isNotEmpty(range)) {
+						if (ranges == null) {
 
-						final long len = file.getSize();
-						long start     = 0;
-						long end       = len - 1;
+							response.setHeader("Content-Range", "bytes */" + len);
+							response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+							callbackMap.put("statusCode", HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
 
-						final Matcher matcher = Pattern.compile("bytes=(?<start>\\d*)-(?<end>\\d*)").matcher(range);
+						} else if (ranges.size() == 1) {
 
-						if (matcher.matches()) {
-							String startGroup = matcher.group("start");
-							start = startGroup.isEmpty() ? start : Long.valueOf(startGroup);
-							start = Math.max(0, start);
+							final Range singleRange = ranges.get(0);
 
-							String endGroup = matcher.group("end");
-							end = endGroup.isEmpty() ? end : Long.valueOf(endGroup);
-							end = end > len - 1 ? len - 1 : end;
-						}
+							response.setContentType(contentType);
+							response.setHeader("Content-Range", singleRange.getContentRange(len));
+							response.setHeader("Content-Length", Long.toString(singleRange.getLength()));
+							response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+							callbackMap.put("statusCode", HttpServletResponse.SC_PARTIAL_CONTENT);
 
-						long contentLength = end - start + 1;
+							FileStreamer.copy(channel, singleRange.getStart(), singleRange.getLength(), out);
 
-						// Tell the client that we support byte ranges
-						response.setHeader("Accept-Ranges", "bytes");
-						response.setHeader("Content-Range", String.format("bytes %s-%s/%s", start, end, len));
-						response.setHeader("Content-Length", String.format("%s", contentLength));
+						} else if (ranges.size() > 1) {
 
-						response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
-						callbackMap.put("statusCode", HttpServletResponse.SC_PARTIAL_CONTENT);
+							final String boundary = "STRUCTR_BYTERANGES_" + Long.toHexString(System.nanoTime());
 
-						IOUtils.copyLarge(in, out, start, contentLength);
+							response.setContentType("multipart/byteranges; boundary=" + boundary);
+							response.setHeader("Content-Length", Long.toString(FileStreamer.getMultipartLength(ranges, len, contentType, boundary)));
+							response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+							callbackMap.put("statusCode", HttpServletResponse.SC_PARTIAL_CONTENT);
 
-					} else {
+							FileStreamer.copyMultipart(channel, ranges, len, contentType, boundary, out);
 
-						response.setStatus(HttpServletResponse.SC_OK);
-						callbackMap.put("statusCode", HttpServletResponse.SC_OK);
+						} else {
 
-						IOUtils.copyLarge(in, out);
-
-					}
+							response.setContentType(contentType);
+							response.setHeader("Content-Length", Long.toString(len));
+							response.setStatus(HttpServletResponse.SC_OK);
+							callbackMap.put("statusCode", HttpServletResponse.SC_OK);
 
+							FileStreamer.copy(channel, 0, len, out);
+						}
 
-				} catch (Throwable t) {
+					} catch (Throwable t) {
 
-				} finally {
+						logger.debug("Unable to stream file {}: {}", file.getUuid(), t.getMessage());
 
-					if (out != null) {
+					} finally {
 
 						try {
 							// 3: output content
@@ -1505,12 +1533,6 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 						} catch (Throwable t) {
 						}
 					}
-
-					if (in != null) {
-						in.close();
-					}
-
-					response.setStatus(HttpServletResponse.SC_OK);
 				}
 			}
 		}
@@ -1634,24 +1656,7 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 		// Look for renderable objects using a SuperUserSecurityContext,
 		// but dont actually render the page. We're only interested in
 		// the authentication settings.
-		Linkable possiblePage = null;
-
-		// try the different methods..
-		if (possiblePage == null) {
-			possiblePage = StructrApp.getInstance().nodeQuery(Page.class).and(Page.path, path).and(Page.enableBasicAuth, true).sort(Page.position).getFirst();
-		}
-
-		if (possiblePage == null) {
-			possiblePage = StructrApp.getInstance().nodeQuery(Page.class).and(Page.name, PathHelper.getName(path)).and(Page.enableBasicAuth, true).sort(Page.position).getFirst();
-		}
-
-		if (possiblePage == null) {
-			possiblePage = StructrApp.getInstance().nodeQuery(File.class).and(File.path, path).and(File.enableBasicAuth, true).getFirst();
-		}
-
-		if (possiblePage == null) {
-			possiblePage = StructrApp.getInstance().nodeQuery(File.class).and(File.name, PathHelper.getName(path)).and(File.enableBasicAuth, true).getFirst();
-		}
+		final Linkable possiblePage = RoutingTable.getInstance().findBasicAuthEntryPoint(path);
 
 		if (possiblePage != null) {
 
@@ -0,0 +1,797 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.servlet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
+import org.structr.common.PathHelper;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.StructrTransactionListener;
+import org.structr.core.TransactionSource;
+import org.structr.core.app.App;
+import org.structr.core.app.StructrApp;
+import org.structr.core.entity.relationship.AbstractChildren;
+import org.structr.core.graph.ModificationEvent;
+import org.structr.core.graph.NodeInterface;
+import org.structr.core.graph.Tx;
+import org.structr.dynamic.File;
+import org.structr.web.common.RenderContext.EditMode;
+import org.structr.web.entity.Folder;
+import org.structr.web.entity.Linkable;
+import org.structr.web.entity.Site;
+import org.structr.web.entity.dom.Page;
+import org.structr.web.entity.dom.relationship.DOMChildren;
+import org.structr.web.entity.relation.Pages;
+
+/**
+ * In-memory routing index for the {@link HtmlServlet}.
+ *
+ * The table holds the routing-relevant attributes of all pages (path,
+ * name, position, site, error codes and basic auth settings), of all
+ * sites and of all files with HTTP basic authentication, so that a
+ * request path can be resolved with a map lookup instead of loading and
+ * sorting all pages on every request. Files without basic authentication
+ * are not part of the table, they are resolved with a single indexed
+ * path query.
+ *
+ * The table is updated incrementally from transaction events, and it is
+ * rebuilt completely when it is marked dirty or when the refresh interval
+ * has passed, which covers transactions with disabled notifications.
+ *
+ * Lookups instantiate the candidates in the security context of the
+ * request, which is the permission check, and verify the indexed value
+ * against the node, so a stale entry is refreshed instead of returned.
+ */
+public class RoutingTable implements StructrTransactionListener {
+
+	private static final Logger logger                  = LoggerFactory.getLogger(RoutingTable.class.getName());
+	private static final RoutingTable instance          = new RoutingTable();
+
+	private final Map<String, PageRoute> pages          = new ConcurrentHashMap<>();
+	private final Map<String, SiteRoute> sites          = new ConcurrentHashMap<>();
+	private final Map<String, FileRoute> files          = new ConcurrentHashMap<>();
+	private final LongAdder rebuilds                    = new LongAdder();
+	private final LongAdder updates                     = new LongAdder();
+	private volatile Routes routes                      = null;
+	private volatile boolean pagesDirty                 = true;
+	private volatile boolean filesDirty                 = true;
+	private volatile long lastRebuild                   = 0L;
+
+	private RoutingTable() {}
+
+	public static RoutingTable getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Marks the whole table as dirty, so that it is rebuilt on next access.
+	 */
+	public void invalidate() {
+
+		pagesDirty = true;
+		filesDirty = true;
+	}
+
+	/**
+	 * Finds the page with the given path, falling back to the page with
+	 * the last path part as its name or UUID. Pages with lower position
+	 * values win.
+	 *
+	 * @param securityContext
+	 * @param request
+	 * @param path
+	 * @param edit
+	 * @return page or null
+	 * @throws FrameworkException
+	 */
+	public Page findPage(final SecurityContext securityContext, final HttpServletRequest request, final String path, final EditMode edit) throws FrameworkException {
+
+		final Routes current   = getRoutes();
+		final String name      = PathHelper.getName(path);
+		final boolean anySite  = EditMode.CONTENT.equals(edit);
+
+		Page page = findFirst(securityContext, request, current, current.byPath.get(path), anySite, p -> path.equals(p.getPath()));
+		if (page == null) {
+
+			page = findFirst(securityContext, request, current, current.byName.get(name), anySite, p -> name.equals(p.getName()));
+		}
+
+		if (page == null) {
+
+			final PageRoute route = current.pages.get(name);
+			if (route != null) {
+
+				page = findFirst(securityContext, request, current, Collections.singletonList(route), anySite, p -> true);
+			}
+		}
+
+		return page;
+	}
+
+	/**
+	 * Finds the page with the lowest non-empty position value which is visible
+	 * in the given security context and for the site of the given request.
+	 *
+	 * @param securityContext
+	 * @param request
+	 * @param edit
+	 * @return page or null
+	 * @throws FrameworkException
+	 */
+	public Page findIndexPage(final SecurityContext securityContext, final HttpServletRequest request, final EditMode edit) throws FrameworkException {
+
+		final Routes current = getRoutes();
+
+		for (final PageRoute route : current.indexPages) {
+
+			final boolean visibleForSite = EditMode.CONTENT.equals(edit) || current.isVisibleForSite(request, route);
+			if (visibleForSite || (route.basicAuth && route.visibleToAuthenticatedUsers)) {
+
+				final Page page = getPage(securityContext, route);
+				if (page != null && securityContext.isVisible(page) && page.getProperty(Page.position) != null) {
+
+					return page;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns all pages with the given path that are readable in the given
+	 * security context, regardless of their site.
+	 *
+	 * @param securityContext
+	 * @param path
+	 * @return pages
+	 * @throws FrameworkException
+	 */
+	public List<Page> findPagesByPath(final SecurityContext securityContext, final String path) throws FrameworkException {
+
+		final List<PageRoute> candidates = getRoutes().byPath.get(path);
+		final List<Page> result          = new LinkedList<>();
+
+		if (candidates != null) {
+
+			for (final PageRoute route : candidates) {
+
+				final Page page = getPage(securityContext, route);
+				if (page != null) {
+
+					if (path.equals(page.getPath())) {
+
+						result.add(page);
+
+					} else {
+
+						refreshPage(route.uuid);
+					}
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Finds the first page that is configured to be shown for the given
+	 * HTTP status code and that is visible for the site of the request.
+	 *
+	 * @param securityContext
+	 * @param request
+	 * @param statusCode
+	 * @return page or null
+	 * @throws FrameworkException
+	 */
+	public Page findErrorPage(final SecurityContext securityContext, final HttpServletRequest request, final int statusCode) throws FrameworkException {
+
+		final Routes current = getRoutes();
+		final String code    = Integer.toString(statusCode);
+
+		return findFirst(securityContext, request, current, current.errorPages.get(code), false, p -> StringUtils.contains(p.getProperty(Page.showOnErrorCodes), code));
+	}
+
+	/**
+	 * Finds the page or file with enabled HTTP basic authentication that
+	 * is addressed by the given path, first by path, then by name. The
+	 * lookup is done in a superuser context because only the authentication
+	 * settings are of interest here.
+	 *
+	 * @param path
+	 * @return page, file or null
+	 * @throws FrameworkException
+	 */
+	public Linkable findBasicAuthEntryPoint(final String path) throws FrameworkException {
+
+		final SecurityContext superUserContext = SecurityContext.getSuperUserInstance();
+		final Routes current                   = getRoutes();
+		final String name                      = PathHelper.getName(path);
+
+		Linkable linkable = findFirstBasicAuth(superUserContext, current.basicAuthPagesByPath.get(path), l -> path.equals(l.getPath()));
+		if (linkable == null) {
+
+			linkable = findFirstBasicAuth(superUserContext, current.basicAuthPagesByName.get(name), l -> name.equals(l.getName()));
+		}
+
+		if (linkable == null) {
+
+			linkable = findFirstBasicAuth(superUserContext, current.basicAuthFilesByPath.get(path), l -> path.equals(l.getPath()));
+		}
+
+		if (linkable == null) {
+
+			linkable = findFirstBasicAuth(superUserContext, current.basicAuthFilesByName.get(name), l -> name.equals(l.getName()));
+		}
+
+		return linkable;
+	}
+
+	public Map<String, Object> getStatistics() {
+
+		final Map<String, Object> stats = new LinkedHashMap<>();
+
+		stats.put("pages",       pages.size());
+		stats.put("sites",       sites.size());
+		stats.put("files",       files.size());
+		stats.put("rebuilds",    rebuilds.sum());
+		stats.put("updates",     updates.sum());
+		stats.put("lastRebuild", lastRebuild);
+
+		return stats;
+	}
+
+	// ----- interface StructrTransactionListener -----
+	@Override
+	public void beforeCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) throws FrameworkException {
+	}
+
+	@Override
+	public void afterCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) {
+
+		for (final ModificationEvent event : modificationEvents) {
+
+			final GraphObject obj = event.getGraphObject();
+
+			try {
+
+				if (event.isNode()) {
+
+					if (obj instanceof Page) {
+
+						if (event.isDeleted()) {
+
+							removePage(event.getUuid());
+
+						} else {
+
+							refreshPage(event.getUuid());
+						}
+
+					} else if (obj instanceof Site) {
+
+						if (event.isDeleted()) {
+
+							removeSite(event.getUuid());
+
+						} else {
+
+							updateSite(event.getUuid(), new SiteRoute((Site)obj));
+						}
+
+					} else if (obj instanceof File) {
+
+						if (event.isDeleted() || !obj.getProperty(Linkable.enableBasicAuth)) {
+
+							removeFile(event.getUuid());
+
+						} else {
+
+							refreshFile(event.getUuid());
+						}
+
+					} else if (obj instanceof Folder && !event.isCreated() && !files.isEmpty()) {
+
+						// folder renamed or deleted, paths of basic auth files may have changed
+						filesDirty = true;
+					}
+
+				} else {
+
+					if (obj instanceof Pages) {
+
+						// site assignment of a page has changed
+						pagesDirty = true;
+
+					} else if (obj instanceof AbstractChildren && !(obj instanceof DOMChildren) && !files.isEmpty()) {
+
+						// file or folder moved, paths of basic auth files may have changed
+						filesDirty = true;
+					}
+				}
+
+			} catch (Throwable t) {
+
+				logger.warn("Unable to update routing table: {}", t.getMessage());
+				invalidate();
+			}
+		}
+	}
+
+	@Override
+	public void simpleBroadcast() {
+
+		// schema has been reloaded, entity classes may have changed
+		invalidate();
+	}
+
+	// ----- private methods -----
+	private Routes getRoutes() throws FrameworkException {
+
+		final long refreshInterval = Settings.HtmlRoutingRefresh.getValue() * 1000L;
+		if (refreshInterval > 0 && System.currentTimeMillis() - lastRebuild > refreshInterval) {
+
+			invalidate();
+		}
+
+		Routes current = routes;
+
+		if (current == null || pagesDirty || filesDirty) {
+
+			synchronized (this) {
+
+				if (pagesDirty || filesDirty) {
+
+					rebuild();
+				}
+
+				current = routes;
+				if (current == null) {
+
+					current = new Routes(pages, sites, files);
+					routes  = current;
+				}
+			}
+		}
+
+		return current;
+	}
+
+	private void rebuild() throws FrameworkException {
+
+		final App app         = StructrApp.getInstance();
+		final boolean doPages = pagesDirty;
+		final boolean doFiles = filesDirty;
+		final long t0         = System.currentTimeMillis();
+
+		// reset flags before loading so that concurrent invalidations are not lost
+		pagesDirty = false;
+		filesDirty = false;
+
+		try (final Tx tx = app.tx()) {
+
+			if (doPages) {
+
+				final Map<String, PageRoute> newPages = new HashMap<>();
+				final Map<String, SiteRoute> newSites = new HashMap<>();
+
+				for (final Page page : app.nodeQuery(Page.class).getAsList()) {
+					newPages.put(page.getUuid(), new PageRoute(page));
+				}
+
+				for (final Site site : app.nodeQuery(Site.class).getAsList()) {
+					newSites.put(site.getUuid(), new SiteRoute(site));
+				}
+
+				pages.keySet().retainAll(newPages.keySet());
+				pages.putAll(newPages);
+				sites.keySet().retainAll(newSites.keySet());
+				sites.putAll(newSites);
+			}
+
+			if (doFiles) {
+
+				final Map<String, FileRoute> newFiles = new HashMap<>();
+
+				for (final File file : app.nodeQuery(File.class).and(File.enableBasicAuth, true).getAsList()) {
+					newFiles.put(file.getUuid(), new FileRoute(file));
+				}
+
+				files.keySet().retainAll(newFiles.keySet());
+				files.putAll(newFiles);
+			}
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			pagesDirty |= doPages;
+			filesDirty |= doFiles;
+
+			throw fex;
+		}
+
+		routes      = null;
+		lastRebuild = System.currentTimeMillis();
+
+		rebuilds.increment();
+
+		logger.debug("Routing table rebuilt in {} ms: {} pages, {} sites, {} basic auth files", (lastRebuild - t0), pages.size(), sites.size(), files.size());
+	}
+
+	private Page findFirst(final SecurityContext securityContext, final HttpServletRequest request, final Routes current, final List<PageRoute> candidates, final boolean anySite, final Predicate<Page> verify) throws FrameworkException {
+
+		if (candidates != null) {
+
+			for (final PageRoute route : candidates) {
+
+				if (anySite || current.isVisibleForSite(request, route)) {
+
+					final Page page = getPage(securityContext, route);
+					if (page != null) {
+
+						if (verify.test(page)) {
+							return page;
+						}
+
+						// indexed value is outdated
+						refreshPage(route.uuid);
+					}
+				}
+			}
+		}
+
+		return null;
+	}
+
+	private Linkable findFirstBasicAuth(final SecurityContext securityContext, final List<Route> candidates, final Predicate<Linkable> verify) throws FrameworkException {
+
+		if (candidates != null) {
+
+			for (final Route route : candidates) {
+
+				final NodeInterface node = StructrApp.getInstance(securityContext).getNodeById(route.uuid);
+				if (node instanceof Linkable) {
+
+					final Linkable linkable = (Linkable)node;
+
+					if (linkable.getProperty(Linkable.enableBasicAuth) && verify.test(linkable)) {
+						return linkable;
+					}
+
+					// indexed value is outdated
+					if (route instanceof PageRoute) {
+
+						refreshPage(route.uuid);
+
+					} else {
+
+						filesDirty = true;
+					}
+				}
+			}
+		}
+
+		return null;
+	}
+
+	private Page getPage(final SecurityContext securityContext, final PageRoute route) throws FrameworkException {
+
+		final NodeInterface node = StructrApp.getInstance(securityContext).getNodeById(route.uuid);
+		if (node instanceof Page) {
+
+			return (Page)node;
+		}
+
+		return null;
+	}
+
+	private void refreshPage(final String uuid) throws FrameworkException {
+
+		final NodeInterface node = StructrApp.getInstance().getNodeById(uuid);
+		if (node instanceof Page) {
+
+			final PageRoute route = new PageRoute((Page)node);
+
+			if (!route.equals(pages.put(uuid, route))) {
+				routesChanged();
+			}
+
+		} else {
+
+			removePage(uuid);
+		}
+	}
+
+	private void removePage(final String uuid) {
+
+		if (pages.remove(uuid) != null) {
+			routesChanged();
+		}
+	}
+
+	private void updateSite(final String uuid, final SiteRoute route) {
+
+		if (!route.equals(sites.put(uuid, route))) {
+			routesChanged();
+		}
+	}
+
+	private void removeSite(final String uuid) {
+
+		if (sites.remove(uuid) != null) {
+			routesChanged();
+		}
+	}
+
+	private void refreshFile(final String uuid) throws FrameworkException {
+
+		final NodeInterface node = StructrApp.getInstance().getNodeById(uuid);
+		if (node instanceof File) {
+
+			final FileRoute route = new FileRoute((File)node);
+
+			if (!route.equals(files.put(uuid, route))) {
+				routesChanged();
+			}
+
+		} else {
+
+			removeFile(uuid);
+		}
+	}
+
+	private void removeFile(final String uuid) {
+
+		if (files.remove(uuid) != null) {
+			routesChanged();
+		}
+	}
+
+	private void routesChanged() {
+
+		routes = null;
+		updates.increment();
+	}
+
+	// ----- nested classes -----
+	private static class Route {
+
+		protected final String uuid;
+		protected final String path;
+		protected final String name;
+
+		public Route(final String uuid, final String path, final String name) {
+
+			this.uuid = uuid;
+			this.path = path;
+			this.name = name;
+		}
+
+		@Override
+		public int hashCode() {
+			return uuid.hashCode();
+		}
+
+		@Override
+		public boolean equals(final Object other) {
+
+			if (other != null && other.getClass().equals(getClass())) {
+
+				final Route route = (Route)other;
+
+				return uuid.equals(route.uuid) && Objects.equals(path, route.path) && Objects.equals(name, route.name);
+			}
+
+			return false;
+		}
+	}
+
+	private static class PageRoute extends Route {
+
+		private final Integer position;
+		private final String siteId;
+		private final String errorCodes;
+		private final boolean basicAuth;
+		private final boolean visibleToAuthenticatedUsers;
+
+		public PageRoute(final Page page) {
+
+			super(page.getUuid(), page.getPath(), page.getName());
+
+			final Site site = page.getProperty(Page.site);
+
+			this.position                    = page.getProperty(Page.position);
+			this.siteId                      = site != null ? site.getUuid() : null;
+			this.errorCodes                  = page.getProperty(Page.showOnErrorCodes);
+			this.basicAuth                   = page.getProperty(Page.enableBasicAuth);
+			this.visibleToAuthenticatedUsers = page.getProperty(Page.visibleToAuthenticatedUsers);
+		}
+
+		@Override
+		public int hashCode() {
+			return super.hashCode();
+		}
+
+		@Override
+		public boolean equals(final Object other) {
+
+			if (super.equals(other)) {
+
+				final PageRoute route = (PageRoute)other;
+
+				return Objects.equals(position, route.position)
+					&& Objects.equals(siteId, route.siteId)
+					&& Objects.equals(errorCodes, route.errorCodes)
+					&& basicAuth == route.basicAuth
+					&& visibleToAuthenticatedUsers == route.visibleToAuthenticatedUsers;
+			}
+
+			return false;
+		}
+	}
+
+	private static class FileRoute extends Route {
+
+		public FileRoute(final File file) {
+			super(file.getUuid(), file.getPath(), file.getName());
+		}
+	}
+
+	private static class SiteRoute {
+
+		private final String hostname;
+		private final Integer port;
+
+		public SiteRoute(final Site site) {
+
+			this.hostname = site.getProperty(Site.hostname);
+			this.port     = site.getProperty(Site.port);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(hostname, port);
+		}
+
+		@Override
+		public boolean equals(final Object other) {
+
+			if (other instanceof SiteRoute) {
+
+				final SiteRoute route = (SiteRoute)other;
+
+				return Objects.equals(hostname, route.hostname) && Objects.equals(port, route.port);
+			}
+
+			return false;
+		}
+	}
+
+	/**
+	 * Immutable lookup structures, built from the current set of routes.
+	 */
+	private static class Routes {
+
+		private static final Comparator<PageRoute> positionComparator = Comparator.comparing(r -> r.position, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+		private final Map<String, List<PageRoute>> byPath          = new HashMap<>();
+		private final Map<String, List<PageRoute>> byName          = new HashMap<>();
+		private final Map<String, List<PageRoute>> errorPages      = new HashMap<>();
+		private final Map<String, List<Route>> basicAuthPagesByPath = new HashMap<>();
+		private final Map<String, List<Route>> basicAuthPagesByName = new HashMap<>();
+		private final Map<String, List<Route>> basicAuthFilesByPath = new HashMap<>();
+		private final Map<String, List<Route>> basicAuthFilesByName = new HashMap<>();
+		private final List<PageRoute> indexPages                   = new ArrayList<>();
+		private final Map<String, PageRoute> pages;
+		private final Map<String, SiteRoute> sites;
+
+		public Routes(final Map<String, PageRoute> pageRoutes, final Map<String, SiteRoute> siteRoutes, final Map<String, FileRoute> fileRoutes) {
+
+			this.pages = new HashMap<>(pageRoutes);
+			this.sites = new HashMap<>(siteRoutes);
+
+			final List<PageRoute> sorted = new ArrayList<>(pages.values());
+			Collections.sort(sorted, positionComparator);
+
+			for (final PageRoute route : sorted) {
+
+				add(byPath, route.path, route);
+				add(byName, route.name, route);
+
+				if (route.position != null) {
+					indexPages.add(route);
+				}
+
+				if (route.errorCodes != null) {
+
+					for (final String code : route.errorCodes.split("[^0-9]+")) {
+
+						if (!code.isEmpty()) {
+							add(errorPages, code, route);
+						}
+					}
+				}
+
+				if (route.basicAuth) {
+
+					add(basicAuthPagesByPath, route.path, route);
+					add(basicAuthPagesByName, route.name, route);
+				}
+			}
+
+			for (final FileRoute route : fileRoutes.values()) {
+
+				add(basicAuthFilesByPath, route.path, route);
+				add(basicAuthFilesByName, route.name, route);
+			}
+		}
+
+		public boolean isVisibleForSite(final HttpServletRequest request, final PageRoute route) {
+
+			if (route.siteId == null || request == null) {
+				return true;
+			}
+
+			final SiteRoute site     = sites.get(route.siteId);
+			final String hostname    = site != null ? site.hostname : null;
+			final Integer port       = site != null ? site.port : null;
+			final String serverName  = request.getServerName();
+
+			if (StringUtils.isNotBlank(serverName) && !serverName.equals(hostname)) {
+				return false;
+			}
+
+			return port == null || request.getServerPort() == port;
+		}
+
+		private <T> void add(final Map<String, List<T>> map, final String key, final T route) {
+
+			if (key != null) {
+
+				List<T> list = map.get(key);
+				if (list == null) {
+
+					list = new ArrayList<>(1);
+					map.put(key, list);
+				}
+
+				list.add(route);
+			}
+		}
+	}
+}
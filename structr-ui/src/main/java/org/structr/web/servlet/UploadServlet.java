@@ -18,22 +18,22 @@
  */
 package org.structr.web.servlet;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Semaphore;
 import java.util.regex.Matcher;
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
 import org.apache.commons.fileupload.FileUploadException;
-import org.apache.commons.fileupload.disk.DiskFileItemFactory;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
+import org.apache.commons.fileupload.util.Streams;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
@@ -59,6 +59,7 @@ import org.structr.rest.service.StructrHttpServiceConfig;
 import org.structr.schema.SchemaHelper;
 import org.structr.web.auth.UiAuthenticator;
 import org.structr.web.common.FileHelper;
+import org.structr.web.common.StreamedFile;
 import org.structr.web.entity.FileBase;
 import org.structr.web.entity.Folder;
 
@@ -66,7 +67,10 @@ import org.structr.web.entity.Folder;
 /**
  * Simple upload servlet.
  *
- *
+ * Uploads are parsed with the streaming API of commons-fileupload, so file
+ * content is written directly to the file store without being buffered in
+ * memory or in a temporary file first. The number of uploads processed in
+ * parallel is limited by UploadServlet.maxConcurrentUploads.
  */
 public class UploadServlet extends HttpServlet implements HttpServiceServlet {
 
@@ -75,13 +79,10 @@ public class UploadServlet extends HttpServlet implements HttpServiceServlet {
 	private static final String REDIRECT_AFTER_UPLOAD_PARAMETER    = "redirectOnSuccess";
 	private static final String APPEND_UUID_ON_REDIRECT            = "appendUuidOnRedirect";
 	private static final int MEGABYTE                              = 1024 * 1024;
-	private static final int MEMORY_THRESHOLD                      = 10 * MEGABYTE;  // above 10 MB, files are stored on disk
-	private static final String MAX_FILE_SIZE                      = "1000"; // unit is MB
-	private static final String MAX_REQUEST_SIZE                   = "1000"; // unit is MB
 
 	// non-static fields
 	private ServletFileUpload uploader = null;
-	private File filesDir = null;
+	private Semaphore uploadPermits    = null;
 	private final StructrHttpServiceConfig config = new StructrHttpServiceConfig();
 
 	public UploadServlet() {
@@ -96,33 +97,69 @@ public class UploadServlet extends HttpServlet implements HttpServiceServlet {
 	@Override
 	public void init() {
 
-		try (final Tx tx = StructrApp.getInstance().tx()) {
+		// streaming API, no item factory needed
+		uploader      = new ServletFileUpload();
+		uploadPermits = new Semaphore(Math.max(1, Settings.UploadMaxConcurrent.getValue()));
+	}
 
-			DiskFileItemFactory fileFactory = new DiskFileItemFactory();
-			fileFactory.setSizeThreshold(MEMORY_THRESHOLD);
+	@Override
+	public void destroy() {
+	}
 
-			filesDir = new File(Settings.TmpPath.getValue()); // new File(Services.getInstance().getTmpPath());
-			if (!filesDir.exists()) {
-				filesDir.mkdir();
-			}
+	@Override
+	protected void doPost(final HttpServletRequest request, final HttpServletResponse response) throws ServletException {
 
-			fileFactory.setRepository(filesDir);
-			uploader = new ServletFileUpload(fileFactory);
+		if (!acquireUploadPermit(response)) {
+			return;
+		}
 
-			tx.success();
+		try {
+
+			handlePost(request, response);
 
-		} catch (FrameworkException t) {
+		} finally {
 
-			logger.warn("", t);
+			uploadPermits.release();
 		}
 	}
 
 	@Override
-	public void destroy() {
+	protected void doPut(final HttpServletRequest request, final HttpServletResponse response) throws ServletException {
+
+		if (!acquireUploadPermit(response)) {
+			return;
+		}
+
+		try {
+
+			handlePut(request, response);
+
+		} finally {
+
+			uploadPermits.release();
+		}
 	}
 
-	@Override
-	protected void doPost(final HttpServletRequest request, final HttpServletResponse response) throws ServletException {
+	// ----- private methods -----
+	private boolean acquireUploadPermit(final HttpServletResponse response) {
+
+		if (uploadPermits.tryAcquire()) {
+			return true;
+		}
+
+		try {
+
+			response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+			response.getOutputStream().write("ERROR (503): Too many concurrent uploads, please try again later.\n".getBytes("UTF-8"));
+
+		} catch (IOException ioex) {
+			logger.warn("Unable to send response", ioex);
+		}
+
+		return false;
+	}
+
+	private void handlePost(final HttpServletRequest request, final HttpServletResponse response) {
 
 		try {
 
@@ -204,30 +241,30 @@ public class UploadServlet extends HttpServlet implements HttpServiceServlet {
 
 			response.setContentType("text/html");
 
-			List<FileItem> fileItemsList = uploader.parseRequest(request);
-			Iterator<FileItem> fileItemsIterator = fileItemsList.iterator();
-
-			final Map<String, Object> params = new HashMap<>();
+			final FileItemIterator fileItemsIterator = uploader.getItemIterator(request);
+			final Map<String, Object> params         = new HashMap<>();
 
+			// form fields must precede the file parts they refer to
 			while (fileItemsIterator.hasNext()) {
 
-				final FileItem item = fileItemsIterator.next();
+				final FileItemStream item = fileItemsIterator.next();
 
 				if (item.isFormField()) {
 
 					final String fieldName = item.getFieldName();
+					final String value     = readString(item);
 
 					if (REDIRECT_AFTER_UPLOAD_PARAMETER.equals(fieldName)) {
 
-						redirectUrl = item.getString();
+						redirectUrl = value;
 
 					} else if (APPEND_UUID_ON_REDIRECT.equals(fieldName)) {
 
-						appendUuidOnRedirect = "true".equalsIgnoreCase(item.getString());
+						appendUuidOnRedirect = "true".equalsIgnoreCase(value);
 
 					} else {
 
-						params.put(item.getFieldName(), item.getString());
+						params.put(fieldName, value);
 					}
 
 				} else {
@@ -273,13 +310,21 @@ public class UploadServlet extends HttpServlet implements HttpServiceServlet {
 						String uuid       = null;
 						boolean retry     = true;
 
+						// stream the content to the file store before the transaction is
+						// opened, so a retried transaction doesn't need to read it again
+						final StreamedFile data;
+
+						try (final InputStream in = item.openStream()) {
+							data = StreamedFile.write(in);
+						}
+
 						while (retry) {
 
 							retry = false;
 
 							try (final Tx tx = StructrApp.getInstance().tx()) {
 
-								newFile = FileHelper.createFile(securityContext, IOUtils.toByteArray(item.getInputStream()), contentType, cls);
+								newFile = FileHelper.createFile(securityContext, data, contentType, cls, PathHelper.getName(name));
 
 								final PropertyMap changedProperties = new PropertyMap();
 
@@ -306,7 +351,13 @@ public class UploadServlet extends HttpServlet implements HttpServiceServlet {
 								tx.success();
 
 							} catch (RetryException rex) {
+
 								retry = true;
+
+							} catch (Throwable t) {
+
+								data.delete();
+								throw t;
 							}
 						}
 
@@ -368,8 +419,7 @@ public class UploadServlet extends HttpServlet implements HttpServiceServlet {
 	}
 	}
 
-	@Override
-	protected void doPut(final HttpServletRequest request, final HttpServletResponse response) throws ServletException {
+	private void handlePut(final HttpServletRequest request, final HttpServletResponse response) {
 
 		try (final Tx tx = StructrApp.getInstance().tx(true, false, false)) {
 
@@ -408,12 +458,11 @@ public class UploadServlet extends HttpServlet implements HttpServiceServlet {
 			uploader.setFileSizeMax(MEGABYTE * Settings.UploadMaxFileSize.getValue());
 			uploader.setSizeMax(MEGABYTE * Settings.UploadMaxRequestSize.getValue());
 
-			List<FileItem> fileItemsList = uploader.parseRequest(request);
-			Iterator<FileItem> fileItemsIterator = fileItemsList.iterator();
+			final FileItemIterator fileItemsIterator = uploader.getItemIterator(request);
 
 			while (fileItemsIterator.hasNext()) {
 
-				final FileItem fileItem = fileItemsIterator.next();
+				final FileItemStream fileItem = fileItemsIterator.next();
 
 				try {
 
@@ -431,7 +480,9 @@ public class UploadServlet extends HttpServlet implements HttpServiceServlet {
 						final org.structr.dynamic.File file = (org.structr.dynamic.File) node;
 						if (file.isGranted(Permission.write, securityContext)) {
 
-							FileHelper.writeToFile(file, fileItem.getInputStream());
+							try (final InputStream in = fileItem.openStream()) {
+								FileHelper.writeToFile(file, in);
+							}
 							file.increaseVersion();
 
 							// upload trigger
@@ -460,6 +511,13 @@ public class UploadServlet extends HttpServlet implements HttpServiceServlet {
 		}
 	}
 
+	private String readString(final FileItemStream item) throws IOException {
+
+		try (final InputStream in = item.openStream()) {
+			return Streams.asString(in, "UTF-8");
+		}
+	}
+
 	private String errorPage(final Throwable t) {
 		return "<html><head><title>Error in Upload</title></head><body><h1>Error in Upload</h1><p>" + t.toString() + "</p>\n<!--" + ExceptionUtils.getStackTrace(t) + "--></body></html>";
 	}
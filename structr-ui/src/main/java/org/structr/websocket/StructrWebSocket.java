@@ -317,7 +317,10 @@ public class StructrWebSocket implements WebSocketListener {
 				securityContext.clearCustomView();
 			}
 
-			session.getRemote().sendString(msg);
+			// synchronized with the broadcast senders, blocking writes must not interleave
+			synchronized (session) {
+				session.getRemote().sendString(msg);
+			}
 
 			tx.success();
 
@@ -19,29 +19,51 @@
 package org.structr.websocket;
 
 import com.google.gson.Gson;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import org.eclipse.jetty.util.ConcurrentHashSet;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import org.eclipse.jetty.util.URIUtil;
+import org.eclipse.jetty.websocket.api.BatchMode;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.WebSocketException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
 import org.structr.api.graph.RelationshipType;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
+import org.structr.core.Services;
 import org.structr.core.StructrTransactionListener;
 import org.structr.core.TransactionSource;
+import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.graph.ModificationEvent;
 import org.structr.core.graph.NodeInterface;
 import org.structr.core.graph.RelationshipInterface;
+import org.structr.core.graph.TransactionCommand;
+import org.structr.core.graph.Tx;
+import org.structr.core.property.PropertyKey;
 import org.structr.core.property.PropertyMap;
 import org.structr.web.entity.AbstractFile;
 import org.structr.web.entity.User;
@@ -50,26 +72,96 @@ import org.structr.websocket.message.MessageBuilder;
 import org.structr.websocket.message.WebSocketMessage;
 
 /**
+ * Broadcasts modification events to all connected websocket clients.
  *
- *
+ * Messages are created in the committing thread and handed over to a
+ * dispatcher thread, which serializes each message once per distinct
+ * visibility (i.e. once per filtered result) and appends the JSON to a
+ * bounded outbound queue per client. The queues are drained by a small
+ * pool of sender threads, so a slow client can only delay itself. If a
+ * client queue is full, new messages for that client are dropped; an
+ * UPDATE for an object that is still waiting in the queue replaces the
+ * pending one.
  */
 public class WebsocketController implements StructrTransactionListener {
 
-	private static final Logger logger                 = LoggerFactory.getLogger(WebsocketController.class.getName());
-	private static final Set<String> BroadcastCommands = new HashSet<>(Arrays.asList(new String[] { "UPDATE", "ADD", "CREATE" } ));
+	private static final Logger logger                              = LoggerFactory.getLogger(WebsocketController.class.getName());
+	private static final Set<String> BroadcastCommands              = new HashSet<>(Arrays.asList(new String[] { "UPDATE", "ADD", "CREATE" } ));
+	private static final Set<WebsocketController> controllers       = ConcurrentHashMap.newKeySet();
+	private static final int MAX_BATCHES_PER_DISPATCH               = 100;
+	private static final int SHUTDOWN_TIMEOUT_SECONDS               = 5;
+
+	private static final LongAdder droppedBatches                   = new LongAdder();
+	private static final LongAdder droppedMessages                  = new LongAdder();
+	private static final LongAdder coalescedMessages                = new LongAdder();
+	private static final LongAdder serializedMessages               = new LongAdder();
+	private static final LongAdder sentMessages                     = new LongAdder();
+	private static final LongAdder failedMessages                   = new LongAdder();
+
+	private final Map<StructrWebSocket, ClientQueue> clients        = new ConcurrentHashMap<>();
+	private final BlockingQueue<List<WebSocketMessage>> dispatchQueue = new ArrayBlockingQueue<>(Math.max(1, Settings.WebsocketBroadcastQueue.getValue()));
+	private final ExecutorService senders                           = Executors.newFixedThreadPool(Math.max(1, Settings.WebsocketSenderThreads.getValue()), r -> {
 
-	private final Set<StructrWebSocket> clients = new ConcurrentHashSet<>();
+		final Thread thread = new Thread(r, "WebsocketSender");
+		thread.setDaemon(true);
+
+		return thread;
+	});
+
+	private final Thread dispatcher                                 = new Thread(this::dispatch, "WebsocketDispatcher");
+	private volatile boolean running                                = true;
 	private Gson gson = null;
 
 	public WebsocketController(final Gson gson) {
 
 		this.gson = gson;
 
+		dispatcher.setDaemon(true);
+		dispatcher.start();
+
+		controllers.add(this);
+
+		Services.getInstance().registerShutdownCallback(this::shutdown);
+	}
+
+	/**
+	 * Stops the dispatcher and the sender threads of this controller and
+	 * removes it from the transaction listeners. Messages that are still
+	 * queued for dispatch are discarded, messages that were already handed
+	 * to the senders are given a few seconds to be written.
+	 */
+	public void shutdown() {
+
+		if (!controllers.remove(this)) {
+			return;
+		}
+
+		running = false;
+
+		TransactionCommand.removeTransactionListener(this);
+
+		dispatcher.interrupt();
+		senders.shutdown();
+
+		try {
+
+			if (!senders.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+				senders.shutdownNow();
+			}
+
+		} catch (InterruptedException iex) {
+
+			senders.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+
+		dispatchQueue.clear();
+		clients.clear();
 	}
 
 	public void registerClient(final StructrWebSocket client) {
 
-		clients.add(client);
+		clients.put(client, new ClientQueue(client));
 
 	}
 
@@ -79,24 +171,116 @@ public class WebsocketController implements StructrTransactionListener {
 
 	}
 
+	public static Map<String, Object> getBroadcastStatistics() {
+
+		final Map<String, Object> statistics = new LinkedHashMap<>();
+		int dispatchQueueDepth               = 0;
+		int clientQueueDepth                 = 0;
+		int maxClientQueueDepth              = 0;
+		int clientCount                      = 0;
+
+		for (final WebsocketController controller : controllers) {
+
+			dispatchQueueDepth += controller.dispatchQueue.size();
+
+			for (final ClientQueue queue : controller.clients.values()) {
+
+				final int size = queue.size();
+
+				clientQueueDepth    += size;
+				maxClientQueueDepth  = Math.max(maxClientQueueDepth, size);
+				clientCount++;
+			}
+		}
+
+		statistics.put("clients",             clientCount);
+		statistics.put("dispatchQueueDepth",  dispatchQueueDepth);
+		statistics.put("dispatchQueueSize",   Settings.WebsocketBroadcastQueue.getValue());
+		statistics.put("clientQueueDepth",    clientQueueDepth);
+		statistics.put("maxClientQueueDepth", maxClientQueueDepth);
+		statistics.put("clientQueueSize",     Settings.WebsocketClientQueue.getValue());
+		statistics.put("serialized",          serializedMessages.sum());
+		statistics.put("sent",                sentMessages.sum());
+		statistics.put("coalesced",           coalescedMessages.sum());
+		statistics.put("dropped",             droppedMessages.sum());
+		statistics.put("droppedBatches",      droppedBatches.sum());
+		statistics.put("failed",              failedMessages.sum());
+
+		return statistics;
+	}
+
 	// ----- private methods -----
+	private void enqueue(final List<WebSocketMessage> messages) {
+
+		if (running && !messages.isEmpty() && !dispatchQueue.offer(messages)) {
+
+			droppedBatches.increment();
+			logger.debug("Websocket dispatch queue full, dropping {} messages.", messages.size());
+		}
+	}
+
+	private void dispatch() {
+
+		final List<List<WebSocketMessage>> batches = new ArrayList<>();
+
+		while (running) {
+
+			try {
+
+				batches.add(dispatchQueue.take());
+				dispatchQueue.drainTo(batches, MAX_BATCHES_PER_DISPATCH);
+
+				try (final Tx tx = StructrApp.getInstance().tx(false, false, false)) {
+
+					for (final List<WebSocketMessage> batch : batches) {
+
+						for (final WebSocketMessage message : batch) {
+
+							broadcast(message);
+						}
+					}
+
+					tx.success();
+				}
+
+				// hand everything collected in this round to the senders
+				for (final ClientQueue queue : clients.values()) {
+					queue.schedule();
+				}
+
+			} catch (InterruptedException iex) {
+
+				return;
+
+			} catch (Throwable t) {
+
+				logger.warn("Unable to dispatch websocket broadcast: {}", t.getMessage());
+
+			} finally {
+
+				batches.clear();
+			}
+		}
+	}
+
 	private void broadcast(final WebSocketMessage webSocketData) {
 
 		//logger.debug("Broadcasting message to {} clients..", clients.size());
 		// session must be valid to be received by the client
 		webSocketData.setSessionValid(true);
 
-		final String pagePath                        = (String) webSocketData.getNodeData().get("pagePath");
-		final String encodedPath                     = URIUtil.encodePath(pagePath);
-		final List<StructrWebSocket> clientsToRemove = new LinkedList<>();
-		final List<? extends GraphObject> result     = webSocketData.getResult();
-		final String command                         = webSocketData.getCommand();
-		final GraphObject obj                        = webSocketData.getGraphObject();
-
-		String message;
+		final String pagePath                    = (String) webSocketData.getNodeData().get("pagePath");
+		final String encodedPath                 = URIUtil.encodePath(pagePath);
+		final List<? extends GraphObject> result = webSocketData.getResult();
+		final String command                     = webSocketData.getCommand();
+		final GraphObject obj                    = webSocketData.getGraphObject();
+		final String coalesceKey                 = getCoalesceKey(webSocketData);
+		final Map<String, String> serialized     = new HashMap<>();
 
 		// create message
-		for (StructrWebSocket socket : clients) {
+		for (final Map.Entry<StructrWebSocket, ClientQueue> entry : clients.entrySet()) {
+
+			final StructrWebSocket socket = entry.getKey();
 
 			String clientPagePath = socket.getPagePath();
 			if (clientPagePath != null && !clientPagePath.equals(encodedPath)) {
@@ -127,48 +311,92 @@ public class WebsocketController implements StructrTransactionListener {
 					}
 				}
 
+				final String message;
+
 				if (result != null && !result.isEmpty() && BroadcastCommands.contains(command)) {
 
-					final WebSocketMessage clientData = webSocketData.copy();
+					final List<? extends GraphObject> filtered = filter(securityContext, result);
+
+					// clients that see the same subset of the result receive the same JSON
+					message = serialized.computeIfAbsent(getVisibilityKey(filtered), k -> {
 
-					clientData.setResult(filter(securityContext, result));
+						final WebSocketMessage clientData = webSocketData.copy();
 
-					message = gson.toJson(clientData, WebSocketMessage.class);
+						clientData.setResult(filtered);
+
+						serializedMessages.increment();
+
+						return gson.toJson(clientData, WebSocketMessage.class);
+					});
 
 				} else {
 
-					message = gson.toJson(webSocketData, WebSocketMessage.class);
+					message = serialized.computeIfAbsent("", k -> {
+
+						serializedMessages.increment();
+
+						return gson.toJson(webSocketData, WebSocketMessage.class);
+					});
 				}
 
-				try {
+				entry.getValue().add(coalesceKey, message);
+			}
+		}
+	}
 
-					session.getRemote().sendString(message);
+	/**
+	 * Returns the key under which a pending UPDATE message may be replaced
+	 * by a newer one, or null if the message must be delivered as is.
+	 *
+	 * Only UPDATE messages without a callback are coalesced, and only with
+	 * messages that touch exactly the same properties, so that the newer
+	 * message carries everything the replaced one did.
+	 */
+	private String getCoalesceKey(final WebSocketMessage webSocketData) {
+
+		if (!"UPDATE".equals(webSocketData.getCommand()) || webSocketData.getId() == null || webSocketData.getCallback() != null) {
+			return null;
+		}
 
-				} catch (Throwable t) {
+		final StringBuilder buf = new StringBuilder(webSocketData.getId());
 
-					if (t instanceof WebSocketException) {
+		appendKeys(buf.append(":modified"), webSocketData.getModifiedProperties());
+		appendKeys(buf.append(":removed"),  webSocketData.getRemovedProperties());
 
-						WebSocketException wse = (WebSocketException) t;
+		buf.append(":data");
 
-						if ("RemoteEndpoint unavailable, current state [CLOSED], expecting [OPEN or CONNECTED]".equals(wse.getMessage())) {
-							clientsToRemove.add(socket);
-						}
-					}
+		for (final String key : new TreeSet<>(webSocketData.getNodeData().keySet())) {
+			buf.append(",").append(key);
+		}
 
-					logger.debug("Error sending message to client.", t);
-				}
+		return buf.toString();
+	}
+
+	private void appendKeys(final StringBuilder buf, final Set<PropertyKey> keys) {
+
+		if (keys != null) {
+
+			final Set<String> names = new TreeSet<>();
 
+			for (final PropertyKey key : keys) {
+				names.add(key.jsonName());
 			}
 
+			for (final String name : names) {
+				buf.append(",").append(name);
+			}
 		}
+	}
 
-		for (StructrWebSocket s : clientsToRemove) {
+	private String getVisibilityKey(final List<? extends GraphObject> filtered) {
 
-			unregisterClient(s);
+		final StringBuilder buf = new StringBuilder("result");
 
-			logger.warn("Client removed from broadcast list: {}", s);
+		for (final GraphObject obj : filtered) {
+			buf.append(":").append(obj.getUuid());
 		}
 
+		return buf.toString();
 	}
 
 	private <T extends GraphObject> List<T> filter(final SecurityContext securityContext, final List<T> all) {
@@ -194,24 +422,28 @@ public class WebsocketController implements StructrTransactionListener {
 	@Override
 	public void afterCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents, final TransactionSource source) {
 
+		final List<WebSocketMessage> messages = new ArrayList<>(modificationEvents.size());
+
 		for (final ModificationEvent event : modificationEvents) {
 
 			try {
 				final WebSocketMessage message = getMessageForEvent(securityContext, event);
 				if (message != null) {
 
-					broadcast(message);
+					messages.add(message);
 				}
 
 			} catch (FrameworkException ignore) {
 			}
 		}
+
+		enqueue(messages);
 	}
 
 	@Override
 	public void simpleBroadcast () {
 
-		broadcast(MessageBuilder.forName("SCHEMA_COMPILED").data("success", true).build());
+		enqueue(Arrays.asList(MessageBuilder.forName("SCHEMA_COMPILED").data("success", true).build()));
 
 	}
 
@@ -374,4 +606,167 @@ public class WebsocketController implements StructrTransactionListener {
 
 		return newMessage;
 	}
+
+	// ----- nested classes -----
+	/**
+	 * Bounded outbound queue of serialized messages for a single client.
+	 * At most one sender thread drains a queue at a time, writing all
+	 * pending messages in batch mode and flushing them at once.
+	 */
+	private class ClientQueue {
+
+		private final Map<String, PendingMessage> pendingUpdates = new HashMap<>();
+		private final ArrayDeque<PendingMessage> queue           = new ArrayDeque<>();
+		private final AtomicBoolean scheduled                    = new AtomicBoolean(false);
+		private final AtomicInteger size                         = new AtomicInteger(0);
+		private final int capacity                               = Math.max(1, Settings.WebsocketClientQueue.getValue());
+		private StructrWebSocket socket                          = null;
+
+		public ClientQueue(final StructrWebSocket socket) {
+			this.socket = socket;
+		}
+
+		public synchronized void add(final String coalesceKey, final String message) {
+
+			if (coalesceKey != null) {
+
+				final PendingMessage pending = pendingUpdates.get(coalesceKey);
+				if (pending != null) {
+
+					// a newer update of the same properties of an object that has not been sent yet replaces the older one
+					pending.message = message;
+					coalescedMessages.increment();
+					return;
+				}
+			}
+
+			if (queue.size() >= capacity) {
+
+				droppedMessages.increment();
+				return;
+			}
+
+			final PendingMessage pending = new PendingMessage(message);
+
+			if (coalesceKey != null) {
+				pendingUpdates.put(coalesceKey, pending);
+			}
+
+			queue.add(pending);
+			size.set(queue.size());
+		}
+
+		public int size() {
+			return size.get();
+		}
+
+		public void schedule() {
+
+			if (running && size() > 0 && scheduled.compareAndSet(false, true)) {
+
+				try {
+
+					senders.submit(this::drain);
+
+				} catch (RejectedExecutionException rex) {
+
+					// controller was shut down in the meantime
+					scheduled.set(false);
+				}
+			}
+		}
+
+		// ----- private methods -----
+		private synchronized List<PendingMessage> takeAll() {
+
+			final List<PendingMessage> batch = new ArrayList<>(queue);
+
+			queue.clear();
+			pendingUpdates.clear();
+			size.set(0);
+
+			return batch;
+		}
+
+		private void drain() {
+
+			try {
+
+				List<PendingMessage> batch = takeAll();
+				while (!batch.isEmpty()) {
+
+					send(batch);
+
+					batch = takeAll();
+				}
+
+			} finally {
+
+				scheduled.set(false);
+			}
+
+			// messages added after the last takeAll() but before the flag was reset
+			schedule();
+		}
+
+		private void send(final List<PendingMessage> batch) {
+
+			final Session session = socket.getSession();
+			if (session == null) {
+
+				failedMessages.add(batch.size());
+				return;
+			}
+
+			// synchronized with StructrWebSocket#send, blocking writes must not interleave
+			synchronized (session) {
+
+				final RemoteEndpoint remote = session.getRemote();
+
+				try {
+
+					remote.setBatchMode(BatchMode.ON);
+
+					for (final PendingMessage pending : batch) {
+
+						remote.sendString(pending.message);
+						sentMessages.increment();
+					}
+
+					remote.flush();
+
+				} catch (Throwable t) {
+
+					failedMessages.increment();
+
+					if (t instanceof WebSocketException) {
+
+						WebSocketException wse = (WebSocketException) t;
+
+						if ("RemoteEndpoint unavailable, current state [CLOSED], expecting [OPEN or CONNECTED]".equals(wse.getMessage())) {
+
+							unregisterClient(socket);
+
+							logger.warn("Client removed from broadcast list: {}", socket);
+						}
+					}
+
+					logger.debug("Error sending message to client.", t);
+
+				} finally {
+
+					remote.setBatchMode(BatchMode.AUTO);
+				}
+			}
+		}
+	}
+
+	private static class PendingMessage {
+
+		private String message = null;
+
+		public PendingMessage(final String message) {
+			this.message = message;
+		}
+	}
 }
@@ -27,7 +27,6 @@ import org.slf4j.LoggerFactory;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.property.PropertyMap;
 import org.structr.dynamic.File;
-import org.structr.web.common.FileHelper;
 import org.structr.web.entity.FileBase;
 
 //~--- classes ----------------------------------------------------------------
@@ -164,8 +163,12 @@ public class FileUploadHandler {
 					throw new IOException("Security violation: File path contains ..");
 				}
 
-				String filePath         = FileHelper.getFilePath(relativeFilePath);
-				java.io.File fileOnDisk = new java.io.File(filePath);
+				// shared content must not be modified in place
+				java.io.File fileOnDisk = file.getWritableFileOnDisk(append);
+				if (fileOnDisk == null) {
+
+					throw new IOException("Unable to obtain writable file for " + relativeFilePath);
+				}
 
 				fileOnDisk.getParentFile().mkdirs();
 
@@ -43,6 +43,7 @@ public class WebSocketServlet extends org.eclipse.jetty.websocket.servlet.WebSoc
 	private static final int MAX_TEXT_MESSAGE_SIZE = 1024 * 1024;
 
 	private final StructrHttpServiceConfig config = new StructrHttpServiceConfig();
+	private WebsocketController syncController    = null;
 
 	@Override
 	public StructrHttpServiceConfig getConfig() {
@@ -70,7 +71,7 @@ public class WebSocketServlet extends org.eclipse.jetty.websocket.servlet.WebSoc
 
 		final Gson gson = gsonBuilder.create();
 
-		final WebsocketController syncController = new WebsocketController(gson);
+		syncController = new WebsocketController(gson);
 
 		// register (Structr) transaction listener
 		TransactionCommand.registerTransactionListener(syncController);
@@ -86,4 +87,14 @@ public class WebSocketServlet extends org.eclipse.jetty.websocket.servlet.WebSoc
 		factory.getPolicy().setMaxTextMessageSize(MAX_TEXT_MESSAGE_SIZE);
 
 	}
+
+	@Override
+	public void destroy() {
+
+		super.destroy();
+
+		if (syncController != null) {
+			syncController.shutdown();
+		}
+	}
 }
@@ -26,11 +26,14 @@ import java.util.Map.Entry;
 import org.apache.commons.io.IOUtils;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import org.junit.After;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.entity.AbstractNode;
@@ -41,6 +44,7 @@ import org.structr.dynamic.File;
 import org.structr.web.common.FileHelper;
 import org.structr.web.common.ImageHelper;
 import org.structr.web.common.ImageHelper.Thumbnail;
+import org.structr.web.common.ThumbnailGenerator;
 import org.structr.web.entity.FileBase;
 import org.structr.web.entity.Folder;
 import org.structr.web.entity.Image;
@@ -52,9 +56,17 @@ public class UiTest extends StructrUiTest {
 	private static String base64Image  = "data:image/png;base64,iVBORw0KGgoAAAANSUhEUgAAAWAAAABUCAYAAAC8/e1DAAAAGXRFWHRTb2Z0d2FyZQBBZG9iZSBJbWFnZVJlYWR5ccllPAAAA2ZpVFh0WE1MOmNvbS5hZG9iZS54bXAAAAAAADw/eHBhY2tldCBiZWdpbj0i77u/IiBpZD0iVzVNME1wQ2VoaUh6cmVTek5UY3prYzlkIj8+IDx4OnhtcG1ldGEgeG1sbnM6eD0iYWRvYmU6bnM6bWV0YS8iIHg6eG1wdGs9IkFkb2JlIFhNUCBDb3JlIDUuMy1jMDExIDY2LjE0NTY2MSwgMjAxMi8wMi8wNi0xNDo1NjoyNyAgICAgICAgIj4gPHJkZjpSREYgeG1sbnM6cmRmPSJodHRwOi8vd3d3LnczLm9yZy8xOTk5LzAyLzIyLXJkZi1zeW50YXgtbnMjIj4gPHJkZjpEZXNjcmlwdGlvbiByZGY6YWJvdXQ9IiIgeG1sbnM6eG1wTU09Imh0dHA6Ly9ucy5hZG9iZS5jb20veGFwLzEuMC9tbS8iIHhtbG5zOnN0UmVmPSJodHRwOi8vbnMuYWRvYmUuY29tL3hhcC8xLjAvc1R5cGUvUmVzb3VyY2VSZWYjIiB4bWxuczp4bXA9Imh0dHA6Ly9ucy5hZG9iZS5jb20veGFwLzEuMC8iIHhtcE1NOk9yaWdpbmFsRG9jdW1lbnRJRD0ieG1wLmRpZDo2RjYyNjlFMUNFMTNFMjExQTQ2N0ZGMDI2MEZEQ0Q3NSIgeG1wTU06RG9jdW1lbnRJRD0ieG1wLmRpZDo2MDcwOEExQzEzRDMxMUUyQTMyQzlEQjBGNTBBQUUwMSIgeG1wTU06SW5zdGFuY2VJRD0ieG1wLmlpZDo2MDcwOEExQjEzRDMxMUUyQTMyQzlEQjBGNTBBQUUwMSIgeG1wOkNyZWF0b3JUb29sPSJBZG9iZSBQaG90b3Nob3AgQ1M2IChXaW5kb3dzKSI+IDx4bXBNTTpEZXJpdmVkRnJvbSBzdFJlZjppbnN0YW5jZUlEPSJ4bXAuaWlkOkYzODhBQzYwRDIxM0UyMTFBNDY3RkYwMjYwRkRDRDc1IiBzdFJlZjpkb2N1bWVudElEPSJ4bXAuZGlkOjZGNjI2OUUxQ0UxM0UyMTFBNDY3RkYwMjYwRkRDRDc1Ii8+IDwvcmRmOkRlc2NyaXB0aW9uPiA8L3JkZjpSREY+IDwveDp4bXBtZXRhPiA8P3hwYWNrZXQgZW5kPSJyIj8+xNxK9AAAAt9JREFUeNrs3TFOKlEUgGGuIWhGSwmVLoMlWFi8ddiZuA41sTMuw9LlYGWBEqOE4DC8c4mNhSUzhvt9yQ2813GCf46DOmk8Hu9dXl7+q6rqPqU06gGwNev1+mU+n1/c3d099uPfB+Eh/nMYx3QAtmuUmxuPTznAh+IL0Kphbm8O8GC1WhkHQLsGOcCpaRqjAGhXygHu2YAB2ifAAF0GuK5rkwCwAQPYgAEQYIAdDbBLEAA2YAABBqCFALsEASDAAGUF2CUIABswQFkB9tfQAGzAAGUF2DVggI4CvFgsTALABgxQUIDdkBOgfXtGACDAAAIMgAADCDAAAgwgwAAIMIAAAyDAAH/a5leRU0omAWADBrABA2ADBtjNAK/Dm1EAtCOaO8sPOcDL19fXm6Zp3o0FYLuitbNo7nVubxqPx1U8OY1zEucojgvC3egbAYV81516Py9/5jtC5DsD19/Pd3r5jfMR5znOJH/R5xvCTeJM4wwEuNM3JpQg/RKmpoDXnl/nMs5nbm//+Pi4d3V1dVZV1X1KaeS9AbDFAq/XL/P5/OL29vYxb8AH+/v7D03TDI0GYOtGubnx+JQDfBhFHroxJ0Br8sJ7mAM8iO3XOADaNcgBTgIM0Lq0+dGn1WplFAAt2wTYBgzQUYC/vr5MAqCLALsEASDAAGUF2CUIgI4C7EM4gI4CXNe1SQAIMEBBAfYhHIAAA5QVYJcgAGzAAGUF2N8CBugowC5BAAgwQFkBXiwWJgFgAwYoKMA+hANo354RAAgwgAADIMAAAgyAAAMIMAACDCDAAAgwwJ+2+VXklJJJANiAAWzAANiAAXYzwOvwZhQA7YjmzvJDDvByOp3eNE3zbiwA2xWtnUVzr3N70/n5eRVPTuOcxDmK44JwN/pGQCHfdafez8uf+Y4Qqzj19/OdXn7jfMR5jjPJX/T5hnCTONM4AwHu9I0JJUi/hKkp4LXn17mM85nb+1+AAQDuVAgNv/BqVwAAAABJRU5ErkJggg==";
 	private static final Logger logger = LoggerFactory.getLogger(UiTest.class.getName());
 
+	@After
+	public void resetThumbnailMode() {
+		Settings.ThumbnailsAsync.setValue(Settings.ThumbnailsAsync.getDefaultValue());
+	}
+
 	@Test
 	public void test01CreateThumbnail() {
 
+		// thumbnail is expected to be created in the reading transaction
+		Settings.ThumbnailsAsync.setValue(false);
+
 		try (final Tx tx = app.tx()) {
 
 			TestImage img = (TestImage) ImageHelper.createFileBase64(securityContext, base64Image, TestImage.class);
@@ -87,6 +99,9 @@ public class UiTest extends StructrUiTest {
 		final String renamedImageName = "image_name_after_rename.png";
 		Image testImage = null;
 
+		// thumbnails are expected to be created in the reading transaction
+		Settings.ThumbnailsAsync.setValue(false);
+
 		try (final Tx tx = app.tx()) {
 
 			testImage = (Image) ImageHelper.createFileBase64(securityContext, base64Image, Image.class);
@@ -146,6 +161,9 @@ public class UiTest extends StructrUiTest {
 		final String initialImageName = "initial_image_name.png";
 		final String renamedImageName = "image_name_after_rename.png";
 
+		// thumbnails are expected to be created in the reading transaction
+		Settings.ThumbnailsAsync.setValue(false);
+
 		try (final Tx tx = app.tx()) {
 
 			subclassTestImage = (TestImage) ImageHelper.createFileBase64(securityContext, base64Image, TestImage.class);
@@ -202,6 +220,91 @@ public class UiTest extends StructrUiTest {
 
 	}
 
+	@Test
+	public void test02CreateThumbnailAsync() {
+
+		final ThumbnailGenerator generator = ThumbnailGenerator.getInstance();
+		final String imageName             = "async_image.png";
+		final int reads                    = 5;
+		String uuid                        = null;
+
+		Settings.ThumbnailsAsync.setValue(true);
+
+		try (final Tx tx = app.tx()) {
+
+			final Image image = (Image) ImageHelper.createFileBase64(securityContext, base64Image, Image.class);
+
+			image.setProperties(image.getSecurityContext(), new PropertyMap(Image.name, imageName));
+
+			uuid = image.getUuid();
+
+			tx.success();
+
+		} catch (Exception ex) {
+
+			logger.error(ex.toString());
+			fail("Unexpected exception");
+		}
+
+		final long requestedBefore = getStatistic(generator, "requested");
+		final long coalescedBefore = getStatistic(generator, "coalesced");
+		final long processedBefore = getStatistic(generator, "processed");
+
+		try (final Tx tx = app.tx()) {
+
+			final Image image = app.get(Image.class, uuid);
+
+			// the thumbnail is not created in the reading transaction
+			assertNull("Thumbnail must not be created in the reading transaction", image.getProperty(Image.tnSmall));
+
+			for (int i = 1; i < reads; i++) {
+				image.getProperty(Image.tnSmall);
+			}
+
+			tx.success();
+
+		} catch (Exception ex) {
+
+			logger.error(ex.toString());
+			fail("Unexpected exception");
+		}
+
+		waitForThumbnails(generator);
+
+		final long requested = getStatistic(generator, "requested") - requestedBefore;
+		final long coalesced = getStatistic(generator, "coalesced") - coalescedBefore;
+		final long processed = getStatistic(generator, "processed") - processedBefore;
+
+		assertTrue("Thumbnail creation was not requested", requested >= 1);
+		assertTrue("Thumbnail was not created", processed >= 1);
+
+		// requests for a queued thumbnail don't create another job
+		assertEquals("Thumbnail requests not coalesced as expected", requested - coalesced, processed);
+
+		try (final Tx tx = app.tx()) {
+
+			final Image image   = app.get(Image.class, uuid);
+			final Image tnSmall = image.getProperty(Image.tnSmall);
+			int count           = 0;
+
+			assertNotNull("Thumbnail was not created in the background", tnSmall);
+			assertEquals("Thumbnail name not as expected", ImageHelper.getThumbnailName(imageName, tnSmall.getWidth(), tnSmall.getHeight()), tnSmall.getProperty(Image.name));
+
+			for (final Object rel : image.getThumbnailRelationships()) {
+				count++;
+			}
+
+			assertEquals("Concurrent requests must create a single thumbnail", 1, count);
+
+			tx.success();
+
+		} catch (Exception ex) {
+
+			logger.error(ex.toString());
+			fail("Unexpected exception");
+		}
+	}
+
 	@Test
 	public void testFolderPath() {
 
@@ -511,4 +614,24 @@ public class UiTest extends StructrUiTest {
 
 
 	}
+
+	// ----- private methods -----
+	private long getStatistic(final ThumbnailGenerator generator, final String key) {
+		return ((Number)generator.getStatistics().get(key)).longValue();
+	}
+
+	private void waitForThumbnails(final ThumbnailGenerator generator) {
+
+		final long timeout = System.currentTimeMillis() + 30000;
+
+		while (getStatistic(generator, "pending") > 0 && System.currentTimeMillis() < timeout) {
+
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException ignore) {
+			}
+		}
+
+		assertEquals("Thumbnail generator did not finish in time", 0, getStatistic(generator, "pending"));
+	}
 }
@@ -0,0 +1,291 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
+import org.structr.core.graph.Tx;
+import org.structr.dynamic.File;
+import org.structr.web.StructrUiTest;
+import org.structr.web.entity.FileBase;
+
+/**
+ * Tests for deduplication, detaching and garbage collection of the
+ * {@link ContentStore}.
+ */
+public class ContentStoreTest extends StructrUiTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(ContentStoreTest.class.getName());
+
+	@Before
+	public void enableContentStore() {
+
+		Settings.ContentStoreEnabled.setValue(true);
+		Settings.ContentStoreGcDelay.setValue(0);
+	}
+
+	@After
+	public void resetContentStore() {
+
+		Settings.ContentStoreEnabled.setValue(Settings.ContentStoreEnabled.getDefaultValue());
+		Settings.ContentStoreGcDelay.setValue(Settings.ContentStoreGcDelay.getDefaultValue());
+	}
+
+	@Test
+	public void testDeduplication() {
+
+		try (final Tx tx = app.tx()) {
+
+			final File file1 = createFile("file1.txt", "shared content");
+			final File file2 = createFile("file2.txt", "shared content");
+			final File file3 = createFile("file3.txt", "other content");
+
+			final String path1 = file1.getRelativeFilePath();
+
+			assertTrue("Content was not stored", ContentStore.isBlobPath(path1));
+			assertEquals("Equal content must be stored once", path1, file2.getRelativeFilePath());
+			assertEquals(file1.getProperty(FileBase.contentHash), file2.getProperty(FileBase.contentHash));
+			assertNotEquals("Different content must not be shared", path1, file3.getRelativeFilePath());
+
+			// the private file of the first file was moved into the store
+			assertFalse("Private file was copied instead of moved", Files.exists(getPrivatePath(file1)));
+
+			assertEquals("shared content", readContent(file1));
+			assertEquals("shared content", readContent(file2));
+			assertEquals("other content",  readContent(file3));
+
+			tx.success();
+
+		} catch (Exception ex) {
+
+			logger.warn("", ex);
+			fail("Unexpected exception");
+		}
+	}
+
+	@Test
+	public void testDetachOnWrite() {
+
+		try (final Tx tx = app.tx()) {
+
+			final File file1    = createFile("file1.txt", "shared content");
+			final File file2    = createFile("file2.txt", "shared content");
+			final String shared = file2.getRelativeFilePath();
+
+			FileHelper.writeToFile(file1, new ByteArrayInputStream("new content".getBytes(StandardCharsets.UTF_8)));
+
+			assertEquals("new content",    readContent(file1));
+			assertEquals("shared content", readContent(file2));
+			assertEquals("Shared content must not change", shared, file2.getRelativeFilePath());
+			assertNotEquals("Modified file must not reference the shared blob", shared, file1.getRelativeFilePath());
+
+			tx.success();
+
+		} catch (Exception ex) {
+
+			logger.warn("", ex);
+			fail("Unexpected exception");
+		}
+	}
+
+	@Test
+	public void testGarbageCollection() {
+
+		String uuid1 = null;
+		String uuid2 = null;
+		Path blob    = null;
+
+		try (final Tx tx = app.tx()) {
+
+			final File file1 = createFile("file1.txt", "shared content");
+			final File file2 = createFile("file2.txt", "shared content");
+
+			uuid1 = file1.getUuid();
+			uuid2 = file2.getUuid();
+			blob  = file1.getPathOnDisk();
+
+			tx.success();
+
+		} catch (Exception ex) {
+
+			logger.warn("", ex);
+			fail("Unexpected exception");
+		}
+
+		delete(uuid1);
+		collectGarbage();
+
+		assertTrue("Referenced blob must not be deleted", Files.exists(blob));
+
+		delete(uuid2);
+		collectGarbage();
+
+		assertFalse("Unreferenced blob was not deleted", Files.exists(blob));
+	}
+
+	@Test
+	public void testDetachIsProtectedFromGarbageCollection() {
+
+		final CountDownLatch detached          = new CountDownLatch(1);
+		final CountDownLatch collected         = new CountDownLatch(1);
+		final AtomicReference<Throwable> error = new AtomicReference<>();
+		String uuid                            = null;
+
+		Settings.ContentStoreGcDelay.setValue(1);
+
+		try (final Tx tx = app.tx()) {
+
+			uuid = createFile("file1.txt", "shared content").getUuid();
+
+			tx.success();
+
+		} catch (Exception ex) {
+
+			logger.warn("", ex);
+			fail("Unexpected exception");
+		}
+
+		// the released private path of the stored file becomes collectable
+		waitForGarbageCollectionDelay();
+
+		final String fileId = uuid;
+		final Thread writer = new Thread(() -> {
+
+			try (final Tx tx = app.tx()) {
+
+				final File file = app.get(File.class, fileId);
+
+				ContentStore.getInstance().detach(file, true);
+
+				detached.countDown();
+				collected.await(10, TimeUnit.SECONDS);
+
+				tx.success();
+
+			} catch (Throwable t) {
+
+				error.set(t);
+				detached.countDown();
+			}
+		});
+
+		writer.start();
+
+		try {
+
+			assertTrue(detached.await(10, TimeUnit.SECONDS));
+
+			// a garbage collection while the detaching transaction is still open
+			ContentStore.getInstance().collectGarbage();
+
+			collected.countDown();
+			writer.join(10000);
+
+		} catch (InterruptedException iex) {
+			fail("Interrupted");
+		}
+
+		assertNull("Unexpected exception while detaching", error.get());
+
+		try (final Tx tx = app.tx()) {
+
+			final File file = app.get(File.class, uuid);
+
+			assertFalse("File is still attached", ContentStore.isBlobPath(file.getRelativeFilePath()));
+			assertEquals("Private file was deleted by garbage collection", "shared content", readContent(file));
+
+			tx.success();
+
+		} catch (Exception ex) {
+
+			logger.warn("", ex);
+			fail("Unexpected exception");
+		}
+	}
+
+	// ----- private methods -----
+	private File createFile(final String name, final String content) throws Exception {
+		return FileHelper.createFile(securityContext, content.getBytes(StandardCharsets.UTF_8), "text/plain", File.class, name);
+	}
+
+	private String readContent(final FileBase file) throws IOException {
+		return new String(Files.readAllBytes(file.getPathOnDisk()), StandardCharsets.UTF_8);
+	}
+
+	private Path getPrivatePath(final FileBase file) {
+
+		final String uuid = file.getUuid();
+
+		return Paths.get(FileHelper.getFilePath(FileBase.getDirectoryPath(uuid) + "/" + uuid));
+	}
+
+	private void delete(final String uuid) {
+
+		try (final Tx tx = app.tx()) {
+
+			final File file = app.get(File.class, uuid);
+			assertNotNull(file);
+
+			app.delete(file);
+
+			tx.success();
+
+		} catch (Exception ex) {
+
+			logger.warn("", ex);
+			fail("Unexpected exception");
+		}
+	}
+
+	private void collectGarbage() {
+
+		waitForGarbageCollectionDelay();
+
+		ContentStore.getInstance().collectGarbage();
+	}
+
+	private void waitForGarbageCollectionDelay() {
+
+		try {
+
+			Thread.sleep(Settings.ContentStoreGcDelay.getValue() * 1000L + 10);
+
+		} catch (InterruptedException iex) {}
+	}
+}
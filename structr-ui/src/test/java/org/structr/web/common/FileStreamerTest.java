@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.structr.web.common.FileStreamer.Range;
+
+/**
+ * Tests for the byte range parsing of {@link FileStreamer}.
+ */
+public class FileStreamerTest {
+
+	@Test
+	public void testSingleRanges() {
+
+		assertRanges(FileStreamer.parseRanges("bytes=0-99", 1000),     "0-99");
+		assertRanges(FileStreamer.parseRanges("bytes=100-", 1000),     "100-999");
+		assertRanges(FileStreamer.parseRanges("bytes=900-2000", 1000), "900-999");
+
+		// suffix ranges
+		assertRanges(FileStreamer.parseRanges("bytes=-100", 1000),  "900-999");
+		assertRanges(FileStreamer.parseRanges("bytes=-2000", 1000), "0-999");
+	}
+
+	@Test
+	public void testUnsatisfiableRanges() {
+
+		assertNull(FileStreamer.parseRanges("bytes=1000-", 1000));
+		assertNull(FileStreamer.parseRanges("bytes=1000-1100,2000-2100", 1000));
+		assertNull(FileStreamer.parseRanges("bytes=-0", 1000));
+	}
+
+	@Test
+	public void testMalformedRanges() {
+
+		assertTrue(FileStreamer.parseRanges(null, 1000).isEmpty());
+		assertTrue(FileStreamer.parseRanges("items=0-99", 1000).isEmpty());
+		assertTrue(FileStreamer.parseRanges("bytes=100", 1000).isEmpty());
+		assertTrue(FileStreamer.parseRanges("bytes=abc-def", 1000).isEmpty());
+		assertTrue(FileStreamer.parseRanges("bytes=200-100", 1000).isEmpty());
+		assertTrue(FileStreamer.parseRanges("bytes=0-99,x", 1000).isEmpty());
+	}
+
+	@Test
+	public void testMultipleRanges() {
+
+		assertRanges(FileStreamer.parseRanges("bytes=0-99,200-299", 1000), "0-99", "200-299");
+
+		// returned in ascending order
+		assertRanges(FileStreamer.parseRanges("bytes=500-599,0-9,-10", 1000), "0-9", "500-599", "990-999");
+
+		// overlapping and adjacent ranges are merged
+		assertRanges(FileStreamer.parseRanges("bytes=0-99,50-149", 1000),        "0-149");
+		assertRanges(FileStreamer.parseRanges("bytes=0-99,100-199,300-", 1000), "0-199", "300-999");
+		assertRanges(FileStreamer.parseRanges("bytes=10-20,0-100", 1000),        "0-100");
+
+		// unsatisfiable parts are skipped
+		assertRanges(FileStreamer.parseRanges("bytes=0-9,5000-", 1000), "0-9");
+	}
+
+	@Test
+	public void testExcessiveRanges() {
+
+		final StringBuilder buf = new StringBuilder("bytes=");
+
+		for (int i = 0; i <= FileStreamer.MAX_RANGES; i++) {
+
+			if (i > 0) {
+				buf.append(",");
+			}
+
+			buf.append(i * 10).append("-").append(i * 10 + 1);
+		}
+
+		// too many ranges, the whole file is sent instead
+		assertTrue(FileStreamer.parseRanges(buf.toString(), 1000).isEmpty());
+
+		// overlapping ranges that ask for more than the file contains
+		assertTrue(FileStreamer.parseRanges("bytes=0-,0-,0-", 1000).isEmpty());
+		assertTrue(FileStreamer.parseRanges("bytes=0-599,400-999", 1000).isEmpty());
+	}
+
+	// ----- private methods -----
+	private void assertRanges(final List<Range> ranges, final String... expected) {
+
+		assertEquals("Wrong number of ranges", expected.length, ranges.size());
+
+		for (int i = 0; i < expected.length; i++) {
+
+			final Range range = ranges.get(i);
+
+			assertEquals(expected[i], range.getStart() + "-" + range.getEnd());
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import org.apache.commons.io.FileUtils;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for writing streams to the file store with {@link StreamedFile}.
+ */
+public class StreamedFileTest {
+
+	private Path directory = null;
+
+	@Before
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("structr-streamed-file");
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		FileUtils.deleteDirectory(directory.toFile());
+	}
+
+	@Test
+	public void testChecksumAndSize() throws IOException {
+
+		// larger than the copy buffer, so the content is read in several passes
+		final byte[] content = new byte[200000];
+		final File target    = directory.resolve("target").toFile();
+
+		new Random(42).nextBytes(content);
+
+		final StreamedFile streamedFile = StreamedFile.write(new ByteArrayInputStream(content), "uuid", target);
+
+		assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+
+		// same values as computed from the file on disk
+		assertEquals(FileHelper.getChecksum(target), Long.valueOf(streamedFile.getChecksum()));
+		assertEquals(target.length(), streamedFile.getSize());
+
+		assertArrayEquals(Arrays.copyOf(content, 4096), streamedFile.getHeader());
+	}
+
+	@Test
+	public void testEmptyStream() throws IOException {
+
+		final File target               = directory.resolve("empty").toFile();
+		final StreamedFile streamedFile = StreamedFile.write(new ByteArrayInputStream(new byte[0]), "uuid", target);
+
+		assertEquals(FileHelper.getChecksum(target), Long.valueOf(streamedFile.getChecksum()));
+		assertEquals(0L, streamedFile.getSize());
+		assertEquals(0, streamedFile.getHeader().length);
+	}
+
+	@Test
+	public void testFailedWriteKeepsExistingContent() throws IOException {
+
+		final File target = directory.resolve("target").toFile();
+
+		StreamedFile.write(new ByteArrayInputStream("original content".getBytes(StandardCharsets.UTF_8)), "uuid", target);
+
+		try {
+
+			StreamedFile.write(new FailingInputStream(100000), "uuid", target);
+			fail("A failing stream should not be written");
+
+		} catch (IOException expected) {
+		}
+
+		assertEquals("original content", new String(Files.readAllBytes(target.toPath()), StandardCharsets.UTF_8));
+
+		// no temporary file is left behind
+		assertEquals(Arrays.asList("target"), Arrays.asList(directory.toFile().list()));
+	}
+
+	@Test
+	public void testDefaultFilePermissions() throws IOException {
+
+		assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+
+		final File reference = directory.resolve("reference").toFile();
+		final File created   = directory.resolve("created").toFile();
+
+		// the permissions a plain FileOutputStream gets with the current umask
+		try (final FileOutputStream out = new FileOutputStream(reference)) {
+			out.write(1);
+		}
+
+		StreamedFile.write(new ByteArrayInputStream(new byte[] { 1 }), "uuid", created);
+
+		assertEquals(Files.getPosixFilePermissions(reference.toPath()), Files.getPosixFilePermissions(created.toPath()));
+
+		// replacing the content doesn't change the permissions either
+		StreamedFile.write(new ByteArrayInputStream(new byte[] { 2 }), "uuid", created);
+
+		assertEquals(Files.getPosixFilePermissions(reference.toPath()), Files.getPosixFilePermissions(created.toPath()));
+	}
+
+	// ----- nested classes -----
+	private static class FailingInputStream extends InputStream {
+
+		private int remaining = 0;
+
+		public FailingInputStream(final int length) {
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+
+			if (remaining-- <= 0) {
+				throw new IOException("Connection reset");
+			}
+
+			return 'x';
+		}
+	}
+}
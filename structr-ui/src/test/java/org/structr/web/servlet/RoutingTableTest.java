@@ -0,0 +1,329 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.servlet;
+
+import java.lang.reflect.Proxy;
+import javax.servlet.http.HttpServletRequest;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+import org.structr.common.AccessMode;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.graph.NodeAttribute;
+import org.structr.core.graph.Tx;
+import org.structr.web.StructrUiTest;
+import org.structr.web.common.RenderContext.EditMode;
+import org.structr.web.entity.Site;
+import org.structr.web.entity.dom.Page;
+
+/**
+ * Tests page resolution in {@link RoutingTable}.
+ */
+public class RoutingTableTest extends StructrUiTest {
+
+	private final RoutingTable routingTable = RoutingTable.getInstance();
+
+	@Before
+	public void resetRoutingTable() {
+		routingTable.invalidate();
+	}
+
+	@Test
+	public void testFindPageByPathNameAndUuid() {
+
+		String uuid = null;
+
+		try (final Tx tx = app.tx()) {
+
+			final Page page = Page.createNewPage(securityContext, "routing");
+
+			page.setProperty(Page.path, "/test/routing");
+
+			uuid = page.getUuid();
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			assertEquals("Page should be found by path", uuid, findPage(securityContext, null, "/test/routing").getUuid());
+			assertEquals("Page should be found by name", uuid, findPage(securityContext, null, "/routing").getUuid());
+			assertEquals("Page should be found by UUID", uuid, findPage(securityContext, null, "/" + uuid).getUuid());
+
+			assertNull("Unknown path should not resolve to a page", findPage(securityContext, null, "/test/unknown"));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	@Test
+	public void testRenameAndDeleteArePickedUpImmediately() {
+
+		Page page = null;
+
+		try (final Tx tx = app.tx()) {
+
+			page = Page.createNewPage(securityContext, "before");
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		final String uuid = page.getUuid();
+
+		try (final Tx tx = app.tx()) {
+
+			assertEquals("Page should be found by name", uuid, findPage(securityContext, null, "/before").getUuid());
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		// rename page
+		try (final Tx tx = app.tx()) {
+
+			page.setProperty(AbstractNode.name, "after");
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			assertNull("Old name should not resolve after rename", findPage(securityContext, null, "/before"));
+			assertEquals("New name should resolve after rename", uuid, findPage(securityContext, null, "/after").getUuid());
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		// delete page
+		try (final Tx tx = app.tx()) {
+
+			app.delete(page);
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			assertNull("Deleted page should not resolve by name", findPage(securityContext, null, "/after"));
+			assertNull("Deleted page should not resolve by UUID", findPage(securityContext, null, "/" + uuid));
+			assertNull("Deleted page should not be an index page", routingTable.findIndexPage(securityContext, null, EditMode.NONE));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	@Test
+	public void testInvisiblePageIsNotResolved() {
+
+		final SecurityContext publicContext = SecurityContext.getInstance(null, AccessMode.Frontend);
+		String publicUuid                   = null;
+
+		try (final Tx tx = app.tx()) {
+
+			final Page hidden  = Page.createNewPage(securityContext, "hidden");
+			final Page visible = Page.createNewPage(securityContext, "visible");
+
+			visible.setProperty(Page.visibleToPublicUsers, true);
+
+			// the hidden page comes first, so it must be skipped for public users
+			hidden.setProperty(Page.position, 10);
+			visible.setProperty(Page.position, 20);
+
+			publicUuid = visible.getUuid();
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			assertNull("Invisible page should not be resolved", findPage(publicContext, null, "/hidden"));
+			assertEquals("Visible page should be resolved", publicUuid, findPage(publicContext, null, "/visible").getUuid());
+			assertEquals("Invisible page should not be used as index page", publicUuid, routingTable.findIndexPage(publicContext, null, EditMode.NONE).getUuid());
+
+			// superuser sees both
+			assertEquals("Page should be found by name", "hidden", findPage(securityContext, null, "/hidden").getName());
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	@Test
+	public void testSiteMatching() {
+
+		String page1Uuid = null;
+		String page2Uuid = null;
+
+		try (final Tx tx = app.tx()) {
+
+			final Site site1 = createTestNode(Site.class, new NodeAttribute<>(AbstractNode.name, "site1"), new NodeAttribute<>(Site.hostname, "test1.example.com"));
+			final Site site2 = createTestNode(Site.class, new NodeAttribute<>(AbstractNode.name, "site2"), new NodeAttribute<>(Site.hostname, "test2.example.com"), new NodeAttribute<>(Site.port, 8080));
+
+			final Page page1 = Page.createNewPage(securityContext, "site1page");
+			final Page page2 = Page.createNewPage(securityContext, "site2page");
+
+			page1.setProperty(Page.position, 10);
+			page2.setProperty(Page.position, 10);
+
+			page1.setProperty(Page.site, site1);
+			page2.setProperty(Page.site, site2);
+
+			page1Uuid = page1.getUuid();
+			page2Uuid = page2.getUuid();
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		final HttpServletRequest site1Request = createRequest("test1.example.com", 8875);
+		final HttpServletRequest site2Request = createRequest("test2.example.com", 8080);
+		final HttpServletRequest wrongPort    = createRequest("test2.example.com", 8875);
+		final HttpServletRequest unknownHost  = createRequest("unknown.example.com", 8080);
+
+		try (final Tx tx = app.tx()) {
+
+			assertEquals("Page should be resolved for its site", page1Uuid, findPage(securityContext, site1Request, "/site1page").getUuid());
+			assertNull("Page should not be resolved for other site", findPage(securityContext, site1Request, "/site2page"));
+
+			assertEquals("Page should be resolved for its site", page2Uuid, findPage(securityContext, site2Request, "/site2page").getUuid());
+			assertNull("Page should not be resolved for other site", findPage(securityContext, site2Request, "/site1page"));
+
+			assertNull("Page should not be resolved for wrong port", findPage(securityContext, wrongPort, "/site2page"));
+			assertNull("Page should not be resolved for unknown host", findPage(securityContext, unknownHost, "/site1page"));
+
+			assertEquals("Wrong index page for site", page1Uuid, routingTable.findIndexPage(securityContext, site1Request, EditMode.NONE).getUuid());
+			assertEquals("Wrong index page for site", page2Uuid, routingTable.findIndexPage(securityContext, site2Request, EditMode.NONE).getUuid());
+			assertNull("No index page expected for unknown host", routingTable.findIndexPage(securityContext, unknownHost, EditMode.NONE));
+
+			// sites are ignored in content edit mode
+			assertEquals("Page should be resolved in edit mode", page2Uuid, routingTable.findPage(securityContext, site1Request, "/site2page", EditMode.CONTENT).getUuid());
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		// moving the hostname of a site changes the routing
+		try (final Tx tx = app.tx()) {
+
+			final Site site1 = app.nodeQuery(Site.class).andName("site1").getFirst();
+
+			site1.setProperty(Site.hostname, "unknown.example.com");
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			assertNull("Page should not be resolved for old hostname", findPage(securityContext, site1Request, "/site1page"));
+			assertEquals("Page should be resolved for new hostname", page1Uuid, findPage(securityContext, createRequest("unknown.example.com", 8875), "/site1page").getUuid());
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	// ----- private methods -----
+	private Page findPage(final SecurityContext context, final HttpServletRequest request, final String path) throws FrameworkException {
+		return routingTable.findPage(context, request, path, EditMode.NONE);
+	}
+
+	private HttpServletRequest createRequest(final String serverName, final int serverPort) {
+
+		return (HttpServletRequest)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { HttpServletRequest.class }, (proxy, method, args) -> {
+
+			switch (method.getName()) {
+
+				case "getServerName":
+					return serverName;
+
+				case "getServerPort":
+					return serverPort;
+
+				case "toString":
+					return serverName + ":" + serverPort;
+			}
+
+			return null;
+		});
+	}
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2010-2017 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Test;
+import org.structr.api.config.Settings;
+
+/**
+ * Tests the limit of concurrent uploads in {@link UploadServlet} without a
+ * database, using requests that are not multipart and therefore rejected
+ * right after the upload permit was acquired.
+ */
+public class UploadServletTest {
+
+	private final int maxConcurrent = Settings.UploadMaxConcurrent.getValue();
+
+	@After
+	public void cleanup() {
+		Settings.UploadMaxConcurrent.setValue(maxConcurrent);
+	}
+
+	@Test
+	public void testTooManyConcurrentUploads() throws Exception {
+
+		Settings.UploadMaxConcurrent.setValue(1);
+
+		final UploadServlet servlet        = new UploadServlet();
+		final CountDownLatch entered       = new CountDownLatch(1);
+		final CountDownLatch release       = new CountDownLatch(1);
+		final FakeResponse blockedResponse = new FakeResponse();
+
+		servlet.init();
+
+		// the first upload holds the only permit until it is released
+		final Thread blocked = new Thread(() -> {
+
+			try {
+				servlet.doPost(createRequest(entered, release), blockedResponse.proxy());
+
+			} catch (Throwable t) {
+				t.printStackTrace();
+			}
+		});
+
+		blocked.start();
+
+		assertTrue("Upload did not start", entered.await(10, TimeUnit.SECONDS));
+
+		final FakeResponse rejected = new FakeResponse();
+
+		servlet.doPost(createRequest(null, null), rejected.proxy());
+
+		assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, rejected.status.get());
+		assertTrue(rejected.getContent().startsWith("ERROR (503)"));
+
+		release.countDown();
+		blocked.join(10000);
+
+		assertEquals(HttpServletResponse.SC_BAD_REQUEST, blockedResponse.status.get());
+
+		// the permit is released after the upload has finished
+		final FakeResponse accepted = new FakeResponse();
+
+		servlet.doPost(createRequest(null, null), accepted.proxy());
+
+		assertEquals(HttpServletResponse.SC_BAD_REQUEST, accepted.status.get());
+	}
+
+	// ----- private methods -----
+	private HttpServletRequest createRequest(final CountDownLatch entered, final CountDownLatch release) {
+
+		return (HttpServletRequest)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { HttpServletRequest.class }, (proxy, method, args) -> {
+
+			if (entered != null) {
+
+				entered.countDown();
+				release.await();
+			}
+
+			if ("getMethod".equals(method.getName())) {
+				return "GET";
+			}
+
+			return null;
+		});
+	}
+
+	// ----- nested classes -----
+	private static class FakeResponse {
+
+		private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+		private final AtomicInteger status          = new AtomicInteger(HttpServletResponse.SC_OK);
+
+		public HttpServletResponse proxy() {
+
+			return (HttpServletResponse)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { HttpServletResponse.class }, (proxy, method, args) -> {
+
+				switch (method.getName()) {
+
+					case "setStatus":
+						status.set((Integer)args[0]);
+						return null;
+
+					case "getStatus":
+						return status.get();
+
+					case "getOutputStream":
+						return new ServletOutputStream() {
+
+							@Override
+							public void write(final int b) throws IOException {
+								content.write(b);
+							}
+
+							@Override
+							public boolean isReady() {
+								return true;
+							}
+
+							@Override
+							public void setWriteListener(final WriteListener writeListener) {
+							}
+						};
+				}
+
+				return null;
+			});
+		}
+
+		public String getContent() {
+			return new String(content.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+}